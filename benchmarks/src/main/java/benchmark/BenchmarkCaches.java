@@ -0,0 +1,166 @@
+package benchmark;
+
+import algorithms.EvictionCache;
+import algorithms.EvictionPolicy;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Builds every cache in the project behind {@link EvictionCache}, so one benchmark body
+ * drives them all. Names are the {@link EvictionPolicy} constants plus:
+ * - LHM_LRU / LHM_FIFO: the LinkedHashMap caches the replacement demo started from,
+ *   behind Collections.synchronizedMap
+ * - CAFFEINE_CACHE / CAFFEINE_LOADING / CAFFEINE_ASYNC: the Cache, LoadingCache and
+ *   AsyncCache configurations from CaffeineBasicDemo. All of them read with getIfPresent,
+ *   so a miss never loads; LoadingCacheBenchmark measures the loading path
+ */
+final class BenchmarkCaches {
+
+  private BenchmarkCaches() {
+  }
+
+  static EvictionCache<Integer, Integer> create(String name, int maximumSize) {
+    switch (name) {
+      case "LHM_LRU":
+        return new LinkedHashMapCache(maximumSize, true);
+      case "LHM_FIFO":
+        return new LinkedHashMapCache(maximumSize, false);
+      case "CAFFEINE_CACHE":
+        return new CaffeineCache(Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .build(), maximumSize);
+      case "CAFFEINE_LOADING":
+        return new CaffeineCache(Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(Duration.ofMinutes(10))
+            .build(key -> key), maximumSize);
+      case "CAFFEINE_ASYNC":
+        return new CaffeineAsync(Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .buildAsync(), maximumSize);
+      default:
+        return EvictionPolicy.valueOf(name).create(maximumSize);
+    }
+  }
+
+  private static final class LinkedHashMapCache implements EvictionCache<Integer, Integer> {
+    private final Map<Integer, Integer> map;
+    private final int maximumSize;
+
+    LinkedHashMapCache(int maximumSize, boolean accessOrder) {
+      this.maximumSize = maximumSize;
+      this.map = Collections.synchronizedMap(
+          new LinkedHashMap<Integer, Integer>(maximumSize * 4 / 3 + 1, 0.75f, accessOrder) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+              return size() > LinkedHashMapCache.this.maximumSize;
+            }
+          });
+    }
+
+    @Override
+    public Integer get(Integer key) {
+      return map.get(key);
+    }
+
+    @Override
+    public Integer put(Integer key, Integer value) {
+      return map.put(key, value);
+    }
+
+    @Override
+    public Integer remove(Integer key) {
+      return map.remove(key);
+    }
+
+    @Override
+    public int size() {
+      return map.size();
+    }
+
+    @Override
+    public int capacity() {
+      return maximumSize;
+    }
+
+    @Override
+    public List<Integer> keys() {
+      synchronized (map) {
+        return new ArrayList<>(map.keySet());
+      }
+    }
+  }
+
+  private static class CaffeineCache implements EvictionCache<Integer, Integer> {
+    final Cache<Integer, Integer> cache;
+    final int maximumSize;
+
+    CaffeineCache(Cache<Integer, Integer> cache, int maximumSize) {
+      this.cache = cache;
+      this.maximumSize = maximumSize;
+    }
+
+    @Override
+    public Integer get(Integer key) {
+      return cache.getIfPresent(key);
+    }
+
+    @Override
+    public Integer put(Integer key, Integer value) {
+      return cache.asMap().put(key, value);
+    }
+
+    @Override
+    public Integer remove(Integer key) {
+      return cache.asMap().remove(key);
+    }
+
+    @Override
+    public int size() {
+      return (int) cache.estimatedSize();
+    }
+
+    @Override
+    public int capacity() {
+      return maximumSize;
+    }
+
+    @Override
+    public List<Integer> keys() {
+      return new ArrayList<>(cache.asMap().keySet());
+    }
+  }
+
+  /**
+   * Reads complete the future returned by AsyncCache.getIfPresent; writes store completed futures.
+   */
+  private static final class CaffeineAsync extends CaffeineCache {
+    private final AsyncCache<Integer, Integer> asyncCache;
+
+    CaffeineAsync(AsyncCache<Integer, Integer> cache, int maximumSize) {
+      super(cache.synchronous(), maximumSize);
+      this.asyncCache = cache;
+    }
+
+    @Override
+    public Integer get(Integer key) {
+      CompletableFuture<Integer> future = asyncCache.getIfPresent(key);
+      return future == null ? null : future.join();
+    }
+
+    @Override
+    public Integer put(Integer key, Integer value) {
+      asyncCache.put(key, CompletableFuture.completedFuture(value));
+      return null;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package benchmark;
+
+import java.io.File;
+import java.util.Arrays;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count and writes machine-readable JSON results
+ * (one file per thread count) that can be archived and compared across releases.
+ *
+ * Usage:
+ *   java -cp benchmarks/target/benchmarks.jar benchmark.BenchmarkRunner [outputDir] [threads,...] [includeRegex]
+ *   defaults: benchmark-results 1,4,16,32 CacheBenchmark
+ *   e.g. in CI, against the embedded RESP server: benchmark-results 1,4 RedisBenchmark
+ */
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws RunnerException {
+    String outputDir = args.length > 0 ? args[0] : "benchmark-results";
+    int[] threadCounts = args.length > 1
+        ? Arrays.stream(args[1].split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray()
+        : new int[]{1, 4, 16, 32};
+    String include = args.length > 2 ? args[2] : CacheBenchmark.class.getSimpleName();
+
+    new File(outputDir).mkdirs();
+    for (int threads : threadCounts) {
+      String resultFile = new File(outputDir, "jmh-" + threads + "-threads.json").getPath();
+      System.out.println("=== Running " + include + " with " + threads + " thread(s) -> " + resultFile + " ===");
+
+      Options options = new OptionsBuilder()
+          .include(include)
+          .threads(threads)
+          .resultFormat(ResultFormatType.JSON)
+          .result(resultFile)
+          .build();
+      new Runner(options).run();
+    }
+  }
+}
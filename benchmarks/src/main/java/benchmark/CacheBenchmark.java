@@ -0,0 +1,98 @@
+package benchmark;
+
+import algorithms.EvictionCache;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of every cache in the project under Zipfian read-heavy, mixed and
+ * write-heavy workloads. Reads that miss do not insert, so each workload keeps its
+ * configured read/write ratio.
+ *
+ * Thread counts are set per run (-t N); BenchmarkRunner sweeps several counts and writes
+ * one JSON result file per count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheBenchmark {
+  private static final int MAXIMUM_SIZE = 1 << 14;
+  private static final int KEY_SPACE = MAXIMUM_SIZE * 4;
+  private static final int STREAM_SIZE = 1 << 20;
+  private static final int STREAM_MASK = STREAM_SIZE - 1;
+
+  @Param({"LRU", "LFU", "FIFO", "CLOCK", "S3_FIFO", "SIEVE", "W_TINY_LFU",
+      "LHM_LRU", "LHM_FIFO", "CAFFEINE_CACHE", "CAFFEINE_LOADING", "CAFFEINE_ASYNC"})
+  public String cache;
+
+  @Param({"read_heavy", "mixed", "write_heavy"})
+  public String workload;
+
+  private EvictionCache<Integer, Integer> target;
+  private Integer[] keys;
+  private boolean[] writes;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    target = BenchmarkCaches.create(cache, MAXIMUM_SIZE);
+    keys = ZipfianKeys.generate(STREAM_SIZE, KEY_SPACE, ZipfianKeys.DEFAULT_THETA, 42);
+
+    int writePercentage = writePercentage(workload);
+    Random random = new Random(7);
+    writes = new boolean[STREAM_SIZE];
+    for (int i = 0; i < STREAM_SIZE; i++) {
+      writes[i] = random.nextInt(100) < writePercentage;
+    }
+
+    // Start warm: fill with the stream's own keys, as a cache in steady state would be
+    for (int i = 0; i < STREAM_SIZE && target.size() < MAXIMUM_SIZE; i++) {
+      target.put(keys[i], keys[i]);
+    }
+  }
+
+  private static int writePercentage(String workload) {
+    switch (workload) {
+      case "read_heavy":
+        return 5;
+      case "mixed":
+        return 50;
+      case "write_heavy":
+        return 90;
+      default:
+        throw new IllegalArgumentException("Unknown workload: " + workload);
+    }
+  }
+
+  /**
+   * Per-thread cursor into the shared streams so threads do not walk in lockstep.
+   */
+  @State(Scope.Thread)
+  public static class ThreadState {
+    int index = new Random().nextInt(STREAM_SIZE);
+  }
+
+  @Benchmark
+  public Integer operation(ThreadState state) {
+    int index = state.index++ & STREAM_MASK;
+    Integer key = keys[index];
+    if (writes[index]) {
+      return target.put(key, key);
+    }
+    return target.get(key);
+  }
+}
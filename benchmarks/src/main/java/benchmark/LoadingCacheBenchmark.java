@@ -0,0 +1,77 @@
+package benchmark;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The read path CacheBenchmark leaves out: Caffeine's LoadingCache.get, where a miss runs
+ * the loader and inserts the result, against the same cache-aside done by hand
+ * (getIfPresent, then put on a miss). Both read the Zipfian stream CacheBenchmark uses,
+ * with a key space four times the cache, so the miss rate is the steady-state one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadingCacheBenchmark {
+  private static final int MAXIMUM_SIZE = 1 << 14;
+  private static final int KEY_SPACE = MAXIMUM_SIZE * 4;
+  private static final int STREAM_SIZE = 1 << 20;
+  private static final int STREAM_MASK = STREAM_SIZE - 1;
+
+  private LoadingCache<Integer, Integer> cache;
+  private Integer[] keys;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    // The CAFFEINE_LOADING configuration from BenchmarkCaches
+    cache = Caffeine.newBuilder()
+        .maximumSize(MAXIMUM_SIZE)
+        .expireAfterWrite(Duration.ofMinutes(10))
+        .build(key -> key);
+    keys = ZipfianKeys.generate(STREAM_SIZE, KEY_SPACE, ZipfianKeys.DEFAULT_THETA, 42);
+    for (int i = 0; i < STREAM_SIZE && cache.estimatedSize() < MAXIMUM_SIZE; i++) {
+      cache.put(keys[i], keys[i]);
+    }
+  }
+
+  /**
+   * Per-thread cursor into the shared stream so threads do not walk in lockstep.
+   */
+  @State(Scope.Thread)
+  public static class ThreadState {
+    int index = new Random().nextInt(STREAM_SIZE);
+  }
+
+  @Benchmark
+  public Integer loadingGet(ThreadState state) {
+    return cache.get(keys[state.index++ & STREAM_MASK]);
+  }
+
+  @Benchmark
+  public Integer getIfPresentThenPut(ThreadState state) {
+    Integer key = keys[state.index++ & STREAM_MASK];
+    Integer value = cache.getIfPresent(key);
+    if (value == null) {
+      value = key;
+      cache.put(key, value);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,155 @@
+package benchmark;
+
+import distributed.NearCache;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import resp.RespServer;
+import store.InMemoryBackingStore;
+
+/**
+ * Round trips against the embedded {@link RespServer}, so the cost of batching can be
+ * measured in CI and on machines without Redis: one operation reads or writes a batch of
+ * keys, one command per key, pipelined, or as a single MGET.
+ *
+ * nearCachePut measures writes that each publish an invalidation, received by the near
+ * cache's own subscriber on the same server. Absolute numbers are loopback numbers; the
+ * ratios between modes are what carries over to a real Redis over a network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedisBenchmark {
+  private static final int KEY_SPACE = 10_000;
+
+  @Param({"1", "16", "128"})
+  public int batch;
+
+  private RespServer server;
+  private JedisPool pool;
+  private NearCache nearCache;
+  private String[] keys;
+  // Near cache values are hashes, so they live under their own keys
+  private String[] nearKeys;
+
+  @Setup(Level.Trial)
+  public void setUp() throws InterruptedException {
+    server = RespServer.start();
+    JedisPoolConfig config = new JedisPoolConfig();
+    config.setMaxTotal(64);
+    config.setMaxIdle(64);
+    pool = new JedisPool(config, server.host(), server.port());
+
+    keys = new String[KEY_SPACE];
+    nearKeys = new String[KEY_SPACE];
+    try (Jedis jedis = pool.getResource()) {
+      Pipeline pipeline = jedis.pipelined();
+      for (int i = 0; i < KEY_SPACE; i++) {
+        keys[i] = "bench:" + i;
+        nearKeys[i] = "bench:near:" + i;
+        pipeline.set(keys[i], "value-" + i);
+      }
+      pipeline.sync();
+    }
+
+    nearCache = new NearCache(pool, new InMemoryBackingStore<>(), KEY_SPACE, Duration.ofMinutes(1),
+        Duration.ofMinutes(5));
+    if (!nearCache.awaitSubscribed(Duration.ofSeconds(5))) {
+      throw new IllegalStateException("Near cache did not subscribe to invalidations");
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    nearCache.close();
+    pool.close();
+    server.close();
+  }
+
+  /**
+   * Per-thread cursor and batch buffer, so threads do not walk the keys in lockstep.
+   */
+  @State(Scope.Thread)
+  public static class ThreadState {
+    int index = new Random().nextInt(KEY_SPACE);
+    String[] batchKeys;
+
+    @Setup(Level.Trial)
+    public void setUp(RedisBenchmark benchmark) {
+      batchKeys = new String[benchmark.batch];
+    }
+  }
+
+  @Benchmark
+  public void sequential(ThreadState state, Blackhole blackhole) {
+    String[] batchKeys = nextBatch(state, keys);
+    try (Jedis jedis = pool.getResource()) {
+      for (String key : batchKeys) {
+        blackhole.consume(jedis.get(key));
+      }
+    }
+  }
+
+  @Benchmark
+  public void pipelined(ThreadState state, Blackhole blackhole) {
+    String[] batchKeys = nextBatch(state, keys);
+    try (Jedis jedis = pool.getResource()) {
+      Pipeline pipeline = jedis.pipelined();
+      Response<?>[] responses = new Response<?>[batchKeys.length];
+      for (int i = 0; i < batchKeys.length; i++) {
+        responses[i] = pipeline.get(batchKeys[i]);
+      }
+      pipeline.sync();
+      for (Response<?> response : responses) {
+        blackhole.consume(response.get());
+      }
+    }
+  }
+
+  @Benchmark
+  public List<String> mget(ThreadState state) {
+    String[] batchKeys = nextBatch(state, keys);
+    try (Jedis jedis = pool.getResource()) {
+      return jedis.mget(batchKeys);
+    }
+  }
+
+  @Benchmark
+  public void nearCachePut(ThreadState state) {
+    for (String key : nextBatch(state, nearKeys)) {
+      nearCache.put(key, key);
+    }
+  }
+
+  private static String[] nextBatch(ThreadState state, String[] source) {
+    String[] batchKeys = state.batchKeys;
+    for (int i = 0; i < batchKeys.length; i++) {
+      batchKeys[i] = source[state.index];
+      state.index = state.index + 1 == KEY_SPACE ? 0 : state.index + 1;
+    }
+    return batchKeys;
+  }
+}
@@ -0,0 +1,65 @@
+package benchmark;
+
+import java.util.Random;
+
+/**
+ * Pre-generated scrambled Zipfian key streams (Gray et al., as used by YCSB), so the
+ * benchmark loop only indexes an array and never pays for random number generation.
+ *
+ * Popular keys are scattered over the key space by hashing, which keeps them from
+ * clustering in one segment or hash bucket.
+ */
+final class ZipfianKeys {
+  static final double DEFAULT_THETA = 0.99;
+
+  private ZipfianKeys() {
+  }
+
+  /**
+   * Returns length keys drawn from [0, items) with Zipfian skew theta.
+   */
+  static Integer[] generate(int length, int items, double theta, long seed) {
+    double zetaN = zeta(items, theta);
+    double zeta2 = zeta(2, theta);
+    double alpha = 1.0 / (1.0 - theta);
+    double eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetaN);
+    double halfPowTheta = 1 + Math.pow(0.5, theta);
+
+    Random random = new Random(seed);
+    Integer[] keys = new Integer[length];
+    for (int i = 0; i < length; i++) {
+      double u = random.nextDouble();
+      double uz = u * zetaN;
+      long rank;
+      if (uz < 1.0) {
+        rank = 0;
+      } else if (uz < halfPowTheta) {
+        rank = 1;
+      } else {
+        rank = (long) (items * Math.pow(eta * u - eta + 1, alpha));
+      }
+      keys[i] = scramble(rank, items);
+    }
+    return keys;
+  }
+
+  private static double zeta(long n, double theta) {
+    double sum = 0;
+    for (long i = 1; i <= n; i++) {
+      sum += 1 / Math.pow(i, theta);
+    }
+    return sum;
+  }
+
+  /**
+   * 64-bit FNV-1a over the rank, reduced to the key space.
+   */
+  private static int scramble(long rank, int items) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < 8; i++) {
+      hash ^= (rank >>> (i * 8)) & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return (int) Math.floorMod(hash, (long) items);
+  }
+}
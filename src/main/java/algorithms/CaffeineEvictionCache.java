@@ -0,0 +1,62 @@
+package algorithms;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapts a size-bounded Caffeine cache (W-TinyLFU) to {@link EvictionCache} so it can be
+ * compared with the engines in this package by the same code.
+ *
+ * Maintenance runs on the calling thread, so evictions are applied before put returns
+ * and hit ratios are reproducible.
+ */
+public class CaffeineEvictionCache<K, V> implements EvictionCache<K, V> {
+  private final Cache<K, V> cache;
+  private final int maximumSize;
+
+  public CaffeineEvictionCache(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .executor(Runnable::run)
+        .build();
+  }
+
+  @Override
+  public V get(K key) {
+    return cache.getIfPresent(key);
+  }
+
+  @Override
+  public V put(K key, V value) {
+    return cache.asMap().put(key, value);
+  }
+
+  @Override
+  public V remove(K key) {
+    return cache.asMap().remove(key);
+  }
+
+  @Override
+  public int size() {
+    return (int) cache.estimatedSize();
+  }
+
+  @Override
+  public int capacity() {
+    return maximumSize;
+  }
+
+  /**
+   * Keys in no particular order; Caffeine does not expose its eviction order here.
+   */
+  @Override
+  public List<K> keys() {
+    return new ArrayList<>(cache.asMap().keySet());
+  }
+}
@@ -0,0 +1,176 @@
+package algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent CLOCK (second-chance) cache.
+ *
+ * Design:
+ * - Entries sit in a fixed ring of slots swept by a clock hand
+ * - A read only sets the entry's reference bit: no lock, no allocation, no list
+ *   manipulation, and no write at all once the bit is already set
+ * - On insert into a full cache the hand clears set bits and evicts the first entry
+ *   whose bit is already clear
+ * - Slots freed by remove() are reused before the hand is consulted
+ *
+ * Approximates LRU while keeping reads as cheap as FIFO.
+ */
+public class ClockCache<K, V> implements EvictionCache<K, V> {
+  private final ConcurrentHashMap<K, Node<K, V>> data;
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final int maximumSize;
+
+  // Guarded by writeLock
+  private final Node<K, V>[] slots;
+  private final int[] freeSlots;
+  private int freeCount;
+  private int hand;
+
+  public ClockCache(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.slots = newSlots(maximumSize);
+    this.freeSlots = new int[maximumSize];
+    for (int i = 0; i < maximumSize; i++) {
+      freeSlots[i] = maximumSize - 1 - i;
+    }
+    this.freeCount = maximumSize;
+    this.data = new ConcurrentHashMap<>(maximumSize * 4 / 3 + 1);
+  }
+
+  /**
+   * Returns the cached value or null, giving the entry a second chance at the next sweep.
+   */
+  @Override
+  public V get(K key) {
+    Node<K, V> node = data.get(key);
+    if (node == null) {
+      return null;
+    }
+    // Check before writing so hot entries do not keep invalidating the cache line
+    if (!node.referenced) {
+      node.referenced = true;
+    }
+    return node.value;
+  }
+
+  /**
+   * Inserts or replaces a value, sweeping the clock to evict an unreferenced entry when
+   * the cache is full. Returns the previous value, if any.
+   */
+  @Override
+  public V put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    writeLock.lock();
+    try {
+      Node<K, V> existing = data.get(key);
+      if (existing != null) {
+        V previous = existing.value;
+        existing.value = value;
+        existing.referenced = true;
+        return previous;
+      }
+
+      int slot = freeCount > 0 ? freeSlots[--freeCount] : sweep();
+      Node<K, V> node = new Node<>(key, value, slot);
+      slots[slot] = node;
+      data.put(key, node);
+      return null;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Removes the entry for the key, returning its value or null.
+   */
+  @Override
+  public V remove(K key) {
+    writeLock.lock();
+    try {
+      Node<K, V> node = data.remove(key);
+      if (node == null) {
+        return null;
+      }
+      slots[node.slot] = null;
+      freeSlots[freeCount++] = node.slot;
+      return node.value;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    return data.size();
+  }
+
+  @Override
+  public int capacity() {
+    return maximumSize;
+  }
+
+  /**
+   * Keys in the order the clock hand will visit them. Intended for demos and debugging.
+   */
+  @Override
+  public List<K> keys() {
+    writeLock.lock();
+    try {
+      List<K> keys = new ArrayList<>(data.size());
+      for (int i = 0; i < slots.length; i++) {
+        Node<K, V> node = slots[(hand + i) % slots.length];
+        if (node != null) {
+          keys.add(node.key);
+        }
+      }
+      return keys;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Advances the hand until it finds an unreferenced entry, evicts it and returns its slot.
+   * Terminates within two revolutions because every visit clears a reference bit.
+   */
+  private int sweep() {
+    while (true) {
+      Node<K, V> node = slots[hand];
+      int slot = hand;
+      hand = (hand + 1) % slots.length;
+      if (node.referenced) {
+        node.referenced = false;
+      } else {
+        data.remove(node.key, node);
+        slots[slot] = null;
+        return slot;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Node<K, V>[] newSlots(int length) {
+    return (Node<K, V>[]) new Node<?, ?>[length];
+  }
+
+  private static final class Node<K, V> {
+    final K key;
+    final int slot;
+    volatile V value;
+    volatile boolean referenced;
+
+    Node(K key, V value, int slot) {
+      this.key = key;
+      this.value = value;
+      this.slot = slot;
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent FIFO cache backed by a ring buffer of insertion order.
+ *
+ * Design:
+ * - Reads are a single ConcurrentHashMap lookup: no lock, no allocation, no bookkeeping
+ * - Writes append to the ring under one lock and evict from its head in O(1)
+ * - Removed entries are only marked dead and skipped later; the ring holds twice the
+ *   capacity, so when it fills up at least half of it is dead and compacting it in place
+ *   is amortized O(1) per write
+ *
+ * Suited to read-dominated traffic where writes are rare enough that a single write
+ * lock is not a bottleneck.
+ */
+public class ConcurrentFifoCache<K, V> implements EvictionCache<K, V> {
+  private final ConcurrentHashMap<K, Node<K, V>> data;
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final int maximumSize;
+
+  // Guarded by writeLock; entries from head (oldest) to head + count - 1 (newest)
+  private final Node<K, V>[] ring;
+  private int head;
+  private int count;
+
+  public ConcurrentFifoCache(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.ring = newRing(2 * maximumSize);
+    this.data = new ConcurrentHashMap<>(maximumSize * 4 / 3 + 1);
+  }
+
+  /**
+   * Returns the cached value or null. Insertion order is unaffected by reads.
+   */
+  @Override
+  public V get(K key) {
+    Node<K, V> node = data.get(key);
+    return node == null ? null : node.value;
+  }
+
+  /**
+   * Inserts or replaces a value. Replacing keeps the entry's original queue position;
+   * inserting into a full cache evicts the oldest entry. Returns the previous value, if any.
+   */
+  @Override
+  public V put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    writeLock.lock();
+    try {
+      Node<K, V> existing = data.get(key);
+      if (existing != null) {
+        V previous = existing.value;
+        existing.value = value;
+        return previous;
+      }
+
+      while (data.size() >= maximumSize) {
+        Node<K, V> oldest = pollOldest();
+        if (!oldest.dead) {
+          oldest.dead = true;
+          data.remove(oldest.key, oldest);
+        }
+      }
+      if (count == ring.length) {
+        compact();
+      }
+      Node<K, V> node = new Node<>(key, value);
+      ring[(head + count) % ring.length] = node;
+      count++;
+      data.put(key, node);
+      return null;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Removes the entry for the key, returning its value or null.
+   */
+  @Override
+  public V remove(K key) {
+    writeLock.lock();
+    try {
+      Node<K, V> node = data.remove(key);
+      if (node == null) {
+        return null;
+      }
+      node.dead = true;
+      return node.value;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    return data.size();
+  }
+
+  @Override
+  public int capacity() {
+    return maximumSize;
+  }
+
+  /**
+   * Keys from oldest to newest insertion. Intended for demos and debugging.
+   */
+  @Override
+  public List<K> keys() {
+    writeLock.lock();
+    try {
+      List<K> keys = new ArrayList<>(data.size());
+      for (int i = 0; i < count; i++) {
+        Node<K, V> node = ring[(head + i) % ring.length];
+        if (!node.dead) {
+          keys.add(node.key);
+        }
+      }
+      return keys;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private Node<K, V> pollOldest() {
+    Node<K, V> node = ring[head];
+    ring[head] = null;
+    head = (head + 1) % ring.length;
+    count--;
+    return node;
+  }
+
+  /**
+   * Slides live entries to the front of the ring, preserving their order.
+   */
+  private void compact() {
+    int live = 0;
+    for (int i = 0; i < count; i++) {
+      int slot = (head + i) % ring.length;
+      Node<K, V> node = ring[slot];
+      ring[slot] = null;
+      if (!node.dead) {
+        ring[(head + live) % ring.length] = node;
+        live++;
+      }
+    }
+    count = live;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Node<K, V>[] newRing(int length) {
+    return (Node<K, V>[]) new Node<?, ?>[length];
+  }
+
+  private static final class Node<K, V> {
+    final K key;
+    volatile V value;
+
+    // Guarded by writeLock
+    boolean dead;
+
+    Node(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe LFU cache: the key space is striped across independent {@link LfuCache}
+ * segments, each guarded by its own lock, so threads only contend when their keys share
+ * a segment.
+ *
+ * Unlike {@link ConcurrentLruCache}, reads take the segment lock: every hit changes the
+ * entry's frequency bucket, and dropping buffered hits would skew the counts LFU relies on.
+ * Frequencies and eviction are tracked per segment.
+ */
+public class ConcurrentLfuCache<K, V> implements EvictionCache<K, V> {
+  private final LfuCache<K, V>[] segments;
+  private final ReentrantLock[] locks;
+  private final int segmentShift;
+  private final int maximumSize;
+
+  public ConcurrentLfuCache(int maximumSize) {
+    this(maximumSize, Runtime.getRuntime().availableProcessors());
+  }
+
+  public ConcurrentLfuCache(int maximumSize, int concurrencyLevel) {
+    this(maximumSize, concurrencyLevel, 10L * maximumSize);
+  }
+
+  /**
+   * @param agingInterval operations between frequency halvings, spread across segments
+   *     in proportion to their capacity; 0 disables aging
+   */
+  public ConcurrentLfuCache(int maximumSize, int concurrencyLevel, long agingInterval) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+    }
+    if (concurrencyLevel <= 0) {
+      throw new IllegalArgumentException("concurrencyLevel must be positive: " + concurrencyLevel);
+    }
+    this.maximumSize = maximumSize;
+
+    int segmentCount = Integer.highestOneBit(Math.min(concurrencyLevel, maximumSize));
+    this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+    this.segments = newSegments(segmentCount);
+    this.locks = new ReentrantLock[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      int capacity = maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0);
+      long segmentAging = agingInterval == 0 ? 0 : Math.max(capacity, agingInterval * capacity / maximumSize);
+      segments[i] = new LfuCache<>(capacity, segmentAging);
+      locks[i] = new ReentrantLock();
+    }
+  }
+
+  @Override
+  public V get(K key) {
+    int index = segmentIndex(key);
+    locks[index].lock();
+    try {
+      return segments[index].get(key);
+    } finally {
+      locks[index].unlock();
+    }
+  }
+
+  @Override
+  public V put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    int index = segmentIndex(key);
+    locks[index].lock();
+    try {
+      return segments[index].put(key, value);
+    } finally {
+      locks[index].unlock();
+    }
+  }
+
+  @Override
+  public V remove(K key) {
+    int index = segmentIndex(key);
+    locks[index].lock();
+    try {
+      return segments[index].remove(key);
+    } finally {
+      locks[index].unlock();
+    }
+  }
+
+  public long frequency(K key) {
+    int index = segmentIndex(key);
+    locks[index].lock();
+    try {
+      return segments[index].frequency(key);
+    } finally {
+      locks[index].unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (int i = 0; i < segments.length; i++) {
+      locks[i].lock();
+      try {
+        size += segments[i].size();
+      } finally {
+        locks[i].unlock();
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public int capacity() {
+    return maximumSize;
+  }
+
+  /**
+   * Keys in per-segment eviction order. Intended for demos and debugging.
+   */
+  @Override
+  public List<K> keys() {
+    List<K> keys = new ArrayList<>();
+    for (int i = 0; i < segments.length; i++) {
+      locks[i].lock();
+      try {
+        keys.addAll(segments[i].keys());
+      } finally {
+        locks[i].unlock();
+      }
+    }
+    return keys;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> LfuCache<K, V>[] newSegments(int length) {
+    return (LfuCache<K, V>[]) new LfuCache<?, ?>[length];
+  }
+
+  private int segmentIndex(Object key) {
+    if (segments.length == 1) {
+      return 0;
+    }
+    int h = key.hashCode() * 0x9E3779B9;
+    return h >>> segmentShift;
+  }
+}
@@ -0,0 +1,279 @@
+package algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent LRU cache with striped segments and buffered reads.
+ *
+ * Design:
+ * - Lookups go to a shared ConcurrentHashMap and never take a lock
+ * - Each key belongs to one segment that owns an access-ordered doubly-linked list
+ * - Reads are recorded in the segment's lossy ring buffer and replayed onto the list
+ *   in batches by whichever thread wins tryLock, instead of reordering on every get
+ * - Writes lock only their segment; eviction unlinks the segment head in O(1)
+ *
+ * Recency is tracked per segment, so with more than one segment the evicted entry is
+ * the least recently used of its segment rather than of the whole cache.
+ */
+public class ConcurrentLruCache<K, V> implements EvictionCache<K, V> {
+  private static final int READ_BUFFER_SIZE = 32;
+  private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+  private static final int DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+
+  private final ConcurrentHashMap<K, Node<K, V>> data;
+  private final Segment<K, V>[] segments;
+  private final int segmentShift;
+  private final int maximumSize;
+
+  public ConcurrentLruCache(int maximumSize) {
+    this(maximumSize, Runtime.getRuntime().availableProcessors());
+  }
+
+  public ConcurrentLruCache(int maximumSize, int concurrencyLevel) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+    }
+    if (concurrencyLevel <= 0) {
+      throw new IllegalArgumentException("concurrencyLevel must be positive: " + concurrencyLevel);
+    }
+    this.maximumSize = maximumSize;
+
+    // Power-of-two segment count, never more segments than entries
+    int segmentCount = Integer.highestOneBit(Math.min(concurrencyLevel, maximumSize));
+    this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+    this.segments = newSegments(segmentCount);
+    for (int i = 0; i < segmentCount; i++) {
+      int capacity = maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0);
+      segments[i] = new Segment<>(capacity);
+    }
+    this.data = new ConcurrentHashMap<>(maximumSize * 4 / 3 + 1);
+  }
+
+  /**
+   * Returns the cached value or null. Lock-free: the access is only recorded in the
+   * segment's read buffer and applied to the LRU list later.
+   */
+  @Override
+  public V get(K key) {
+    Node<K, V> node = data.get(key);
+    if (node == null) {
+      return null;
+    }
+    segmentFor(key).recordRead(node);
+    return node.value;
+  }
+
+  /**
+   * Inserts or replaces a value, evicting the least recently used entries of the
+   * segment if it is over capacity. Returns the previous value, if any.
+   */
+  @Override
+  public V put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    Segment<K, V> segment = segmentFor(key);
+    segment.lock();
+    try {
+      segment.drainReadBuffer();
+
+      Node<K, V> existing = data.get(key);
+      if (existing != null) {
+        V previous = existing.value;
+        existing.value = value;
+        segment.moveToTail(existing);
+        return previous;
+      }
+
+      Node<K, V> node = new Node<>(key, value);
+      data.put(key, node);
+      segment.linkLast(node);
+      while (segment.size > segment.capacity) {
+        Node<K, V> eldest = segment.head;
+        segment.unlink(eldest);
+        data.remove(eldest.key, eldest);
+      }
+      return null;
+    } finally {
+      segment.unlock();
+    }
+  }
+
+  /**
+   * Removes the entry for the key, returning its value or null.
+   */
+  @Override
+  public V remove(K key) {
+    Segment<K, V> segment = segmentFor(key);
+    segment.lock();
+    try {
+      Node<K, V> node = data.remove(key);
+      if (node == null) {
+        return null;
+      }
+      segment.unlink(node);
+      return node.value;
+    } finally {
+      segment.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    return data.size();
+  }
+
+  @Override
+  public int capacity() {
+    return maximumSize;
+  }
+
+  /**
+   * Keys ordered from least to most recently used within each segment. Pending reads are
+   * applied first so the order reflects every completed get. Intended for demos and debugging.
+   */
+  @Override
+  public List<K> keys() {
+    List<K> keys = new ArrayList<>(data.size());
+    for (Segment<K, V> segment : segments) {
+      segment.lock();
+      try {
+        segment.drainReadBuffer();
+        for (Node<K, V> node = segment.head; node != null; node = node.next) {
+          keys.add(node.key);
+        }
+      } finally {
+        segment.unlock();
+      }
+    }
+    return keys;
+  }
+
+  private Segment<K, V> segmentFor(Object key) {
+    if (segments.length == 1) {
+      return segments[0];
+    }
+    int h = key.hashCode() * 0x9E3779B9;
+    return segments[h >>> segmentShift];
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Segment<K, V>[] newSegments(int length) {
+    return (Segment<K, V>[]) new Segment<?, ?>[length];
+  }
+
+  private static final class Node<K, V> {
+    final K key;
+    volatile V value;
+
+    // Guarded by the owning segment's lock
+    Node<K, V> prev;
+    Node<K, V> next;
+    boolean linked;
+
+    Node(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * One stripe of the cache: an access-ordered list plus a lossy buffer of pending reads.
+   */
+  private static final class Segment<K, V> extends ReentrantLock {
+    private static final long serialVersionUID = 1L;
+
+    final int capacity;
+    final AtomicReferenceArray<Node<K, V>> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    final AtomicLong readWriteIndex = new AtomicLong();
+
+    // Written under this lock, read racily by recordRead to decide when to drain
+    volatile long readDrainIndex;
+
+    // Guarded by this lock
+    Node<K, V> head;
+    Node<K, V> tail;
+    int size;
+
+    Segment(int capacity) {
+      this.capacity = capacity;
+    }
+
+    void recordRead(Node<K, V> node) {
+      long index = readWriteIndex.getAndIncrement();
+      // Lossy: under heavy contention a slot may be overwritten before it is drained,
+      // which only costs a little recency precision
+      readBuffer.lazySet((int) (index & READ_BUFFER_MASK), node);
+      if (index - readDrainIndex >= DRAIN_THRESHOLD && tryLock()) {
+        try {
+          drainReadBuffer();
+        } finally {
+          unlock();
+        }
+      }
+    }
+
+    void drainReadBuffer() {
+      long writeIndex = readWriteIndex.get();
+      long start = Math.max(readDrainIndex, writeIndex - READ_BUFFER_SIZE);
+      for (long i = start; i < writeIndex; i++) {
+        int slot = (int) (i & READ_BUFFER_MASK);
+        Node<K, V> node = readBuffer.get(slot);
+        if (node != null) {
+          readBuffer.lazySet(slot, null);
+          if (node.linked) {
+            moveToTail(node);
+          }
+        }
+      }
+      readDrainIndex = writeIndex;
+    }
+
+    void linkLast(Node<K, V> node) {
+      node.prev = tail;
+      node.next = null;
+      if (tail == null) {
+        head = node;
+      } else {
+        tail.next = node;
+      }
+      tail = node;
+      node.linked = true;
+      size++;
+    }
+
+    void unlink(Node<K, V> node) {
+      if (!node.linked) {
+        return;
+      }
+      Node<K, V> prev = node.prev;
+      Node<K, V> next = node.next;
+      if (prev == null) {
+        head = next;
+      } else {
+        prev.next = next;
+      }
+      if (next == null) {
+        tail = prev;
+      } else {
+        next.prev = prev;
+      }
+      node.prev = null;
+      node.next = null;
+      node.linked = false;
+      size--;
+    }
+
+    void moveToTail(Node<K, V> node) {
+      if (node != tail) {
+        unlink(node);
+        linkLast(node);
+      }
+    }
+  }
+}
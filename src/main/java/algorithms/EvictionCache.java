@@ -0,0 +1,37 @@
+package algorithms;
+
+import java.util.List;
+
+/**
+ * Common contract for the bounded caches in this package, so that every replacement
+ * policy can be driven by the same demo, simulator and benchmark code.
+ *
+ * Implementations reject null keys and values; get returns null on a miss.
+ */
+public interface EvictionCache<K, V> {
+
+  /**
+   * Returns the cached value or null, recording the access as the policy requires.
+   */
+  V get(K key);
+
+  /**
+   * Inserts or replaces a value, evicting according to the policy when the cache is full.
+   * Returns the previous value, if any.
+   */
+  V put(K key, V value);
+
+  /**
+   * Removes the entry for the key, returning its value or null.
+   */
+  V remove(K key);
+
+  int size();
+
+  int capacity();
+
+  /**
+   * Keys in the policy's eviction order where it has one. Intended for demos and debugging.
+   */
+  List<K> keys();
+}
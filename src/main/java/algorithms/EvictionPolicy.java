@@ -0,0 +1,95 @@
+package algorithms;
+
+/**
+ * Registry of the replacement policies available as {@link EvictionCache} engines.
+ * Demos, the simulator and the benchmarks iterate over these instead of naming classes.
+ */
+public enum EvictionPolicy {
+  LRU("LRU") {
+    @Override
+    public <K, V> EvictionCache<K, V> create(int maximumSize) {
+      return new ConcurrentLruCache<>(maximumSize);
+    }
+
+    @Override
+    public <K, V> EvictionCache<K, V> createUnsegmented(int maximumSize) {
+      return new ConcurrentLruCache<>(maximumSize, 1);
+    }
+  },
+  LFU("LFU") {
+    @Override
+    public <K, V> EvictionCache<K, V> create(int maximumSize) {
+      return new ConcurrentLfuCache<>(maximumSize);
+    }
+
+    @Override
+    public <K, V> EvictionCache<K, V> createUnsegmented(int maximumSize) {
+      return new ConcurrentLfuCache<>(maximumSize, 1);
+    }
+  },
+  FIFO("FIFO") {
+    @Override
+    public <K, V> EvictionCache<K, V> create(int maximumSize) {
+      return new ConcurrentFifoCache<>(maximumSize);
+    }
+  },
+  CLOCK("CLOCK") {
+    @Override
+    public <K, V> EvictionCache<K, V> create(int maximumSize) {
+      return new ClockCache<>(maximumSize);
+    }
+  },
+  S3_FIFO("S3-FIFO") {
+    @Override
+    public <K, V> EvictionCache<K, V> create(int maximumSize) {
+      return new S3FifoCache<>(maximumSize);
+    }
+  },
+  SIEVE("SIEVE") {
+    @Override
+    public <K, V> EvictionCache<K, V> create(int maximumSize) {
+      return new SieveCache<>(maximumSize);
+    }
+  },
+  W_TINY_LFU("W-TinyLFU") {
+    @Override
+    public <K, V> EvictionCache<K, V> create(int maximumSize) {
+      return new CaffeineEvictionCache<>(maximumSize);
+    }
+  };
+
+  private final String displayName;
+
+  EvictionPolicy(String displayName) {
+    this.displayName = displayName;
+  }
+
+  public String displayName() {
+    return displayName;
+  }
+
+  /**
+   * Creates an empty cache bounded to maximumSize entries using this policy.
+   */
+  public abstract <K, V> EvictionCache<K, V> create(int maximumSize);
+
+  /**
+   * Same policy with one segment, so eviction is decided across the whole cache and
+   * hit ratios do not depend on the host's core count. For single-threaded replay.
+   */
+  public <K, V> EvictionCache<K, V> createUnsegmented(int maximumSize) {
+    return create(maximumSize);
+  }
+
+  /**
+   * Looks up a policy by enum name or display name, ignoring case (e.g. "s3-fifo").
+   */
+  public static EvictionPolicy fromName(String name) {
+    for (EvictionPolicy policy : values()) {
+      if (policy.name().equalsIgnoreCase(name) || policy.displayName.equalsIgnoreCase(name)) {
+        return policy;
+      }
+    }
+    throw new IllegalArgumentException("Unknown eviction policy: " + name);
+  }
+}
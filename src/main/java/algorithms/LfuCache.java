@@ -0,0 +1,305 @@
+package algorithms;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * O(1) LFU cache built from doubly-linked frequency buckets.
+ *
+ * Design:
+ * - Buckets form a list in ascending frequency order; each holds its entries oldest first
+ * - A hit moves the entry to the bucket for frequency + 1 (created next to the current one)
+ * - Eviction removes the oldest entry of the lowest-frequency bucket
+ * - Aging halves every frequency once per agingInterval operations so former heavy
+ *   hitters cannot stay forever; the O(n) rebuild is amortized over at least n operations
+ *
+ * Not thread-safe; see {@link ConcurrentLfuCache} for a striped, lock-protected variant.
+ */
+public class LfuCache<K, V> implements EvictionCache<K, V> {
+  private final Map<K, Node<K, V>> nodes;
+  private final int maximumSize;
+  private final long agingInterval;
+
+  // Lowest-frequency bucket first
+  private Bucket<K, V> lowest;
+  private long operationsSinceAging;
+
+  public LfuCache(int maximumSize) {
+    this(maximumSize, 10L * maximumSize);
+  }
+
+  /**
+   * @param agingInterval operations between frequency halvings; 0 disables aging
+   */
+  public LfuCache(int maximumSize, long agingInterval) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+    }
+    if (agingInterval != 0 && agingInterval < maximumSize) {
+      throw new IllegalArgumentException("agingInterval must be 0 or at least maximumSize: " + agingInterval);
+    }
+    this.maximumSize = maximumSize;
+    this.agingInterval = agingInterval;
+    this.nodes = new HashMap<>(maximumSize * 4 / 3 + 1);
+  }
+
+  /**
+   * Returns the cached value or null, counting a hit towards the entry's frequency.
+   */
+  @Override
+  public V get(K key) {
+    Node<K, V> node = nodes.get(key);
+    if (node == null) {
+      return null;
+    }
+    increment(node);
+    tick();
+    return node.value;
+  }
+
+  /**
+   * Inserts or replaces a value. Replacing counts as an access; inserting into a full
+   * cache first evicts the least frequently used entry. Returns the previous value, if any.
+   */
+  @Override
+  public V put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    Node<K, V> node = nodes.get(key);
+    if (node != null) {
+      V previous = node.value;
+      node.value = value;
+      increment(node);
+      tick();
+      return previous;
+    }
+
+    if (nodes.size() >= maximumSize) {
+      evict();
+    }
+    node = new Node<>(key, value);
+    nodes.put(key, node);
+    Bucket<K, V> first = lowest;
+    if (first == null || first.frequency != 1) {
+      first = insertBucketAfter(null, 1);
+    }
+    first.append(node);
+    tick();
+    return null;
+  }
+
+  /**
+   * Removes the entry for the key, returning its value or null.
+   */
+  @Override
+  public V remove(K key) {
+    Node<K, V> node = nodes.remove(key);
+    if (node == null) {
+      return null;
+    }
+    detach(node);
+    return node.value;
+  }
+
+  @Override
+  public int size() {
+    return nodes.size();
+  }
+
+  @Override
+  public int capacity() {
+    return maximumSize;
+  }
+
+  /**
+   * Current (possibly aged) frequency of the key, or 0 if absent. Does not count as an access.
+   */
+  public long frequency(K key) {
+    Node<K, V> node = nodes.get(key);
+    return node == null ? 0 : node.bucket.frequency;
+  }
+
+  /**
+   * Keys in eviction order: lowest frequency first, oldest first within a frequency.
+   */
+  @Override
+  public List<K> keys() {
+    List<K> keys = new ArrayList<>(nodes.size());
+    for (Bucket<K, V> bucket = lowest; bucket != null; bucket = bucket.next) {
+      for (Node<K, V> node = bucket.head; node != null; node = node.next) {
+        keys.add(node.key);
+      }
+    }
+    return keys;
+  }
+
+  private void increment(Node<K, V> node) {
+    Bucket<K, V> current = node.bucket;
+    long target = current.frequency + 1;
+    Bucket<K, V> next = current.next;
+    if (next == null || next.frequency != target) {
+      next = insertBucketAfter(current, target);
+    }
+    current.remove(node);
+    next.append(node);
+    if (current.isEmpty()) {
+      unlinkBucket(current);
+    }
+  }
+
+  private void evict() {
+    Bucket<K, V> bucket = lowest;
+    Node<K, V> victim = bucket.head;
+    bucket.remove(victim);
+    if (bucket.isEmpty()) {
+      unlinkBucket(bucket);
+    }
+    nodes.remove(victim.key);
+  }
+
+  private void detach(Node<K, V> node) {
+    Bucket<K, V> bucket = node.bucket;
+    bucket.remove(node);
+    if (bucket.isEmpty()) {
+      unlinkBucket(bucket);
+    }
+  }
+
+  private void tick() {
+    if (agingInterval > 0 && ++operationsSinceAging >= agingInterval) {
+      operationsSinceAging = 0;
+      age();
+    }
+  }
+
+  /**
+   * Halves every frequency (never below 1). Halving is monotonic, so walking the buckets in
+   * ascending order and merging neighbours that collapse onto the same frequency keeps the
+   * list sorted without a re-sort.
+   */
+  private void age() {
+    Bucket<K, V> bucket = lowest;
+    lowest = null;
+    Bucket<K, V> last = null;
+    while (bucket != null) {
+      Bucket<K, V> following = bucket.next;
+      long aged = Math.max(1, bucket.frequency >>> 1);
+      if (last != null && last.frequency == aged) {
+        // Merge into the previous bucket, keeping older entries ahead of newer ones
+        for (Node<K, V> node = bucket.head; node != null; ) {
+          Node<K, V> nextNode = node.next;
+          node.prev = null;
+          node.next = null;
+          last.append(node);
+          node = nextNode;
+        }
+      } else {
+        bucket.frequency = aged;
+        bucket.prev = last;
+        bucket.next = null;
+        if (last == null) {
+          lowest = bucket;
+        } else {
+          last.next = bucket;
+        }
+        last = bucket;
+      }
+      bucket = following;
+    }
+  }
+
+  private Bucket<K, V> insertBucketAfter(Bucket<K, V> previous, long frequency) {
+    Bucket<K, V> bucket = new Bucket<>(frequency);
+    bucket.prev = previous;
+    if (previous == null) {
+      bucket.next = lowest;
+      if (lowest != null) {
+        lowest.prev = bucket;
+      }
+      lowest = bucket;
+    } else {
+      bucket.next = previous.next;
+      if (previous.next != null) {
+        previous.next.prev = bucket;
+      }
+      previous.next = bucket;
+    }
+    return bucket;
+  }
+
+  private void unlinkBucket(Bucket<K, V> bucket) {
+    if (bucket.prev == null) {
+      lowest = bucket.next;
+    } else {
+      bucket.prev.next = bucket.next;
+    }
+    if (bucket.next != null) {
+      bucket.next.prev = bucket.prev;
+    }
+    bucket.prev = null;
+    bucket.next = null;
+  }
+
+  private static final class Node<K, V> {
+    final K key;
+    V value;
+    Bucket<K, V> bucket;
+    Node<K, V> prev;
+    Node<K, V> next;
+
+    Node(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * All entries sharing one access frequency, oldest at the head.
+   */
+  private static final class Bucket<K, V> {
+    long frequency;
+    Bucket<K, V> prev;
+    Bucket<K, V> next;
+    Node<K, V> head;
+    Node<K, V> tail;
+
+    Bucket(long frequency) {
+      this.frequency = frequency;
+    }
+
+    void append(Node<K, V> node) {
+      node.bucket = this;
+      node.prev = tail;
+      node.next = null;
+      if (tail == null) {
+        head = node;
+      } else {
+        tail.next = node;
+      }
+      tail = node;
+    }
+
+    void remove(Node<K, V> node) {
+      if (node.prev == null) {
+        head = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        tail = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = null;
+      node.next = null;
+      node.bucket = null;
+    }
+
+    boolean isEmpty() {
+      return head == null;
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package algorithms;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent S3-FIFO cache (Yang et al., "FIFO queues are all you need for cache eviction",
+ * SOSP 2023).
+ *
+ * Design:
+ * - Small FIFO (10% of capacity) admits new keys; one-hit wonders leave from here quickly
+ * - Main FIFO (90%) holds keys that were read while in the small queue
+ * - Ghost FIFO remembers recently evicted keys (no values) so a quick return goes
+ *   straight to the main queue
+ * - Each entry carries a 2-bit frequency; a read only bumps it, without a lock
+ * - Main-queue eviction reinserts entries with a non-zero frequency, decrementing it
+ *
+ * Writes run under a single lock; removed entries are marked dead and skipped when their
+ * queue reaches them. A queue is compacted once its dead entries outnumber its live ones,
+ * so put/remove churn on a cache that never fills cannot grow the queues without bound.
+ */
+public class S3FifoCache<K, V> implements EvictionCache<K, V> {
+  private static final int MAX_FREQUENCY = 3;
+
+  private final ConcurrentHashMap<K, Node<K, V>> data;
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final int maximumSize;
+  private final int smallCapacity;
+  private final int mainCapacity;
+
+  // Guarded by writeLock; queue heads are the newest entries, tails the oldest
+  private final ArrayDeque<Node<K, V>> small = new ArrayDeque<>();
+  private final ArrayDeque<Node<K, V>> main = new ArrayDeque<>();
+  private final Map<K, Boolean> ghost;
+  private int smallSize;
+  private int mainSize;
+  private int smallDead;
+  private int mainDead;
+
+  public S3FifoCache(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.smallCapacity = Math.max(1, maximumSize / 10);
+    this.mainCapacity = maximumSize - smallCapacity;
+    int ghostCapacity = Math.max(1, mainCapacity);
+    this.ghost = new LinkedHashMap<K, Boolean>(16, 0.75f, false) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Boolean> eldest) {
+        return size() > ghostCapacity;
+      }
+    };
+    this.data = new ConcurrentHashMap<>(maximumSize * 4 / 3 + 1);
+  }
+
+  /**
+   * Returns the cached value or null. A hit only increments the entry's 2-bit frequency.
+   */
+  @Override
+  public V get(K key) {
+    Node<K, V> node = data.get(key);
+    if (node == null) {
+      return null;
+    }
+    int frequency = node.frequency;
+    if (frequency < MAX_FREQUENCY) {
+      // Racy increment: a lost update only under-counts an already hot entry
+      node.frequency = frequency + 1;
+    }
+    return node.value;
+  }
+
+  /**
+   * Inserts or replaces a value. New keys enter the small queue, or the main queue when
+   * the ghost queue remembers them. Returns the previous value, if any.
+   */
+  @Override
+  public V put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    writeLock.lock();
+    try {
+      Node<K, V> existing = data.get(key);
+      if (existing != null) {
+        V previous = existing.value;
+        existing.value = value;
+        existing.frequency = Math.min(existing.frequency + 1, MAX_FREQUENCY);
+        return previous;
+      }
+
+      while (data.size() >= maximumSize) {
+        evict();
+      }
+      Node<K, V> node = new Node<>(key, value);
+      if (ghost.remove(key) != null) {
+        node.inMain = true;
+        main.addFirst(node);
+        mainSize++;
+      } else {
+        small.addFirst(node);
+        smallSize++;
+      }
+      data.put(key, node);
+      return null;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Removes the entry for the key, returning its value or null.
+   */
+  @Override
+  public V remove(K key) {
+    writeLock.lock();
+    try {
+      Node<K, V> node = data.remove(key);
+      if (node == null) {
+        return null;
+      }
+      node.dead = true;
+      if (node.inMain) {
+        mainSize--;
+        mainDead++;
+      } else {
+        smallSize--;
+        smallDead++;
+      }
+      compactIfSparse();
+      return node.value;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    return data.size();
+  }
+
+  @Override
+  public int capacity() {
+    return maximumSize;
+  }
+
+  /**
+   * Keys oldest first: the small queue followed by the main queue.
+   */
+  @Override
+  public List<K> keys() {
+    writeLock.lock();
+    try {
+      List<K> keys = new ArrayList<>(data.size());
+      addLiveKeys(small, keys);
+      addLiveKeys(main, keys);
+      return keys;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void addLiveKeys(ArrayDeque<Node<K, V>> queue, List<K> keys) {
+    for (Iterator<Node<K, V>> it = queue.descendingIterator(); it.hasNext(); ) {
+      Node<K, V> node = it.next();
+      if (!node.dead) {
+        keys.add(node.key);
+      }
+    }
+  }
+
+  /**
+   * Drops dead entries from a queue once they outnumber its live ones; each pass costs at
+   * most twice the removals since the last one, so removal stays amortized O(1).
+   */
+  private void compactIfSparse() {
+    if (smallDead > smallSize) {
+      small.removeIf(node -> node.dead);
+      smallDead = 0;
+    }
+    if (mainDead > mainSize) {
+      main.removeIf(node -> node.dead);
+      mainDead = 0;
+    }
+  }
+
+  private void evict() {
+    if (smallSize >= smallCapacity || mainSize == 0) {
+      evictSmall();
+    } else {
+      evictMain();
+    }
+  }
+
+  /**
+   * Pops the small queue until an entry leaves the cache: entries read while queued are
+   * promoted to the main queue (which may then evict), the rest are remembered as ghosts.
+   */
+  private void evictSmall() {
+    while (smallSize > 0) {
+      Node<K, V> node = small.pollLast();
+      if (node.dead) {
+        smallDead--;
+        continue;
+      }
+      smallSize--;
+      if (node.frequency > 0) {
+        node.frequency = 0;
+        node.inMain = true;
+        main.addFirst(node);
+        mainSize++;
+        if (mainSize > mainCapacity) {
+          evictMain();
+          return;
+        }
+      } else {
+        node.dead = true;
+        data.remove(node.key, node);
+        ghost.put(node.key, Boolean.TRUE);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Pops the main queue, giving entries with a non-zero frequency another lap (one less
+   * each time) and evicting the first entry whose frequency has dropped to zero.
+   */
+  private void evictMain() {
+    while (mainSize > 0) {
+      Node<K, V> node = main.pollLast();
+      if (node.dead) {
+        mainDead--;
+        continue;
+      }
+      int frequency = node.frequency;
+      if (frequency > 0) {
+        node.frequency = frequency - 1;
+        main.addFirst(node);
+      } else {
+        mainSize--;
+        node.dead = true;
+        data.remove(node.key, node);
+        return;
+      }
+    }
+  }
+
+  private static final class Node<K, V> {
+    final K key;
+    volatile V value;
+    volatile int frequency;
+
+    // Guarded by writeLock
+    boolean inMain;
+    boolean dead;
+
+    Node(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent SIEVE cache (Zhang et al., "SIEVE is simpler than LRU", NSDI 2024).
+ *
+ * Design:
+ * - One FIFO queue: new entries go to the head and are never moved on a hit
+ * - A read only sets the entry's visited bit, without a lock
+ * - The eviction hand walks from the tail towards the head, clearing visited bits and
+ *   evicting the first unvisited entry; it keeps its position between evictions, so
+ *   survivors stay where they are instead of being requeued as in CLOCK
+ *
+ * Writes run under a single lock and remove entries from the queue in O(1).
+ */
+public class SieveCache<K, V> implements EvictionCache<K, V> {
+  private final ConcurrentHashMap<K, Node<K, V>> data;
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final int maximumSize;
+
+  // Guarded by writeLock; head is the newest entry, tail the oldest
+  private Node<K, V> head;
+  private Node<K, V> tail;
+  private Node<K, V> hand;
+
+  public SieveCache(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.data = new ConcurrentHashMap<>(maximumSize * 4 / 3 + 1);
+  }
+
+  /**
+   * Returns the cached value or null, marking the entry as visited.
+   */
+  @Override
+  public V get(K key) {
+    Node<K, V> node = data.get(key);
+    if (node == null) {
+      return null;
+    }
+    if (!node.visited) {
+      node.visited = true;
+    }
+    return node.value;
+  }
+
+  /**
+   * Inserts or replaces a value, evicting with the SIEVE hand when the cache is full.
+   * Returns the previous value, if any.
+   */
+  @Override
+  public V put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    writeLock.lock();
+    try {
+      Node<K, V> existing = data.get(key);
+      if (existing != null) {
+        V previous = existing.value;
+        existing.value = value;
+        existing.visited = true;
+        return previous;
+      }
+
+      if (data.size() >= maximumSize) {
+        evict();
+      }
+      Node<K, V> node = new Node<>(key, value);
+      linkFirst(node);
+      data.put(key, node);
+      return null;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Removes the entry for the key, returning its value or null.
+   */
+  @Override
+  public V remove(K key) {
+    writeLock.lock();
+    try {
+      Node<K, V> node = data.remove(key);
+      if (node == null) {
+        return null;
+      }
+      if (hand == node) {
+        hand = node.prev;
+      }
+      unlink(node);
+      return node.value;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    return data.size();
+  }
+
+  @Override
+  public int capacity() {
+    return maximumSize;
+  }
+
+  /**
+   * Keys from oldest (tail) to newest (head). Intended for demos and debugging.
+   */
+  @Override
+  public List<K> keys() {
+    writeLock.lock();
+    try {
+      List<K> keys = new ArrayList<>(data.size());
+      for (Node<K, V> node = tail; node != null; node = node.prev) {
+        keys.add(node.key);
+      }
+      return keys;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void evict() {
+    Node<K, V> node = hand != null ? hand : tail;
+    while (node.visited) {
+      node.visited = false;
+      node = node.prev != null ? node.prev : tail;
+    }
+    hand = node.prev;
+    unlink(node);
+    data.remove(node.key, node);
+  }
+
+  private void linkFirst(Node<K, V> node) {
+    node.next = head;
+    node.prev = null;
+    if (head == null) {
+      tail = node;
+    } else {
+      head.prev = node;
+    }
+    head = node;
+  }
+
+  private void unlink(Node<K, V> node) {
+    if (node.prev == null) {
+      head = node.next;
+    } else {
+      node.prev.next = node.next;
+    }
+    if (node.next == null) {
+      tail = node.prev;
+    } else {
+      node.next.prev = node.prev;
+    }
+    node.prev = null;
+    node.next = null;
+  }
+
+  private static final class Node<K, V> {
+    final K key;
+    volatile V value;
+    volatile boolean visited;
+
+    // Guarded by writeLock; prev points towards the head (newer entries)
+    Node<K, V> prev;
+    Node<K, V> next;
+
+    Node(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package distributed;
+
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.ToByteBufEncoder;
+import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
+import store.Serializer;
+
+/**
+ * Lettuce codec over a pair of {@link Serializer}s, so connections can carry binary,
+ * compact or compressed values instead of UTF-8 strings.
+ *
+ * Design:
+ * - Encoding implements {@link ToByteBufEncoder}: Lettuce hands over a buffer from the
+ *   channel's pooled allocator (direct memory by default) and the serialized bytes are
+ *   written into it, so no per-argument ByteBuffer is allocated on the way out
+ * - estimateSize only sizes that pooled buffer; it cannot tell keys from values, so it
+ *   guesses from the object and the buffer grows in place when the guess is short
+ * - Decoding copies the reply bytes once, out of Lettuce's (possibly direct) buffer into
+ *   the array the serializer reads; the buffer is only valid during the call
+ * - Pair a value serializer with {@link store.CompressingSerializer} to compress large
+ *   values; keys should stay uncompressed so SCAN MATCH and cluster hash tags work
+ */
+public class BinaryCodec<K, V> implements RedisCodec<K, V>, ToByteBufEncoder<K, V> {
+  private static final int DEFAULT_ESTIMATE = 64;
+
+  private final Serializer<K> keys;
+  private final Serializer<V> values;
+
+  public BinaryCodec(Serializer<K> keys, Serializer<V> values) {
+    this.keys = keys;
+    this.values = values;
+  }
+
+  @Override
+  public K decodeKey(ByteBuffer bytes) {
+    return keys.deserialize(toArray(bytes));
+  }
+
+  @Override
+  public V decodeValue(ByteBuffer bytes) {
+    return values.deserialize(toArray(bytes));
+  }
+
+  @Override
+  public ByteBuffer encodeKey(K key) {
+    return ByteBuffer.wrap(keys.serialize(key));
+  }
+
+  @Override
+  public ByteBuffer encodeValue(V value) {
+    return ByteBuffer.wrap(values.serialize(value));
+  }
+
+  @Override
+  public void encodeKey(K key, ByteBuf target) {
+    target.writeBytes(keys.serialize(key));
+  }
+
+  @Override
+  public void encodeValue(V value, ByteBuf target) {
+    target.writeBytes(values.serialize(value));
+  }
+
+  @Override
+  public int estimateSize(Object keyOrValue) {
+    if (keyOrValue instanceof byte[]) {
+      return ((byte[]) keyOrValue).length + 1;
+    }
+    if (keyOrValue instanceof CharSequence) {
+      // Exact for ASCII before compression; compressed values come out smaller
+      return ((CharSequence) keyOrValue).length() + 1;
+    }
+    return DEFAULT_ESTIMATE;
+  }
+
+  private static byte[] toArray(ByteBuffer bytes) {
+    byte[] array = new byte[bytes.remaining()];
+    bytes.get(array);
+    return array;
+  }
+}
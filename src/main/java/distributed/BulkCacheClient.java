@@ -0,0 +1,181 @@
+package distributed;
+
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.SlotHash;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk cache reads and writes: hundreds of keys in one round trip per connection instead
+ * of one per key.
+ *
+ * Design:
+ * - Keys are ordered by cluster hash slot and cut into chunks of at most chunkSize;
+ *   with slotAligned set a chunk never spans two slots, so every MGET/MSET is legal on a
+ *   cluster (keys sharing a {hash tag} land in one slot and one chunk)
+ * - Chunks are spread over up to parallelism pooled connections; the chunks on each
+ *   connection are pipelined, so a bulk call costs about one round trip
+ * - Only the first connection is waited for, while nothing else is held; the rest are taken
+ *   only if idle right now. Callers never hold some connections while waiting for more, so
+ *   concurrent bulk calls on a small pool cannot deadlock, they just get less parallelism
+ * - Results go back to the caller's positions, so getAll returns values in key order with
+ *   null for misses
+ */
+public class BulkCacheClient {
+  private final GenericObjectPool<StatefulRedisConnection<String, String>> pool;
+  private final int chunkSize;
+  private final int parallelism;
+  private final boolean slotAligned;
+
+  private final AtomicLong bulkCalls = new AtomicLong();
+  private final AtomicLong chunks = new AtomicLong();
+
+  public BulkCacheClient(GenericObjectPool<StatefulRedisConnection<String, String>> pool, int chunkSize,
+      int parallelism, boolean slotAligned) {
+    if (chunkSize < 1 || parallelism < 1) {
+      throw new IllegalArgumentException("chunkSize and parallelism must be positive: " + chunkSize + ", "
+          + parallelism);
+    }
+    this.pool = pool;
+    this.chunkSize = chunkSize;
+    this.parallelism = parallelism;
+    this.slotAligned = slotAligned;
+  }
+
+  /**
+   * Returns one value per key, in key order; null where the key is missing.
+   */
+  public List<String> getAll(List<String> keys) {
+    String[] values = new String[keys.size()];
+    List<int[]> plan = plan(keys);
+    run(plan.size(), (commands, chunkIndex) -> {
+      int[] positions = plan.get(chunkIndex);
+      String[] chunkKeys = new String[positions.length];
+      for (int i = 0; i < positions.length; i++) {
+        chunkKeys[i] = keys.get(positions[i]);
+      }
+      RedisFuture<List<KeyValue<String, String>>> reply = commands.mget(chunkKeys);
+      return reply.thenAccept(result -> {
+        for (int i = 0; i < positions.length; i++) {
+          values[positions[i]] = result.get(i).getValueOrElse(null);
+        }
+      }).toCompletableFuture();
+    });
+    return Arrays.asList(values);
+  }
+
+  public void putAll(Map<String, String> entries) {
+    List<String> keys = new ArrayList<>(entries.keySet());
+    List<int[]> plan = plan(keys);
+    run(plan.size(), (commands, chunkIndex) -> {
+      Map<String, String> chunk = new LinkedHashMap<>();
+      for (int position : plan.get(chunkIndex)) {
+        String key = keys.get(position);
+        chunk.put(key, entries.get(key));
+      }
+      return commands.mset(chunk).toCompletableFuture();
+    });
+  }
+
+  public long bulkCalls() {
+    return bulkCalls.get();
+  }
+
+  public long chunks() {
+    return chunks.get();
+  }
+
+  /**
+   * Positions of the keys in each chunk, chunks ordered by slot.
+   */
+  private List<int[]> plan(List<String> keys) {
+    int[] slots = new int[keys.size()];
+    Integer[] order = new Integer[keys.size()];
+    for (int i = 0; i < order.length; i++) {
+      slots[i] = SlotHash.getSlot(keys.get(i));
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.comparingInt(i -> slots[i]));
+
+    List<int[]> plan = new ArrayList<>();
+    int start = 0;
+    while (start < order.length) {
+      int end = start + 1;
+      while (end < order.length && end - start < chunkSize
+          && (!slotAligned || slots[order[end]] == slots[order[start]])) {
+        end++;
+      }
+      int[] positions = new int[end - start];
+      for (int i = start; i < end; i++) {
+        positions[i - start] = order[i];
+      }
+      plan.add(positions);
+      start = end;
+    }
+    return plan;
+  }
+
+  private void run(int chunkCount, ChunkCommand command) {
+    if (chunkCount == 0) {
+      return;
+    }
+    bulkCalls.incrementAndGet();
+    chunks.addAndGet(chunkCount);
+    List<StatefulRedisConnection<String, String>> borrowed = new ArrayList<>();
+    try {
+      borrowed.add(borrow(null));
+      int wanted = Math.min(parallelism, chunkCount);
+      while (borrowed.size() < wanted) {
+        StatefulRedisConnection<String, String> extra = borrow(Duration.ZERO);
+        if (extra == null) {
+          break; // Pool exhausted: pipeline the rest on what we hold
+        }
+        borrowed.add(extra);
+      }
+      int connections = borrowed.size();
+      CompletableFuture<?>[] replies = new CompletableFuture<?>[chunkCount];
+      for (int i = 0; i < chunkCount; i++) {
+        replies[i] = command.send(borrowed.get(i % connections).async(), i);
+      }
+      CompletableFuture.allOf(replies).join();
+    } finally {
+      for (StatefulRedisConnection<String, String> connection : borrowed) {
+        pool.returnObject(connection);
+      }
+    }
+  }
+
+  /**
+   * Waits as the pool is configured when maxWait is null; otherwise returns null if no
+   * connection is free within maxWait.
+   */
+  private StatefulRedisConnection<String, String> borrow(Duration maxWait) {
+    try {
+      return maxWait == null ? pool.borrowObject() : pool.borrowObject(maxWait);
+    } catch (NoSuchElementException e) {
+      if (maxWait == null) {
+        throw new IllegalStateException("Could not borrow a Redis connection", e);
+      }
+      return null;
+    } catch (Exception e) {
+      throw new IllegalStateException("Could not borrow a Redis connection", e);
+    }
+  }
+
+  @FunctionalInterface
+  private interface ChunkCommand {
+    CompletableFuture<?> send(RedisAsyncCommands<String, String> commands, int chunkIndex);
+  }
+}
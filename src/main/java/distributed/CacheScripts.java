@@ -0,0 +1,174 @@
+package distributed;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Typed cache primitives that need more than one Redis command to be atomic, run as
+ * scripts through a {@link ScriptRegistry}.
+ *
+ * Design:
+ * - Versioned values follow {@link NearCache}'s protocol: a {v, ver} hash whose version
+ *   comes from the shared counter, and every change is published as "version key" on the
+ *   invalidation channel, so near caches on other nodes drop their stale L1 copies
+ * - A version only grows, so it orders writes without clocks; like NearCache, the scripts
+ *   touch the counter next to the data and assume a single Redis node
+ * - compareAndSet writes only if the stored version is the one the caller read (0 = the
+ *   key must not exist), so two writers racing on a read-modify-write cannot both win
+ * - getAndRefreshTtl extends a hot string key's TTL as it is read, in the same round trip
+ * - invalidateOlderThan drops every listed copy whose version trails a store write,
+ *   leaving copies that already carry it, and publishes that version for each dropped key
+ * - compareAndDelete removes a key only while it holds the caller's token (lease release)
+ */
+public class CacheScripts {
+  // KEYS[1] = key, KEYS[2] = version counter; ARGV = expected version, value, ttl millis (0 = keep), channel
+  private static final String COMPARE_AND_SET_SCRIPT =
+      "local current = tonumber(redis.call('hget', KEYS[1], 'ver') or '0') "
+          + "if current ~= tonumber(ARGV[1]) then return -1 end "
+          + "local version = redis.call('incr', KEYS[2]) "
+          + "redis.call('hset', KEYS[1], 'v', ARGV[2], 'ver', version) "
+          + "if tonumber(ARGV[3]) > 0 then redis.call('pexpire', KEYS[1], ARGV[3]) end "
+          + "redis.call('publish', ARGV[4], version .. ' ' .. KEYS[1]) "
+          + "return version";
+  // KEYS[1] = key; ARGV = ttl millis
+  private static final String GET_AND_REFRESH_TTL_SCRIPT =
+      "local value = redis.call('get', KEYS[1]) "
+          + "if value then redis.call('pexpire', KEYS[1], ARGV[1]) end "
+          + "return value";
+  // KEYS = versioned keys; ARGV = version, channel
+  private static final String INVALIDATE_OLDER_THAN_SCRIPT =
+      "local removed = 0 "
+          + "for _, key in ipairs(KEYS) do "
+          + "  local version = redis.call('hget', key, 'ver') "
+          + "  if version and tonumber(version) < tonumber(ARGV[1]) then "
+          + "    redis.call('unlink', key) "
+          + "    redis.call('publish', ARGV[2], ARGV[1] .. ' ' .. key) "
+          + "    removed = removed + 1 "
+          + "  end "
+          + "end "
+          + "return removed";
+  // KEYS[1] = key; ARGV = expected value
+  private static final String COMPARE_AND_DELETE_SCRIPT =
+      "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
+  private final JedisPool pool;
+  private final String channel;
+  private final ScriptRegistry.Script compareAndSet;
+  private final ScriptRegistry.Script getAndRefreshTtl;
+  private final ScriptRegistry.Script invalidateOlderThan;
+  private final ScriptRegistry.Script compareAndDelete;
+
+  public CacheScripts(JedisPool pool, ScriptRegistry registry) {
+    this(pool, registry, NearCache.DEFAULT_CHANNEL);
+  }
+
+  /**
+   * @param channel invalidation channel of the near caches reading these keys
+   */
+  public CacheScripts(JedisPool pool, ScriptRegistry registry, String channel) {
+    this.pool = pool;
+    this.channel = channel;
+    this.compareAndSet = registry.register(COMPARE_AND_SET_SCRIPT);
+    this.getAndRefreshTtl = registry.register(GET_AND_REFRESH_TTL_SCRIPT);
+    this.invalidateOlderThan = registry.register(INVALIDATE_OLDER_THAN_SCRIPT);
+    this.compareAndDelete = registry.register(COMPARE_AND_DELETE_SCRIPT);
+  }
+
+  /**
+   * Returns the value and version of a versioned key, or null if it is absent.
+   */
+  public Versioned getVersioned(String key) {
+    try (Jedis jedis = pool.getResource()) {
+      List<String> fields = jedis.hmget(key, "v", "ver");
+      if (fields.get(0) == null || fields.get(1) == null) {
+        return null;
+      }
+      return new Versioned(fields.get(0), Long.parseLong(fields.get(1)));
+    }
+  }
+
+  /**
+   * Returns the new version, or -1 if the key is no longer at expectedVersion. A write is
+   * published on the invalidation channel.
+   *
+   * @param ttl zero keeps the key's current TTL
+   */
+  public long compareAndSet(String key, long expectedVersion, String value, Duration ttl) {
+    try (Jedis jedis = pool.getResource()) {
+      return (Long) compareAndSet.eval(jedis, Arrays.asList(key, NearCache.VERSION_KEY),
+          Arrays.asList(Long.toString(expectedVersion), value, Long.toString(ttl.toMillis()), channel));
+    }
+  }
+
+  /**
+   * Returns the string value and resets its TTL, or null (and no TTL change) if absent.
+   */
+  public String getAndRefreshTtl(String key, Duration ttl) {
+    try (Jedis jedis = pool.getResource()) {
+      return (String) getAndRefreshTtl.eval(jedis, Collections.singletonList(key),
+          Collections.singletonList(Long.toString(ttl.toMillis())));
+    }
+  }
+
+  /**
+   * Deletes the versioned keys whose version is below the given one; returns how many.
+   */
+  public long invalidateOlderThan(Collection<String> keys, long version) {
+    if (keys.isEmpty()) {
+      return 0;
+    }
+    try (Jedis jedis = pool.getResource()) {
+      return (Long) invalidateOlderThan.eval(jedis, new ArrayList<>(keys),
+          Arrays.asList(Long.toString(version), channel));
+    }
+  }
+
+  /**
+   * Deletes the key only if it still holds the expected value.
+   */
+  public boolean compareAndDelete(String key, String expected) {
+    try (Jedis jedis = pool.getResource()) {
+      return compareAndDelete(jedis, key, expected);
+    }
+  }
+
+  /**
+   * Same, on a connection the caller already holds.
+   */
+  public boolean compareAndDelete(Jedis jedis, String key, String expected) {
+    return Long.valueOf(1L).equals(compareAndDelete.eval(jedis, Collections.singletonList(key),
+        Collections.singletonList(expected)));
+  }
+
+  /**
+   * A value with the version it was read at.
+   */
+  public static final class Versioned {
+    private final String value;
+    private final long version;
+
+    Versioned(String value, long version) {
+      this.value = value;
+      this.version = version;
+    }
+
+    public String value() {
+      return value;
+    }
+
+    public long version() {
+      return version;
+    }
+
+    @Override
+    public String toString() {
+      return value + "@" + version;
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package distributed;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Coalesces commands from many caller threads into few socket writes on one Lettuce
+ * connection.
+ *
+ * Design:
+ * - The connection runs with auto-flush off, so each command is only buffered; a batch
+ *   goes out as a single write when flushCommands is called
+ * - A batch is flushed when: nothing is on the wire yet (an idle connection adds no
+ *   latency), the buffer reaches the batch size, or the oldest buffered command has
+ *   waited maxDelay: the command that finds the buffer empty stamps the time and wakes a
+ *   flusher thread, which parks until that stamp plus maxDelay (and indefinitely while
+ *   nothing is buffered)
+ * - The batch size adapts between minBatch and maxBatch: flushes forced by a full buffer
+ *   double it, timer flushes that find the buffer mostly empty halve it, so it tracks the
+ *   arrival rate instead of a fixed guess
+ * - Replies still complete each caller's own future; only the write path is shared
+ * - A command buffered while close() runs is flushed by its own caller, so none is left
+ *   behind the final flush
+ *
+ * The batcher owns the connection's flush mode; don't use the connection directly while
+ * it is attached.
+ */
+public class CommandBatcher implements AutoCloseable {
+  private final StatefulRedisConnection<String, String> connection;
+  private final RedisAsyncCommands<String, String> commands;
+  private final int minBatch;
+  private final int maxBatch;
+  private final long maxDelayNanos;
+  private final Thread flusher;
+  private final Object flushLock = new Object();
+  private volatile boolean closed;
+
+  private final AtomicInteger buffered = new AtomicInteger();
+  private final AtomicInteger outstanding = new AtomicInteger();
+  // System.nanoTime() when the buffer last went from empty to non-empty; 0 while empty
+  private final AtomicLong firstBufferedAt = new AtomicLong();
+  private volatile int batchSize;
+
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong batchedCommands = new AtomicLong();
+  private final AtomicLong sizeFlushes = new AtomicLong();
+  private final AtomicLong timerFlushes = new AtomicLong();
+  private final AtomicLong idleFlushes = new AtomicLong();
+
+  public CommandBatcher(StatefulRedisConnection<String, String> connection, int minBatch, int maxBatch,
+      Duration maxDelay) {
+    if (minBatch < 1 || maxBatch < minBatch) {
+      throw new IllegalArgumentException("Need 1 <= minBatch <= maxBatch: " + minBatch + ", " + maxBatch);
+    }
+    this.connection = connection;
+    this.commands = connection.async();
+    this.minBatch = minBatch;
+    this.maxBatch = maxBatch;
+    this.batchSize = minBatch;
+    this.maxDelayNanos = maxDelay.toNanos();
+    connection.setAutoFlushCommands(false);
+
+    this.flusher = new Thread(this::flushPeriodically, "command-batcher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  public CompletableFuture<String> get(String key) {
+    return submit(c -> c.get(key));
+  }
+
+  public CompletableFuture<String> set(String key, String value) {
+    return submit(c -> c.set(key, value));
+  }
+
+  public CompletableFuture<Long> del(String key) {
+    return submit(c -> c.del(key));
+  }
+
+  /**
+   * Queues any async command for the next batch.
+   */
+  public <T> CompletableFuture<T> submit(Function<RedisAsyncCommands<String, String>, RedisFuture<T>> command) {
+    if (closed) {
+      throw new IllegalStateException("Batcher is closed");
+    }
+    outstanding.incrementAndGet();
+    RedisFuture<T> future = command.apply(commands);
+    future.whenComplete((result, error) -> outstanding.decrementAndGet());
+
+    int pending = buffered.incrementAndGet();
+    if (closed) {
+      // close() may have done its final flush before this command was buffered
+      synchronized (flushLock) {
+        connection.flushCommands();
+      }
+    } else if (pending >= batchSize) {
+      flush(sizeFlushes);
+      batchSize = Math.min(maxBatch, batchSize * 2);
+    } else if (outstanding.get() == pending) {
+      // Nothing on the wire: waiting for company would only add latency
+      flush(idleFlushes);
+    } else if (pending == 1) {
+      firstBufferedAt.set(System.nanoTime());
+      LockSupport.unpark(flusher);
+    }
+    return future.toCompletableFuture();
+  }
+
+  public int batchSize() {
+    return batchSize;
+  }
+
+  public long batches() {
+    return batches.get();
+  }
+
+  public double averageBatchSize() {
+    long count = batches.get();
+    return count == 0 ? 0 : (double) batchedCommands.get() / count;
+  }
+
+  public long sizeFlushes() {
+    return sizeFlushes.get();
+  }
+
+  public long timerFlushes() {
+    return timerFlushes.get();
+  }
+
+  public long idleFlushes() {
+    return idleFlushes.get();
+  }
+
+  /**
+   * Flushes what is buffered and restores auto-flush; the connection stays open.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    flusher.interrupt();
+    synchronized (flushLock) {
+      connection.flushCommands();
+      connection.setAutoFlushCommands(true);
+    }
+  }
+
+  private void flush(AtomicLong trigger) {
+    synchronized (flushLock) {
+      // Cleared before the count is taken: a command buffered after getAndSet stamps anew
+      firstBufferedAt.set(0);
+      int count = buffered.getAndSet(0);
+      if (count == 0) {
+        return;
+      }
+      connection.flushCommands();
+      trigger.incrementAndGet();
+      batches.incrementAndGet();
+      batchedCommands.addAndGet(count);
+    }
+  }
+
+  private void flushPeriodically() {
+    while (!closed) {
+      long first = firstBufferedAt.get();
+      if (first == 0) {
+        LockSupport.park(this);
+      } else {
+        long wait = first + maxDelayNanos - System.nanoTime();
+        if (wait > 0) {
+          LockSupport.parkNanos(this, wait);
+        } else {
+          int pending = buffered.get();
+          flush(timerFlushes);
+          if (pending > 0 && pending < batchSize / 4) {
+            batchSize = Math.max(minBatch, batchSize / 2);
+          }
+        }
+      }
+      if (Thread.interrupted()) {
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,372 @@
+package distributed;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Distributed lock with a renewed lease and fencing tokens, that queues same-node
+ * contenders in the JVM instead of letting each of them poll Redis.
+ *
+ * Design:
+ * - Acquire is one script: SET lock owner NX PX lease, and on success INCR a fence counter
+ *   that never expires, so every grant gets a larger token than the one before it. On
+ *   failure the script returns the holder's remaining PTTL, which bounds the next poll
+ * - Scripts go through a {@link ScriptRegistry}: loaded once, called by SHA, reloaded
+ *   if the server lost them; release is {@link CacheScripts#compareAndDelete}
+ * - A watchdog renews each held lease every third of its TTL with a compare-and-PEXPIRE,
+ *   so a long critical section keeps the lock; a lease that fails to renew before it runs
+ *   out is marked lost, and {@link Lease#isHeld} turns false
+ * - Before touching Redis a caller takes its lock name's local queue (a fair semaphore),
+ *   so at most one thread per name and node contends in Redis and the rest wait in the
+ *   JVM. Queues are refcounted by holders and waiters and dropped when the last one leaves,
+ *   so unrelated names never wait on each other and one thread may nest distinct locks
+ * - Past MAX_NAMED_QUEUES live names, further names fall back to shared stripes chosen by
+ *   hash, which bounds memory; only there do unrelated names serialize, and nesting two
+ *   names that share a stripe would wait on itself until maxWait
+ * - Lock and fence keys share a {hash tag}, so the script works on a cluster
+ *
+ * A lease can stop being held without the holder noticing (GC pause, partition), so the
+ * token, not the lock, is what makes writes safe: the resource must reject a write whose
+ * token is lower than one it has already seen.
+ */
+public class FencedLockService implements AutoCloseable {
+  // KEYS[1] = lock, KEYS[2] = fence counter; ARGV = owner, lease millis
+  private static final String ACQUIRE_SCRIPT =
+      "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then "
+          + "  return {1, redis.call('incr', KEYS[2])} "
+          + "end "
+          + "return {0, redis.call('pttl', KEYS[1])}";
+  // KEYS[1] = lock; ARGV = owner, lease millis
+  private static final String RENEW_SCRIPT =
+      "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end";
+  private static final long POLL_MIN_MILLIS = 5;
+  private static final long POLL_MAX_MILLIS = 100;
+  private static final int MAX_NAMED_QUEUES = 4096;
+
+  private final JedisPool pool;
+  private final long leaseMillis;
+  private final ConcurrentHashMap<String, LocalQueue> queues = new ConcurrentHashMap<>();
+  private final LocalQueue[] stripes;
+  private final ScheduledExecutorService watchdog;
+  private final ScriptRegistry registry;
+  private final ScriptRegistry.Script acquireScript;
+  private final ScriptRegistry.Script renewScript;
+  private final CacheScripts cacheScripts;
+
+  private final AtomicLong acquired = new AtomicLong();
+  private final AtomicLong timedOut = new AtomicLong();
+  private final AtomicLong redisAcquireCalls = new AtomicLong();
+  private final AtomicLong localWaits = new AtomicLong();
+  private final AtomicLong renewals = new AtomicLong();
+  private final AtomicLong lostLeases = new AtomicLong();
+
+  /**
+   * @param lease how long a holder keeps the lock without renewing; the watchdog renews
+   *     every lease / 3, so it is also how long a crashed holder blocks others
+   * @param stripes fallback queues for names beyond MAX_NAMED_QUEUES; more stripes mean
+   *     fewer unrelated names sharing one
+   */
+  public FencedLockService(JedisPool pool, Duration lease, int stripes) {
+    if (stripes <= 0) {
+      throw new IllegalArgumentException("stripes must be positive: " + stripes);
+    }
+    if (lease.toMillis() < 3) {
+      throw new IllegalArgumentException("lease too short to renew: " + lease);
+    }
+    this.pool = pool;
+    this.leaseMillis = lease.toMillis();
+    this.stripes = new LocalQueue[stripes];
+    for (int i = 0; i < stripes; i++) {
+      this.stripes[i] = new LocalQueue(null);
+    }
+    this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "lock-watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.registry = new ScriptRegistry(pool);
+    this.acquireScript = registry.register(ACQUIRE_SCRIPT);
+    this.renewScript = registry.register(RENEW_SCRIPT);
+    this.cacheScripts = new CacheScripts(pool, registry);
+  }
+
+  /**
+   * Waits up to maxWait for the lock; returns null if it was not granted in time.
+   */
+  public Lease tryLock(String name, Duration maxWait) {
+    long deadline = System.currentTimeMillis() + maxWait.toMillis();
+    LocalQueue queue = enqueue(name);
+    if (!queue.permit.tryAcquire()) {
+      localWaits.incrementAndGet();
+      try {
+        if (!queue.permit.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+          timedOut.incrementAndGet();
+          dequeue(queue);
+          return null;
+        }
+      } catch (InterruptedException e) {
+        dequeue(queue);
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for lock " + name, e);
+      }
+    }
+
+    String lockKey = "lock:{" + name + "}";
+    List<String> keys = Arrays.asList(lockKey, lockKey + ":fence");
+    List<String> args = Arrays.asList(UUID.randomUUID().toString(), Long.toString(leaseMillis));
+    long pollMillis = POLL_MIN_MILLIS;
+    try (Jedis jedis = pool.getResource()) {
+      while (true) {
+        redisAcquireCalls.incrementAndGet();
+        long now = System.currentTimeMillis();
+        List<?> reply = (List<?>) acquireScript.eval(jedis, keys, args);
+        if ((Long) reply.get(0) == 1L) {
+          acquired.incrementAndGet();
+          Lease lease = new Lease(name, lockKey, args.get(0), (Long) reply.get(1), queue, now + leaseMillis);
+          long renewEvery = leaseMillis / 3;
+          lease.renewal = watchdog.scheduleWithFixedDelay(lease::renew, renewEvery, renewEvery, TimeUnit.MILLISECONDS);
+          return lease;
+        }
+
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          timedOut.incrementAndGet();
+          leave(queue);
+          return null;
+        }
+        // Back off, but poll again by the time the holder's lease would run out
+        long holderTtl = (Long) reply.get(1);
+        long sleep = holderTtl > 0 ? Math.min(pollMillis, holderTtl) : pollMillis;
+        sleep(Math.min(sleep, remaining));
+        pollMillis = Math.min(pollMillis * 2, POLL_MAX_MILLIS);
+      }
+    } catch (RuntimeException e) {
+      leave(queue);
+      throw e;
+    }
+  }
+
+  public long acquired() {
+    return acquired.get();
+  }
+
+  public long timedOut() {
+    return timedOut.get();
+  }
+
+  /**
+   * Acquire scripts sent to Redis, including failed polls.
+   */
+  public long redisAcquireCalls() {
+    return redisAcquireCalls.get();
+  }
+
+  /**
+   * Acquisitions that queued behind another thread on this node.
+   */
+  public long localWaits() {
+    return localWaits.get();
+  }
+
+  public long renewals() {
+    return renewals.get();
+  }
+
+  /**
+   * Leases that expired or were taken over while still held.
+   */
+  public long lostLeases() {
+    return lostLeases.get();
+  }
+
+  public long scriptReloads() {
+    return registry.reloads();
+  }
+
+  /**
+   * Names with a local queue right now, i.e. held or waited on by this node.
+   */
+  public int localQueues() {
+    return queues.size();
+  }
+
+  /**
+   * Stops renewing; leases still held expire in Redis after their TTL.
+   */
+  @Override
+  public void close() {
+    watchdog.shutdownNow();
+  }
+
+  /**
+   * Joins the name's queue, creating it if this is the only holder or waiter; a queue is
+   * in the map exactly while its count is above zero, so holders always find their own.
+   */
+  private LocalQueue enqueue(String name) {
+    LocalQueue queue = queues.computeIfPresent(name, (key, existing) -> {
+      existing.users++;
+      return existing;
+    });
+    if (queue != null) {
+      return queue;
+    }
+    if (queues.size() >= MAX_NAMED_QUEUES) {
+      return stripes[Math.floorMod(name.hashCode(), stripes.length)];
+    }
+    return queues.compute(name, (key, existing) -> {
+      LocalQueue joined = existing != null ? existing : new LocalQueue(key);
+      joined.users++;
+      return joined;
+    });
+  }
+
+  private void dequeue(LocalQueue queue) {
+    if (queue.name != null) {
+      queues.computeIfPresent(queue.name, (key, existing) -> --existing.users == 0 ? null : existing);
+    }
+  }
+
+  /**
+   * Hands the permit to the next local waiter, then drops this caller from the queue.
+   */
+  private void leave(LocalQueue queue) {
+    queue.permit.release();
+    dequeue(queue);
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for lock", e);
+    }
+  }
+
+  /**
+   * A granted lock. Close it to release; any thread may do so.
+   */
+  public final class Lease implements AutoCloseable {
+    private final String name;
+    private final String lockKey;
+    private final String owner;
+    private final long fencingToken;
+    private final LocalQueue queue;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private volatile long expiresAtMillis;
+    private volatile boolean lost;
+    private volatile ScheduledFuture<?> renewal;
+
+    private Lease(String name, String lockKey, String owner, long fencingToken, LocalQueue queue,
+        long expiresAtMillis) {
+      this.name = name;
+      this.lockKey = lockKey;
+      this.owner = owner;
+      this.fencingToken = fencingToken;
+      this.queue = queue;
+      this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public String name() {
+      return name;
+    }
+
+    /**
+     * Larger than the token of every earlier grant of this lock; pass it with each write
+     * to the protected resource.
+     */
+    public long fencingToken() {
+      return fencingToken;
+    }
+
+    /**
+     * Best-effort: false once renewal failed or the lease ran out on this node's clock.
+     */
+    public boolean isHeld() {
+      return !lost && !released.get() && System.currentTimeMillis() < expiresAtMillis;
+    }
+
+    /**
+     * Releases the lock if this lease still owns it, then lets the next local waiter in.
+     */
+    @Override
+    public void close() {
+      if (!released.compareAndSet(false, true)) {
+        return;
+      }
+      cancelRenewal();
+      try {
+        cacheScripts.compareAndDelete(lockKey, owner);
+      } finally {
+        leave(queue);
+      }
+    }
+
+    private void renew() {
+      if (released.get() || lost) {
+        cancelRenewal();
+        return;
+      }
+      long now = System.currentTimeMillis();
+      try (Jedis jedis = pool.getResource()) {
+        Object renewed = renewScript.eval(jedis, Collections.singletonList(lockKey),
+            Arrays.asList(owner, Long.toString(leaseMillis)));
+        if (Long.valueOf(1L).equals(renewed)) {
+          renewals.incrementAndGet();
+          expiresAtMillis = now + leaseMillis;
+          return;
+        }
+        markLost("taken over or expired");
+      } catch (RuntimeException e) {
+        // Keep trying while the lease may still be valid in Redis
+        if (System.currentTimeMillis() >= expiresAtMillis) {
+          markLost(e.getMessage());
+        } else {
+          System.err.println("   [lock] renewal of " + name + " failed, retrying: " + e.getMessage());
+        }
+      }
+    }
+
+    private void cancelRenewal() {
+      ScheduledFuture<?> scheduled = renewal;
+      if (scheduled != null) {
+        scheduled.cancel(false);
+      }
+    }
+
+    private void markLost(String reason) {
+      lost = true;
+      lostLeases.incrementAndGet();
+      cancelRenewal();
+      System.err.println("   [lock] lease on " + name + " lost (token " + fencingToken + "): " + reason);
+    }
+  }
+
+  /**
+   * Same-node holders and waiters of one lock name, or of every name on a fallback stripe.
+   */
+  private static final class LocalQueue {
+    final String name;
+    final Semaphore permit = new Semaphore(1, true);
+
+    // Holders plus waiters; changed only inside the queues map's compute, so never for stripes
+    int users;
+
+    LocalQueue(String name) {
+      this.name = name;
+    }
+  }
+}
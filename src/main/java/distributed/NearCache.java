@@ -0,0 +1,280 @@
+package distributed;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import store.BackingStore;
+
+/**
+ * Two-tier cache: a bounded Caffeine L1 in each JVM in front of a shared Redis L2, kept
+ * coherent across nodes by pub/sub invalidation.
+ *
+ * Design:
+ * - Reads: L1 hit is a local map lookup; an L1 miss reads the Redis hash (value + version),
+ *   and an L2 miss loads the store and fills Redis only if the key is still absent
+ * - Writes go to the store, then a script that bumps a global version counter, writes
+ *   value + version to Redis and publishes "version key" on the invalidation channel,
+ *   all in one atomic step
+ * - Every node subscribes to the channel and drops its L1 copy unless that copy is
+ *   already at or past the published version, so a writer keeps its own fresh entry
+ * - Version stamps close the read/invalidate race: a node that read version 5 from Redis
+ *   while version 6 was being published remembers the 6 and refuses to install the 5
+ * - Pub/sub is fire-and-forget; when the subscription (re)connects, L1 is cleared since
+ *   messages may have been missed while it was down, and the L1 TTL bounds staleness for
+ *   anything else that slips through
+ * - The version counter is one Redis key next to the data, so the scripts assume a
+ *   single Redis node (or hash-tagged keys on a cluster)
+ */
+public class NearCache implements AutoCloseable {
+  public static final String DEFAULT_CHANNEL = "cache:invalidate";
+  static final String VERSION_KEY = "cache:version";
+  private static final long RECONNECT_MILLIS = 1000;
+
+  // KEYS[1] = key, KEYS[2] = version counter; ARGV = value, ttl millis, channel
+  private static final String WRITE_SCRIPT =
+      "local version = redis.call('incr', KEYS[2]) "
+          + "redis.call('hset', KEYS[1], 'v', ARGV[1], 'ver', version) "
+          + "redis.call('pexpire', KEYS[1], ARGV[2]) "
+          + "redis.call('publish', ARGV[3], version .. ' ' .. KEYS[1]) "
+          + "return version";
+  // KEYS[1] = key, KEYS[2] = version counter; ARGV = channel
+  private static final String DELETE_SCRIPT =
+      "local version = redis.call('incr', KEYS[2]) "
+          + "redis.call('del', KEYS[1]) "
+          + "redis.call('publish', ARGV[1], version .. ' ' .. KEYS[1]) "
+          + "return version";
+  // Fill after a store read; never overwrites a value a writer put there meanwhile, but
+  // replaces a hash missing either field (the same test get() applies before filling)
+  // KEYS[1] = key, KEYS[2] = version counter; ARGV = value, ttl millis
+  private static final String FILL_SCRIPT =
+      "local current = redis.call('hmget', KEYS[1], 'v', 'ver') "
+          + "if current[1] and current[2] then return current end "
+          + "local version = redis.call('incr', KEYS[2]) "
+          + "redis.call('hset', KEYS[1], 'v', ARGV[1], 'ver', version) "
+          + "redis.call('pexpire', KEYS[1], ARGV[2]) "
+          + "return {ARGV[1], tostring(version)}";
+
+  private final JedisPool pool;
+  private final ScriptRegistry.Script writeScript;
+  private final ScriptRegistry.Script deleteScript;
+  private final ScriptRegistry.Script fillScript;
+  private final BackingStore<String, String> store;
+  private final String channel;
+  private final long ttlMillis;
+  private final Cache<String, Entry> local;
+  // Newest version announced per key, so a slower L2 read cannot install an older one
+  private final Cache<String, Long> announced;
+  private final Thread subscriber;
+  private final CountDownLatch subscribed = new CountDownLatch(1);
+  private volatile JedisPubSub pubSub;
+  private volatile boolean closed;
+
+  private final AtomicLong localHits = new AtomicLong();
+  private final AtomicLong remoteHits = new AtomicLong();
+  private final AtomicLong storeReads = new AtomicLong();
+  private final AtomicLong invalidationsReceived = new AtomicLong();
+  private final AtomicLong staleLoadsDropped = new AtomicLong();
+
+  public NearCache(JedisPool pool, BackingStore<String, String> store, long localMaximumSize, Duration localTtl,
+      Duration ttl) {
+    this(pool, store, DEFAULT_CHANNEL, localMaximumSize, localTtl, ttl);
+  }
+
+  /**
+   * @param localTtl upper bound on how long a missed invalidation can leave L1 stale
+   * @param ttl Redis TTL of each entry
+   */
+  public NearCache(JedisPool pool, BackingStore<String, String> store, String channel, long localMaximumSize,
+      Duration localTtl, Duration ttl) {
+    this.pool = pool;
+    ScriptRegistry registry = new ScriptRegistry(pool);
+    this.writeScript = registry.register(WRITE_SCRIPT);
+    this.deleteScript = registry.register(DELETE_SCRIPT);
+    this.fillScript = registry.register(FILL_SCRIPT);
+    this.store = store;
+    this.channel = channel;
+    this.ttlMillis = ttl.toMillis();
+    this.local = Caffeine.newBuilder()
+        .maximumSize(localMaximumSize)
+        .expireAfterWrite(localTtl)
+        .build();
+    this.announced = Caffeine.newBuilder()
+        .maximumSize(localMaximumSize)
+        .expireAfterWrite(localTtl)
+        .build();
+    this.subscriber = new Thread(this::subscribeLoop, "near-cache-subscriber");
+    this.subscriber.setDaemon(true);
+    this.subscriber.start();
+  }
+
+  /**
+   * Waits until the invalidation subscription is live; reads before that are served but
+   * may miss invalidations from other nodes.
+   */
+  public boolean awaitSubscribed(Duration timeout) throws InterruptedException {
+    return subscribed.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  public String get(String key) {
+    Entry entry = local.getIfPresent(key);
+    if (entry != null) {
+      localHits.incrementAndGet();
+      return entry.value;
+    }
+
+    Entry loaded;
+    try (Jedis jedis = pool.getResource()) {
+      List<String> fields = jedis.hmget(key, "v", "ver");
+      if (fields.get(0) != null && fields.get(1) != null) {
+        remoteHits.incrementAndGet();
+        loaded = new Entry(fields.get(0), Long.parseLong(fields.get(1)));
+      } else {
+        storeReads.incrementAndGet();
+        String value = store.get(key);
+        if (value == null) {
+          return null;
+        }
+        @SuppressWarnings("unchecked")
+        List<Object> filled = (List<Object>) fillScript.eval(jedis, Arrays.asList(key, VERSION_KEY),
+            Arrays.asList(value, Long.toString(ttlMillis)));
+        loaded = new Entry((String) filled.get(0), Long.parseLong((String) filled.get(1)));
+      }
+    }
+    install(key, loaded);
+    return loaded.value;
+  }
+
+  /**
+   * Writes through to the store and Redis, and invalidates every other node's L1.
+   */
+  public void put(String key, String value) {
+    store.put(key, value);
+    long version;
+    try (Jedis jedis = pool.getResource()) {
+      version = (Long) writeScript.eval(jedis, Arrays.asList(key, VERSION_KEY),
+          Arrays.asList(value, Long.toString(ttlMillis), channel));
+    }
+    install(key, new Entry(value, version));
+  }
+
+  public void invalidate(String key) {
+    store.delete(key);
+    long version;
+    try (Jedis jedis = pool.getResource()) {
+      version = (Long) deleteScript.eval(jedis, Arrays.asList(key, VERSION_KEY), Collections.singletonList(channel));
+    }
+    onInvalidation(key, version);
+  }
+
+  public long localSize() {
+    local.cleanUp();
+    return local.estimatedSize();
+  }
+
+  public long localHits() {
+    return localHits.get();
+  }
+
+  public long remoteHits() {
+    return remoteHits.get();
+  }
+
+  public long storeReads() {
+    return storeReads.get();
+  }
+
+  public long invalidationsReceived() {
+    return invalidationsReceived.get();
+  }
+
+  /**
+   * L2 reads not installed in L1 because a newer version had already been announced.
+   */
+  public long staleLoadsDropped() {
+    return staleLoadsDropped.get();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    JedisPubSub current = pubSub;
+    if (current != null && current.isSubscribed()) {
+      current.unsubscribe();
+    }
+    subscriber.interrupt();
+  }
+
+  private void install(String key, Entry loaded) {
+    local.asMap().compute(key, (k, current) -> {
+      if (current != null && current.version >= loaded.version) {
+        return current;
+      }
+      Long newest = announced.getIfPresent(k);
+      if (newest != null && newest > loaded.version) {
+        staleLoadsDropped.incrementAndGet();
+        return current;
+      }
+      return loaded;
+    });
+  }
+
+  private void onInvalidation(String key, long version) {
+    announced.asMap().merge(key, version, Math::max);
+    local.asMap().computeIfPresent(key, (k, current) -> current.version >= version ? current : null);
+  }
+
+  private void subscribeLoop() {
+    while (!closed) {
+      try (Jedis jedis = pool.getResource()) {
+        pubSub = new JedisPubSub() {
+          @Override
+          public void onSubscribe(String subscribedChannel, int subscribedChannels) {
+            // Anything published while we were not listening is lost
+            local.invalidateAll();
+            subscribed.countDown();
+          }
+
+          @Override
+          public void onMessage(String messageChannel, String message) {
+            int space = message.indexOf(' ');
+            if (space < 0) {
+              return;
+            }
+            invalidationsReceived.incrementAndGet();
+            onInvalidation(message.substring(space + 1), Long.parseLong(message.substring(0, space)));
+          }
+        };
+        jedis.subscribe(pubSub, channel);
+      } catch (RuntimeException e) {
+        if (closed) {
+          return;
+        }
+        System.err.println("   [near-cache] subscription lost, reconnecting: " + e.getMessage());
+        try {
+          Thread.sleep(RECONNECT_MILLIS);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+      }
+    }
+  }
+
+  private static final class Entry {
+    final String value;
+    final long version;
+
+    Entry(String value, long version) {
+      this.value = value;
+      this.version = version;
+    }
+  }
+}
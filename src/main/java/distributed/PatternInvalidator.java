@@ -0,0 +1,147 @@
+package distributed;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.args.ExpiryOption;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.resps.ScanResult;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ban-style invalidation for Redis that never blocks the server for long.
+ *
+ * Design:
+ * - Pattern bans walk the key space with SCAN MATCH COUNT instead of KEYS, so each call
+ *   does a bounded slice of work and other clients interleave between slices
+ * - Matches are removed with UNLINK (memory is reclaimed off the event loop), at most
+ *   unlinkBatch keys per command, with the commands for one SCAN page pipelined
+ * - Tag bans cost O(matches) instead of O(keyspace): tagged writes also SADD the key to
+ *   tag:&lt;name&gt;, and a ban renames that set away first, so keys tagged while the ban
+ *   runs start a fresh set instead of being dropped unbanned, then SSCANs and unlinks
+ *   its members
+ * - A tag set expires no sooner than its longest-lived member: each tagged write sets the
+ *   set's TTL if it has none (PEXPIRE NX) and otherwise only extends it (PEXPIRE GT), so
+ *   a tag whose keys have all expired disappears instead of collecting dead members
+ * - SCAN may return a key twice; the unlink counts only keys that still existed
+ */
+public class PatternInvalidator {
+  private static final String TAG_PREFIX = "tag:";
+
+  private final JedisPool pool;
+  private final int scanCount;
+  private final int unlinkBatch;
+
+  private final AtomicLong scanCalls = new AtomicLong();
+  private final AtomicLong keysUnlinked = new AtomicLong();
+
+  /**
+   * @param scanCount COUNT hint per SCAN/SSCAN call: the work Redis does per slice
+   * @param unlinkBatch maximum keys per UNLINK command
+   */
+  public PatternInvalidator(JedisPool pool, int scanCount, int unlinkBatch) {
+    if (scanCount < 1 || unlinkBatch < 1) {
+      throw new IllegalArgumentException("scanCount and unlinkBatch must be positive: " + scanCount + ", "
+          + unlinkBatch);
+    }
+    this.pool = pool;
+    this.scanCount = scanCount;
+    this.unlinkBatch = unlinkBatch;
+  }
+
+  /**
+   * Sets a value with a TTL and records the key under each tag.
+   */
+  public void set(String key, String value, Duration ttl, String... tags) {
+    try (Jedis jedis = pool.getResource()) {
+      Pipeline pipeline = jedis.pipelined();
+      long ttlMillis = ttl.toMillis();
+      pipeline.set(key, value, SetParams.setParams().px(ttlMillis));
+      for (String tag : tags) {
+        String tagKey = TAG_PREFIX + tag;
+        pipeline.sadd(tagKey, key);
+        // GT treats a set without a TTL as never expiring, so a new set needs NX first
+        pipeline.pexpire(tagKey, ttlMillis, ExpiryOption.NX);
+        pipeline.pexpire(tagKey, ttlMillis, ExpiryOption.GT);
+      }
+      pipeline.sync();
+    }
+  }
+
+  /**
+   * Removes every key matching a glob pattern; returns how many were removed.
+   */
+  public long invalidatePattern(String pattern) {
+    ScanParams params = new ScanParams().match(pattern).count(scanCount);
+    long removed = 0;
+    try (Jedis jedis = pool.getResource()) {
+      String cursor = ScanParams.SCAN_POINTER_START;
+      do {
+        ScanResult<String> page = jedis.scan(cursor, params);
+        scanCalls.incrementAndGet();
+        removed += unlink(jedis, page.getResult());
+        cursor = page.getCursor();
+      } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+    return removed;
+  }
+
+  /**
+   * Removes every key tagged with the tag; returns how many were removed.
+   */
+  public long invalidateTag(String tag) {
+    String purging = TAG_PREFIX + tag + ":purging:" + UUID.randomUUID();
+    ScanParams params = new ScanParams().count(scanCount);
+    long removed = 0;
+    try (Jedis jedis = pool.getResource()) {
+      try {
+        jedis.rename(TAG_PREFIX + tag, purging);
+      } catch (JedisDataException e) {
+        return 0; // No such tag
+      }
+      String cursor = ScanParams.SCAN_POINTER_START;
+      do {
+        ScanResult<String> page = jedis.sscan(purging, cursor, params);
+        scanCalls.incrementAndGet();
+        removed += unlink(jedis, page.getResult());
+        cursor = page.getCursor();
+      } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+      jedis.unlink(purging);
+    }
+    return removed;
+  }
+
+  public long scanCalls() {
+    return scanCalls.get();
+  }
+
+  public long keysUnlinked() {
+    return keysUnlinked.get();
+  }
+
+  private long unlink(Jedis jedis, List<String> keys) {
+    if (keys.isEmpty()) {
+      return 0;
+    }
+    Pipeline pipeline = jedis.pipelined();
+    List<Response<Long>> replies = new ArrayList<>();
+    for (int from = 0; from < keys.size(); from += unlinkBatch) {
+      List<String> batch = keys.subList(from, Math.min(keys.size(), from + unlinkBatch));
+      replies.add(pipeline.unlink(batch.toArray(new String[0])));
+    }
+    pipeline.sync();
+    long removed = 0;
+    for (Response<Long> reply : replies) {
+      removed += reply.get();
+    }
+    keysUnlinked.addAndGet(removed);
+    return removed;
+  }
+}
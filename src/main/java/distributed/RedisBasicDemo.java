@@ -9,12 +9,14 @@ import redis.clients.jedis.params.SetParams;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import resp.RespServer;
 
 /**
  * Comprehensive Redis tutorial demonstrating basic usage and major features
  */
 public class RedisBasicDemo {
   private JedisPool jedisPool;
+  private RespServer embeddedServer;
 
   public static void main(String[] args) {
     RedisBasicDemo demo = new RedisBasicDemo();
@@ -44,11 +46,17 @@ public class RedisBasicDemo {
       poolConfig.setMinIdle(1);
       poolConfig.setTestOnBorrow(true);
 
-      jedisPool = new JedisPool(poolConfig, "localhost", 6379);
+      // Fall back to the in-process stand-in so the tutorial runs without a Redis install
+      embeddedServer = RespServer.startUnlessListening(6379);
+      String host = embeddedServer == null ? "localhost" : embeddedServer.host();
+      jedisPool = new JedisPool(poolConfig, host, 6379);
 
       // Test connection
       try (Jedis jedis = jedisPool.getResource()) {
         jedis.ping();
+        if (embeddedServer != null) {
+          System.out.println("   ✓ No Redis on localhost:6379: started the embedded RESP server (resp.RespServer)");
+        }
         System.out.println("   ✓ Connected to Redis server");
         System.out.println("   Redis version: " + jedis.info("server").split("\r\n")[1]);
       }
@@ -296,20 +304,22 @@ public class RedisBasicDemo {
     System.out.println("7. Redis Pub/Sub Messaging:");
 
     try {
+      redis.clients.jedis.JedisPubSub listener = new redis.clients.jedis.JedisPubSub() {
+        @Override
+        public void onMessage(String channel, String message) {
+          System.out.println("   Received message on " + channel + ": " + message);
+        }
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+          System.out.println("   Subscribed to channel: " + channel);
+        }
+      };
+
       // Create subscriber in separate thread
       Thread subscriberThread = new Thread(() -> {
         try (Jedis subscriber = jedisPool.getResource()) {
-          subscriber.subscribe(new redis.clients.jedis.JedisPubSub() {
-            @Override
-            public void onMessage(String channel, String message) {
-              System.out.println("   Received message on " + channel + ": " + message);
-            }
-
-            @Override
-            public void onSubscribe(String channel, int subscribedChannels) {
-              System.out.println("   Subscribed to channel: " + channel);
-            }
-          }, "notifications");
+          subscriber.subscribe(listener, "notifications");
         }
       });
 
@@ -326,7 +336,9 @@ public class RedisBasicDemo {
       }
 
       Thread.sleep(1000); // Wait for messages to be processed
-      subscriberThread.interrupt();
+      // subscribe() blocks until unsubscribed; interrupting the thread does not end it
+      listener.unsubscribe();
+      subscriberThread.join(1000);
 
     } catch (Exception e) {
       System.err.println("   Error in pub/sub demo: " + e.getMessage());
@@ -402,6 +414,11 @@ public class RedisBasicDemo {
       System.out.println("   Connection pool closed");
     }
 
+    if (embeddedServer != null) {
+      embeddedServer.close();
+      System.out.println("   Embedded RESP server stopped");
+    }
+
     System.out.println("   Cleanup completed");
   }
 }
@@ -3,21 +3,25 @@ package distributed;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
-import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.params.SetParams;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import invalidation.XFetch;
+import resp.RespServer;
+import store.InMemoryBackingStore;
+import store.LatencyModel;
 
 /**
  * Demonstrates Redis cache policies and invalidation strategies for distributed caching
  */
 public class RedisCachePoliciesDemo {
   private JedisPool jedisPool;
-  private Map<String, String> database;
-  private ScheduledExecutorService executor;
+  private RespServer embeddedServer;
+  private InMemoryBackingStore<String, String> database;
 
   public static void main(String[] args) {
     RedisCachePoliciesDemo demo = new RedisCachePoliciesDemo();
@@ -41,14 +45,20 @@ public class RedisCachePoliciesDemo {
       JedisPoolConfig config = new JedisPoolConfig();
       config.setMaxTotal(20);
       config.setMaxIdle(10);
-      jedisPool = new JedisPool(config, "localhost", 6379);
+      embeddedServer = RespServer.startUnlessListening(6379);
+      String host = embeddedServer == null ? "localhost" : embeddedServer.host();
+      jedisPool = new JedisPool(config, host, 6379);
 
-      database = new HashMap<>();
-      executor = Executors.newScheduledThreadPool(3);
+      // Thread-safe: write-behind workers and flushers write it while the main thread reads
+      database = new InMemoryBackingStore<>(
+          LatencyModel.logNormal(Duration.ofMillis(5), 0.5), LatencyModel.logNormal(Duration.ofMillis(30), 0.5));
 
       try (Jedis jedis = jedisPool.getResource()) {
         jedis.ping();
         jedis.flushDB(); // Clear Redis for clean demo
+        if (embeddedServer != null) {
+          System.out.println("   ✓ No Redis on localhost:6379: started the embedded RESP server (resp.RespServer)");
+        }
         System.out.println("   ✓ Redis connected and cleared");
       }
 
@@ -76,7 +86,7 @@ public class RedisCachePoliciesDemo {
 
       // Write-through implementation
       jedis.set(key, value);
-      simulateDatabaseWrite(key, value);
+      database.put(key, value);
 
       long duration = System.currentTimeMillis() - startTime;
 
@@ -104,23 +114,39 @@ public class RedisCachePoliciesDemo {
       System.out.println("   Writing '" + value + "' with write-around...");
 
       // Write-around: skip cache, write directly to database
-      simulateDatabaseWrite(key, value);
+      database.put(key, value);
 
       System.out.println("   Cache value (should be null): " + jedis.get(key));
       System.out.println("   Database value: " + database.get(key));
 
-      // Subsequent read will cache miss and load from database
-      System.out.println("   Reading from cache (cache miss)...");
-      String cachedValue = jedis.get(key);
-      if (cachedValue == null) {
-        cachedValue = database.get(key);
-        if (cachedValue != null) {
-          jedis.set(key, cachedValue);
-          System.out.println("   Loaded from database and cached: " + cachedValue);
-        }
+      // Subsequent reads miss together; single-flight sends one of them to the database
+      System.out.println("   20 concurrent readers on the cold key...");
+      SingleFlightRedisCache reads = new SingleFlightRedisCache(
+          jedisPool, database, Duration.ofMinutes(5), Duration.ofSeconds(2), Duration.ofSeconds(1));
+      long roundTripsBefore = database.readRoundTrips();
+      Thread[] readers = new Thread[20];
+      for (int i = 0; i < readers.length; i++) {
+        readers[i] = new Thread(() -> reads.get(key));
+        readers[i].start();
+      }
+      for (Thread reader : readers) {
+        reader.join();
       }
 
+      System.out.println("   Store reads: " + reads.storeReads() + " (database round trips: "
+          + (database.readRoundTrips() - roundTripsBefore) + ")");
+      System.out.println("   Coalesced in this JVM: " + reads.coalesced()
+          + ", waited on another node's lease: " + reads.leaseWaits() + ", cache hits: " + reads.hits());
       System.out.println("   Now cache value: " + jedis.get(key));
+
+      // A key the store lacks is cached as a short-lived miss, so repeat readers skip the store
+      long storeReadsBefore = reads.storeReads();
+      reads.get("batch:missing:457");
+      reads.get("batch:missing:457");
+      System.out.println("   Key missing from the store, read twice: " + (reads.storeReads() - storeReadsBefore)
+          + " store read, " + reads.negativeHits() + " answered by the cached miss");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
     System.out.println();
   }
@@ -133,33 +159,31 @@ public class RedisCachePoliciesDemo {
     System.out.println("   - Immediate cache write, deferred database write");
     System.out.println("   - Better write performance, risk of data loss");
 
-    try (Jedis jedis = jedisPool.getResource()) {
+    // Mutations go to a Redis stream, not a local executor, so a JVM crash loses nothing
+    try (StreamWriteBehind writeBehind = new StreamWriteBehind(jedisPool, database, "writebehind:stream",
+        "db-writers", 2, 50, Duration.ofMillis(500), Duration.ofSeconds(5))) {
       String key = "session:writebehind:789";
       String value = "User Session Data";
 
-      long startTime = System.currentTimeMillis();
-
-      // Write to cache immediately
-      jedis.set(key, value);
-      long cacheWriteTime = System.currentTimeMillis() - startTime;
-
-      // Schedule asynchronous database write
-      executor.schedule(() -> {
-        simulateDatabaseWrite(key, value);
-        System.out.println("   ⏰ Async database write completed for: " + key);
-      }, 200, TimeUnit.MILLISECONDS);
+      long startTime = System.nanoTime();
+      writeBehind.write(key, value);
+      long cacheWriteMicros = (System.nanoTime() - startTime) / 1000;
 
-      System.out.println("   Cache write time: " + cacheWriteTime + "ms (immediate)");
-      System.out.println("   Cache value: " + jedis.get(key));
-      System.out.println("   Database value (before async): " + database.get(key));
+      System.out.println("   Cache write + stream append: " + cacheWriteMicros + "µs (one MULTI/EXEC)");
+      System.out.println("   Database value (before workers): " + database.get(key));
 
-      // Wait for async write
-      try {
-        Thread.sleep(300);
-        System.out.println("   Database value (after async): " + database.get(key));
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
+      for (int i = 0; i < 200; i++) {
+        writeBehind.write("session:writebehind:" + (i % 40), "state-" + i);
       }
+
+      Thread.sleep(500);
+      System.out.println("   Database value (after workers): " + database.get(key));
+      System.out.println("   " + writeBehind.appended() + " entries -> " + writeBehind.batchesApplied()
+          + " batches, " + writeBehind.coalescedEntries() + " coalesced, backlog " + writeBehind.backlog());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      System.err.println("   Error in write-behind demo: " + e.getMessage());
     }
     System.out.println();
   }
@@ -172,37 +196,33 @@ public class RedisCachePoliciesDemo {
     System.out.println("   - Batches multiple writes, coalesces updates");
     System.out.println("   - Optimal for high-frequency updates");
 
-    try (Jedis jedis = jedisPool.getResource()) {
+    // Dirty set lives in Redis, so every app node feeds and drains one shared buffer
+    try (RedisWriteBackCache writeBack = new RedisWriteBackCache(
+        jedisPool, database, "writeback", 100, Duration.ofSeconds(1), Duration.ofMillis(250))) {
       String key = "counter:writeback:001";
 
       System.out.println("   Performing rapid counter updates...");
-
-      // Simulate rapid updates (only latest value matters)
-      Pipeline pipeline = jedis.pipelined();
+      long storeWritesBefore = database.writeRoundTrips();
       for (int i = 1; i <= 10; i++) {
-        pipeline.set(key, String.valueOf(i * 100));
-        System.out.println("   Updated cache counter: " + (i * 100));
+        writeBack.put(key, String.valueOf(i * 100));
+      }
+      for (int i = 0; i < 50; i++) {
+        writeBack.put("counter:writeback:page:" + i, "views=" + i);
       }
-      pipeline.sync();
-
-      String finalValue = jedis.get(key);
-
-      // Schedule batched database write (only final value)
-      executor.schedule(() -> {
-        System.out.println("   📦 Batched database write executing...");
-        simulateDatabaseWrite(key, finalValue);
-        System.out.println("   ✓ Database updated with final value: " + finalValue);
-      }, 250, TimeUnit.MILLISECONDS);
 
-      System.out.println("   Final cache value: " + finalValue);
-      System.out.println("   Database value (before batch): " + database.get(key));
+      System.out.println("   Final cache value: " + writeBack.get(key));
+      System.out.println("   Database value (before flush): " + database.get(key));
+      System.out.println("   Dirty keys in Redis: " + writeBack.dirtyCount());
 
-      try {
-        Thread.sleep(350);
-        System.out.println("   Database value (after batch): " + database.get(key));
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-      }
+      Thread.sleep(400); // Let the flusher drain a batch
+      System.out.println("   Database value (after flush): " + database.get(key));
+      System.out.println("   60 writes -> " + writeBack.keysFlushed() + " keys in " + writeBack.batchesFlushed()
+          + " batch(es), " + (database.writeRoundTrips() - storeWritesBefore) + " store round trip(s), flush lag "
+          + writeBack.maxFlushLagMillis() + "ms");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      System.err.println("   Error in write-back demo: " + e.getMessage());
     }
     System.out.println();
   }
@@ -228,6 +248,27 @@ public class RedisCachePoliciesDemo {
         Thread.currentThread().interrupt();
       }
 
+      // Probabilistic early expiration instead of a hard SETEX boundary
+      System.out.println("   a2) Probabilistic Early Expiration (XFetch):");
+      XFetchRedisCache xfetch = new XFetchRedisCache(jedisPool, Duration.ofSeconds(1), XFetch.DEFAULT_BETA, k -> {
+        try {
+          Thread.sleep(100); // Simulate expensive recompute
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return "report_" + System.currentTimeMillis();
+      });
+      try {
+        for (int i = 0; i < 60; i++) {
+          xfetch.get("report:daily");
+          Thread.sleep(50);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      System.out.println("   60 reads over ~3s with a 1s TTL: " + xfetch.recomputes() + " recomputes, "
+          + xfetch.earlyRecomputes() + " of them early (before the key expired)");
+
       // Manual Purge/Invalidation
       System.out.println("   b) Manual Purge (DEL command):");
       jedis.set("temp:data1", "value1");
@@ -244,14 +285,20 @@ public class RedisCachePoliciesDemo {
       jedis.set("user:cache:2", "user2");
       jedis.set("product:cache:1", "product1");
 
-      // Invalidate all user cache entries
-      var userKeys = jedis.keys("user:cache:*");
-      if (!userKeys.isEmpty()) {
-        jedis.del(userKeys.toArray(new String[0]));
-        System.out.println("   Banned (deleted) " + userKeys.size() + " user cache keys");
+      // Invalidate all user cache entries: SCAN slices + UNLINK, never a blocking KEYS
+      PatternInvalidator invalidator = new PatternInvalidator(jedisPool, 500, 100);
+      long banned = invalidator.invalidatePattern("user:cache:*");
+      System.out.println("   Banned (unlinked) " + banned + " user cache keys in " + invalidator.scanCalls()
+          + " SCAN calls");
+
+      // Tag ban: O(matches) via a server-side tag set
+      for (int i = 0; i < 50; i++) {
+        invalidator.set("product:cache:page:" + i, "page" + i, Duration.ofMinutes(5), "catalog");
       }
+      System.out.println("   Tag ban 'catalog' removed " + invalidator.invalidateTag("catalog") + " keys");
 
-      System.out.println("   Remaining keys: " + jedis.keys("*cache*"));
+      System.out.println("   Remaining: user:cache:1=" + jedis.get("user:cache:1") + ", product:cache:1="
+          + jedis.get("product:cache:1"));
 
       // Refresh pattern (reload from source)
       System.out.println("   d) Cache Refresh:");
@@ -283,46 +330,88 @@ public class RedisCachePoliciesDemo {
 
     try (Jedis jedis = jedisPool.getResource()) {
 
-      // Atomic operations for distributed coordination
-      System.out.println("   a) Atomic Operations for Distributed Coordination:");
-      String lockKey = "lock:resource:123";
-      String lockValue = "server-" + System.currentTimeMillis();
-
-      // Distributed lock (SET with NX and EX)
-      String lockResult = jedis.set(lockKey, lockValue, SetParams.setParams().nx().ex(5));
-      System.out.println("   Acquired distributed lock: " + (lockResult != null));
-
-      if (lockResult != null) {
-        System.out.println("   Processing critical section...");
-        try {
-          Thread.sleep(100); // Simulate work
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
+      // Distributed lock: renewed lease, fencing tokens, local queueing
+      System.out.println("   a) Fenced, Lease-Renewing Distributed Lock:");
+      try (FencedLockService nodeA = new FencedLockService(jedisPool, Duration.ofMillis(300), 64);
+          FencedLockService nodeB = new FencedLockService(jedisPool, Duration.ofMillis(300), 64)) {
+        try (FencedLockService.Lease lease = nodeA.tryLock("resource:123", Duration.ofSeconds(1))) {
+          System.out.println("   Acquired distributed lock, fencing token " + lease.fencingToken());
+          System.out.println("   Processing critical section longer than the 300ms lease...");
+          Thread.sleep(1000);
+          System.out.println("   Still held after 1s: " + lease.isHeld() + " (watchdog renewals: "
+              + nodeA.renewals() + ")");
         }
 
-        // Release lock safely (only if we own it)
-        String script = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
-        Long released = (Long) jedis.eval(script, 1, lockKey, lockValue);
-        System.out.println("   Released lock: " + (released == 1));
+        // Two nodes x 8 threads on one hot lock; the protected resource checks the tokens
+        int perThread = 10;
+        AtomicInteger holders = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicLong lastToken = new AtomicLong();
+        AtomicInteger staleTokens = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+          FencedLockService node = t % 2 == 0 ? nodeA : nodeB;
+          threads.add(new Thread(() -> {
+            for (int i = 0; i < perThread; i++) {
+              try (FencedLockService.Lease lease = node.tryLock("resource:hot", Duration.ofSeconds(30))) {
+                if (holders.incrementAndGet() > 1) {
+                  overlaps.incrementAndGet();
+                }
+                if (lease.fencingToken() <= lastToken.getAndSet(lease.fencingToken())) {
+                  staleTokens.incrementAndGet();
+                }
+                Thread.sleep(2); // Simulate work
+                holders.decrementAndGet();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+              }
+            }
+          }));
+        }
+        long grantsBefore = nodeA.acquired() + nodeB.acquired();
+        long callsBefore = nodeA.redisAcquireCalls() + nodeB.redisAcquireCalls();
+        long start = System.currentTimeMillis();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+          thread.join();
+        }
+        long grants = nodeA.acquired() + nodeB.acquired() - grantsBefore;
+        long redisCalls = nodeA.redisAcquireCalls() + nodeB.redisAcquireCalls() - callsBefore;
+        System.out.println("   16 threads on 2 nodes: " + grants + " grants in " + (System.currentTimeMillis() - start)
+            + "ms, " + redisCalls + " Redis acquire calls (" + String.format("%.1f", (double) redisCalls / grants)
+            + " per grant), " + (nodeA.localWaits() + nodeB.localWaits()) + " queued locally");
+        System.out.println("   Overlapping holders: " + overlaps.get() + ", out-of-order tokens: " + staleTokens.get());
       }
 
       // Pub/Sub for cache invalidation across instances
       System.out.println("   b) Pub/Sub for Distributed Cache Invalidation:");
 
-      // Simulate cache invalidation message
-      executor.submit(() -> {
-        try (Jedis publisher = jedisPool.getResource()) {
-          Thread.sleep(100);
-          publisher.publish("cache:invalidate", "user:cache:*");
-          System.out.println("   📢 Published cache invalidation message");
-        } catch (Exception e) {
-          System.err.println("   Error publishing: " + e.getMessage());
-        }
-      });
+      // Two near caches stand in for two app servers sharing one Redis
+      try (NearCache nodeA = new NearCache(jedisPool, database, 10_000, Duration.ofMinutes(1), Duration.ofMinutes(5));
+          NearCache nodeB = new NearCache(jedisPool, database, 10_000, Duration.ofMinutes(1), Duration.ofMinutes(5))) {
+        nodeA.awaitSubscribed(Duration.ofSeconds(1));
+        nodeB.awaitSubscribed(Duration.ofSeconds(1));
 
-      // Subscriber would listen for invalidation messages
-      System.out.println("   📱 Cache instances would subscribe to 'cache:invalidate' channel");
+        String key = "user:near:42";
+        nodeB.put(key, "Alice v1");
+        System.out.println("   Node A first read (L1 miss -> Redis): " + nodeA.get(key));
 
+        int reads = 100_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+          nodeA.get(key);
+        }
+        long nanosPerRead = (System.nanoTime() - start) / reads;
+        System.out.println("   Node A " + reads + " more reads: " + nanosPerRead + "ns/read (L1 hits: "
+            + nodeA.localHits() + ", Redis reads: " + nodeA.remoteHits() + ")");
+
+        nodeB.put(key, "Alice v2");
+        Thread.sleep(50); // Let the invalidation message arrive
+        System.out.println("   📢 Node B wrote v2; node A received " + nodeA.invalidationsReceived()
+            + " invalidation(s)");
+        System.out.println("   Node A read after invalidation: " + nodeA.get(key));
+      }
       // Sorted sets for distributed leaderboards/rankings
       System.out.println("   c) Distributed Data Structures (Sorted Sets):");
       String leaderboard = "game:leaderboard:global";
@@ -348,24 +437,42 @@ public class RedisCachePoliciesDemo {
       Long uniqueCount = jedis.pfcount(counterKey);
       System.out.println("   Estimated unique visitors: " + uniqueCount);
 
+      // Scripts loaded once and called by SHA
+      System.out.println("   e) Script Registry (EVALSHA) Cache Primitives:");
+      ScriptRegistry registry = new ScriptRegistry(jedisPool);
+      CacheScripts scripts = new CacheScripts(jedisPool, registry);
+
+      // Versions come from the counter NearCache shares, so they order writes across both
+      long older = scripts.compareAndSet("user:versioned:8", 0, "Eve v1", Duration.ZERO);
+      String profileKey = "user:versioned:7";
+      long version = scripts.compareAndSet(profileKey, 0, "Dana v1", Duration.ofMinutes(5));
+      CacheScripts.Versioned read = scripts.getVersioned(profileKey);
+      long won = scripts.compareAndSet(profileKey, read.version(), "Dana v2", Duration.ofMinutes(5));
+      long lost = scripts.compareAndSet(profileKey, read.version(), "Dana v2 (concurrent)", Duration.ofMinutes(5));
+      System.out.println("   CAS create -> v" + version + ", CAS at v" + read.version() + " -> v" + won
+          + ", second CAS at v" + read.version() + " -> " + (lost < 0 ? "rejected" : "v" + lost)
+          + ", stored " + scripts.getVersioned(profileKey));
+
+      jedis.set("session:hot", "token-abc", SetParams.setParams().px(1000));
+      String session = scripts.getAndRefreshTtl("session:hot", Duration.ofMinutes(30));
+      System.out.println("   Get-and-refresh-TTL: " + session + ", TTL now " + jedis.ttl("session:hot") + "s");
+
+      long invalidated = scripts.invalidateOlderThan(
+          Arrays.asList(profileKey, "user:versioned:8", "user:versioned:missing"), won);
+      System.out.println("   Invalidate copies older than v" + won + ": " + invalidated + " removed (Eve at v" + older
+          + "), " + profileKey + " kept at " + scripts.getVersioned(profileKey));
+
+      jedis.scriptFlush(); // Simulates a restart or failover emptying the script cache
+      scripts.getAndRefreshTtl("session:hot", Duration.ofMinutes(30));
+      System.out.println("   After SCRIPT FLUSH: " + registry.calls() + " calls by SHA, " + registry.reloads()
+          + " reload(s) on NOSCRIPT, " + registry.size() + " scripts registered");
+
     } catch (Exception e) {
       System.err.println("   Error in distributed features demo: " + e.getMessage());
     }
     System.out.println();
   }
 
-  /**
-   * Simulates database write with latency
-   */
-  private void simulateDatabaseWrite(String key, String value) {
-    try {
-      Thread.sleep(30); // Simulate database write latency
-      database.put(key, value);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-    }
-  }
-
   /**
    * Cleanup resources
    */
@@ -382,9 +489,13 @@ public class RedisCachePoliciesDemo {
       System.out.println("   Connection pool closed");
     }
 
-    if (executor != null) {
-      executor.shutdown();
-      System.out.println("   Executor service shutdown");
+    if (database != null) {
+      database.close();
+    }
+
+    if (embeddedServer != null) {
+      embeddedServer.close();
+      System.out.println("   Embedded RESP server stopped");
     }
 
     System.out.println("   ✓ Cleanup completed");
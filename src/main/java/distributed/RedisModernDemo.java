@@ -11,16 +11,24 @@ import io.lettuce.core.support.ConnectionPoolSupport;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import resp.RespServer;
+import store.CompressingSerializer;
+import store.Serializer;
 
 /**
  * Modern Redis implementation using Lettuce (non-blocking, async-capable client)
  * Demonstrates the difference from legacy JedisPool approach
  */
 public class RedisModernDemo {
+  private RespServer embeddedServer;
+  private RedisURI redisUri;
   private RedisClient redisClient;
   private GenericObjectPool<StatefulRedisConnection<String, String>> connectionPool;
 
@@ -34,6 +42,8 @@ public class RedisModernDemo {
     demo.asynchronousOperations();
     demo.reactiveOperations();
     demo.connectionPoolingDemo();
+    demo.clientSideCaching();
+    demo.binaryCodecs();
     demo.cleanup();
   }
 
@@ -44,9 +54,14 @@ public class RedisModernDemo {
     System.out.println("1. Modern Redis Setup (Lettuce):");
 
     try {
+      embeddedServer = RespServer.startUnlessListening(6379);
+      if (embeddedServer != null) {
+        System.out.println("   ✓ No Redis on localhost:6379: started the embedded RESP server (resp.RespServer)");
+      }
+
       // Create Redis URI with connection settings
-      RedisURI redisUri = RedisURI.builder()
-          .withHost("localhost")
+      redisUri = RedisURI.builder()
+          .withHost(embeddedServer == null ? "localhost" : embeddedServer.host())
           .withPort(6379)
           .withTimeout(Duration.ofSeconds(5))
           .build();
@@ -144,6 +159,35 @@ public class RedisModernDemo {
 
       System.out.println("   Async pipeline completed");
 
+      // Many threads sharing one connection: batch their commands into few writes
+      try (StatefulRedisConnection<String, String> batchConnection = redisClient.connect();
+          CommandBatcher batcher = new CommandBatcher(batchConnection, 16, 512, Duration.ofNanos(50_000))) {
+        int threads = 8;
+        int perThread = 10_000;
+        Thread[] writers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+          int id = t;
+          writers[t] = new Thread(() -> {
+            CompletableFuture<?>[] sets = new CompletableFuture<?>[perThread];
+            for (int i = 0; i < perThread; i++) {
+              sets[i] = batcher.set("batched:" + id + ":" + i, "value" + i);
+            }
+            CompletableFuture.allOf(sets).join();
+          });
+          writers[t].start();
+        }
+        for (Thread writer : writers) {
+          writer.join();
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.printf("   Batched %d SETs from %d threads in %dms (%d ops/s)%n",
+            threads * perThread, threads, millis, threads * perThread * 1000L / millis);
+        System.out.printf("   %d writes, avg %.1f commands each (size/timer/idle flushes: %d/%d/%d)%n",
+            batcher.batches(), batcher.averageBatchSize(), batcher.sizeFlushes(), batcher.timerFlushes(),
+            batcher.idleFlushes());
+      }
+
     } catch (InterruptedException | ExecutionException e) {
       System.err.println("   Error in async operations: " + e.getMessage());
     }
@@ -202,17 +246,151 @@ public class RedisModernDemo {
         System.out.println("   ✓ Connection returned to pool");
       }
 
+      // One page render: 400 lookups as a few pipelined MGET chunks across pooled connections
+      BulkCacheClient bulk = new BulkCacheClient(connectionPool, 100, 4, false);
+      Map<String, String> fragments = new HashMap<>();
+      List<String> keys = new ArrayList<>();
+      for (int i = 0; i < 400; i++) {
+        String key = "fragment:" + i;
+        keys.add(key);
+        if (i % 4 != 0) {
+          fragments.put(key, "html-" + i);
+        }
+      }
+      bulk.putAll(fragments);
+
+      long start = System.nanoTime();
+      List<String> values = bulk.getAll(keys);
+      long micros = (System.nanoTime() - start) / 1000;
+      long found = values.stream().filter(v -> v != null).count();
+      System.out.println("   Bulk get of " + keys.size() + " keys: " + found + " hits in " + micros + "µs, "
+          + bulk.chunks() / bulk.bulkCalls() + " chunks per call; values[1] = " + values.get(1));
+
     } catch (Exception e) {
       System.err.println("   Error with connection pool: " + e.getMessage());
     }
     System.out.println();
   }
 
+  /**
+   * Client-side caching with server-assisted invalidation (RESP3 CLIENT TRACKING)
+   */
+  public void clientSideCaching() {
+    System.out.println("6. Client-Side Caching (CLIENT TRACKING):");
+
+    try (TrackingCache cache = TrackingCache.tracking(redisUri, 10_000);
+        TrackingCache broadcast = TrackingCache.broadcast(redisUri, 10_000, "product:");
+        StatefulRedisConnection<String, String> writer = redisClient.connect()) {
+      writer.sync().set("user:tracked:1", "Carol v1");
+      writer.sync().set("product:tracked:7", "Widget v1");
+
+      System.out.println("   First read (round trip): " + cache.get("user:tracked:1"));
+      int reads = 100_000;
+      long start = System.nanoTime();
+      for (int i = 0; i < reads; i++) {
+        cache.get("user:tracked:1");
+      }
+      System.out.println("   " + reads + " more reads: " + (System.nanoTime() - start) / reads
+          + "ns/read, local hits: " + cache.localHits());
+
+      // Another client changes the key; the server pushes an invalidation to the tracker
+      writer.sync().set("user:tracked:1", "Carol v2");
+      broadcast.get("product:tracked:7");
+      writer.sync().set("product:tracked:7", "Widget v2");
+      Thread.sleep(50);
+      System.out.println("   After another client's write: " + cache.get("user:tracked:1")
+          + " (invalidations: " + cache.invalidations() + ")");
+      System.out.println("   BCAST prefix 'product:': " + broadcast.get("product:tracked:7")
+          + " (invalidations: " + broadcast.invalidations() + ")");
+
+    } catch (Exception e) {
+      System.err.println("   Error in client-side caching: " + e.getMessage());
+    }
+    System.out.println();
+  }
+
+  /**
+   * Binary value codecs: compressed JSON and compact numbers instead of UTF-8 strings
+   */
+  public void binaryCodecs() {
+    System.out.println("7. Binary Value Codecs:");
+
+    CompressingSerializer<String> json = new CompressingSerializer<>(Serializer.utf8(), 1024);
+    try (StatefulRedisConnection<String, String> plain = redisClient.connect();
+        StatefulRedisConnection<String, String> packed = redisClient.connect(new BinaryCodec<>(Serializer.utf8(), json));
+        StatefulRedisConnection<String, Long> counters =
+            redisClient.connect(new BinaryCodec<>(Serializer.utf8(), Serializer.varLongs()))) {
+      // 2-20KB JSON documents, the payload size of a typical API response cache
+      Random random = new Random(42);
+      List<String> documents = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        documents.add(jsonDocument(i, 2_048 + random.nextInt(18_432), random));
+      }
+
+      long plainNanos = 0;
+      long packedNanos = 0;
+      for (int round = 0; round < 3; round++) {
+        long start = System.nanoTime();
+        for (int i = 0; i < documents.size(); i++) {
+          plain.sync().set("json:plain:" + i, documents.get(i));
+          plain.sync().get("json:plain:" + i);
+        }
+        plainNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < documents.size(); i++) {
+          packed.sync().set("json:packed:" + i, documents.get(i));
+          packed.sync().get("json:packed:" + i);
+        }
+        packedNanos = System.nanoTime() - start;
+      }
+
+      long plainBytes = 0;
+      long packedBytes = 0;
+      boolean identical = true;
+      for (int i = 0; i < documents.size(); i++) {
+        plainBytes += plain.sync().strlen("json:plain:" + i);
+        packedBytes += plain.sync().strlen("json:packed:" + i);
+        identical &= documents.get(i).equals(packed.sync().get("json:packed:" + i));
+      }
+      System.out.println("   " + documents.size() + " JSON documents (2-20KB): " + plainBytes / 1024 + "KB as UTF-8, "
+          + packedBytes / 1024 + "KB deflated (" + String.format("%.1f", (double) plainBytes / packedBytes)
+          + "x smaller), round trip identical: " + identical);
+      System.out.println("   SET+GET of all documents: " + plainNanos / 1_000_000 + "ms as strings, "
+          + packedNanos / 1_000_000 + "ms compressed (loopback; the saving grows with network latency)");
+
+      counters.sync().set("counter:compact", 300L);
+      System.out.println("   Varint counter: " + counters.sync().get("counter:compact") + " stored in "
+          + plain.sync().strlen("counter:compact") + " bytes (decimal text: 3)");
+
+    } catch (Exception e) {
+      System.err.println("   Error in binary codecs: " + e.getMessage());
+    }
+    System.out.println();
+  }
+
+  private static String jsonDocument(int id, int targetSize, Random random) {
+    String[] categories = {"electronics", "books", "garden", "toys", "grocery"};
+    StringBuilder json = new StringBuilder(targetSize + 256);
+    json.append("{\"id\":").append(id).append(",\"type\":\"catalog-page\",\"items\":[");
+    for (int item = 0; json.length() < targetSize; item++) {
+      if (item > 0) {
+        json.append(',');
+      }
+      json.append("{\"sku\":\"SKU-").append(100_000 + random.nextInt(900_000))
+          .append("\",\"name\":\"Item ").append(item)
+          .append("\",\"category\":\"").append(categories[random.nextInt(categories.length)])
+          .append("\",\"price\":").append(random.nextInt(100_00) / 100.0)
+          .append(",\"inStock\":").append(random.nextBoolean())
+          .append(",\"rating\":").append(1 + random.nextInt(5)).append('}');
+    }
+    return json.append("]}").toString();
+  }
+
   /**
    * Cleanup resources
    */
   public void cleanup() {
-    System.out.println("6. Cleanup:");
+    System.out.println("8. Cleanup:");
     try {
       if (connectionPool != null) {
         connectionPool.close();
@@ -223,6 +401,11 @@ public class RedisModernDemo {
         redisClient.shutdown();
         System.out.println("   ✓ Redis client shutdown");
       }
+
+      if (embeddedServer != null) {
+        embeddedServer.close();
+        System.out.println("   ✓ Embedded RESP server stopped");
+      }
     } catch (Exception e) {
       System.err.println("   Error during cleanup: " + e.getMessage());
     }
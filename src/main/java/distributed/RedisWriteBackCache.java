@@ -0,0 +1,276 @@
+package distributed;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.params.ZAddParams;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import store.BackingStore;
+
+/**
+ * Write-back cache whose dirty set lives in Redis, so a fleet of nodes shares one
+ * coalescing buffer instead of each JVM scheduling its own store writes.
+ *
+ * Design:
+ * - A write sets the value and adds the key to a dirty sorted set scored by when it first
+ *   became dirty (ZADD NX), in one MULTI; rewriting a dirty key only replaces the value
+ * - Each node runs a flusher; a claim script moves up to batchSize of the oldest dirty
+ *   keys into an in-flight set scored by a lease deadline, so nodes never flush the same
+ *   key at once, and a crashed flusher's keys go back to dirty once the lease expires
+ * - The claim also records each key's first-dirty time in a hash, since the in-flight score
+ *   is the lease; a key requeued from an expired lease or a failed batch gets that time
+ *   back (ZADD LT, so a rewrite since the claim cannot make it look younger) and flush lag
+ *   keeps counting from the first write
+ * - Values are read after the claim, so the store gets the latest value (last write wins);
+ *   a write that lands after the read re-marks the key dirty for the next batch
+ * - A batch goes to the store as one putAll with a timeout; on failure or timeout its keys
+ *   return to the dirty set and are retried
+ * - Flush lag (now minus first-dirty time of the oldest key in a batch) is tracked, as
+ *   the measure of how far the store trails the cache
+ */
+public class RedisWriteBackCache implements AutoCloseable {
+  // KEYS[1] = dirty, KEYS[2] = in-flight, KEYS[3] = first-dirty time of in-flight keys;
+  // ARGV = batch size, now, lease deadline
+  private static final String CLAIM_SCRIPT =
+      "local expired = redis.call('zrangebyscore', KEYS[2], '-inf', ARGV[2]) "
+          + "for _, key in ipairs(expired) do "
+          + "  local firstDirty = redis.call('hget', KEYS[3], key) or ARGV[2] "
+          + "  redis.call('zadd', KEYS[1], 'LT', firstDirty, key) "
+          + "  redis.call('zrem', KEYS[2], key) "
+          + "  redis.call('hdel', KEYS[3], key) "
+          + "end "
+          + "local claimed = redis.call('zrange', KEYS[1], 0, tonumber(ARGV[1]) - 1, 'WITHSCORES') "
+          + "for i = 1, #claimed, 2 do "
+          + "  redis.call('zrem', KEYS[1], claimed[i]) "
+          + "  redis.call('zadd', KEYS[2], ARGV[3], claimed[i]) "
+          + "  redis.call('hset', KEYS[3], claimed[i], claimed[i + 1]) "
+          + "end "
+          + "return claimed";
+
+  private final JedisPool pool;
+  private final ScriptRegistry.Script claimScript;
+  private final BackingStore<String, String> store;
+  private final String dirtyKey;
+  private final String inFlightKey;
+  private final String firstDirtyKey;
+  private final int batchSize;
+  private final long batchTimeoutMillis;
+  private final long flushIntervalMillis;
+  private final Thread flusher;
+  private volatile boolean closed;
+
+  private final AtomicLong writes = new AtomicLong();
+  private final AtomicLong batchesFlushed = new AtomicLong();
+  private final AtomicLong keysFlushed = new AtomicLong();
+  private final AtomicLong failedBatches = new AtomicLong();
+  private final AtomicLong lastFlushLagMillis = new AtomicLong();
+  private final AtomicLong maxFlushLagMillis = new AtomicLong();
+
+  /**
+   * @param namespace prefix of the dirty and in-flight sets; nodes sharing it share the buffer
+   * @param batchTimeout how long one batch may take to reach the store; also sets the claim
+   *     lease, so keys from a node that died mid-batch are retried after a few timeouts
+   */
+  public RedisWriteBackCache(JedisPool pool, BackingStore<String, String> store, String namespace, int batchSize,
+      Duration batchTimeout, Duration flushInterval) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+    }
+    this.pool = pool;
+    this.claimScript = new ScriptRegistry(pool).register(CLAIM_SCRIPT);
+    this.store = store;
+    this.dirtyKey = namespace + ":dirty";
+    this.inFlightKey = namespace + ":inflight";
+    this.firstDirtyKey = namespace + ":firstdirty";
+    this.batchSize = batchSize;
+    this.batchTimeoutMillis = batchTimeout.toMillis();
+    this.flushIntervalMillis = flushInterval.toMillis();
+    this.flusher = new Thread(this::runFlusher, "redis-write-back-flusher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  public void put(String key, String value) {
+    try (Jedis jedis = pool.getResource()) {
+      Transaction transaction = jedis.multi();
+      transaction.set(key, value);
+      transaction.zadd(dirtyKey, System.currentTimeMillis(), key, ZAddParams.zAddParams().nx());
+      transaction.exec();
+    }
+    writes.incrementAndGet();
+  }
+
+  public String get(String key) {
+    try (Jedis jedis = pool.getResource()) {
+      String value = jedis.get(key);
+      return value != null ? value : store.get(key);
+    }
+  }
+
+  /**
+   * Flushes batches until nothing is dirty or a batch fails; returns keys claimed.
+   */
+  public int flush() {
+    int total = 0;
+    while (true) {
+      int claimed = flushBatch();
+      if (claimed < 0) {
+        return total;
+      }
+      total += claimed;
+      if (claimed < batchSize) {
+        return total;
+      }
+    }
+  }
+
+  /**
+   * Dirty keys not yet in the store, including those in flight on any node.
+   */
+  public long dirtyCount() {
+    try (Jedis jedis = pool.getResource()) {
+      Pipeline pipeline = jedis.pipelined();
+      Response<Long> dirty = pipeline.zcard(dirtyKey);
+      Response<Long> inFlight = pipeline.zcard(inFlightKey);
+      pipeline.sync();
+      return dirty.get() + inFlight.get();
+    }
+  }
+
+  public long writes() {
+    return writes.get();
+  }
+
+  public long batchesFlushed() {
+    return batchesFlushed.get();
+  }
+
+  public long keysFlushed() {
+    return keysFlushed.get();
+  }
+
+  public long failedBatches() {
+    return failedBatches.get();
+  }
+
+  public long lastFlushLagMillis() {
+    return lastFlushLagMillis.get();
+  }
+
+  public long maxFlushLagMillis() {
+    return maxFlushLagMillis.get();
+  }
+
+  /**
+   * Stops this node's flusher after a final flush; other nodes keep draining the shared set.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    flusher.interrupt();
+    try {
+      flusher.join(batchTimeoutMillis + flushIntervalMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+  private void runFlusher() {
+    while (!closed) {
+      try {
+        Thread.sleep(flushIntervalMillis);
+      } catch (InterruptedException e) {
+        return;
+      }
+      try {
+        flush();
+      } catch (RuntimeException e) {
+        System.err.println("   [write-back] flush failed: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Returns keys claimed, or -1 if the batch failed and was handed back.
+   */
+  @SuppressWarnings("unchecked")
+  private int flushBatch() {
+    try (Jedis jedis = pool.getResource()) {
+      long now = System.currentTimeMillis();
+      // Lease of a few batch timeouts, so a slow but live flusher is not overtaken
+      long leaseDeadline = now + 3 * batchTimeoutMillis;
+      Object reply = claimScript.eval(jedis, Arrays.asList(dirtyKey, inFlightKey, firstDirtyKey),
+          Arrays.asList(Integer.toString(batchSize), Long.toString(now), Long.toString(leaseDeadline)));
+      // Jedis decodes an empty array from EVAL as an empty map
+      if (!(reply instanceof List) || ((List<?>) reply).isEmpty()) {
+        return 0;
+      }
+      List<String> claimed = (List<String>) reply;
+
+      List<String> keys = new ArrayList<>(claimed.size() / 2);
+      Map<String, Double> firstDirty = new HashMap<>();
+      for (int i = 0; i < claimed.size(); i += 2) {
+        keys.add(claimed.get(i));
+        firstDirty.put(claimed.get(i), Double.parseDouble(claimed.get(i + 1)));
+      }
+      List<String> values = jedis.mget(keys.toArray(new String[0]));
+      Map<String, String> batch = new HashMap<>();
+      for (int i = 0; i < keys.size(); i++) {
+        // Expired or deleted since it was written: nothing left to persist
+        if (values.get(i) != null) {
+          batch.put(keys.get(i), values.get(i));
+        }
+      }
+
+      try {
+        store.putAllAsync(batch).get(batchTimeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException | ExecutionException e) {
+        failedBatches.incrementAndGet();
+        handBack(jedis, firstDirty);
+        System.err.println("   [write-back] batch of " + keys.size() + " failed, requeued: " + e);
+        return -1;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        handBack(jedis, firstDirty);
+        return -1;
+      }
+
+      release(jedis, keys.toArray(new String[0]));
+      batchesFlushed.incrementAndGet();
+      keysFlushed.addAndGet(batch.size());
+      long oldest = (long) firstDirty.values().stream().mapToDouble(Double::doubleValue).min().orElse(now);
+      long lag = System.currentTimeMillis() - oldest;
+      lastFlushLagMillis.set(lag);
+      maxFlushLagMillis.accumulateAndGet(lag, Math::max);
+      return keys.size();
+    }
+  }
+
+  private void release(Jedis jedis, String[] keys) {
+    Transaction transaction = jedis.multi();
+    transaction.zrem(inFlightKey, keys);
+    transaction.hdel(firstDirtyKey, keys);
+    transaction.exec();
+  }
+
+  private void handBack(Jedis jedis, Map<String, Double> firstDirty) {
+    String[] keys = firstDirty.keySet().toArray(new String[0]);
+    Transaction transaction = jedis.multi();
+    transaction.zadd(dirtyKey, firstDirty, ZAddParams.zAddParams().lt());
+    transaction.zrem(inFlightKey, keys);
+    transaction.hdel(firstDirtyKey, keys);
+    transaction.exec();
+  }
+}
@@ -0,0 +1,87 @@
+package distributed;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lua scripts sent to Redis once and then invoked by SHA1, so a hot-path call carries a
+ * 40-byte digest instead of the script source and the server skips compiling it.
+ *
+ * Design:
+ * - register() runs SCRIPT LOAD once per distinct source and returns a handle; registering
+ *   the same source again returns the same handle
+ * - A handle calls EVALSHA on the caller's connection, so it composes with whatever else
+ *   the caller does on that connection
+ * - The server's script cache is not persistent: a restart, failover or SCRIPT FLUSH empties
+ *   it and EVALSHA answers NOSCRIPT. The handle then loads the source again on the same
+ *   connection and retries once; the SHA1 of a source never changes, so nothing else does
+ */
+public class ScriptRegistry {
+  private final JedisPool pool;
+  private final ConcurrentHashMap<String, Script> scripts = new ConcurrentHashMap<>();
+
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong reloads = new AtomicLong();
+
+  public ScriptRegistry(JedisPool pool) {
+    this.pool = pool;
+  }
+
+  public Script register(String source) {
+    return scripts.computeIfAbsent(source, src -> {
+      try (Jedis jedis = pool.getResource()) {
+        return new Script(src, jedis.scriptLoad(src));
+      }
+    });
+  }
+
+  public int size() {
+    return scripts.size();
+  }
+
+  public long calls() {
+    return calls.get();
+  }
+
+  /**
+   * Calls that found the script missing on the server and loaded it again.
+   */
+  public long reloads() {
+    return reloads.get();
+  }
+
+  /**
+   * A registered script.
+   */
+  public final class Script {
+    private final String source;
+    private final String sha;
+
+    private Script(String source, String sha) {
+      this.source = source;
+      this.sha = sha;
+    }
+
+    public String sha() {
+      return sha;
+    }
+
+    /**
+     * EVALSHA, reloading the script and retrying once if the server no longer has it.
+     */
+    public Object eval(Jedis jedis, List<String> keys, List<String> args) {
+      calls.incrementAndGet();
+      try {
+        return jedis.evalsha(sha, keys, args);
+      } catch (JedisNoScriptException e) {
+        reloads.incrementAndGet();
+        jedis.scriptLoad(source);
+        return jedis.evalsha(sha, keys, args);
+      }
+    }
+  }
+}
@@ -0,0 +1,248 @@
+package distributed;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.params.SetParams;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import store.BackingStore;
+
+/**
+ * Redis cache-aside client that coalesces misses, so a cold key costs the store one read
+ * no matter how many callers want it.
+ *
+ * Design:
+ * - In the JVM: the first caller to miss a key registers a future in an in-flight map
+ *   and loads; concurrent callers for the key wait on that future
+ * - Across JVMs (optional): the loading caller first takes a short Redis lease,
+ *   SET lease:key token NX PX leaseTtl. Only the lease holder reads the store; other
+ *   nodes poll the cache key until the holder has written it
+ * - The lease expires by itself if its holder dies, and a waiter that sees the lease gone
+ *   without a value competes for it again; a waiter that gives up after maxWait reads the
+ *   store directly rather than fail the request
+ * - The lease is released with {@link CacheScripts#compareAndDelete}, so a slow holder
+ *   whose lease already expired cannot delete the next holder's lease
+ * - A key the store does not have is remembered as a marker, miss:key, for negativeTtl.
+ *   Lease waiters see it and return null instead of polling until maxWait and then all
+ *   reading the store; a miss reads the key and its marker in one MGET. The marker lives
+ *   beside the value, not in it, so any string can still be cached
+ */
+public class SingleFlightRedisCache {
+  private static final String LEASE_PREFIX = "lease:";
+  private static final String MISS_PREFIX = "miss:";
+  private static final long POLL_MIN_MILLIS = 5;
+  private static final long POLL_MAX_MILLIS = 100;
+
+  private final JedisPool pool;
+  private final BackingStore<String, String> store;
+  private final long ttlMillis;
+  private final long leaseTtlMillis;
+  private final long maxWaitMillis;
+  private final long negativeTtlMillis;
+  private final CacheScripts scripts;
+  private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong negativeHits = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong leaseWaits = new AtomicLong();
+  private final AtomicLong storeReads = new AtomicLong();
+
+  /**
+   * In-JVM coalescing only; store misses are not cached.
+   */
+  public SingleFlightRedisCache(JedisPool pool, BackingStore<String, String> store, Duration ttl) {
+    this(pool, store, ttl, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+  }
+
+  /**
+   * Caches store misses for leaseTtl, long enough for every waiter on that load to see it.
+   */
+  public SingleFlightRedisCache(JedisPool pool, BackingStore<String, String> store, Duration ttl,
+      Duration leaseTtl, Duration maxWait) {
+    this(pool, store, ttl, leaseTtl, maxWait, leaseTtl);
+  }
+
+  /**
+   * @param leaseTtl how long a node may hold the load lease; zero disables cross-JVM coalescing
+   * @param maxWait how long a node waits on another node's lease before reading the store itself
+   * @param negativeTtl how long a store miss is cached; zero disables it. A key created in
+   *     the store meanwhile stays invisible for up to this long
+   */
+  public SingleFlightRedisCache(JedisPool pool, BackingStore<String, String> store, Duration ttl,
+      Duration leaseTtl, Duration maxWait, Duration negativeTtl) {
+    this.pool = pool;
+    this.store = store;
+    this.ttlMillis = ttl.toMillis();
+    this.leaseTtlMillis = leaseTtl.toMillis();
+    this.maxWaitMillis = maxWait.toMillis();
+    this.negativeTtlMillis = negativeTtl.toMillis();
+    this.scripts = leaseTtlMillis > 0 ? new CacheScripts(pool, new ScriptRegistry(pool)) : null;
+  }
+
+  public String get(String key) {
+    Cached cached;
+    try (Jedis jedis = pool.getResource()) {
+      cached = readCached(jedis, key);
+    }
+    if (cached.state == Cached.State.HIT) {
+      hits.incrementAndGet();
+      return cached.value;
+    }
+    if (cached.state == Cached.State.NEGATIVE) {
+      negativeHits.incrementAndGet();
+      return null;
+    }
+
+    CompletableFuture<String> mine = new CompletableFuture<>();
+    CompletableFuture<String> leader = inFlight.putIfAbsent(key, mine);
+    if (leader != null) {
+      coalesced.incrementAndGet();
+      try {
+        return leader.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+    }
+    try {
+      String value = load(key);
+      mine.complete(value);
+      return value;
+    } catch (RuntimeException e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, mine);
+    }
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  /**
+   * Reads answered by a cached store miss.
+   */
+  public long negativeHits() {
+    return negativeHits.get();
+  }
+
+  /**
+   * Misses that waited on another caller's load in this JVM.
+   */
+  public long coalesced() {
+    return coalesced.get();
+  }
+
+  /**
+   * Misses that waited on another node's lease.
+   */
+  public long leaseWaits() {
+    return leaseWaits.get();
+  }
+
+  public long storeReads() {
+    return storeReads.get();
+  }
+
+  private String load(String key) {
+    try (Jedis jedis = pool.getResource()) {
+      return leaseTtlMillis > 0 ? loadUnderLease(jedis, key) : loadAndPopulate(jedis, key);
+    }
+  }
+
+  private String loadUnderLease(Jedis jedis, String key) {
+    String leaseKey = LEASE_PREFIX + key;
+    String token = UUID.randomUUID().toString();
+    long deadline = System.currentTimeMillis() + maxWaitMillis;
+    long pollMillis = POLL_MIN_MILLIS;
+    boolean waited = false;
+
+    while (true) {
+      if (jedis.set(leaseKey, token, SetParams.setParams().nx().px(leaseTtlMillis)) != null) {
+        try {
+          // The previous holder may have filled the key just before its lease went away
+          Cached cached = readCached(jedis, key);
+          return cached.state != Cached.State.ABSENT ? cached.value : loadAndPopulate(jedis, key);
+        } finally {
+          scripts.compareAndDelete(jedis, leaseKey, token);
+        }
+      }
+
+      if (!waited) {
+        leaseWaits.incrementAndGet();
+        waited = true;
+      }
+      if (System.currentTimeMillis() >= deadline) {
+        return loadAndPopulate(jedis, key);
+      }
+      sleep(pollMillis);
+      pollMillis = Math.min(pollMillis * 2, POLL_MAX_MILLIS);
+
+      Cached cached = readCached(jedis, key);
+      if (cached.state != Cached.State.ABSENT) {
+        return cached.value;
+      }
+    }
+  }
+
+  private Cached readCached(Jedis jedis, String key) {
+    if (negativeTtlMillis == 0) {
+      String value = jedis.get(key);
+      return value != null ? Cached.hit(value) : Cached.ABSENT;
+    }
+    List<String> values = jedis.mget(key, MISS_PREFIX + key);
+    if (values.get(0) != null) {
+      return Cached.hit(values.get(0));
+    }
+    return values.get(1) != null ? Cached.NEGATIVE : Cached.ABSENT;
+  }
+
+  private String loadAndPopulate(Jedis jedis, String key) {
+    storeReads.incrementAndGet();
+    String value = store.get(key);
+    if (value != null) {
+      jedis.set(key, value, SetParams.setParams().px(ttlMillis));
+    } else if (negativeTtlMillis > 0) {
+      jedis.set(MISS_PREFIX + key, "", SetParams.setParams().px(negativeTtlMillis));
+    }
+    return value;
+  }
+
+  /**
+   * What Redis holds for a key: its value (HIT), a cached store miss (NEGATIVE), or
+   * nothing (ABSENT). The value is null unless the state is HIT.
+   */
+  private static final class Cached {
+    enum State { HIT, NEGATIVE, ABSENT }
+
+    static final Cached NEGATIVE = new Cached(State.NEGATIVE, null);
+    static final Cached ABSENT = new Cached(State.ABSENT, null);
+
+    final State state;
+    final String value;
+
+    private Cached(State state, String value) {
+      this.state = state;
+      this.value = value;
+    }
+
+    static Cached hit(String value) {
+      return new Cached(State.HIT, value);
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for lease", e);
+    }
+  }
+}
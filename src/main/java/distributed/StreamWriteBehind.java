@@ -0,0 +1,298 @@
+package distributed;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.XAddParams;
+import redis.clients.jedis.params.XAutoClaimParams;
+import redis.clients.jedis.params.XReadGroupParams;
+import redis.clients.jedis.resps.StreamEntry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import store.BackingStore;
+
+/**
+ * Durable write-behind: every mutation is appended to a Redis stream, and a consumer group
+ * of workers (on any number of nodes) applies them to the store in batches.
+ *
+ * Design:
+ * - A write is SET + XADD in one MULTI/EXEC transaction, so the cached value and its
+ *   stream entry land together; once it returns, the mutation survives this JVM dying,
+ *   unlike a task in a local executor
+ * - Workers read with XREADGROUP, so each entry goes to one worker; a batch is coalesced
+ *   to one write per key and applied with one putAll
+ * - Batches for one key can finish out of order on different workers, so a worker writes
+ *   the cached value and, after the store accepts it, checks the cache again and rewrites
+ *   keys that changed meanwhile; the store converges on the cache once writes stop.
+ *   Keys the cache has already expired are written from the entry and not checked
+ * - Entries are XACKed and XDELed only after the store accepted the batch; a failed batch
+ *   stays pending
+ * - Pending entries idle longer than claimIdle (a failed batch, or a worker that died) are
+ *   taken over with XAUTOCLAIM by whichever worker looks next, so nothing is stranded
+ * - Workers scale horizontally: more workers or more nodes with the same group name
+ */
+public class StreamWriteBehind implements AutoCloseable {
+  private static final String KEY_FIELD = "k";
+  private static final String VALUE_FIELD = "v";
+  private static final int MAX_APPLY_ROUNDS = 3;
+
+  private final JedisPool pool;
+  private final BackingStore<String, String> store;
+  private final String stream;
+  private final String group;
+  private final int batchSize;
+  private final int blockMillis;
+  private final long claimIdleMillis;
+  private final List<Thread> workers = new ArrayList<>();
+  private volatile boolean closed;
+
+  private final AtomicLong appended = new AtomicLong();
+  private final AtomicLong batchesApplied = new AtomicLong();
+  private final AtomicLong entriesApplied = new AtomicLong();
+  private final AtomicLong coalescedEntries = new AtomicLong();
+  private final AtomicLong failedBatches = new AtomicLong();
+  private final AtomicLong reclaimed = new AtomicLong();
+  private final AtomicLong rewrites = new AtomicLong();
+
+  /**
+   * @param workerCount consumer threads on this node
+   * @param block how long a worker's XREADGROUP waits for entries; keep it under the pool's
+   *     socket timeout
+   * @param claimIdle how long an entry may stay pending before another worker takes it over
+   */
+  public StreamWriteBehind(JedisPool pool, BackingStore<String, String> store, String stream, String group,
+      int workerCount, int batchSize, Duration block, Duration claimIdle) {
+    if (workerCount <= 0 || batchSize <= 0) {
+      throw new IllegalArgumentException("workerCount and batchSize must be positive: " + workerCount + ", "
+          + batchSize);
+    }
+    this.pool = pool;
+    this.store = store;
+    this.stream = stream;
+    this.group = group;
+    this.batchSize = batchSize;
+    this.blockMillis = (int) block.toMillis();
+    this.claimIdleMillis = claimIdle.toMillis();
+    createGroup();
+
+    String node = UUID.randomUUID().toString().substring(0, 8);
+    for (int i = 0; i < workerCount; i++) {
+      String consumer = node + "-" + i;
+      Thread worker = new Thread(() -> runWorker(consumer), "stream-write-behind-" + i);
+      worker.setDaemon(true);
+      workers.add(worker);
+      worker.start();
+    }
+  }
+
+  public void write(String key, String value) {
+    Map<String, String> fields = new HashMap<>();
+    fields.put(KEY_FIELD, key);
+    fields.put(VALUE_FIELD, value);
+    try (Jedis jedis = pool.getResource()) {
+      // Both or neither: a cached value is never left without the stream entry that persists it
+      Transaction transaction = jedis.multi();
+      transaction.set(key, value);
+      transaction.xadd(stream, XAddParams.xAddParams(), fields);
+      transaction.exec();
+    }
+    appended.incrementAndGet();
+  }
+
+  /**
+   * Entries appended but not yet applied, on any node.
+   */
+  public long backlog() {
+    try (Jedis jedis = pool.getResource()) {
+      return jedis.xlen(stream);
+    }
+  }
+
+  public long appended() {
+    return appended.get();
+  }
+
+  public long batchesApplied() {
+    return batchesApplied.get();
+  }
+
+  public long entriesApplied() {
+    return entriesApplied.get();
+  }
+
+  /**
+   * Entries superseded by a later write to the same key in the same batch.
+   */
+  public long coalescedEntries() {
+    return coalescedEntries.get();
+  }
+
+  public long failedBatches() {
+    return failedBatches.get();
+  }
+
+  public long reclaimed() {
+    return reclaimed.get();
+  }
+
+  /**
+   * Keys written again because a newer cached value appeared while their batch was applied.
+   */
+  public long rewrites() {
+    return rewrites.get();
+  }
+
+  /**
+   * Stops this node's workers; entries they had not acknowledged are reclaimed by others.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    for (Thread worker : workers) {
+      try {
+        worker.join(blockMillis + 1000L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void createGroup() {
+    try (Jedis jedis = pool.getResource()) {
+      // From the start of the stream, so entries written before any worker existed are applied
+      jedis.xgroupCreate(stream, group, new StreamEntryID(0, 0), true);
+    } catch (JedisDataException e) {
+      if (!e.getMessage().startsWith("BUSYGROUP")) {
+        throw e;
+      }
+    }
+  }
+
+  private void runWorker(String consumer) {
+    StreamEntryID start = new StreamEntryID(0, 0);
+    StreamEntryID claimCursor = start;
+    long lastClaimScan = 0;
+    while (!closed) {
+      try (Jedis jedis = pool.getResource()) {
+        // Scan for stranded entries a couple of times per claimIdle, and to the end once started
+        long now = System.currentTimeMillis();
+        if (!claimCursor.equals(start) || now - lastClaimScan >= claimIdleMillis / 2) {
+          lastClaimScan = now;
+          Map.Entry<StreamEntryID, List<StreamEntry>> claim = jedis.xautoclaim(stream, group, consumer,
+              claimIdleMillis, claimCursor, XAutoClaimParams.xAutoClaimParams().count(batchSize));
+          claimCursor = claim.getKey();
+          if (!claim.getValue().isEmpty()) {
+            reclaimed.addAndGet(claim.getValue().size());
+            apply(jedis, claim.getValue());
+            continue;
+          }
+        }
+
+        List<Map.Entry<String, List<StreamEntry>>> read = jedis.xreadGroup(group, consumer,
+            XReadGroupParams.xReadGroupParams().count(batchSize).block(blockMillis),
+            Collections.singletonMap(stream, StreamEntryID.UNRECEIVED_ENTRY));
+        if (read != null) {
+          for (Map.Entry<String, List<StreamEntry>> entries : read) {
+            apply(jedis, entries.getValue());
+          }
+        }
+      } catch (RuntimeException e) {
+        if (closed) {
+          return;
+        }
+        System.err.println("   [stream-write-behind] " + consumer + ": " + e.getMessage());
+        try {
+          Thread.sleep(claimIdleMillis);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+      }
+    }
+  }
+
+  private void apply(Jedis jedis, List<StreamEntry> entries) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    Map<String, String> batch = new LinkedHashMap<>();
+    StreamEntryID[] ids = new StreamEntryID[entries.size()];
+    for (int i = 0; i < entries.size(); i++) {
+      StreamEntry entry = entries.get(i);
+      ids[i] = entry.getID();
+      // A reclaimed entry can have been deleted meanwhile; it then has no fields
+      Map<String, String> fields = entry.getFields();
+      if (fields == null || fields.get(KEY_FIELD) == null) {
+        continue;
+      }
+      if (batch.put(fields.get(KEY_FIELD), fields.get(VALUE_FIELD)) != null) {
+        coalescedEntries.incrementAndGet();
+      }
+    }
+
+    // Apply what the cache holds now rather than the entry's copy, which may be older. The
+    // entry's copy covers keys the cache has already expired
+    batch.putAll(changedFrom(jedis, batch));
+    Map<String, String> toWrite = batch;
+
+    // Reading the cache first is not enough: a worker can read v1, another worker store v2,
+    // and the first one's write of v1 land last. So after each write, re-read the cache and
+    // write again any key that no longer matches. The last store write to a key is always
+    // followed by a check that passes, so store and cache converge once writes stop
+    for (int round = 0; !toWrite.isEmpty(); round++) {
+      if (round == MAX_APPLY_ROUNDS) {
+        // Still racing newer writes; left pending, and applied afresh when reclaimed
+        failedBatches.incrementAndGet();
+        System.err.println("   [stream-write-behind] batch of " + entries.size() + " kept changing under "
+            + MAX_APPLY_ROUNDS + " writes; leaving it pending");
+        return;
+      }
+      try {
+        store.putAll(toWrite);
+      } catch (RuntimeException e) {
+        // Left pending; XAUTOCLAIM hands it out again after claimIdle
+        failedBatches.incrementAndGet();
+        System.err.println("   [stream-write-behind] batch of " + entries.size() + " failed: " + e.getMessage());
+        return;
+      }
+      toWrite = changedFrom(jedis, toWrite);
+      rewrites.addAndGet(toWrite.size());
+    }
+    Pipeline pipeline = jedis.pipelined();
+    pipeline.xack(stream, group, ids);
+    pipeline.xdel(stream, ids);
+    pipeline.sync();
+    batchesApplied.incrementAndGet();
+    entriesApplied.addAndGet(entries.size());
+  }
+
+  /**
+   * Returns the keys whose cached value is now different from the given one, with that
+   * cached value. Keys the cache no longer holds cannot be checked and are left out.
+   */
+  private static Map<String, String> changedFrom(Jedis jedis, Map<String, String> written) {
+    List<String> keys = new ArrayList<>(written.keySet());
+    if (keys.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    List<String> current = jedis.mget(keys.toArray(new String[0]));
+    Map<String, String> changed = new HashMap<>();
+    for (int i = 0; i < keys.size(); i++) {
+      String value = current.get(i);
+      if (value != null && !value.equals(written.get(keys.get(i)))) {
+        changed.put(keys.get(i), value);
+      }
+    }
+    return changed;
+  }
+}
@@ -0,0 +1,192 @@
+package distributed;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.ProtocolVersion;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client-side cache kept coherent by Redis itself (CLIENT TRACKING, Redis 6+), over one
+ * Lettuce RESP3 connection.
+ *
+ * Design:
+ * - The server remembers what this connection read (default mode) or every key under the
+ *   given prefixes (BCAST mode) and pushes an "invalidate" message when any client changes
+ *   one; the push arrives on the same connection, ordered with the replies
+ * - A hit is a lookup in a bounded Caffeine map, with no round trip
+ * - A miss parks a placeholder in the map before sending GET and swaps the value in only
+ *   if the placeholder is still there, so an invalidation that overtakes the reply on its
+ *   way to the caller is never lost
+ * - A null invalidation (server flush, or tracking table overflow) clears the whole map
+ * - Tracking state dies with the connection: on disconnect the map is cleared and nothing
+ *   is cached again until tracking has been re-enabled on the new connection
+ */
+public class TrackingCache implements AutoCloseable {
+  private final RedisClient client;
+  private final StatefulRedisConnection<String, String> connection;
+  private final String[] prefixes;
+  private final ConcurrentMap<String, Object> local;
+  private volatile boolean tracking;
+
+  private final AtomicLong localHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * Default tracking: the server tracks the keys this client has read.
+   */
+  public static TrackingCache tracking(RedisURI uri, long maximumSize) {
+    return new TrackingCache(uri, maximumSize, TrackingArgs.Builder.enabled(), new String[0]);
+  }
+
+  /**
+   * Broadcast tracking: the server invalidates every key under the prefixes, read or not.
+   * Cheaper for the server when many clients share a key space; only keys under the
+   * prefixes are cached locally.
+   */
+  public static TrackingCache broadcast(RedisURI uri, long maximumSize, String... prefixes) {
+    if (prefixes.length == 0) {
+      throw new IllegalArgumentException("Broadcast tracking needs at least one prefix");
+    }
+    return new TrackingCache(uri, maximumSize, TrackingArgs.Builder.enabled().bcast().prefixes(prefixes), prefixes);
+  }
+
+  private TrackingCache(RedisURI uri, long maximumSize, TrackingArgs trackingArgs, String[] prefixes) {
+    this.prefixes = prefixes.clone();
+    Cache<String, Object> cache = Caffeine.newBuilder().maximumSize(maximumSize).build();
+    this.local = cache.asMap();
+
+    // Invalidations are RESP3 push messages; RESP2 would need a second, subscribed connection
+    this.client = RedisClient.create(uri);
+    client.setOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP3).build());
+    this.connection = client.connect();
+    connection.addListener(this::onPushMessage);
+    connection.addListener(new RedisConnectionStateListener() {
+      @Override
+      public void onRedisConnected(RedisChannelHandler<?, ?> handler, SocketAddress address) {
+        connection.async().clientTracking(trackingArgs).thenRun(() -> tracking = true);
+      }
+
+      @Override
+      public void onRedisDisconnected(RedisChannelHandler<?, ?> handler) {
+        tracking = false;
+        local.clear();
+      }
+    });
+    connection.sync().clientTracking(trackingArgs);
+    tracking = true;
+  }
+
+  public String get(String key) {
+    Object cached = local.get(key);
+    if (cached instanceof String) {
+      localHits.incrementAndGet();
+      return (String) cached;
+    }
+    misses.incrementAndGet();
+
+    if (!tracking || !cacheable(key)) {
+      return connection.sync().get(key);
+    }
+    Object placeholder = new Object();
+    if (cached != null || local.putIfAbsent(key, placeholder) != null) {
+      // Another caller's read of the key is in flight and will fill the map
+      return connection.sync().get(key);
+    }
+    String value;
+    try {
+      value = connection.sync().get(key);
+    } catch (RuntimeException e) {
+      local.remove(key, placeholder);
+      throw e;
+    }
+    if (value == null) {
+      local.remove(key, placeholder);
+    } else {
+      // Fails if an invalidation removed the placeholder while the reply was in flight
+      local.replace(key, placeholder, value);
+    }
+    return value;
+  }
+
+  /**
+   * Writes to Redis. The server's own invalidation drops the local copy, here and on every
+   * other tracking client.
+   */
+  public void set(String key, String value) {
+    connection.sync().set(key, value);
+    local.remove(key);
+  }
+
+  public void delete(String key) {
+    connection.sync().del(key);
+    local.remove(key);
+  }
+
+  public long localSize() {
+    return local.values().stream().filter(v -> v instanceof String).count();
+  }
+
+  public long localHits() {
+    return localHits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  /**
+   * Keys named in invalidation pushes, plus one per full flush.
+   */
+  public long invalidations() {
+    return invalidations.get();
+  }
+
+  @Override
+  public void close() {
+    connection.close();
+    client.shutdown();
+  }
+
+  private boolean cacheable(String key) {
+    if (prefixes.length == 0) {
+      return true;
+    }
+    for (String prefix : prefixes) {
+      if (key.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void onPushMessage(PushMessage message) {
+    if (!"invalidate".equals(message.getType())) {
+      return;
+    }
+    List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+    Object keys = content.size() > 1 ? content.get(1) : null;
+    if (keys == null) {
+      invalidations.incrementAndGet();
+      local.clear();
+      return;
+    }
+    for (Object key : (List<Object>) keys) {
+      invalidations.incrementAndGet();
+      local.remove((String) key);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package distributed;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import invalidation.XFetch;
+
+/**
+ * Redis cache-aside with probabilistic early expiration ({@link XFetch}) instead of a hard
+ * SETEX boundary.
+ *
+ * Each key is a hash holding the value and the time its last recompute took, with a
+ * PEXPIRE TTL. A read fetches both fields and the remaining TTL in one pipelined round
+ * trip; XFetch then decides whether this reader recomputes now. Across many app servers
+ * one reader usually recomputes shortly before expiry, so the key never disappears
+ * under load and the backend sees one recompute instead of a burst.
+ */
+public class XFetchRedisCache {
+  private static final String VALUE_FIELD = "v";
+  private static final String DELTA_FIELD = "d";
+
+  private final JedisPool pool;
+  private final long ttlMillis;
+  private final double beta;
+  private final Function<String, String> loader;
+  private final AtomicLong recomputes = new AtomicLong();
+  private final AtomicLong earlyRecomputes = new AtomicLong();
+
+  public XFetchRedisCache(JedisPool pool, Duration ttl, double beta, Function<String, String> loader) {
+    this.pool = pool;
+    this.ttlMillis = ttl.toMillis();
+    this.beta = beta;
+    this.loader = loader;
+  }
+
+  public String get(String key) {
+    try (Jedis jedis = pool.getResource()) {
+      Pipeline pipeline = jedis.pipelined();
+      Response<List<String>> fields = pipeline.hmget(key, VALUE_FIELD, DELTA_FIELD);
+      Response<Long> remaining = pipeline.pttl(key);
+      pipeline.sync();
+
+      String value = fields.get().get(0);
+      String delta = fields.get().get(1);
+      long ttl = remaining.get();
+      if (value != null && delta != null && ttl > 0) {
+        long now = System.currentTimeMillis();
+        if (!XFetch.shouldRecompute(now, Long.parseLong(delta), now + ttl, beta)) {
+          return value;
+        }
+        earlyRecomputes.incrementAndGet();
+      }
+      return recompute(jedis, key);
+    }
+  }
+
+  public long recomputes() {
+    return recomputes.get();
+  }
+
+  public long earlyRecomputes() {
+    return earlyRecomputes.get();
+  }
+
+  private String recompute(Jedis jedis, String key) {
+    recomputes.incrementAndGet();
+    long start = System.currentTimeMillis();
+    String value = loader.apply(key);
+    long delta = Math.max(1, System.currentTimeMillis() - start);
+    if (value == null) {
+      return null;
+    }
+    Map<String, String> fields = new HashMap<>();
+    fields.put(VALUE_FIELD, value);
+    fields.put(DELTA_FIELD, Long.toString(delta));
+    // Value, cost and TTL change together or not at all
+    Transaction transaction = jedis.multi();
+    transaction.hset(key, fields);
+    transaction.pexpire(key, ttlMillis);
+    transaction.exec();
+    return value;
+  }
+}
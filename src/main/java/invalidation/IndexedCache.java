@@ -0,0 +1,162 @@
+package invalidation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Caffeine cache with secondary indexes over its keys, so a ban costs time proportional
+ * to the entries it removes rather than to the size of the cache.
+ *
+ * Design:
+ * - Prefix index: a ConcurrentSkipListSet of keys. Keys sharing a prefix are contiguous
+ *   in sorted order, so a prefix ban is one O(log n) seek plus a walk over the matches
+ * - Tag index: tag -> keys, with key -> tags alongside so a removed key can be unlinked
+ *   from exactly its own tags
+ * - Every write and removal updates the indexes inside the entry's compute, and the
+ *   eviction listener runs synchronously under that same lock, so size and expiry
+ *   evictions cannot leave a live key unindexed or an indexed key resurrected
+ */
+public class IndexedCache<V> {
+  private final Cache<String, V> cache;
+  private final ConcurrentSkipListSet<String> keys = new ConcurrentSkipListSet<>();
+  private final Map<String, Set<String>> keysByTag = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> tagsByKey = new ConcurrentHashMap<>();
+
+  /**
+   * @param builder size and expiry settings; must not already have an eviction listener
+   */
+  public IndexedCache(Caffeine<Object, Object> builder) {
+    this.cache = builder
+        .evictionListener((String key, V value, RemovalCause cause) -> {
+          if (key != null) {
+            unindex(key);
+          }
+        })
+        .build();
+  }
+
+  public V getIfPresent(String key) {
+    return cache.getIfPresent(key);
+  }
+
+  /**
+   * Caches the value under the key, replacing any tags it had with the given ones.
+   */
+  public void put(String key, V value, String... tags) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    Set<String> tagSet = tags.length == 0 ? Collections.emptySet() : new HashSet<>(Arrays.asList(tags));
+    cache.asMap().compute(key, (k, previous) -> {
+      unlinkTags(k);
+      keys.add(k);
+      if (!tagSet.isEmpty()) {
+        tagsByKey.put(k, tagSet);
+        for (String tag : tagSet) {
+          keysByTag.compute(tag, (t, tagged) -> {
+            Set<String> set = tagged == null ? ConcurrentHashMap.newKeySet() : tagged;
+            set.add(k);
+            return set;
+          });
+        }
+      }
+      return value;
+    });
+  }
+
+  public void invalidate(String key) {
+    cache.asMap().compute(key, (k, previous) -> {
+      unindex(k);
+      return null;
+    });
+  }
+
+  /**
+   * Removes every entry whose key starts with the prefix and returns how many there were.
+   */
+  public int banPrefix(String prefix) {
+    List<String> matches = new ArrayList<>();
+    for (String key : keys.tailSet(prefix)) {
+      if (!key.startsWith(prefix)) {
+        break;
+      }
+      matches.add(key);
+    }
+    return invalidateAll(matches);
+  }
+
+  /**
+   * Removes every entry carrying the tag and returns how many there were.
+   */
+  public int banTag(String tag) {
+    Set<String> tagged = keysByTag.get(tag);
+    return tagged == null ? 0 : invalidateAll(new ArrayList<>(tagged));
+  }
+
+  public long estimatedSize() {
+    return cache.estimatedSize();
+  }
+
+  /**
+   * Read-only view; writes must go through put so the indexes stay in step.
+   */
+  public Map<String, V> asMap() {
+    return Collections.unmodifiableMap(cache.asMap());
+  }
+
+  public int indexedKeys() {
+    return keys.size();
+  }
+
+  public int tagCount() {
+    return keysByTag.size();
+  }
+
+  public void cleanUp() {
+    cache.cleanUp();
+  }
+
+  private int invalidateAll(List<String> matches) {
+    int removed = 0;
+    for (String key : matches) {
+      boolean[] present = new boolean[1];
+      cache.asMap().compute(key, (k, previous) -> {
+        present[0] = previous != null;
+        unindex(k);
+        return null;
+      });
+      if (present[0]) {
+        removed++;
+      }
+    }
+    return removed;
+  }
+
+  private void unindex(String key) {
+    keys.remove(key);
+    unlinkTags(key);
+  }
+
+  private void unlinkTags(String key) {
+    Set<String> tags = tagsByKey.remove(key);
+    if (tags == null) {
+      return;
+    }
+    for (String tag : tags) {
+      keysByTag.computeIfPresent(tag, (t, tagged) -> {
+        tagged.remove(key);
+        return tagged.isEmpty() ? null : tagged;
+      });
+    }
+  }
+}
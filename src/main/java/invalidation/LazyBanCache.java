@@ -0,0 +1,239 @@
+package invalidation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Caffeine cache with Varnish-style lazy bans: a ban is recorded, not executed.
+ *
+ * Design:
+ * - The ban list is a singly linked list, newest first, and each ban carries the next
+ *   generation number; adding a ban is one CAS on the head, whatever the cache size
+ * - Every entry is stamped with the generation it was last checked at. A read walks only
+ *   the bans newer than that stamp; a match drops the entry and the read misses,
+ *   otherwise the stamp moves up to the current head
+ * - A background sweeper checks every entry the same way, so entries that are never read
+ *   are still dropped. Bans two sweeps old have been checked against every entry (a
+ *   loaded entry is validated against bans that arrived during its load), so the sweeper
+ *   cuts them off the list
+ *
+ * Request threads never scan the cache, however many bans arrive.
+ */
+public class LazyBanCache<K, V> implements AutoCloseable {
+  private final Cache<K, Stamped<V>> cache;
+  private final AtomicReference<Ban<K, V>> head = new AtomicReference<>(new Ban<>(0, (k, v) -> false, null));
+  private final ScheduledExecutorService sweeper;
+  private long previousSweepGeneration;
+
+  private final AtomicLong bansAdded = new AtomicLong();
+  private final AtomicLong lazyDrops = new AtomicLong();
+  private final AtomicLong sweeperDrops = new AtomicLong();
+
+  public LazyBanCache(Caffeine<Object, Object> builder, Duration sweepInterval) {
+    this.cache = builder.build();
+    this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "ban-sweeper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long intervalMillis = sweepInterval.toMillis();
+    sweeper.scheduleWithFixedDelay(this::sweep, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Records a ban in O(1); matching entries disappear on their next read or sweep.
+   */
+  public void ban(BiPredicate<? super K, ? super V> predicate) {
+    Ban<K, V> current;
+    Ban<K, V> added;
+    do {
+      current = head.get();
+      added = new Ban<>(current.generation + 1, predicate, current);
+    } while (!head.compareAndSet(current, added));
+    bansAdded.incrementAndGet();
+  }
+
+  public V getIfPresent(K key) {
+    Stamped<V> stamped = cache.getIfPresent(key);
+    if (stamped == null) {
+      return null;
+    }
+    if (isBanned(key, stamped)) {
+      cache.asMap().remove(key, stamped);
+      lazyDrops.incrementAndGet();
+      return null;
+    }
+    return stamped.value;
+  }
+
+  /**
+   * Returns the cached value, loading it on a miss or after a ban dropped it.
+   */
+  public V get(K key, Function<? super K, ? extends V> loader) {
+    V cached = getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+    Object[] loaded = new Object[1];
+    Stamped<V> stamped = cache.get(key, k -> {
+      long before = head.get().generation;
+      V value = loader.apply(k);
+      loaded[0] = value;
+      if (value == null) {
+        return null;
+      }
+      // A ban recorded while the loader ran may already cover this value
+      Ban<K, V> latest = head.get();
+      return matches(latest, before, k, value) ? null : new Stamped<>(value, latest.generation);
+    });
+    if (stamped != null) {
+      return stamped.value;
+    }
+    @SuppressWarnings("unchecked")
+    V value = (V) loaded[0];
+    return value;
+  }
+
+  public void put(K key, V value) {
+    cache.put(key, new Stamped<>(value, head.get().generation));
+  }
+
+  public void invalidate(K key) {
+    cache.invalidate(key);
+  }
+
+  /**
+   * Bans not yet retired, i.e. not yet known to be checked against every entry.
+   */
+  public int outstandingBans() {
+    int count = 0;
+    for (Ban<K, V> ban = head.get(); ban.next != null; ban = ban.next) {
+      count++;
+    }
+    return count;
+  }
+
+  public long estimatedSize() {
+    return cache.estimatedSize();
+  }
+
+  public long bansAdded() {
+    return bansAdded.get();
+  }
+
+  public long lazyDrops() {
+    return lazyDrops.get();
+  }
+
+  public long sweeperDrops() {
+    return sweeperDrops.get();
+  }
+
+  /**
+   * Runs one sweep now instead of waiting for the schedule.
+   */
+  public void sweepNow() throws InterruptedException {
+    try {
+      sweeper.submit(this::sweep).get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Ban sweep failed", e.getCause());
+    }
+  }
+
+  @Override
+  public void close() {
+    sweeper.shutdownNow();
+  }
+
+  /**
+   * Checks every entry against outstanding bans, then retires the bans that were already
+   * outstanding when the previous sweep started.
+   */
+  private void sweep() {
+    long generation = head.get().generation;
+    if (generation == previousSweepGeneration && outstandingBans() == 0) {
+      return;
+    }
+    for (Map.Entry<K, Stamped<V>> entry : cache.asMap().entrySet()) {
+      Stamped<V> stamped = entry.getValue();
+      if (stamped.checked < generation && isBanned(entry.getKey(), stamped)) {
+        if (cache.asMap().remove(entry.getKey(), stamped)) {
+          sweeperDrops.incrementAndGet();
+        }
+      }
+    }
+    retire(previousSweepGeneration);
+    previousSweepGeneration = generation;
+  }
+
+  /**
+   * Cuts the list after the newest ban at or below the generation; that ban stays as the
+   * tail, so everything after it is unreachable.
+   */
+  private void retire(long generation) {
+    Ban<K, V> ban = head.get();
+    while (ban.generation > generation && ban.next != null) {
+      ban = ban.next;
+    }
+    if (ban.generation <= generation) {
+      ban.next = null;
+    }
+  }
+
+  /**
+   * Walks the bans newer than the entry's stamp. A clean entry is re-stamped at the head
+   * it was checked against, so the next read starts from there.
+   */
+  private boolean isBanned(K key, Stamped<V> stamped) {
+    Ban<K, V> latest = head.get();
+    if (latest.generation <= stamped.checked) {
+      return false;
+    }
+    if (matches(latest, stamped.checked, key, stamped.value)) {
+      return true;
+    }
+    stamped.checked = latest.generation;
+    return false;
+  }
+
+  private static <K, V> boolean matches(Ban<K, V> from, long checked, K key, V value) {
+    for (Ban<K, V> ban = from; ban != null && ban.generation > checked; ban = ban.next) {
+      if (ban.predicate.test(key, value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static final class Ban<K, V> {
+    final long generation;
+    final BiPredicate<? super K, ? super V> predicate;
+    volatile Ban<K, V> next;
+
+    Ban(long generation, BiPredicate<? super K, ? super V> predicate, Ban<K, V> next) {
+      this.generation = generation;
+      this.predicate = predicate;
+      this.next = next;
+    }
+  }
+
+  private static final class Stamped<V> {
+    final V value;
+    volatile long checked;
+
+    Stamped(V value, long checked) {
+      this.value = value;
+      this.checked = checked;
+    }
+  }
+}
@@ -0,0 +1,210 @@
+package invalidation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Stale-while-revalidate cache backed by a single Caffeine store.
+ *
+ * Each entry carries two deadlines:
+ * - soft expiry: until then the value is fresh and served as is
+ * - hard expiry: between soft and hard the value is served immediately while one
+ *   background refresh replaces it; past hard expiry the read reloads synchronously
+ *
+ * Stale-if-error: the store keeps an entry for staleIfError beyond its hard expiry, and
+ * a synchronous reload that fails in that window serves the old value instead of
+ * failing the read. A failed background refresh leaves the stale value in place and the
+ * next stale read tries again.
+ *
+ * One refresh per key: a flag on the entry is claimed by CAS, so however many readers
+ * see the entry stale, only the first starts a refresh. Misses and hard reloads go
+ * through the store's per-key compute, so concurrent readers share one load.
+ */
+public class StaleWhileRevalidateCache<K, V> {
+  @SuppressWarnings("rawtypes")
+  private static final AtomicIntegerFieldUpdater<Entry> REFRESHING =
+      AtomicIntegerFieldUpdater.newUpdater(Entry.class, "refreshing");
+
+  private final Cache<K, Entry<V>> cache;
+  private final Function<? super K, ? extends V> loader;
+  private final Executor refreshExecutor;
+  private final long softTtlNanos;
+  private final long hardTtlNanos;
+
+  private final AtomicLong freshHits = new AtomicLong();
+  private final AtomicLong staleHits = new AtomicLong();
+  private final AtomicLong staleIfErrorHits = new AtomicLong();
+  private final AtomicLong loads = new AtomicLong();
+  private final AtomicLong refreshes = new AtomicLong();
+  private final AtomicLong refreshFailures = new AtomicLong();
+
+  /**
+   * @param softTtl how long a value is fresh
+   * @param hardTtl how long a value may be served at all while a refresh runs; at least softTtl
+   * @param staleIfError how long past hard expiry a value may stand in for a failed reload
+   */
+  public StaleWhileRevalidateCache(long maximumSize, Duration softTtl, Duration hardTtl, Duration staleIfError,
+      Function<? super K, ? extends V> loader, Executor refreshExecutor) {
+    if (hardTtl.compareTo(softTtl) < 0) {
+      throw new IllegalArgumentException("hardTtl must be at least softTtl: " + hardTtl + " < " + softTtl);
+    }
+    this.loader = loader;
+    this.refreshExecutor = refreshExecutor;
+    this.softTtlNanos = softTtl.toNanos();
+    this.hardTtlNanos = hardTtl.toNanos();
+    long retainNanos = staleIfError.toNanos();
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfter(new Expiry<K, Entry<V>>() {
+          @Override
+          public long expireAfterCreate(K key, Entry<V> entry, long currentTime) {
+            return entry.hardExpiresAt + retainNanos - currentTime;
+          }
+
+          @Override
+          public long expireAfterUpdate(K key, Entry<V> entry, long currentTime, long currentDuration) {
+            return entry.hardExpiresAt + retainNanos - currentTime;
+          }
+
+          @Override
+          public long expireAfterRead(K key, Entry<V> entry, long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+        })
+        .build();
+  }
+
+  public V get(K key) {
+    Entry<V> entry = cache.getIfPresent(key);
+    if (entry == null) {
+      return load(key);
+    }
+    long now = System.nanoTime();
+    if (now - entry.softExpiresAt < 0) {
+      freshHits.incrementAndGet();
+      return entry.value;
+    }
+    if (now - entry.hardExpiresAt < 0) {
+      staleHits.incrementAndGet();
+      refreshInBackground(key, entry);
+      return entry.value;
+    }
+    return reloadOrServeStale(key, entry);
+  }
+
+  public void put(K key, V value) {
+    cache.put(key, newEntry(value));
+  }
+
+  public void invalidate(K key) {
+    cache.invalidate(key);
+  }
+
+  public long estimatedSize() {
+    return cache.estimatedSize();
+  }
+
+  public long freshHits() {
+    return freshHits.get();
+  }
+
+  public long staleHits() {
+    return staleHits.get();
+  }
+
+  public long staleIfErrorHits() {
+    return staleIfErrorHits.get();
+  }
+
+  public long loads() {
+    return loads.get();
+  }
+
+  public long refreshes() {
+    return refreshes.get();
+  }
+
+  public long refreshFailures() {
+    return refreshFailures.get();
+  }
+
+  private V load(K key) {
+    Entry<V> loaded = cache.get(key, k -> {
+      loads.incrementAndGet();
+      V value = loader.apply(k);
+      return value == null ? null : newEntry(value);
+    });
+    return loaded == null ? null : loaded.value;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void refreshInBackground(K key, Entry<V> stale) {
+    if (!REFRESHING.compareAndSet(stale, 0, 1)) {
+      return;
+    }
+    refreshes.incrementAndGet();
+    CompletableFuture.supplyAsync(() -> loader.apply(key), refreshExecutor).whenComplete((value, error) -> {
+      if (error != null || value == null) {
+        refreshFailures.incrementAndGet();
+        // Let the next stale read try again
+        REFRESHING.set(stale, 0);
+        return;
+      }
+      // Only replace what we refreshed; a concurrent put or reload wins
+      cache.asMap().replace(key, stale, newEntry(value));
+    });
+  }
+
+  /**
+   * Reloads a hard-expired entry once for all concurrent readers; on failure the old value
+   * is served while the entry is inside its stale-if-error window.
+   */
+  private V reloadOrServeStale(K key, Entry<V> expired) {
+    RuntimeException[] failure = new RuntimeException[1];
+    Entry<V> result = cache.asMap().compute(key, (k, current) -> {
+      if (current != null && current != expired) {
+        return current;
+      }
+      loads.incrementAndGet();
+      try {
+        V value = loader.apply(k);
+        return value == null ? null : newEntry(value);
+      } catch (RuntimeException e) {
+        failure[0] = e;
+        return current;
+      }
+    });
+    if (failure[0] != null) {
+      if (result == null) {
+        throw failure[0];
+      }
+      staleIfErrorHits.incrementAndGet();
+    }
+    return result == null ? null : result.value;
+  }
+
+  private Entry<V> newEntry(V value) {
+    long now = System.nanoTime();
+    return new Entry<>(value, now + softTtlNanos, now + hardTtlNanos);
+  }
+
+  private static final class Entry<V> {
+    final V value;
+    final long softExpiresAt;
+    final long hardExpiresAt;
+    volatile int refreshing;
+
+    Entry(V value, long softExpiresAt, long hardExpiresAt) {
+      this.value = value;
+      this.softExpiresAt = softExpiresAt;
+      this.hardExpiresAt = hardExpiresAt;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package invalidation;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Probabilistic early expiration (XFetch, Vattani et al., "Optimal Probabilistic Cache
+ * Stampede Prevention").
+ *
+ * A reader recomputes early when  now - delta * beta * ln(random) >= expiry,  where delta
+ * is how long the last recompute took. -ln(random) is exponentially distributed, so the
+ * chance of an early recompute rises smoothly as expiry approaches, and rises sooner for
+ * values that are slow to recompute. With many readers one of them almost always
+ * refreshes the value shortly before it expires, instead of all of them missing at once.
+ *
+ * beta = 1 is the paper's optimum; above 1 refreshes earlier, below 1 later.
+ */
+public final class XFetch {
+  public static final double DEFAULT_BETA = 1.0;
+
+  private XFetch() {
+  }
+
+  /**
+   * @param now current time, in the same unit and clock as expiry
+   * @param delta time the last recompute took
+   * @param expiry time the value expires
+   */
+  public static boolean shouldRecompute(long now, long delta, long expiry, double beta) {
+    // 1 - nextDouble() is in (0, 1], so the log is finite
+    double gap = -delta * beta * Math.log(1.0 - ThreadLocalRandom.current().nextDouble());
+    return now + gap >= expiry;
+  }
+}
@@ -0,0 +1,81 @@
+package invalidation;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * LoadingCache with probabilistic early expiration ({@link XFetch}) in front of its TTL.
+ *
+ * Each entry records its expiry and how long it took to load. On a hit, XFetch decides
+ * whether this reader triggers an early refresh; the refresh runs through
+ * LoadingCache.refresh, which is asynchronous and deduplicated per key, so the reader
+ * still gets the cached value and the backend sees at most one load per key. Readers
+ * only block on a load for keys that are absent or actually expired.
+ */
+public class XFetchCache<K, V> {
+  private final LoadingCache<K, Entry<V>> cache;
+  private final long ttlNanos;
+  private final double beta;
+  private final AtomicLong earlyRefreshes = new AtomicLong();
+  private final AtomicLong loads = new AtomicLong();
+
+  public XFetchCache(long maximumSize, Duration ttl, double beta, Function<? super K, ? extends V> loader,
+      Executor refreshExecutor) {
+    this.ttlNanos = ttl.toNanos();
+    this.beta = beta;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttl)
+        .executor(refreshExecutor)
+        .build(key -> {
+          loads.incrementAndGet();
+          long start = System.nanoTime();
+          V value = loader.apply(key);
+          long end = System.nanoTime();
+          return value == null ? null : new Entry<>(value, end - start, end + ttlNanos);
+        });
+  }
+
+  public V get(K key) {
+    Entry<V> entry = cache.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (XFetch.shouldRecompute(System.nanoTime(), entry.deltaNanos, entry.expiresAt, beta)) {
+      earlyRefreshes.incrementAndGet();
+      cache.refresh(key);
+    }
+    return entry.value;
+  }
+
+  public void invalidate(K key) {
+    cache.invalidate(key);
+  }
+
+  public long loads() {
+    return loads.get();
+  }
+
+  /**
+   * Reads that drew an early refresh; concurrent draws for one key share a single load.
+   */
+  public long earlyRefreshes() {
+    return earlyRefreshes.get();
+  }
+
+  private static final class Entry<V> {
+    final V value;
+    final long deltaNanos;
+    final long expiresAt;
+
+    Entry(V value, long deltaNanos, long expiresAt) {
+      this.value = value;
+      this.deltaNanos = deltaNanos;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package resp;
+
+/**
+ * Argument parsing shared by the command families, with Redis's error messages.
+ */
+final class Args {
+  private Args() {
+  }
+
+  static long parseLong(String text) {
+    try {
+      return Long.parseLong(text);
+    } catch (NumberFormatException e) {
+      throw RespError.notInteger();
+    }
+  }
+
+  static int parseInt(String text) {
+    long value = parseLong(text);
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw RespError.notInteger();
+    }
+    return (int) value;
+  }
+
+  static double parseDouble(String text) {
+    try {
+      return SortedSet.parseScore(text);
+    } catch (NumberFormatException e) {
+      throw RespError.notFloat();
+    }
+  }
+
+  /**
+   * Positive count for COUNT-style options.
+   */
+  static int parsePositive(String text) {
+    long value = parseLong(text);
+    if (value <= 0 || value > Integer.MAX_VALUE) {
+      throw RespError.syntax();
+    }
+    return (int) value;
+  }
+
+  /**
+   * TTL in milliseconds from a seconds or milliseconds argument; non-positive fails.
+   */
+  static long parseTtlMillis(String text, boolean millis, String command) {
+    long value = parseLong(text);
+    if (value <= 0 || value > Long.MAX_VALUE / 1000) {
+      throw new RespError("ERR invalid expire time in '" + command + "' command");
+    }
+    return millis ? value : value * 1000;
+  }
+
+  static boolean is(String arg, String option) {
+    return arg.equalsIgnoreCase(option);
+  }
+}
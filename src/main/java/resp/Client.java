@@ -0,0 +1,83 @@
+package resp;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Per-connection state: protocol version, selected database, transaction, subscriptions,
+ * client-side caching and blocking state, and the input/output buffers.
+ */
+final class Client {
+  final long id;
+  final SocketChannel channel;
+  final RespReader reader = new RespReader();
+  final RespWriter writer = new RespWriter();
+  final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+  SelectionKey selectionKey;
+  boolean closing;
+
+  int protocol = 2;
+  int db;
+  String name;
+  boolean inScript;
+  boolean inExec;
+
+  boolean inMulti;
+  boolean multiFailed;
+  final List<List<String>> queued = new ArrayList<>();
+  final Set<String> watched = new HashSet<>();
+  boolean watchedKeyChanged;
+
+  final Set<String> channels = new LinkedHashSet<>();
+  final Set<String> patterns = new LinkedHashSet<>();
+
+  boolean tracking;
+  boolean trackingBroadcast;
+  boolean trackingNoLoop;
+  final List<String> trackingPrefixes = new ArrayList<>();
+
+  List<String> blockedCommand;
+  long blockedDeadline;
+  final Set<String> blockedKeys = new HashSet<>();
+
+  /** Pushes caused by this client's own command, sent after that command's reply. */
+  final List<Object> deferredPushes = new ArrayList<>();
+
+  Client(long id, SocketChannel channel) {
+    this.id = id;
+    this.channel = channel;
+  }
+
+  /**
+   * RESP3 shapes apply on the wire; script calls always see RESP2 shapes, as in Redis.
+   */
+  boolean resp3() {
+    return protocol == 3 && !inScript;
+  }
+
+  /**
+   * Blocking commands behave as non-blocking inside MULTI and scripts.
+   */
+  boolean canBlock() {
+    return !inScript && !inExec;
+  }
+
+  boolean isBlocked() {
+    return blockedCommand != null;
+  }
+
+  boolean isSubscribed() {
+    return !channels.isEmpty() || !patterns.isEmpty();
+  }
+
+  void reply(Object reply) {
+    writer.write(reply, protocol == 3);
+  }
+}
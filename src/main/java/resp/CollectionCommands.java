@@ -0,0 +1,698 @@
+package resp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static resp.Command.READONLY;
+import static resp.Command.WRITE;
+
+/**
+ * Hashes, sets, lists and sorted sets.
+ *
+ * HSCAN, SSCAN and ZSCAN return the whole collection in one call with cursor 0, as Redis
+ * does for its compact small-collection encodings; clients loop on the cursor either way.
+ */
+final class CollectionCommands {
+  private CollectionCommands() {
+  }
+
+  static void register(Command.Table table, RespServer server) {
+    registerHashes(table, server);
+    registerSets(table, server);
+    registerLists(table, server);
+    registerSortedSets(table, server);
+  }
+
+  // ---- Hashes ----
+
+  private static void registerHashes(Command.Table table, RespServer server) {
+    table.add("hset", -4, WRITE, 1, 1, 1, (client, args) -> {
+      if (args.size() % 2 != 0) {
+        throw RespError.wrongArgs("hset");
+      }
+      Map<String, String> hash = hash(server.database(client), args.get(1), true);
+      long added = 0;
+      for (int i = 2; i < args.size(); i += 2) {
+        if (hash.put(args.get(i), args.get(i + 1)) == null) {
+          added++;
+        }
+      }
+      return added;
+    });
+    table.add("hmset", -4, WRITE, 1, 1, 1, (client, args) -> {
+      if (args.size() % 2 != 0) {
+        throw RespError.wrongArgs("hmset");
+      }
+      Map<String, String> hash = hash(server.database(client), args.get(1), true);
+      for (int i = 2; i < args.size(); i += 2) {
+        hash.put(args.get(i), args.get(i + 1));
+      }
+      return Reply.OK;
+    });
+    table.add("hsetnx", 4, WRITE, 1, 1, 1, (client, args) -> {
+      Map<String, String> hash = hash(server.database(client), args.get(1), true);
+      return hash.putIfAbsent(args.get(2), args.get(3)) == null ? 1L : 0L;
+    });
+    table.add("hget", 3, READONLY, 1, 1, 1, (client, args) -> {
+      Map<String, String> hash = hash(server.database(client), args.get(1), false);
+      return hash == null ? null : hash.get(args.get(2));
+    });
+    table.add("hmget", -3, READONLY, 1, 1, 1, (client, args) -> {
+      Map<String, String> hash = hash(server.database(client), args.get(1), false);
+      List<String> values = new ArrayList<>();
+      for (String field : args.subList(2, args.size())) {
+        values.add(hash == null ? null : hash.get(field));
+      }
+      return values;
+    });
+    table.add("hgetall", 2, READONLY, 1, 1, 1, (client, args) -> {
+      Map<String, String> hash = hash(server.database(client), args.get(1), false);
+      return Reply.map(hash == null ? Map.of() : new LinkedHashMap<>(hash));
+    });
+    table.add("hkeys", 2, READONLY, 1, 1, 1, (client, args) -> {
+      Map<String, String> hash = hash(server.database(client), args.get(1), false);
+      return hash == null ? List.of() : new ArrayList<>(hash.keySet());
+    });
+    table.add("hvals", 2, READONLY, 1, 1, 1, (client, args) -> {
+      Map<String, String> hash = hash(server.database(client), args.get(1), false);
+      return hash == null ? List.of() : new ArrayList<>(hash.values());
+    });
+    table.add("hlen", 2, READONLY, 1, 1, 1, (client, args) -> {
+      Map<String, String> hash = hash(server.database(client), args.get(1), false);
+      return hash == null ? 0L : (long) hash.size();
+    });
+    table.add("hexists", 3, READONLY, 1, 1, 1, (client, args) -> {
+      Map<String, String> hash = hash(server.database(client), args.get(1), false);
+      return hash != null && hash.containsKey(args.get(2)) ? 1L : 0L;
+    });
+    table.add("hdel", -3, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      Map<String, String> hash = hash(db, args.get(1), false);
+      if (hash == null) {
+        return 0L;
+      }
+      long removed = 0;
+      for (String field : args.subList(2, args.size())) {
+        if (hash.remove(field) != null) {
+          removed++;
+        }
+      }
+      db.removeIfEmpty(args.get(1), hash.size());
+      return removed;
+    });
+    table.add("hincrby", 4, WRITE, 1, 1, 1, (client, args) -> {
+      Map<String, String> hash = hash(server.database(client), args.get(1), true);
+      long delta = Args.parseLong(args.get(3));
+      String current = hash.get(args.get(2));
+      long value;
+      try {
+        value = Math.addExact(current == null ? 0 : Long.parseLong(current), delta);
+      } catch (NumberFormatException e) {
+        throw new RespError("ERR hash value is not an integer");
+      } catch (ArithmeticException e) {
+        throw new RespError("ERR increment or decrement would overflow");
+      }
+      hash.put(args.get(2), Long.toString(value));
+      return value;
+    });
+    table.add("hincrbyfloat", 4, WRITE, 1, 1, 1, (client, args) -> {
+      Map<String, String> hash = hash(server.database(client), args.get(1), true);
+      String current = hash.get(args.get(2));
+      double value;
+      try {
+        value = (current == null ? 0 : Double.parseDouble(current)) + Args.parseDouble(args.get(3));
+      } catch (NumberFormatException e) {
+        throw new RespError("ERR hash value is not a float");
+      }
+      String text = RespWriter.formatDouble(value);
+      hash.put(args.get(2), text);
+      return text;
+    });
+    table.add("hstrlen", 3, READONLY, 1, 1, 1, (client, args) -> {
+      Map<String, String> hash = hash(server.database(client), args.get(1), false);
+      String value = hash == null ? null : hash.get(args.get(2));
+      return value == null ? 0L : (long) value.length();
+    });
+    table.add("hscan", -3, READONLY, 1, 1, 1, (client, args) -> {
+      Map<String, String> hash = hash(server.database(client), args.get(1), false);
+      String pattern = scanPattern(args);
+      List<String> flat = new ArrayList<>();
+      if (hash != null) {
+        for (Map.Entry<String, String> entry : hash.entrySet()) {
+          if (pattern == null || Glob.matches(pattern, entry.getKey())) {
+            flat.add(entry.getKey());
+            flat.add(entry.getValue());
+          }
+        }
+      }
+      return Arrays.asList("0", flat);
+    });
+  }
+
+  // ---- Sets ----
+
+  private static void registerSets(Command.Table table, RespServer server) {
+    table.add("sadd", -3, WRITE, 1, 1, 1, (client, args) -> {
+      Set<String> set = set(server.database(client), args.get(1), true);
+      long added = 0;
+      for (String member : args.subList(2, args.size())) {
+        if (set.add(member)) {
+          added++;
+        }
+      }
+      return added;
+    });
+    table.add("srem", -3, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      Set<String> set = set(db, args.get(1), false);
+      if (set == null) {
+        return 0L;
+      }
+      long removed = 0;
+      for (String member : args.subList(2, args.size())) {
+        if (set.remove(member)) {
+          removed++;
+        }
+      }
+      db.removeIfEmpty(args.get(1), set.size());
+      return removed;
+    });
+    table.add("smembers", 2, READONLY, 1, 1, 1, (client, args) -> {
+      Set<String> set = set(server.database(client), args.get(1), false);
+      return Reply.set(set == null ? List.of() : new ArrayList<>(set));
+    });
+    table.add("sismember", 3, READONLY, 1, 1, 1, (client, args) -> {
+      Set<String> set = set(server.database(client), args.get(1), false);
+      return set != null && set.contains(args.get(2)) ? 1L : 0L;
+    });
+    table.add("smismember", -3, READONLY, 1, 1, 1, (client, args) -> {
+      Set<String> set = set(server.database(client), args.get(1), false);
+      List<Long> flags = new ArrayList<>();
+      for (String member : args.subList(2, args.size())) {
+        flags.add(set != null && set.contains(member) ? 1L : 0L);
+      }
+      return flags;
+    });
+    table.add("scard", 2, READONLY, 1, 1, 1, (client, args) -> {
+      Set<String> set = set(server.database(client), args.get(1), false);
+      return set == null ? 0L : (long) set.size();
+    });
+    table.add("spop", -2, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      Set<String> set = set(db, args.get(1), false);
+      int count = args.size() > 2 ? (int) Math.min(Integer.MAX_VALUE, nonNegative(args.get(2))) : 1;
+      List<String> popped = new ArrayList<>();
+      if (set != null) {
+        Iterator<String> it = set.iterator();
+        while (it.hasNext() && popped.size() < count) {
+          popped.add(it.next());
+          it.remove();
+        }
+        db.removeIfEmpty(args.get(1), set.size());
+      }
+      if (args.size() > 2) {
+        return Reply.set(popped);
+      }
+      return popped.isEmpty() ? null : popped.get(0);
+    });
+    table.add("sunion", -2, READONLY, 1, -1, 1, (client, args) -> {
+      Database db = server.database(client);
+      Set<String> union = new LinkedHashSet<>();
+      for (String key : args.subList(1, args.size())) {
+        Set<String> set = set(db, key, false);
+        if (set != null) {
+          union.addAll(set);
+        }
+      }
+      return Reply.set(union);
+    });
+    table.add("sinter", -2, READONLY, 1, -1, 1, (client, args) -> {
+      Database db = server.database(client);
+      Set<String> intersection = null;
+      for (String key : args.subList(1, args.size())) {
+        Set<String> set = set(db, key, false);
+        if (set == null) {
+          return Reply.set(List.of());
+        }
+        if (intersection == null) {
+          intersection = new LinkedHashSet<>(set);
+        } else {
+          intersection.retainAll(set);
+        }
+      }
+      return Reply.set(intersection);
+    });
+    table.add("sscan", -3, READONLY, 1, 1, 1, (client, args) -> {
+      Set<String> set = set(server.database(client), args.get(1), false);
+      String pattern = scanPattern(args);
+      List<String> members = new ArrayList<>();
+      if (set != null) {
+        for (String member : set) {
+          if (pattern == null || Glob.matches(pattern, member)) {
+            members.add(member);
+          }
+        }
+      }
+      return Arrays.asList("0", members);
+    });
+  }
+
+  // ---- Lists ----
+
+  private static void registerLists(Command.Table table, RespServer server) {
+    table.add("lpush", -3, WRITE, 1, 1, 1, (client, args) -> push(server.database(client), args, true));
+    table.add("rpush", -3, WRITE, 1, 1, 1, (client, args) -> push(server.database(client), args, false));
+    table.add("lpop", -2, WRITE, 1, 1, 1, (client, args) -> pop(server.database(client), args, true));
+    table.add("rpop", -2, WRITE, 1, 1, 1, (client, args) -> pop(server.database(client), args, false));
+    table.add("llen", 2, READONLY, 1, 1, 1, (client, args) -> {
+      ArrayDeque<String> list = list(server.database(client), args.get(1), false);
+      return list == null ? 0L : (long) list.size();
+    });
+    table.add("lrange", 4, READONLY, 1, 1, 1, (client, args) -> {
+      ArrayDeque<String> list = list(server.database(client), args.get(1), false);
+      List<String> result = new ArrayList<>();
+      if (list == null) {
+        return result;
+      }
+      long[] range = clampRange(Args.parseLong(args.get(2)), Args.parseLong(args.get(3)), list.size());
+      long index = 0;
+      for (String element : list) {
+        if (index > range[1]) {
+          break;
+        }
+        if (index++ >= range[0]) {
+          result.add(element);
+        }
+      }
+      return result;
+    });
+    table.add("lindex", 3, READONLY, 1, 1, 1, (client, args) -> {
+      ArrayDeque<String> list = list(server.database(client), args.get(1), false);
+      if (list == null) {
+        return null;
+      }
+      long index = Args.parseLong(args.get(2));
+      index = index < 0 ? list.size() + index : index;
+      if (index < 0 || index >= list.size()) {
+        return null;
+      }
+      Iterator<String> it = list.iterator();
+      for (long i = 0; i < index; i++) {
+        it.next();
+      }
+      return it.next();
+    });
+    table.add("ltrim", 4, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      ArrayDeque<String> list = list(db, args.get(1), false);
+      if (list == null) {
+        return Reply.OK;
+      }
+      long[] range = clampRange(Args.parseLong(args.get(2)), Args.parseLong(args.get(3)), list.size());
+      ArrayDeque<String> kept = new ArrayDeque<>();
+      long index = 0;
+      for (String element : list) {
+        if (index >= range[0] && index <= range[1]) {
+          kept.add(element);
+        }
+        index++;
+      }
+      list.clear();
+      list.addAll(kept);
+      db.removeIfEmpty(args.get(1), list.size());
+      return Reply.OK;
+    });
+  }
+
+  // ---- Sorted sets ----
+
+  private static void registerSortedSets(Command.Table table, RespServer server) {
+    table.add("zadd", -4, WRITE, 1, 1, 1, (client, args) -> zadd(server.database(client), args));
+    table.add("zincrby", 4, WRITE, 1, 1, 1, (client, args) -> {
+      SortedSet zset = sortedSet(server.database(client), args.get(1), true);
+      Double current = zset.score(args.get(3));
+      double score = (current == null ? 0 : current) + Args.parseDouble(args.get(2));
+      if (Double.isNaN(score)) {
+        throw new RespError("ERR resulting score is not a number (NaN)");
+      }
+      zset.put(args.get(3), score);
+      return score;
+    });
+    table.add("zrem", -3, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      SortedSet zset = sortedSet(db, args.get(1), false);
+      if (zset == null) {
+        return 0L;
+      }
+      long removed = 0;
+      for (String member : args.subList(2, args.size())) {
+        if (zset.remove(member)) {
+          removed++;
+        }
+      }
+      db.removeIfEmpty(args.get(1), zset.size());
+      return removed;
+    });
+    table.add("zscore", 3, READONLY, 1, 1, 1, (client, args) -> {
+      SortedSet zset = sortedSet(server.database(client), args.get(1), false);
+      return zset == null ? null : zset.score(args.get(2));
+    });
+    table.add("zmscore", -3, READONLY, 1, 1, 1, (client, args) -> {
+      SortedSet zset = sortedSet(server.database(client), args.get(1), false);
+      List<Double> scores = new ArrayList<>();
+      for (String member : args.subList(2, args.size())) {
+        scores.add(zset == null ? null : zset.score(member));
+      }
+      return scores;
+    });
+    table.add("zcard", 2, READONLY, 1, 1, 1, (client, args) -> {
+      SortedSet zset = sortedSet(server.database(client), args.get(1), false);
+      return zset == null ? 0L : (long) zset.size();
+    });
+    table.add("zcount", 4, READONLY, 1, 1, 1, (client, args) -> {
+      SortedSet zset = sortedSet(server.database(client), args.get(1), false);
+      return zset == null ? 0L : (long) zset.rangeByScore(SortedSet.ScoreBound.parse(args.get(2)),
+          SortedSet.ScoreBound.parse(args.get(3)), false, 0, -1).size();
+    });
+    table.add("zrank", 3, READONLY, 1, 1, 1, (client, args) -> rank(server.database(client), args, false));
+    table.add("zrevrank", 3, READONLY, 1, 1, 1, (client, args) -> rank(server.database(client), args, true));
+    table.add("zrange", -4, READONLY, 1, 1, 1,
+        (client, args) -> zrange(client, server.database(client), args, false, false));
+    table.add("zrevrange", -4, READONLY, 1, 1, 1,
+        (client, args) -> zrange(client, server.database(client), args, false, true));
+    table.add("zrangebyscore", -4, READONLY, 1, 1, 1,
+        (client, args) -> zrange(client, server.database(client), args, true, false));
+    table.add("zrevrangebyscore", -4, READONLY, 1, 1, 1,
+        (client, args) -> zrange(client, server.database(client), args, true, true));
+    table.add("zremrangebyscore", 4, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      SortedSet zset = sortedSet(db, args.get(1), false);
+      if (zset == null) {
+        return 0L;
+      }
+      List<SortedSet.Member> doomed = zset.rangeByScore(SortedSet.ScoreBound.parse(args.get(2)),
+          SortedSet.ScoreBound.parse(args.get(3)), false, 0, -1);
+      return removeMembers(db, args.get(1), zset, doomed);
+    });
+    table.add("zremrangebyrank", 4, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      SortedSet zset = sortedSet(db, args.get(1), false);
+      if (zset == null) {
+        return 0L;
+      }
+      List<SortedSet.Member> doomed =
+          zset.rangeByRank(Args.parseLong(args.get(2)), Args.parseLong(args.get(3)), false);
+      return removeMembers(db, args.get(1), zset, doomed);
+    });
+    table.add("zpopmin", -2, WRITE, 1, 1, 1, (client, args) -> zpop(client, server.database(client), args, false));
+    table.add("zpopmax", -2, WRITE, 1, 1, 1, (client, args) -> zpop(client, server.database(client), args, true));
+    table.add("zscan", -3, READONLY, 1, 1, 1, (client, args) -> {
+      SortedSet zset = sortedSet(server.database(client), args.get(1), false);
+      String pattern = scanPattern(args);
+      List<String> flat = new ArrayList<>();
+      if (zset != null) {
+        for (SortedSet.Member member : zset.members()) {
+          if (pattern == null || Glob.matches(pattern, member.name)) {
+            flat.add(member.name);
+            flat.add(RespWriter.formatDouble(member.score));
+          }
+        }
+      }
+      return Arrays.asList("0", flat);
+    });
+  }
+
+  /**
+   * ZADD key [NX | XX] [GT | LT] [CH] [INCR] score member [score member ...].
+   */
+  private static Object zadd(Database db, List<String> args) {
+    boolean nx = false;
+    boolean xx = false;
+    boolean gt = false;
+    boolean lt = false;
+    boolean ch = false;
+    boolean incr = false;
+    int i = 2;
+    for (; i < args.size(); i++) {
+      String option = args.get(i).toLowerCase();
+      if (option.equals("nx")) {
+        nx = true;
+      } else if (option.equals("xx")) {
+        xx = true;
+      } else if (option.equals("gt")) {
+        gt = true;
+      } else if (option.equals("lt")) {
+        lt = true;
+      } else if (option.equals("ch")) {
+        ch = true;
+      } else if (option.equals("incr")) {
+        incr = true;
+      } else {
+        break;
+      }
+    }
+    int pairs = args.size() - i;
+    if (pairs == 0 || pairs % 2 != 0) {
+      throw RespError.syntax();
+    }
+    if (nx && xx) {
+      throw new RespError("ERR XX and NX options at the same time are not compatible");
+    }
+    if (gt && lt || nx && (gt || lt)) {
+      throw new RespError("ERR GT, LT, and/or NX options at the same time are not compatible");
+    }
+    if (incr && pairs != 2) {
+      throw new RespError("ERR INCR option supports a single increment-element pair");
+    }
+    double[] scores = new double[pairs / 2];
+    for (int p = 0; p < scores.length; p++) {
+      scores[p] = Args.parseDouble(args.get(i + p * 2));
+    }
+    SortedSet zset = sortedSet(db, args.get(1), !xx);
+    if (zset == null) {
+      return incr ? null : 0L;
+    }
+    long added = 0;
+    long changed = 0;
+    Double result = null;
+    for (int p = 0; p < scores.length; p++) {
+      String member = args.get(i + p * 2 + 1);
+      Double current = zset.score(member);
+      if (current == null ? xx : nx) {
+        continue;
+      }
+      double score = incr && current != null ? current + scores[p] : scores[p];
+      if (current != null && (gt && score <= current || lt && score >= current)) {
+        continue;
+      }
+      if (zset.put(member, score)) {
+        added++;
+      } else if (current != score) {
+        changed++;
+      }
+      result = score;
+    }
+    db.removeIfEmpty(args.get(1), zset.size());
+    if (incr) {
+      return result;
+    }
+    return ch ? added + changed : added;
+  }
+
+  /**
+   * ZRANGE key start stop [BYSCORE] [REV] [LIMIT offset count] [WITHSCORES], and the
+   * ZREVRANGE / ZRANGEBYSCORE / ZREVRANGEBYSCORE forms.
+   */
+  private static Object zrange(Client client, Database db, List<String> args, boolean byScore, boolean reverse) {
+    boolean withScores = false;
+    long offset = 0;
+    long count = -1;
+    for (int i = 4; i < args.size(); i++) {
+      String option = args.get(i).toLowerCase();
+      if (option.equals("withscores")) {
+        withScores = true;
+      } else if (option.equals("byscore")) {
+        byScore = true;
+      } else if (option.equals("rev")) {
+        reverse = true;
+      } else if (option.equals("limit") && i + 2 < args.size()) {
+        offset = Args.parseLong(args.get(++i));
+        count = Args.parseLong(args.get(++i));
+      } else {
+        throw RespError.syntax();
+      }
+    }
+    SortedSet zset = sortedSet(db, args.get(1), false);
+    if (zset == null) {
+      return List.of();
+    }
+    List<SortedSet.Member> members;
+    if (byScore) {
+      boolean revForm = args.get(0).equalsIgnoreCase("zrevrangebyscore")
+          || args.get(0).equalsIgnoreCase("zrange") && reverse;
+      // Reversed score ranges take max first
+      String min = revForm ? args.get(3) : args.get(2);
+      String max = revForm ? args.get(2) : args.get(3);
+      members = offset < 0 ? List.of() : zset.rangeByScore(SortedSet.ScoreBound.parse(min),
+          SortedSet.ScoreBound.parse(max), reverse, offset, count);
+    } else {
+      members = zset.rangeByRank(Args.parseLong(args.get(2)), Args.parseLong(args.get(3)), reverse);
+    }
+    return memberReply(client, members, withScores);
+  }
+
+  private static Object memberReply(Client client, List<SortedSet.Member> members, boolean withScores) {
+    List<Object> reply = new ArrayList<>();
+    for (SortedSet.Member member : members) {
+      if (!withScores) {
+        reply.add(member.name);
+      } else if (client.resp3()) {
+        reply.add(Arrays.asList(member.name, member.score));
+      } else {
+        reply.add(member.name);
+        reply.add(RespWriter.formatDouble(member.score));
+      }
+    }
+    return reply;
+  }
+
+  private static Object zpop(Client client, Database db, List<String> args, boolean max) {
+    SortedSet zset = sortedSet(db, args.get(1), false);
+    long count = args.size() > 2 ? nonNegative(args.get(2)) : 1;
+    if (zset == null || count == 0) {
+      return List.of();
+    }
+    List<SortedSet.Member> popped = zset.rangeByRank(0, count - 1, max);
+    removeMembers(db, args.get(1), zset, popped);
+    if (client.resp3() && args.size() == 2 && !popped.isEmpty()) {
+      return Arrays.asList(popped.get(0).name, popped.get(0).score);
+    }
+    return memberReply(client, popped, true);
+  }
+
+  private static Object rank(Database db, List<String> args, boolean reverse) {
+    SortedSet zset = sortedSet(db, args.get(1), false);
+    long rank = zset == null ? -1 : zset.rank(args.get(2), reverse);
+    return rank < 0 ? null : (Object) rank;
+  }
+
+  private static long removeMembers(Database db, String key, SortedSet zset, List<SortedSet.Member> doomed) {
+    for (SortedSet.Member member : doomed) {
+      zset.remove(member.name);
+    }
+    db.removeIfEmpty(key, zset.size());
+    return doomed.size();
+  }
+
+  // ---- Helpers ----
+
+  private static Object push(Database db, List<String> args, boolean head) {
+    ArrayDeque<String> list = list(db, args.get(1), true);
+    for (String element : args.subList(2, args.size())) {
+      if (head) {
+        list.addFirst(element);
+      } else {
+        list.addLast(element);
+      }
+    }
+    return (long) list.size();
+  }
+
+  private static Object pop(Database db, List<String> args, boolean head) {
+    ArrayDeque<String> list = list(db, args.get(1), false);
+    if (args.size() > 2) {
+      long count = nonNegative(args.get(2));
+      if (list == null) {
+        return Reply.NULL_ARRAY;
+      }
+      List<String> popped = new ArrayList<>();
+      while (!list.isEmpty() && popped.size() < count) {
+        popped.add(head ? list.pollFirst() : list.pollLast());
+      }
+      db.removeIfEmpty(args.get(1), list.size());
+      return popped;
+    }
+    if (list == null) {
+      return null;
+    }
+    String element = head ? list.pollFirst() : list.pollLast();
+    db.removeIfEmpty(args.get(1), list.size());
+    return element;
+  }
+
+  /**
+   * Resolves inclusive start/stop indexes, negative from the end, to [start, stop].
+   */
+  private static long[] clampRange(long start, long stop, int size) {
+    start = start < 0 ? Math.max(0, size + start) : start;
+    stop = stop < 0 ? size + stop : Math.min(stop, size - 1);
+    return new long[] {start, stop};
+  }
+
+  private static long nonNegative(String text) {
+    long value = Args.parseLong(text);
+    if (value < 0) {
+      throw new RespError("ERR value is out of range, must be positive");
+    }
+    return value;
+  }
+
+  private static String scanPattern(List<String> args) {
+    Args.parseLong(args.get(2));
+    String pattern = null;
+    for (int i = 3; i + 1 < args.size(); i += 2) {
+      if (Args.is(args.get(i), "match")) {
+        pattern = args.get(i + 1);
+      } else if (!Args.is(args.get(i), "count")) {
+        throw RespError.syntax();
+      }
+    }
+    return pattern;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, String> hash(Database db, String key, boolean create) {
+    Map<String, String> hash = db.get(key, Map.class);
+    if (hash == null && create) {
+      hash = new LinkedHashMap<>();
+      db.put(key, hash);
+    }
+    return hash;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Set<String> set(Database db, String key, boolean create) {
+    Set<String> set = db.get(key, Set.class);
+    if (set == null && create) {
+      set = new LinkedHashSet<>();
+      db.put(key, set);
+    }
+    return set;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ArrayDeque<String> list(Database db, String key, boolean create) {
+    ArrayDeque<String> list = db.get(key, ArrayDeque.class);
+    if (list == null && create) {
+      list = new ArrayDeque<>();
+      db.put(key, list);
+    }
+    return list;
+  }
+
+  private static SortedSet sortedSet(Database db, String key, boolean create) {
+    SortedSet zset = db.get(key, SortedSet.class);
+    if (zset == null && create) {
+      zset = new SortedSet();
+      db.put(key, zset);
+    }
+    return zset;
+  }
+}
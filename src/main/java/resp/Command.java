@@ -0,0 +1,94 @@
+package resp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A command's metadata and implementation, in the shape of the Redis command table:
+ * arity (positive = exact, negative = at least), flags, and where its keys are.
+ */
+final class Command {
+  static final int WRITE = 1;
+  static final int READONLY = 1 << 1;
+  /** Allowed on a RESP2 connection in subscribed mode. */
+  static final int PUBSUB = 1 << 2;
+  /** Not callable from a script. */
+  static final int NOSCRIPT = 1 << 3;
+
+  @FunctionalInterface
+  interface Handler {
+    Object execute(Client client, List<String> args);
+  }
+
+  final String name;
+  final int arity;
+  final int flags;
+  final Handler handler;
+  private final int firstKey;
+  private final int lastKey;
+  private final int step;
+
+  /**
+   * @param firstKey index of the first key argument, 0 if none
+   * @param lastKey index of the last key argument; negative counts from the end
+   * @param step distance between key arguments
+   */
+  Command(String name, int arity, int flags, int firstKey, int lastKey, int step, Handler handler) {
+    this.name = name;
+    this.arity = arity;
+    this.flags = flags;
+    this.firstKey = firstKey;
+    this.lastKey = lastKey;
+    this.step = step;
+    this.handler = handler;
+  }
+
+  boolean has(int flag) {
+    return (flags & flag) != 0;
+  }
+
+  boolean arityMatches(int argc) {
+    return arity >= 0 ? argc == arity : argc >= -arity;
+  }
+
+  List<String> keys(List<String> args) {
+    if (firstKey == 0) {
+      return Collections.emptyList();
+    }
+    int last = lastKey < 0 ? args.size() + lastKey : lastKey;
+    List<String> keys = new ArrayList<>();
+    for (int i = firstKey; i <= last && i < args.size(); i += step) {
+      keys.add(args.get(i));
+    }
+    return keys;
+  }
+
+  /**
+   * Name-to-command lookup, case-insensitive.
+   */
+  static final class Table {
+    private final Map<String, Command> commands = new HashMap<>();
+
+    void add(String name, int arity, int flags, int firstKey, int lastKey, int step, Handler handler) {
+      commands.put(name, new Command(name, arity, flags, firstKey, lastKey, step, handler));
+    }
+
+    /**
+     * Registers a command without key arguments.
+     */
+    void add(String name, int arity, int flags, Handler handler) {
+      add(name, arity, flags, 0, 0, 0, handler);
+    }
+
+    Command get(String name) {
+      return commands.get(name.toLowerCase());
+    }
+
+    int size() {
+      return commands.size();
+    }
+  }
+}
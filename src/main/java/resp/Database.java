@@ -0,0 +1,207 @@
+package resp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * One numbered keyspace: values, expiry deadlines and a cursor index for SCAN.
+ *
+ * Design:
+ * - Values are the Java structures the commands work on: String, hash (Map), set (Set),
+ *   list (ArrayDeque), {@link SortedSet}, {@link StreamLog}, {@link HyperLogLog}
+ * - Deadlines live in a separate map, as in Redis; a key past its deadline is removed
+ *   when it is next looked up, and {@link #sweepExpired} removes the ones nobody looks at
+ * - SCAN cursors are key hashes: keys are indexed by hash in a sorted map, so a cursor is
+ *   "continue from this hash" and stays valid while keys come and go, with the SCAN
+ *   guarantee that a key present for the whole scan is returned at least once
+ *
+ * Only the server's event loop thread touches a Database, so nothing here is synchronized.
+ */
+final class Database {
+  private final Map<String, Object> data = new HashMap<>();
+  private final Map<String, Long> expires = new HashMap<>();
+  private final NavigableMap<Integer, Set<String>> scanIndex = new TreeMap<>();
+  private final Consumer<String> onExpired;
+
+  /**
+   * @param onExpired told about every key removed because its deadline passed
+   */
+  Database(Consumer<String> onExpired) {
+    this.onExpired = onExpired;
+  }
+
+  Object get(String key) {
+    expireIfDue(key, System.currentTimeMillis());
+    return data.get(key);
+  }
+
+  /**
+   * Returns the value if it is of the given type, null if the key is absent, and fails
+   * with WRONGTYPE otherwise.
+   */
+  <T> T get(String key, Class<T> type) {
+    Object value = get(key);
+    if (value == null) {
+      return null;
+    }
+    if (!type.isInstance(value)) {
+      throw RespError.wrongType();
+    }
+    return type.cast(value);
+  }
+
+  boolean exists(String key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Stores a value and keeps any deadline the key has.
+   */
+  void put(String key, Object value) {
+    if (data.put(key, value) == null) {
+      scanIndex.computeIfAbsent(scanHash(key), h -> new LinkedHashSet<>()).add(key);
+    }
+  }
+
+  /**
+   * Stores a value and clears any deadline, as SET does.
+   */
+  void replace(String key, Object value) {
+    put(key, value);
+    expires.remove(key);
+  }
+
+  boolean remove(String key) {
+    expires.remove(key);
+    if (data.remove(key) == null) {
+      return false;
+    }
+    Integer hash = scanHash(key);
+    Set<String> bucket = scanIndex.get(hash);
+    bucket.remove(key);
+    if (bucket.isEmpty()) {
+      scanIndex.remove(hash);
+    }
+    return true;
+  }
+
+  /**
+   * Removes the key if its collection value has become empty; Redis never keeps empty
+   * hashes, sets, lists or sorted sets.
+   */
+  void removeIfEmpty(String key, int size) {
+    if (size == 0) {
+      remove(key);
+    }
+  }
+
+  void setDeadline(String key, long deadlineMillis) {
+    expires.put(key, deadlineMillis);
+  }
+
+  /**
+   * Returns the deadline in epoch millis, or -1 if the key never expires.
+   */
+  long deadline(String key) {
+    Long deadline = expires.get(key);
+    return deadline == null ? -1 : deadline;
+  }
+
+  boolean persist(String key) {
+    return expires.remove(key) != null;
+  }
+
+  int size() {
+    return data.size();
+  }
+
+  int expiringSize() {
+    return expires.size();
+  }
+
+  List<String> keys(Predicate<String> filter) {
+    long now = System.currentTimeMillis();
+    List<String> result = new ArrayList<>();
+    for (String key : new ArrayList<>(data.keySet())) {
+      if (!expireIfDue(key, now) && filter.test(key)) {
+        result.add(key);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns up to about count keys from the cursor on, and the next cursor (0 when done).
+   */
+  long scan(long cursor, int count, Predicate<String> filter, List<String> out) {
+    long now = System.currentTimeMillis();
+    int visited = 0;
+    Map.Entry<Integer, Set<String>> bucket = cursor > Integer.MAX_VALUE ? null
+        : scanIndex.ceilingEntry((int) cursor);
+    while (bucket != null) {
+      // A whole bucket at a time, so a cursor never falls between keys with one hash
+      for (String key : new ArrayList<>(bucket.getValue())) {
+        visited++;
+        if (!expireIfDue(key, now) && filter.test(key)) {
+          out.add(key);
+        }
+      }
+      int hash = bucket.getKey();
+      if (visited >= count) {
+        return scanIndex.higherKey(hash) == null ? 0 : (long) hash + 1;
+      }
+      bucket = scanIndex.higherEntry(hash);
+    }
+    return 0;
+  }
+
+  void clear() {
+    data.clear();
+    expires.clear();
+    scanIndex.clear();
+  }
+
+  /**
+   * Removes keys whose deadline has passed; returns how many.
+   */
+  int sweepExpired(long now) {
+    int removed = 0;
+    Iterator<Map.Entry<String, Long>> it = expires.entrySet().iterator();
+    List<String> due = new ArrayList<>();
+    while (it.hasNext()) {
+      Map.Entry<String, Long> entry = it.next();
+      if (entry.getValue() <= now) {
+        due.add(entry.getKey());
+      }
+    }
+    for (String key : due) {
+      if (expireIfDue(key, now)) {
+        removed++;
+      }
+    }
+    return removed;
+  }
+
+  private boolean expireIfDue(String key, long now) {
+    Long deadline = expires.get(key);
+    if (deadline == null || deadline > now) {
+      return false;
+    }
+    remove(key);
+    onExpired.accept(key);
+    return true;
+  }
+
+  private static Integer scanHash(String key) {
+    return key.hashCode() & Integer.MAX_VALUE;
+  }
+}
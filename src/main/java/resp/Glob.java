@@ -0,0 +1,97 @@
+package resp;
+
+/**
+ * Redis glob matching for KEYS, SCAN MATCH and PSUBSCRIBE: *, ?, [abc], [^abc], [a-z]
+ * and backslash escapes.
+ */
+final class Glob {
+  private Glob() {
+  }
+
+  static boolean matches(String pattern, String text) {
+    return matches(pattern, 0, text, 0);
+  }
+
+  private static boolean matches(String pattern, int p, String text, int t) {
+    while (p < pattern.length()) {
+      char c = pattern.charAt(p);
+      switch (c) {
+        case '*':
+          while (p + 1 < pattern.length() && pattern.charAt(p + 1) == '*') {
+            p++;
+          }
+          if (p + 1 == pattern.length()) {
+            return true;
+          }
+          for (int i = t; i <= text.length(); i++) {
+            if (matches(pattern, p + 1, text, i)) {
+              return true;
+            }
+          }
+          return false;
+        case '?':
+          if (t >= text.length()) {
+            return false;
+          }
+          t++;
+          p++;
+          break;
+        case '[': {
+          if (t >= text.length()) {
+            return false;
+          }
+          int close = p + 1;
+          boolean negate = close < pattern.length() && pattern.charAt(close) == '^';
+          if (negate) {
+            close++;
+          }
+          boolean matched = false;
+          char actual = text.charAt(t);
+          while (close < pattern.length() && pattern.charAt(close) != ']') {
+            char from = pattern.charAt(close);
+            if (from == '\\' && close + 1 < pattern.length()) {
+              from = pattern.charAt(++close);
+              matched |= from == actual;
+            } else if (close + 2 < pattern.length() && pattern.charAt(close + 1) == '-'
+                && pattern.charAt(close + 2) != ']') {
+              char to = pattern.charAt(close + 2);
+              matched |= actual >= Math.min(from, to) && actual <= Math.max(from, to);
+              close += 2;
+            } else {
+              matched |= from == actual;
+            }
+            close++;
+          }
+          if (matched == negate) {
+            return false;
+          }
+          p = Math.min(close + 1, pattern.length());
+          t++;
+          break;
+        }
+        case '\\':
+          // The escaped character matches literally; a trailing backslash matches itself
+          if (p + 1 < pattern.length()) {
+            c = pattern.charAt(++p);
+          }
+          if (!hasCharAt(text, t, c)) {
+            return false;
+          }
+          t++;
+          p++;
+          break;
+        default:
+          if (!hasCharAt(text, t, c)) {
+            return false;
+          }
+          t++;
+          p++;
+      }
+    }
+    return t == text.length();
+  }
+
+  private static boolean hasCharAt(String text, int t, char c) {
+    return t < text.length() && text.charAt(t) == c;
+  }
+}
@@ -0,0 +1,13 @@
+package resp;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * PFADD/PFCOUNT value. The stand-in counts exactly rather than estimating: clients only
+ * see an integer, and an exact count is within any HyperLogLog error bound. TYPE reports
+ * it as a string, as Redis does.
+ */
+final class HyperLogLog {
+  final Set<String> members = new HashSet<>();
+}
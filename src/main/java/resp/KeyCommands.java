@@ -0,0 +1,491 @@
+package resp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static resp.Command.READONLY;
+import static resp.Command.WRITE;
+
+/**
+ * Generic key commands, strings and HyperLogLog.
+ */
+final class KeyCommands {
+  private KeyCommands() {
+  }
+
+  static void register(Command.Table table, RespServer server) {
+    // ---- Keys ----
+    table.add("del", -2, WRITE, 1, -1, 1, (client, args) -> removeAll(server.database(client), args));
+    table.add("unlink", -2, WRITE, 1, -1, 1, (client, args) -> removeAll(server.database(client), args));
+    table.add("exists", -2, READONLY, 1, -1, 1, (client, args) -> {
+      Database db = server.database(client);
+      long count = 0;
+      for (String key : args.subList(1, args.size())) {
+        if (db.exists(key)) {
+          count++;
+        }
+      }
+      return count;
+    });
+    table.add("expire", -3, WRITE, 1, 1, 1, (client, args) -> expire(server, client, args, 1000, false));
+    table.add("pexpire", -3, WRITE, 1, 1, 1, (client, args) -> expire(server, client, args, 1, false));
+    table.add("expireat", -3, WRITE, 1, 1, 1, (client, args) -> expire(server, client, args, 1000, true));
+    table.add("pexpireat", -3, WRITE, 1, 1, 1, (client, args) -> expire(server, client, args, 1, true));
+    table.add("ttl", 2, READONLY, 1, 1, 1, (client, args) -> ttl(server.database(client), args.get(1), 1000));
+    table.add("pttl", 2, READONLY, 1, 1, 1, (client, args) -> ttl(server.database(client), args.get(1), 1));
+    table.add("persist", 2, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      return db.exists(args.get(1)) && db.persist(args.get(1)) ? 1L : 0L;
+    });
+    table.add("type", 2, READONLY, 1, 1, 1,
+        (client, args) -> Reply.status(typeName(server.database(client).get(args.get(1)))));
+    table.add("keys", 2, READONLY, (client, args) -> {
+      String pattern = args.get(1);
+      return server.database(client).keys(key -> Glob.matches(pattern, key));
+    });
+    table.add("scan", -2, READONLY, (client, args) -> scan(server.database(client), args));
+    table.add("randomkey", 1, READONLY, (client, args) -> {
+      List<String> keys = server.database(client).keys(key -> true);
+      return keys.isEmpty() ? null : keys.get((int) (Math.random() * keys.size()));
+    });
+    table.add("rename", 3, WRITE, 1, 2, 1, (client, args) -> {
+      rename(server.database(client), args.get(1), args.get(2), false);
+      return Reply.OK;
+    });
+    table.add("renamenx", 3, WRITE, 1, 2, 1,
+        (client, args) -> rename(server.database(client), args.get(1), args.get(2), true) ? 1L : 0L);
+
+    // ---- Strings ----
+    table.add("get", 2, READONLY, 1, 1, 1, (client, args) -> server.database(client).get(args.get(1), String.class));
+    table.add("set", -3, WRITE, 1, 1, 1, (client, args) -> set(server.database(client), args));
+    table.add("setnx", 3, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      if (db.exists(args.get(1))) {
+        return 0L;
+      }
+      db.replace(args.get(1), args.get(2));
+      return 1L;
+    });
+    table.add("setex", 4, WRITE, 1, 1, 1, (client, args) -> setWithTtl(server.database(client), args, false));
+    table.add("psetex", 4, WRITE, 1, 1, 1, (client, args) -> setWithTtl(server.database(client), args, true));
+    table.add("getset", 3, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      String previous = db.get(args.get(1), String.class);
+      db.replace(args.get(1), args.get(2));
+      return previous;
+    });
+    table.add("getdel", 2, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      String previous = db.get(args.get(1), String.class);
+      db.remove(args.get(1));
+      return previous;
+    });
+    table.add("getex", -2, WRITE, 1, 1, 1, (client, args) -> getex(server.database(client), args));
+    table.add("mget", -2, READONLY, 1, -1, 1, (client, args) -> {
+      Database db = server.database(client);
+      List<Object> values = new ArrayList<>();
+      for (String key : args.subList(1, args.size())) {
+        Object value = db.get(key);
+        values.add(value instanceof String ? value : null);
+      }
+      return values;
+    });
+    table.add("mset", -3, WRITE, 1, -1, 2, (client, args) -> {
+      if (args.size() % 2 == 0) {
+        throw RespError.wrongArgs("mset");
+      }
+      Database db = server.database(client);
+      for (int i = 1; i < args.size(); i += 2) {
+        db.replace(args.get(i), args.get(i + 1));
+      }
+      return Reply.OK;
+    });
+    table.add("msetnx", -3, WRITE, 1, -1, 2, (client, args) -> {
+      if (args.size() % 2 == 0) {
+        throw RespError.wrongArgs("msetnx");
+      }
+      Database db = server.database(client);
+      for (int i = 1; i < args.size(); i += 2) {
+        if (db.exists(args.get(i))) {
+          return 0L;
+        }
+      }
+      for (int i = 1; i < args.size(); i += 2) {
+        db.replace(args.get(i), args.get(i + 1));
+      }
+      return 1L;
+    });
+    table.add("incr", 2, WRITE, 1, 1, 1, (client, args) -> incrBy(server.database(client), args.get(1), 1));
+    table.add("decr", 2, WRITE, 1, 1, 1, (client, args) -> incrBy(server.database(client), args.get(1), -1));
+    table.add("incrby", 3, WRITE, 1, 1, 1,
+        (client, args) -> incrBy(server.database(client), args.get(1), Args.parseLong(args.get(2))));
+    table.add("decrby", 3, WRITE, 1, 1, 1, (client, args) -> {
+      long delta = Args.parseLong(args.get(2));
+      if (delta == Long.MIN_VALUE) {
+        throw new RespError("ERR decrement would overflow");
+      }
+      return incrBy(server.database(client), args.get(1), -delta);
+    });
+    table.add("incrbyfloat", 3, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      String current = db.get(args.get(1), String.class);
+      double value = (current == null ? 0 : parseFloatValue(current)) + Args.parseDouble(args.get(2));
+      if (Double.isNaN(value) || Double.isInfinite(value)) {
+        throw new RespError("ERR increment would produce NaN or Infinity");
+      }
+      String text = RespWriter.formatDouble(value);
+      db.put(args.get(1), text);
+      return text;
+    });
+    table.add("append", 3, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      String current = db.get(args.get(1), String.class);
+      String value = current == null ? args.get(2) : current + args.get(2);
+      db.put(args.get(1), value);
+      return (long) value.length();
+    });
+    table.add("strlen", 2, READONLY, 1, 1, 1, (client, args) -> {
+      String value = server.database(client).get(args.get(1), String.class);
+      return value == null ? 0L : (long) value.length();
+    });
+    table.add("getrange", 4, READONLY, 1, 1, 1, (client, args) -> {
+      String value = server.database(client).get(args.get(1), String.class);
+      if (value == null) {
+        return "";
+      }
+      long start = Args.parseLong(args.get(2));
+      long end = Args.parseLong(args.get(3));
+      int length = value.length();
+      start = start < 0 ? Math.max(0, length + start) : start;
+      end = end < 0 ? length + end : Math.min(end, length - 1);
+      return start > end || start >= length ? "" : value.substring((int) start, (int) end + 1);
+    });
+
+    // ---- HyperLogLog ----
+    table.add("pfadd", -2, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      HyperLogLog hll = hyperLogLog(db, args.get(1));
+      boolean created = hll == null;
+      if (created) {
+        hll = new HyperLogLog();
+        db.put(args.get(1), hll);
+      }
+      boolean changed = created;
+      for (String element : args.subList(2, args.size())) {
+        changed |= hll.members.add(element);
+      }
+      return changed ? 1L : 0L;
+    });
+    table.add("pfcount", -2, READONLY, 1, -1, 1, (client, args) -> {
+      Database db = server.database(client);
+      if (args.size() == 2) {
+        HyperLogLog hll = hyperLogLog(db, args.get(1));
+        return hll == null ? 0L : (long) hll.members.size();
+      }
+      HyperLogLog union = new HyperLogLog();
+      for (String key : args.subList(1, args.size())) {
+        HyperLogLog hll = hyperLogLog(db, key);
+        if (hll != null) {
+          union.members.addAll(hll.members);
+        }
+      }
+      return (long) union.members.size();
+    });
+    table.add("pfmerge", -2, WRITE, 1, 1, 1, (client, args) -> {
+      Database db = server.database(client);
+      HyperLogLog target = hyperLogLog(db, args.get(1));
+      if (target == null) {
+        target = new HyperLogLog();
+        db.put(args.get(1), target);
+      }
+      for (String key : args.subList(2, args.size())) {
+        HyperLogLog source = hyperLogLog(db, key);
+        if (source != null) {
+          target.members.addAll(source.members);
+        }
+      }
+      return Reply.OK;
+    });
+  }
+
+  static String typeName(Object value) {
+    if (value == null) {
+      return "none";
+    }
+    if (value instanceof String || value instanceof HyperLogLog) {
+      return "string";
+    }
+    if (value instanceof Map) {
+      return "hash";
+    }
+    if (value instanceof Set) {
+      return "set";
+    }
+    if (value instanceof ArrayDeque) {
+      return "list";
+    }
+    if (value instanceof SortedSet) {
+      return "zset";
+    }
+    return "stream";
+  }
+
+  private static long removeAll(Database db, List<String> args) {
+    long removed = 0;
+    for (String key : args.subList(1, args.size())) {
+      if (db.remove(key)) {
+        removed++;
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * EXPIRE family with the NX / XX / GT / LT conditions; a deadline in the past deletes.
+   */
+  private static Object expire(RespServer server, Client client, List<String> args, long unit, boolean absolute) {
+    Database db = server.database(client);
+    String key = args.get(1);
+    long amount = Args.parseLong(args.get(2));
+    long deadline = absolute ? amount * unit : System.currentTimeMillis() + amount * unit;
+    if (!db.exists(key)) {
+      return 0L;
+    }
+    long current = db.deadline(key);
+    for (String option : args.subList(3, args.size())) {
+      boolean allowed;
+      switch (option.toLowerCase()) {
+        case "nx":
+          allowed = current < 0;
+          break;
+        case "xx":
+          allowed = current >= 0;
+          break;
+        case "gt":
+          allowed = current >= 0 && deadline > current;
+          break;
+        case "lt":
+          allowed = current < 0 || deadline < current;
+          break;
+        default:
+          throw new RespError("ERR Unsupported option " + option);
+      }
+      if (!allowed) {
+        return 0L;
+      }
+    }
+    if (deadline <= System.currentTimeMillis()) {
+      db.remove(key);
+    } else {
+      db.setDeadline(key, deadline);
+    }
+    return 1L;
+  }
+
+  private static long ttl(Database db, String key, long unit) {
+    if (!db.exists(key)) {
+      return -2;
+    }
+    long deadline = db.deadline(key);
+    if (deadline < 0) {
+      return -1;
+    }
+    long remaining = Math.max(0, deadline - System.currentTimeMillis());
+    return unit == 1 ? remaining : (remaining + 500) / 1000;
+  }
+
+  private static Object scan(Database db, List<String> args) {
+    long cursor;
+    try {
+      cursor = Long.parseUnsignedLong(args.get(1));
+    } catch (NumberFormatException e) {
+      throw new RespError("ERR invalid cursor");
+    }
+    String pattern = null;
+    String type = null;
+    int count = 10;
+    for (int i = 2; i < args.size(); i += 2) {
+      if (i + 1 >= args.size()) {
+        throw RespError.syntax();
+      }
+      String option = args.get(i);
+      if (Args.is(option, "match")) {
+        pattern = args.get(i + 1);
+      } else if (Args.is(option, "count")) {
+        count = Args.parsePositive(args.get(i + 1));
+      } else if (Args.is(option, "type")) {
+        type = args.get(i + 1).toLowerCase();
+      } else {
+        throw RespError.syntax();
+      }
+    }
+    String match = pattern;
+    String wantedType = type;
+    List<String> keys = new ArrayList<>();
+    long next = db.scan(cursor, count, key -> (match == null || Glob.matches(match, key))
+        && (wantedType == null || wantedType.equals(typeName(db.get(key)))), keys);
+    return Arrays.asList(Long.toUnsignedString(next), keys);
+  }
+
+  private static boolean rename(Database db, String from, String to, boolean onlyIfAbsent) {
+    Object value = db.get(from);
+    if (value == null) {
+      throw new RespError("ERR no such key");
+    }
+    if (from.equals(to)) {
+      return !onlyIfAbsent;
+    }
+    if (onlyIfAbsent && db.exists(to)) {
+      return false;
+    }
+    long deadline = db.deadline(from);
+    db.remove(from);
+    db.replace(to, value);
+    if (deadline >= 0) {
+      db.setDeadline(to, deadline);
+    }
+    return true;
+  }
+
+  /**
+   * SET key value [NX | XX] [GET] [EX s | PX ms | EXAT s | PXAT ms | KEEPTTL].
+   */
+  private static Object set(Database db, List<String> args) {
+    String key = args.get(1);
+    boolean nx = false;
+    boolean xx = false;
+    boolean get = false;
+    boolean keepTtl = false;
+    long deadline = -1;
+    for (int i = 3; i < args.size(); i++) {
+      String option = args.get(i).toLowerCase();
+      switch (option) {
+        case "nx":
+          nx = true;
+          break;
+        case "xx":
+          xx = true;
+          break;
+        case "get":
+          get = true;
+          break;
+        case "keepttl":
+          keepTtl = true;
+          break;
+        case "ex":
+        case "px":
+        case "exat":
+        case "pxat":
+          if (i + 1 >= args.size() || deadline >= 0) {
+            throw RespError.syntax();
+          }
+          boolean millis = option.startsWith("p");
+          long ttl = Args.parseTtlMillis(args.get(++i), millis, "set");
+          deadline = option.endsWith("at") ? ttl : System.currentTimeMillis() + ttl;
+          break;
+        default:
+          throw RespError.syntax();
+      }
+    }
+    if (nx && xx || keepTtl && deadline >= 0) {
+      throw RespError.syntax();
+    }
+    Object current = db.get(key);
+    if (get && current != null && !(current instanceof String)) {
+      throw RespError.wrongType();
+    }
+    boolean write = nx ? current == null : !xx || current != null;
+    if (write) {
+      if (keepTtl) {
+        db.put(key, args.get(2));
+      } else {
+        db.replace(key, args.get(2));
+      }
+      if (deadline >= 0) {
+        db.setDeadline(key, deadline);
+      }
+    }
+    if (get) {
+      return current;
+    }
+    return write ? Reply.OK : null;
+  }
+
+  private static Object setWithTtl(Database db, List<String> args, boolean millis) {
+    long ttl = Args.parseTtlMillis(args.get(2), millis, millis ? "psetex" : "setex");
+    db.replace(args.get(1), args.get(3));
+    db.setDeadline(args.get(1), System.currentTimeMillis() + ttl);
+    return Reply.OK;
+  }
+
+  private static Object getex(Database db, List<String> args) {
+    String key = args.get(1);
+    String value = db.get(key, String.class);
+    if (args.size() == 2) {
+      return value;
+    }
+    String option = args.get(2).toLowerCase();
+    if (option.equals("persist") && args.size() == 3) {
+      if (value != null) {
+        db.persist(key);
+      }
+      return value;
+    }
+    if (args.size() != 4) {
+      throw RespError.syntax();
+    }
+    long ttl = Args.parseTtlMillis(args.get(3), option.startsWith("p"), "getex");
+    long deadline;
+    switch (option) {
+      case "ex":
+      case "px":
+        deadline = System.currentTimeMillis() + ttl;
+        break;
+      case "exat":
+      case "pxat":
+        deadline = ttl;
+        break;
+      default:
+        throw RespError.syntax();
+    }
+    if (value != null) {
+      db.setDeadline(key, deadline);
+    }
+    return value;
+  }
+
+  private static long incrBy(Database db, String key, long delta) {
+    String current = db.get(key, String.class);
+    long value;
+    try {
+      value = current == null ? 0 : Long.parseLong(current);
+      value = Math.addExact(value, delta);
+    } catch (NumberFormatException e) {
+      throw RespError.notInteger();
+    } catch (ArithmeticException e) {
+      throw new RespError("ERR increment or decrement would overflow");
+    }
+    db.put(key, Long.toString(value));
+    return value;
+  }
+
+  private static double parseFloatValue(String text) {
+    try {
+      return Double.parseDouble(text);
+    } catch (NumberFormatException e) {
+      throw new RespError("ERR value is not a valid float");
+    }
+  }
+
+  private static HyperLogLog hyperLogLog(Database db, String key) {
+    Object value = db.get(key);
+    if (value != null && !(value instanceof HyperLogLog)) {
+      throw new RespError("WRONGTYPE Key is not a valid HyperLogLog string value.");
+    }
+    return (HyperLogLog) value;
+  }
+}
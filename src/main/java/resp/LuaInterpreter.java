@@ -0,0 +1,633 @@
+package resp;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import resp.LuaRuntime.Function;
+import resp.LuaRuntime.LuaError;
+import resp.LuaRuntime.Table;
+
+import static resp.LuaRuntime.NONE;
+import static resp.LuaRuntime.arg;
+
+/**
+ * EVAL support: compiles scripts once, keyed by SHA1 like the Redis script cache, and
+ * runs them with the Redis Lua API.
+ *
+ * Design:
+ * - A Lua 5.1 subset interpreted over a syntax tree ({@link LuaParser}, {@link LuaNodes}),
+ *   enough for cache, lock and rate-limit scripts (the repo's own and Redisson's):
+ *   redis.call/pcall, status/error replies, KEYS/ARGV, and the common parts of the base,
+ *   table, string and math libraries; no Lua patterns, metatables or cjson
+ * - Replies convert to and from Lua exactly as Redis does under RESP2: a nil bulk reply
+ *   is false, a status is {ok = ...}, numbers truncate to integers on the way out
+ * - Scripts run on the server thread with a 5s budget; a script over budget is stopped
+ *   with an error (Redis would answer BUSY to other clients until SCRIPT KILL)
+ */
+final class LuaInterpreter {
+  private static final long TIME_LIMIT_MILLIS = 5000;
+
+  private LuaInterpreter() {
+  }
+
+  static String sha1(String source) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.ISO_8859_1));
+      StringBuilder hex = new StringBuilder(40);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static Script compile(String source) {
+    return new Script(LuaParser.parse(source));
+  }
+
+  static final class Script {
+    private final LuaNodes.Proto main;
+
+    private Script(LuaNodes.Proto main) {
+      this.main = main;
+    }
+
+    Object run(RespServer server, Client client, List<String> keys, List<String> argv) {
+      Table strings = stringLibrary();
+      Table globals = globals(server, client, strings);
+      globals.put("KEYS", stringArray(keys));
+      globals.put("ARGV", stringArray(argv));
+      LuaNodes.Context context = new LuaNodes.Context(globals, strings,
+          System.currentTimeMillis() + TIME_LIMIT_MILLIS);
+      LuaNodes.Closure closure = new LuaNodes.Closure(main, new LuaRuntime.Cell[0], context);
+      try {
+        return toReply(LuaRuntime.first(closure.call(NONE)));
+      } catch (LuaError e) {
+        throw new RespError(errorText(e.value));
+      } catch (StackOverflowError e) {
+        throw new RespError("ERR Error running script: stack overflow");
+      }
+    }
+  }
+
+  // ---- Reply <-> Lua conversion ----
+
+  /**
+   * A command reply as Lua sees it (RESP2 rules).
+   */
+  static Object toLua(Object reply) {
+    if (reply == null || reply == Reply.NULL_ARRAY) {
+      return Boolean.FALSE;
+    }
+    if (reply instanceof String) {
+      return reply;
+    }
+    if (reply instanceof Long || reply instanceof Integer) {
+      return ((Number) reply).doubleValue();
+    }
+    if (reply instanceof Double) {
+      return RespWriter.formatDouble((Double) reply);
+    }
+    if (reply instanceof Boolean) {
+      return (Boolean) reply ? 1.0 : 0.0;
+    }
+    if (reply instanceof Reply.Status) {
+      Table table = new Table();
+      table.put("ok", ((Reply.Status) reply).text);
+      return table;
+    }
+    if (reply instanceof Reply.Error) {
+      return errorTable(((Reply.Error) reply).text);
+    }
+    Table table = new Table();
+    if (reply instanceof Reply.MapReply) {
+      for (Map.Entry<?, ?> entry : ((Reply.MapReply) reply).entries.entrySet()) {
+        table.add(toLua(entry.getKey()));
+        table.add(toLua(entry.getValue()));
+      }
+    } else if (reply instanceof Reply.SetReply) {
+      for (Object member : ((Reply.SetReply) reply).members) {
+        table.add(toLua(member));
+      }
+    } else if (reply instanceof List) {
+      for (Object item : (List<?>) reply) {
+        table.add(toLua(item));
+      }
+    }
+    return table;
+  }
+
+  /**
+   * A script's return value as a reply.
+   */
+  static Object toReply(Object value) {
+    if (value == null || value == Boolean.FALSE) {
+      return null;
+    }
+    if (value == Boolean.TRUE) {
+      return 1L;
+    }
+    if (value instanceof Double) {
+      return (long) (double) (Double) value;
+    }
+    if (value instanceof String) {
+      return value;
+    }
+    if (value instanceof Table) {
+      Table table = (Table) value;
+      Object err = table.get("err");
+      if (err instanceof String) {
+        return Reply.error((String) err);
+      }
+      Object ok = table.get("ok");
+      if (ok instanceof String) {
+        return Reply.status((String) ok);
+      }
+      List<Object> items = new ArrayList<>();
+      for (Object item : table.array) {
+        if (item == null) {
+          break;
+        }
+        items.add(toReply(item));
+      }
+      return items;
+    }
+    return null;
+  }
+
+  private static Table errorTable(String text) {
+    Table table = new Table();
+    table.put("err", text);
+    return table;
+  }
+
+  private static String errorText(Object value) {
+    if (value instanceof Table) {
+      Object err = ((Table) value).get("err");
+      if (err instanceof String) {
+        return (String) err;
+      }
+    }
+    String text = LuaRuntime.toStringValue(value);
+    return text.startsWith("ERR ") ? text : "ERR Error running script: " + text;
+  }
+
+  private static Table stringArray(List<String> values) {
+    Table table = new Table();
+    for (String value : values) {
+      table.add(value);
+    }
+    return table;
+  }
+
+  // ---- Libraries ----
+
+  private static Table globals(RespServer server, Client client, Table strings) {
+    Table globals = new Table();
+    globals.put("redis", redisLibrary(server, client));
+    globals.put("string", strings);
+    globals.put("table", tableLibrary());
+    globals.put("math", mathLibrary());
+
+    globals.put("tonumber", (Function) args -> {
+      Object value = arg(args, 0);
+      Object base = arg(args, 1);
+      if (base == null) {
+        return one(LuaRuntime.toNumber(value));
+      }
+      try {
+        return one((double) Long.parseLong(LuaRuntime.toStringValue(value).trim().toLowerCase(),
+            (int) LuaRuntime.arith(base)));
+      } catch (NumberFormatException e) {
+        return one(null);
+      }
+    });
+    globals.put("tostring", (Function) args -> one(LuaRuntime.toStringValue(arg(args, 0))));
+    globals.put("type", (Function) args -> {
+      if (args.length == 0) {
+        throw new LuaError("bad argument #1 to 'type' (value expected)");
+      }
+      return one(LuaRuntime.typeName(args[0]));
+    });
+    globals.put("ipairs", (Function) args -> {
+      Table table = table(args, 0, "ipairs");
+      Function iterator = state -> {
+        double next = LuaRuntime.arith(state[1]) + 1;
+        Object value = table.get(next);
+        return value == null ? one(null) : new Object[] {next, value};
+      };
+      return new Object[] {iterator, table, 0.0};
+    });
+    globals.put("pairs", (Function) args -> {
+      Table table = table(args, 0, "pairs");
+      Iterator<Object[]> entries = snapshot(table).iterator();
+      Function iterator = state -> entries.hasNext() ? entries.next() : one(null);
+      return new Object[] {iterator, table, null};
+    });
+    globals.put("next", (Function) args -> {
+      Table table = table(args, 0, "next");
+      Object key = arg(args, 1);
+      boolean found = key == null;
+      for (Object[] entry : snapshot(table)) {
+        if (found) {
+          return entry;
+        }
+        found = LuaRuntime.rawEquals(entry[0], key);
+      }
+      return one(null);
+    });
+    globals.put("unpack", (Function) LuaInterpreter::unpack);
+    globals.put("select", (Function) args -> {
+      Object n = arg(args, 0);
+      if ("#".equals(n)) {
+        return one((double) (args.length - 1));
+      }
+      int index = (int) LuaRuntime.arith(n);
+      if (index < 0) {
+        index = args.length + index;
+      }
+      if (index < 1) {
+        throw new LuaError("bad argument #1 to 'select' (index out of range)");
+      }
+      return index >= args.length ? NONE : Arrays.copyOfRange(args, index, args.length);
+    });
+    globals.put("error", (Function) args -> {
+      Object level = arg(args, 1);
+      throw new LuaError(arg(args, 0), level != null && LuaRuntime.arith(level) == 0);
+    });
+    globals.put("assert", (Function) args -> {
+      if (!LuaRuntime.isTruthy(arg(args, 0))) {
+        throw new LuaError(args.length > 1 ? args[1] : "assertion failed!");
+      }
+      return args;
+    });
+    globals.put("pcall", (Function) args -> {
+      try {
+        Object[] results = LuaRuntime.call(arg(args, 0), Arrays.copyOfRange(args, Math.min(1, args.length), args.length));
+        Object[] all = new Object[results.length + 1];
+        all[0] = Boolean.TRUE;
+        System.arraycopy(results, 0, all, 1, results.length);
+        return all;
+      } catch (LuaError e) {
+        return new Object[] {Boolean.FALSE, e.value};
+      }
+    });
+    globals.put("rawget", (Function) args -> one(table(args, 0, "rawget").get(arg(args, 1))));
+    globals.put("rawset", (Function) args -> {
+      table(args, 0, "rawset").put(arg(args, 1), arg(args, 2));
+      return one(args[0]);
+    });
+    globals.put("rawequal", (Function) args -> one(LuaRuntime.rawEquals(arg(args, 0), arg(args, 1))));
+    return globals;
+  }
+
+  private static Table redisLibrary(RespServer server, Client client) {
+    Table redis = new Table();
+    redis.put("call", (Function) args -> {
+      Object reply = server.scriptCallOrError(client, commandArgs(args));
+      if (reply instanceof Reply.Error) {
+        throw new LuaError(errorTable(((Reply.Error) reply).text), true);
+      }
+      return one(toLua(reply));
+    });
+    redis.put("pcall", (Function) args -> one(toLua(server.scriptCallOrError(client, commandArgs(args)))));
+    redis.put("status_reply", (Function) args -> {
+      Table table = new Table();
+      table.put("ok", LuaRuntime.toStringValue(arg(args, 0)));
+      return one(table);
+    });
+    redis.put("error_reply", (Function) args -> {
+      String text = LuaRuntime.toStringValue(arg(args, 0));
+      return one(errorTable(text.startsWith("-") ? text.substring(1) : text));
+    });
+    redis.put("sha1hex", (Function) args -> one(sha1(LuaRuntime.toStringValue(arg(args, 0)))));
+    redis.put("log", (Function) args -> {
+      StringBuilder line = new StringBuilder("   [resp-server] script log:");
+      for (int i = 1; i < args.length; i++) {
+        line.append(' ').append(LuaRuntime.toStringValue(args[i]));
+      }
+      System.err.println(line);
+      return NONE;
+    });
+    redis.put("setresp", (Function) args -> {
+      if (LuaRuntime.arith(arg(args, 0)) != 2) {
+        throw new LuaError("RESP3 replies are not supported inside scripts by this server");
+      }
+      return NONE;
+    });
+    redis.put("replicate_commands", (Function) args -> one(Boolean.TRUE));
+    redis.put("set_repl", (Function) args -> NONE);
+    redis.put("LOG_DEBUG", 0.0);
+    redis.put("LOG_VERBOSE", 1.0);
+    redis.put("LOG_NOTICE", 2.0);
+    redis.put("LOG_WARNING", 3.0);
+    redis.put("REPL_NONE", 0.0);
+    redis.put("REPL_AOF", 1.0);
+    redis.put("REPL_SLAVE", 2.0);
+    redis.put("REPL_REPLICA", 2.0);
+    redis.put("REPL_ALL", 3.0);
+    return redis;
+  }
+
+  /**
+   * redis.call arguments: strings, and numbers in their integer or %.17g form.
+   */
+  private static List<String> commandArgs(Object[] args) {
+    List<String> command = new ArrayList<>(args.length);
+    for (Object arg : args) {
+      if (arg instanceof String) {
+        command.add((String) arg);
+      } else if (arg instanceof Double) {
+        double number = (Double) arg;
+        command.add(number == Math.rint(number) && Math.abs(number) < 1e17 ? Long.toString((long) number)
+            : LuaRuntime.trimG(String.format(Locale.ROOT, "%.17g", number)));
+      } else {
+        throw new LuaError(errorTable("ERR Lua redis lib command arguments must be strings or integers"), true);
+      }
+    }
+    return command;
+  }
+
+  private static Table tableLibrary() {
+    Table library = new Table();
+    library.put("insert", (Function) args -> {
+      Table table = table(args, 0, "insert");
+      if (args.length == 2) {
+        table.add(args[1]);
+      } else if (args.length == 3) {
+        int position = (int) LuaRuntime.arith(args[1]);
+        int length = table.length();
+        if (position < 1 || position > length + 1) {
+          throw new LuaError("bad argument #2 to 'insert' (position out of bounds)");
+        }
+        for (int i = length; i >= position; i--) {
+          table.put((double) (i + 1), table.get((double) i));
+        }
+        table.put((double) position, args[2]);
+      } else {
+        throw new LuaError("wrong number of arguments to 'insert'");
+      }
+      return NONE;
+    });
+    library.put("remove", (Function) args -> {
+      Table table = table(args, 0, "remove");
+      int length = table.length();
+      if (length == 0) {
+        return one(null);
+      }
+      int position = args.length > 1 ? (int) LuaRuntime.arith(args[1]) : length;
+      Object removed = table.get((double) position);
+      for (int i = position; i < length; i++) {
+        table.put((double) i, table.get((double) (i + 1)));
+      }
+      table.put((double) length, null);
+      return one(removed);
+    });
+    library.put("getn", (Function) args -> one((double) table(args, 0, "getn").length()));
+    library.put("concat", (Function) args -> {
+      Table table = table(args, 0, "concat");
+      String separator = args.length > 1 && args[1] != null ? LuaRuntime.toStringValue(args[1]) : "";
+      int from = args.length > 2 && args[2] != null ? (int) LuaRuntime.arith(args[2]) : 1;
+      int to = args.length > 3 && args[3] != null ? (int) LuaRuntime.arith(args[3]) : table.length();
+      StringBuilder text = new StringBuilder();
+      for (int i = from; i <= to; i++) {
+        Object item = table.get((double) i);
+        if (!(item instanceof String || item instanceof Double)) {
+          throw new LuaError("invalid value (at index " + i + ") in table for 'concat'");
+        }
+        if (i > from) {
+          text.append(separator);
+        }
+        text.append(LuaRuntime.toStringValue(item));
+      }
+      return one(text.toString());
+    });
+    library.put("sort", (Function) args -> {
+      Table table = table(args, 0, "sort");
+      Object comparator = arg(args, 1);
+      List<Object> items = new ArrayList<>(table.array);
+      items.sort((a, b) -> {
+        boolean less = comparator == null ? LuaRuntime.lessThan(a, b)
+            : LuaRuntime.isTruthy(LuaRuntime.first(LuaRuntime.call(comparator, new Object[] {a, b})));
+        boolean greater = comparator == null ? LuaRuntime.lessThan(b, a)
+            : LuaRuntime.isTruthy(LuaRuntime.first(LuaRuntime.call(comparator, new Object[] {b, a})));
+        return less ? -1 : greater ? 1 : 0;
+      });
+      for (int i = 0; i < items.size(); i++) {
+        table.array.set(i, items.get(i));
+      }
+      return NONE;
+    });
+    return library;
+  }
+
+  private static Table mathLibrary() {
+    Table math = new Table();
+    math.put("floor", (Function) args -> one(Math.floor(LuaRuntime.arith(arg(args, 0)))));
+    math.put("ceil", (Function) args -> one(Math.ceil(LuaRuntime.arith(arg(args, 0)))));
+    math.put("abs", (Function) args -> one(Math.abs(LuaRuntime.arith(arg(args, 0)))));
+    math.put("sqrt", (Function) args -> one(Math.sqrt(LuaRuntime.arith(arg(args, 0)))));
+    math.put("pow", (Function) args -> one(Math.pow(LuaRuntime.arith(arg(args, 0)), LuaRuntime.arith(arg(args, 1)))));
+    math.put("fmod", (Function) args -> one(LuaRuntime.arith(arg(args, 0)) % LuaRuntime.arith(arg(args, 1))));
+    math.put("log", (Function) args -> one(Math.log(LuaRuntime.arith(arg(args, 0)))));
+    math.put("exp", (Function) args -> one(Math.exp(LuaRuntime.arith(arg(args, 0)))));
+    math.put("max", (Function) args -> {
+      double max = LuaRuntime.arith(arg(args, 0));
+      for (Object value : args) {
+        max = Math.max(max, LuaRuntime.arith(value));
+      }
+      return one(max);
+    });
+    math.put("min", (Function) args -> {
+      double min = LuaRuntime.arith(arg(args, 0));
+      for (Object value : args) {
+        min = Math.min(min, LuaRuntime.arith(value));
+      }
+      return one(min);
+    });
+    // Redis seeds the script PRNG identically on every call, so scripts stay deterministic
+    math.put("random", (Function) args -> one(Math.random()));
+    math.put("huge", Double.POSITIVE_INFINITY);
+    math.put("pi", Math.PI);
+    return math;
+  }
+
+  private static Table stringLibrary() {
+    Table strings = new Table();
+    strings.put("len", (Function) args -> one((double) string(args, 0, "len").length()));
+    strings.put("sub", (Function) args -> {
+      String text = string(args, 0, "sub");
+      int length = text.length();
+      int from = args.length > 1 ? (int) LuaRuntime.arith(args[1]) : 1;
+      int to = args.length > 2 && args[2] != null ? (int) LuaRuntime.arith(args[2]) : -1;
+      from = from < 0 ? Math.max(length + from + 1, 1) : Math.max(from, 1);
+      to = to < 0 ? length + to + 1 : Math.min(to, length);
+      return one(from > to ? "" : text.substring(from - 1, to));
+    });
+    strings.put("upper", (Function) args -> one(string(args, 0, "upper").toUpperCase(Locale.ROOT)));
+    strings.put("lower", (Function) args -> one(string(args, 0, "lower").toLowerCase(Locale.ROOT)));
+    strings.put("rep", (Function) args -> {
+      int count = (int) LuaRuntime.arith(arg(args, 1));
+      return one(count <= 0 ? "" : string(args, 0, "rep").repeat(count));
+    });
+    strings.put("reverse", (Function) args -> one(new StringBuilder(string(args, 0, "reverse")).reverse().toString()));
+    strings.put("byte", (Function) args -> {
+      String text = string(args, 0, "byte");
+      int from = args.length > 1 ? (int) LuaRuntime.arith(args[1]) : 1;
+      int to = args.length > 2 ? (int) LuaRuntime.arith(args[2]) : from;
+      List<Object> bytes = new ArrayList<>();
+      for (int i = Math.max(from, 1); i <= Math.min(to, text.length()); i++) {
+        bytes.add((double) text.charAt(i - 1));
+      }
+      return bytes.toArray();
+    });
+    strings.put("char", (Function) args -> {
+      StringBuilder text = new StringBuilder();
+      for (Object code : args) {
+        text.append((char) LuaRuntime.arith(code));
+      }
+      return one(text.toString());
+    });
+    strings.put("find", (Function) args -> {
+      String text = string(args, 0, "find");
+      String pattern = LuaRuntime.toStringValue(arg(args, 1));
+      int init = args.length > 2 && args[2] != null ? (int) LuaRuntime.arith(args[2]) : 1;
+      boolean plain = LuaRuntime.isTruthy(arg(args, 3));
+      if (!plain && pattern.chars().anyMatch(c -> "^$*+?.([%-".indexOf(c) >= 0)) {
+        throw new LuaError("Lua patterns are not supported by this server; pass plain = true");
+      }
+      init = init < 0 ? Math.max(text.length() + init, 0) : Math.max(init - 1, 0);
+      int at = text.indexOf(pattern, init);
+      return at < 0 ? one(null) : new Object[] {(double) (at + 1), (double) (at + pattern.length())};
+    });
+    strings.put("format", (Function) LuaInterpreter::format);
+    return strings;
+  }
+
+  /**
+   * string.format for %d %i %u %c %x %X %o %e %E %f %g %G %q %s and %%.
+   */
+  private static Object[] format(Object[] args) {
+    String pattern = string(args, 0, "format");
+    StringBuilder out = new StringBuilder();
+    int next = 1;
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (c != '%') {
+        out.append(c);
+        continue;
+      }
+      int start = i++;
+      while (i < pattern.length() && "-+ #0123456789.".indexOf(pattern.charAt(i)) >= 0) {
+        i++;
+      }
+      if (i >= pattern.length()) {
+        throw new LuaError("invalid option '%' to 'format'");
+      }
+      char conversion = pattern.charAt(i);
+      String spec = pattern.substring(start, i);
+      Object value = conversion == '%' ? null : arg(args, next++);
+      switch (conversion) {
+        case '%':
+          out.append('%');
+          break;
+        case 'd':
+        case 'i':
+        case 'u':
+          out.append(String.format(Locale.ROOT, spec + "d", (long) LuaRuntime.arith(value)));
+          break;
+        case 'c':
+          out.append((char) LuaRuntime.arith(value));
+          break;
+        case 'x':
+        case 'X':
+        case 'o':
+          out.append(String.format(Locale.ROOT, spec + conversion, (long) LuaRuntime.arith(value)));
+          break;
+        case 'e':
+        case 'E':
+        case 'f':
+          out.append(String.format(Locale.ROOT, spec + conversion, LuaRuntime.arith(value)));
+          break;
+        case 'g':
+        case 'G':
+          out.append(LuaRuntime.trimG(String.format(Locale.ROOT, spec + conversion, LuaRuntime.arith(value))));
+          break;
+        case 'q':
+          out.append('"').append(LuaRuntime.toStringValue(value).replace("\\", "\\\\").replace("\"", "\\\"")
+              .replace("\n", "\\n").replace("\r", "\\r").replace("\0", "\\000")).append('"');
+          break;
+        case 's':
+          out.append(String.format(Locale.ROOT, spec + "s", LuaRuntime.toStringValue(value)));
+          break;
+        default:
+          throw new LuaError("invalid option '%" + conversion + "' to 'format'");
+      }
+    }
+    return one(out.toString());
+  }
+
+  private static Object[] unpack(Object[] args) {
+    Table table = table(args, 0, "unpack");
+    int from = args.length > 1 && args[1] != null ? (int) LuaRuntime.arith(args[1]) : 1;
+    int to = args.length > 2 && args[2] != null ? (int) LuaRuntime.arith(args[2]) : table.length();
+    if (from > to) {
+      return NONE;
+    }
+    Object[] values = new Object[to - from + 1];
+    for (int i = from; i <= to; i++) {
+      values[i - from] = table.get((double) i);
+    }
+    return values;
+  }
+
+  /**
+   * Key/value pairs, array part first, for pairs() and next().
+   */
+  private static List<Object[]> snapshot(Table table) {
+    List<Object[]> entries = new ArrayList<>(table.array.size() + table.hash.size());
+    for (int i = 0; i < table.array.size(); i++) {
+      if (table.array.get(i) != null) {
+        entries.add(new Object[] {(double) (i + 1), table.array.get(i)});
+      }
+    }
+    for (Map.Entry<Object, Object> entry : table.hash.entrySet()) {
+      entries.add(new Object[] {entry.getKey(), entry.getValue()});
+    }
+    return entries;
+  }
+
+  private static Object[] one(Object value) {
+    return new Object[] {value};
+  }
+
+  private static Table table(Object[] args, int index, String function) {
+    Object value = arg(args, index);
+    if (!(value instanceof Table)) {
+      throw new LuaError("bad argument #" + (index + 1) + " to '" + function + "' (table expected, got "
+          + (value == null ? "no value" : LuaRuntime.typeName(value)) + ")");
+    }
+    return (Table) value;
+  }
+
+  private static String string(Object[] args, int index, String function) {
+    Object value = arg(args, index);
+    if (value instanceof String) {
+      return (String) value;
+    }
+    if (value instanceof Double) {
+      return LuaRuntime.numberToString((Double) value);
+    }
+    throw new LuaError("bad argument #" + (index + 1) + " to '" + function + "' (string expected, got "
+        + (value == null ? "no value" : LuaRuntime.typeName(value)) + ")");
+  }
+}
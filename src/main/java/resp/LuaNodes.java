@@ -0,0 +1,740 @@
+package resp;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static resp.LuaRuntime.Cell;
+import static resp.LuaRuntime.Function;
+import static resp.LuaRuntime.LuaError;
+import static resp.LuaRuntime.NONE;
+import static resp.LuaRuntime.Table;
+
+/**
+ * Syntax tree of a parsed script; every node evaluates itself (a tree-walking
+ * interpreter). Local variables are resolved to frame slots and upvalue indexes at
+ * parse time, so running a script does no name lookups except for globals.
+ */
+final class LuaNodes {
+  static final int NORMAL = 0;
+  static final int BREAK = 1;
+  static final int RETURN = 2;
+
+  private LuaNodes() {
+  }
+
+  /**
+   * Per-run state shared by every closure of one EVAL: globals, and the time budget
+   * that keeps a runaway script from wedging the server's only thread.
+   */
+  static final class Context {
+    final Table globals;
+    final Table stringLibrary;
+    final long deadlineMillis;
+    private int ticks;
+
+    Context(Table globals, Table stringLibrary, long deadlineMillis) {
+      this.globals = globals;
+      this.stringLibrary = stringLibrary;
+      this.deadlineMillis = deadlineMillis;
+    }
+
+    void tick() {
+      if ((++ticks & 0xFFF) == 0 && System.currentTimeMillis() > deadlineMillis) {
+        throw new LuaError("ERR script exceeded the time limit and was stopped", true);
+      }
+    }
+  }
+
+  static final class Proto {
+    final int parameters;
+    final boolean vararg;
+    final int slots;
+    final Block body;
+    /** Per upvalue: a local slot of the enclosing function, or one of its upvalues. */
+    final boolean[] upvalueFromLocal;
+    final int[] upvalueIndex;
+
+    Proto(int parameters, boolean vararg, int slots, Block body, boolean[] upvalueFromLocal, int[] upvalueIndex) {
+      this.parameters = parameters;
+      this.vararg = vararg;
+      this.slots = slots;
+      this.body = body;
+      this.upvalueFromLocal = upvalueFromLocal;
+      this.upvalueIndex = upvalueIndex;
+    }
+  }
+
+  static final class Closure implements Function {
+    final Proto proto;
+    final Cell[] upvalues;
+    final Context context;
+
+    Closure(Proto proto, Cell[] upvalues, Context context) {
+      this.proto = proto;
+      this.upvalues = upvalues;
+      this.context = context;
+    }
+
+    @Override
+    public Object[] call(Object[] args) {
+      context.tick();
+      Frame frame = new Frame(this);
+      for (int i = 0; i < proto.parameters; i++) {
+        frame.slots[i] = new Cell(i < args.length ? args[i] : null);
+      }
+      if (proto.vararg) {
+        frame.varargs = args.length > proto.parameters ? Arrays.copyOfRange(args, proto.parameters, args.length) : NONE;
+      }
+      return proto.body.exec(frame) == RETURN ? frame.returned : NONE;
+    }
+  }
+
+  static final class Frame {
+    final Closure closure;
+    final Cell[] slots;
+    Object[] varargs = NONE;
+    Object[] returned = NONE;
+
+    Frame(Closure closure) {
+      this.closure = closure;
+      this.slots = new Cell[closure.proto.slots];
+    }
+  }
+
+  // ---- Statements ----
+
+  abstract static class Stat {
+    int line;
+
+    abstract int exec(Frame frame);
+  }
+
+  static final class Block extends Stat {
+    final Stat[] stats;
+
+    Block(List<Stat> stats) {
+      this.stats = stats.toArray(new Stat[0]);
+    }
+
+    @Override
+    int exec(Frame frame) {
+      for (Stat stat : stats) {
+        int signal;
+        try {
+          signal = stat.exec(frame);
+        } catch (LuaError e) {
+          if (e.positioned) {
+            throw e;
+          }
+          // The innermost statement names the line, as luaL_where does
+          Object value = e.value instanceof String ? "user_script:" + stat.line + ": " + e.value : e.value;
+          throw new LuaError(value, true);
+        }
+        if (signal != NORMAL) {
+          return signal;
+        }
+      }
+      return NORMAL;
+    }
+  }
+
+  static final class Local extends Stat {
+    final int[] slots;
+    final Expr[] values;
+
+    Local(int[] slots, Expr[] values) {
+      this.slots = slots;
+      this.values = values;
+    }
+
+    @Override
+    int exec(Frame frame) {
+      if (slots.length == 1 && values.length == 1) {
+        frame.slots[slots[0]] = new Cell(values[0].eval(frame));
+        return NORMAL;
+      }
+      Object[] evaluated = evalList(values, frame);
+      for (int i = 0; i < slots.length; i++) {
+        frame.slots[slots[i]] = new Cell(i < evaluated.length ? evaluated[i] : null);
+      }
+      return NORMAL;
+    }
+  }
+
+  static final class LocalFunction extends Stat {
+    final int slot;
+    final FunctionExpr function;
+
+    LocalFunction(int slot, FunctionExpr function) {
+      this.slot = slot;
+      this.function = function;
+    }
+
+    @Override
+    int exec(Frame frame) {
+      Cell cell = new Cell(null);
+      frame.slots[slot] = cell;
+      cell.value = function.eval(frame);
+      return NORMAL;
+    }
+  }
+
+  static final class Assign extends Stat {
+    final Target[] targets;
+    final Expr[] values;
+
+    Assign(Target[] targets, Expr[] values) {
+      this.targets = targets;
+      this.values = values;
+    }
+
+    @Override
+    int exec(Frame frame) {
+      if (targets.length == 1 && values.length == 1) {
+        targets[0].assign(frame, values[0].eval(frame));
+        return NORMAL;
+      }
+      Object[] evaluated = evalList(values, frame);
+      for (int i = 0; i < targets.length; i++) {
+        targets[i].assign(frame, i < evaluated.length ? evaluated[i] : null);
+      }
+      return NORMAL;
+    }
+  }
+
+  static final class CallStat extends Stat {
+    final Expr call;
+
+    CallStat(Expr call) {
+      this.call = call;
+    }
+
+    @Override
+    int exec(Frame frame) {
+      call.evalMulti(frame);
+      return NORMAL;
+    }
+  }
+
+  static final class While extends Stat {
+    final Expr condition;
+    final Block body;
+
+    While(Expr condition, Block body) {
+      this.condition = condition;
+      this.body = body;
+    }
+
+    @Override
+    int exec(Frame frame) {
+      while (LuaRuntime.isTruthy(condition.eval(frame))) {
+        frame.closure.context.tick();
+        int signal = body.exec(frame);
+        if (signal == BREAK) {
+          break;
+        }
+        if (signal == RETURN) {
+          return RETURN;
+        }
+      }
+      return NORMAL;
+    }
+  }
+
+  static final class Repeat extends Stat {
+    final Block body;
+    final Expr condition;
+
+    Repeat(Block body, Expr condition) {
+      this.body = body;
+      this.condition = condition;
+    }
+
+    @Override
+    int exec(Frame frame) {
+      do {
+        frame.closure.context.tick();
+        int signal = body.exec(frame);
+        if (signal == BREAK) {
+          break;
+        }
+        if (signal == RETURN) {
+          return RETURN;
+        }
+      } while (!LuaRuntime.isTruthy(condition.eval(frame)));
+      return NORMAL;
+    }
+  }
+
+  static final class If extends Stat {
+    final Expr[] conditions;
+    final Block[] blocks;
+    final Block otherwise;
+
+    If(Expr[] conditions, Block[] blocks, Block otherwise) {
+      this.conditions = conditions;
+      this.blocks = blocks;
+      this.otherwise = otherwise;
+    }
+
+    @Override
+    int exec(Frame frame) {
+      for (int i = 0; i < conditions.length; i++) {
+        if (LuaRuntime.isTruthy(conditions[i].eval(frame))) {
+          return blocks[i].exec(frame);
+        }
+      }
+      return otherwise == null ? NORMAL : otherwise.exec(frame);
+    }
+  }
+
+  static final class NumericFor extends Stat {
+    final int slot;
+    final Expr start;
+    final Expr limit;
+    final Expr step;
+    final Block body;
+
+    NumericFor(int slot, Expr start, Expr limit, Expr step, Block body) {
+      this.slot = slot;
+      this.start = start;
+      this.limit = limit;
+      this.step = step;
+      this.body = body;
+    }
+
+    @Override
+    int exec(Frame frame) {
+      double from = forNumber(start.eval(frame), "initial");
+      double to = forNumber(limit.eval(frame), "limit");
+      double by = step == null ? 1 : forNumber(step.eval(frame), "step");
+      for (double i = from; by > 0 ? i <= to : i >= to; i += by) {
+        frame.closure.context.tick();
+        frame.slots[slot] = new Cell(i);
+        int signal = body.exec(frame);
+        if (signal == BREAK) {
+          break;
+        }
+        if (signal == RETURN) {
+          return RETURN;
+        }
+      }
+      return NORMAL;
+    }
+
+    private static double forNumber(Object value, String what) {
+      Double number = LuaRuntime.toNumber(value);
+      if (number == null) {
+        throw new LuaError("'for' " + what + " value must be a number");
+      }
+      return number;
+    }
+  }
+
+  static final class GenericFor extends Stat {
+    final int[] slots;
+    final Expr[] iterators;
+    final Block body;
+
+    GenericFor(int[] slots, Expr[] iterators, Block body) {
+      this.slots = slots;
+      this.iterators = iterators;
+      this.body = body;
+    }
+
+    @Override
+    int exec(Frame frame) {
+      Object[] init = evalList(iterators, frame);
+      Object function = LuaRuntime.arg(init, 0);
+      Object state = LuaRuntime.arg(init, 1);
+      Object control = LuaRuntime.arg(init, 2);
+      while (true) {
+        frame.closure.context.tick();
+        Object[] values = LuaRuntime.call(function, new Object[] {state, control});
+        control = LuaRuntime.first(values);
+        if (control == null) {
+          break;
+        }
+        for (int i = 0; i < slots.length; i++) {
+          frame.slots[slots[i]] = new Cell(i < values.length ? values[i] : null);
+        }
+        int signal = body.exec(frame);
+        if (signal == BREAK) {
+          break;
+        }
+        if (signal == RETURN) {
+          return RETURN;
+        }
+      }
+      return NORMAL;
+    }
+  }
+
+  static final class Return extends Stat {
+    final Expr[] values;
+
+    Return(Expr[] values) {
+      this.values = values;
+    }
+
+    @Override
+    int exec(Frame frame) {
+      frame.returned = evalList(values, frame);
+      return RETURN;
+    }
+  }
+
+  static final class Break extends Stat {
+    @Override
+    int exec(Frame frame) {
+      return BREAK;
+    }
+  }
+
+  // ---- Expressions ----
+
+  abstract static class Expr {
+    abstract Object eval(Frame frame);
+
+    /**
+     * All values, for calls and "..." at the end of a list; other expressions give one.
+     */
+    Object[] evalMulti(Frame frame) {
+      return new Object[] {eval(frame)};
+    }
+  }
+
+  interface Target {
+    void assign(Frame frame, Object value);
+  }
+
+  static Object[] evalList(Expr[] exprs, Frame frame) {
+    if (exprs.length == 0) {
+      return NONE;
+    }
+    if (exprs.length == 1) {
+      return exprs[0].evalMulti(frame);
+    }
+    Object[] head = new Object[exprs.length - 1];
+    for (int i = 0; i < head.length; i++) {
+      head[i] = exprs[i].eval(frame);
+    }
+    Object[] tail = exprs[exprs.length - 1].evalMulti(frame);
+    Object[] all = Arrays.copyOf(head, head.length + tail.length);
+    System.arraycopy(tail, 0, all, head.length, tail.length);
+    return all;
+  }
+
+  static final class Constant extends Expr {
+    final Object value;
+
+    Constant(Object value) {
+      this.value = value;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      return value;
+    }
+  }
+
+  static final class Vararg extends Expr {
+    @Override
+    Object eval(Frame frame) {
+      return LuaRuntime.first(frame.varargs);
+    }
+
+    @Override
+    Object[] evalMulti(Frame frame) {
+      return frame.varargs;
+    }
+  }
+
+  static final class LocalVar extends Expr implements Target {
+    final int slot;
+
+    LocalVar(int slot) {
+      this.slot = slot;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      return frame.slots[slot].value;
+    }
+
+    @Override
+    public void assign(Frame frame, Object value) {
+      frame.slots[slot].value = value;
+    }
+  }
+
+  static final class Upvalue extends Expr implements Target {
+    final int index;
+
+    Upvalue(int index) {
+      this.index = index;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      return frame.closure.upvalues[index].value;
+    }
+
+    @Override
+    public void assign(Frame frame, Object value) {
+      frame.closure.upvalues[index].value = value;
+    }
+  }
+
+  /**
+   * Globals are read-only to scripts, as in Redis 7: they hold the libraries, KEYS and ARGV.
+   */
+  static final class Global extends Expr implements Target {
+    final String name;
+
+    Global(String name) {
+      this.name = name;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      Object value = frame.closure.context.globals.get(name);
+      if (value == null) {
+        throw new LuaError("Script attempted to access nonexistent global variable '" + name + "'");
+      }
+      return value;
+    }
+
+    @Override
+    public void assign(Frame frame, Object value) {
+      throw new LuaError("Script attempted to create global variable '" + name + "'");
+    }
+  }
+
+  static final class Index extends Expr implements Target {
+    final Expr target;
+    final Expr key;
+
+    Index(Expr target, Expr key) {
+      this.target = target;
+      this.key = key;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      return LuaRuntime.index(target.eval(frame), key.eval(frame), frame.closure.context.stringLibrary);
+    }
+
+    @Override
+    public void assign(Frame frame, Object value) {
+      Object table = target.eval(frame);
+      if (!(table instanceof Table)) {
+        throw new LuaError("attempt to index a " + LuaRuntime.typeName(table) + " value");
+      }
+      ((Table) table).put(key.eval(frame), value);
+    }
+  }
+
+  static final class Call extends Expr {
+    final Expr function;
+    final Expr[] args;
+
+    Call(Expr function, Expr[] args) {
+      this.function = function;
+      this.args = args;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      return LuaRuntime.first(evalMulti(frame));
+    }
+
+    @Override
+    Object[] evalMulti(Frame frame) {
+      Object callee = function.eval(frame);
+      return LuaRuntime.call(callee, evalList(args, frame));
+    }
+  }
+
+  static final class MethodCall extends Expr {
+    final Expr target;
+    final String name;
+    final Expr[] args;
+
+    MethodCall(Expr target, String name, Expr[] args) {
+      this.target = target;
+      this.name = name;
+      this.args = args;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      return LuaRuntime.first(evalMulti(frame));
+    }
+
+    @Override
+    Object[] evalMulti(Frame frame) {
+      Object self = target.eval(frame);
+      Object method = LuaRuntime.index(self, name, frame.closure.context.stringLibrary);
+      Object[] rest = evalList(args, frame);
+      Object[] all = new Object[rest.length + 1];
+      all[0] = self;
+      System.arraycopy(rest, 0, all, 1, rest.length);
+      return LuaRuntime.call(method, all);
+    }
+  }
+
+  static final class FunctionExpr extends Expr {
+    final Proto proto;
+
+    FunctionExpr(Proto proto) {
+      this.proto = proto;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      Cell[] upvalues = new Cell[proto.upvalueIndex.length];
+      for (int i = 0; i < upvalues.length; i++) {
+        upvalues[i] = proto.upvalueFromLocal[i] ? frame.slots[proto.upvalueIndex[i]]
+            : frame.closure.upvalues[proto.upvalueIndex[i]];
+      }
+      return new Closure(proto, upvalues, frame.closure.context);
+    }
+  }
+
+  static final class TableConstructor extends Expr {
+    /** Null keys are positional items. */
+    final Expr[] keys;
+    final Expr[] values;
+
+    TableConstructor(Expr[] keys, Expr[] values) {
+      this.keys = keys;
+      this.values = values;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      Table table = new Table();
+      int position = 1;
+      for (int i = 0; i < values.length; i++) {
+        if (keys[i] != null) {
+          table.put(keys[i].eval(frame), values[i].eval(frame));
+        } else if (i == values.length - 1) {
+          for (Object value : values[i].evalMulti(frame)) {
+            table.put((double) position++, value);
+          }
+        } else {
+          table.put((double) position++, values[i].eval(frame));
+        }
+      }
+      return table;
+    }
+  }
+
+  static final class Paren extends Expr {
+    final Expr inner;
+
+    Paren(Expr inner) {
+      this.inner = inner;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      return inner.eval(frame);
+    }
+  }
+
+  static final class And extends Expr {
+    final Expr left;
+    final Expr right;
+
+    And(Expr left, Expr right) {
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      Object value = left.eval(frame);
+      return LuaRuntime.isTruthy(value) ? right.eval(frame) : value;
+    }
+  }
+
+  static final class Or extends Expr {
+    final Expr left;
+    final Expr right;
+
+    Or(Expr left, Expr right) {
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      Object value = left.eval(frame);
+      return LuaRuntime.isTruthy(value) ? value : right.eval(frame);
+    }
+  }
+
+  static final class Unary extends Expr {
+    final String op;
+    final Expr operand;
+
+    Unary(String op, Expr operand) {
+      this.op = op;
+      this.operand = operand;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      Object value = operand.eval(frame);
+      switch (op) {
+        case "not":
+          return !LuaRuntime.isTruthy(value);
+        case "-":
+          return -LuaRuntime.arith(value);
+        default:
+          return LuaRuntime.length(value);
+      }
+    }
+  }
+
+  static final class Binary extends Expr {
+    final String op;
+    final Expr left;
+    final Expr right;
+
+    Binary(String op, Expr left, Expr right) {
+      this.op = op;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    Object eval(Frame frame) {
+      Object a = left.eval(frame);
+      Object b = right.eval(frame);
+      switch (op) {
+        case "==":
+          return LuaRuntime.rawEquals(a, b);
+        case "~=":
+          return !LuaRuntime.rawEquals(a, b);
+        case "<":
+          return LuaRuntime.lessThan(a, b);
+        case "<=":
+          return LuaRuntime.lessOrEqual(a, b);
+        case ">":
+          return LuaRuntime.lessThan(b, a);
+        case ">=":
+          return LuaRuntime.lessOrEqual(b, a);
+        case "..":
+          return LuaRuntime.concat(a, b);
+        default:
+          if (a instanceof Double && b instanceof Double && op.equals("+")) {
+            return (Double) a + (Double) b;
+          }
+          return LuaRuntime.arith(op, a, b);
+      }
+    }
+  }
+}
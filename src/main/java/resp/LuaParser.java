@@ -0,0 +1,786 @@
+package resp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import resp.LuaNodes.Block;
+import resp.LuaNodes.Expr;
+import resp.LuaNodes.Stat;
+
+/**
+ * Lexer and recursive-descent parser for the Lua 5.1 subset: every statement form except
+ * goto, all operators with Lua's precedence, closures, varargs, method calls and long
+ * strings/comments. Metatables and coroutines are not supported.
+ */
+final class LuaParser {
+  private static final Set<String> KEYWORDS = Set.of("and", "break", "do", "else", "elseif", "end", "false",
+      "for", "function", "if", "in", "local", "nil", "not", "or", "repeat", "return", "then", "true", "until",
+      "while");
+
+  // Binary operator priorities (left, right), from lparser.c
+  private static final Map<String, int[]> BINARY = new HashMap<>();
+  private static final int UNARY_PRIORITY = 8;
+
+  static {
+    BINARY.put("or", new int[] {1, 1});
+    BINARY.put("and", new int[] {2, 2});
+    for (String op : new String[] {"<", ">", "<=", ">=", "~=", "=="}) {
+      BINARY.put(op, new int[] {3, 3});
+    }
+    BINARY.put("..", new int[] {5, 4});
+    BINARY.put("+", new int[] {6, 6});
+    BINARY.put("-", new int[] {6, 6});
+    BINARY.put("*", new int[] {7, 7});
+    BINARY.put("/", new int[] {7, 7});
+    BINARY.put("%", new int[] {7, 7});
+    BINARY.put("^", new int[] {10, 9});
+  }
+
+  private enum Kind { NAME, NUMBER, STRING, SYMBOL, EOF }
+
+  private static final class Token {
+    final Kind kind;
+    final String text;
+    final Object value;
+    final int line;
+
+    Token(Kind kind, String text, Object value, int line) {
+      this.kind = kind;
+      this.text = text;
+      this.value = value;
+      this.line = line;
+    }
+  }
+
+  /**
+   * Compile-time state of one function: its blocks of visible locals and its upvalues.
+   */
+  private static final class FunctionState {
+    final FunctionState parent;
+    final Deque<Map<String, Integer>> blocks = new ArrayDeque<>();
+    final List<String> upvalueNames = new ArrayList<>();
+    final List<Boolean> upvalueFromLocal = new ArrayList<>();
+    final List<Integer> upvalueIndex = new ArrayList<>();
+    boolean vararg;
+    int slots;
+
+    FunctionState(FunctionState parent) {
+      this.parent = parent;
+    }
+
+    Integer local(String name) {
+      for (Map<String, Integer> block : blocks) {
+        Integer slot = block.get(name);
+        if (slot != null) {
+          return slot;
+        }
+      }
+      return null;
+    }
+
+    int upvalue(String name) {
+      int existing = upvalueNames.indexOf(name);
+      if (existing >= 0) {
+        return existing;
+      }
+      if (parent == null) {
+        return -1;
+      }
+      Integer slot = parent.local(name);
+      boolean fromLocal = slot != null;
+      int index = fromLocal ? slot : parent.upvalue(name);
+      if (index < 0) {
+        return -1;
+      }
+      upvalueNames.add(name);
+      upvalueFromLocal.add(fromLocal);
+      upvalueIndex.add(index);
+      return upvalueNames.size() - 1;
+    }
+  }
+
+  private final String source;
+  private int pos;
+  private int line = 1;
+  private Token token;
+  private Token lookahead;
+  private FunctionState function;
+
+  private LuaParser(String source) {
+    this.source = source;
+    this.token = lex();
+  }
+
+  /**
+   * Parses a chunk into the prototype of its main function (vararg, no parameters).
+   */
+  static LuaNodes.Proto parse(String source) {
+    LuaParser parser = new LuaParser(source.startsWith("#") ? "--" + source : source);
+    parser.function = new FunctionState(null);
+    parser.function.vararg = true;
+    Block body = parser.block();
+    if (parser.token.kind != Kind.EOF) {
+      throw parser.error("'<eof>' expected near '" + parser.token.text + "'");
+    }
+    return parser.close(0, body);
+  }
+
+  // ---- Statements ----
+
+  private Block block() {
+    function.blocks.push(new HashMap<>());
+    try {
+      return blockBody();
+    } finally {
+      function.blocks.pop();
+    }
+  }
+
+  /**
+   * Statements up to a block end, in the current scope (repeat-until needs the scope
+   * to stay open for its condition).
+   */
+  private Block blockBody() {
+    List<Stat> stats = new ArrayList<>();
+    while (!blockFollows()) {
+      if (check("return")) {
+        int at = token.line;
+        next();
+        Expr[] values = blockFollows() || check(";") ? new Expr[0] : exprList();
+        accept(";");
+        stats.add(at(new LuaNodes.Return(values), at));
+        break;
+      }
+      if (check("break")) {
+        stats.add(at(new LuaNodes.Break(), token.line));
+        next();
+        accept(";");
+        break;
+      }
+      Stat stat = statement();
+      if (stat != null) {
+        stats.add(stat);
+      }
+      accept(";");
+    }
+    return new Block(stats);
+  }
+
+  private boolean blockFollows() {
+    return token.kind == Kind.EOF || token.kind == Kind.SYMBOL
+        && (check("end") || check("else") || check("elseif") || check("until"));
+  }
+
+  private Stat statement() {
+    int at = token.line;
+    if (accept(";")) {
+      return null;
+    }
+    if (accept("if")) {
+      List<Expr> conditions = new ArrayList<>();
+      List<Block> blocks = new ArrayList<>();
+      conditions.add(expr());
+      expect("then");
+      blocks.add(block());
+      Block otherwise = null;
+      while (true) {
+        if (accept("elseif")) {
+          conditions.add(expr());
+          expect("then");
+          blocks.add(block());
+        } else if (accept("else")) {
+          otherwise = block();
+          expect("end");
+          break;
+        } else {
+          expect("end");
+          break;
+        }
+      }
+      return at(new LuaNodes.If(conditions.toArray(new Expr[0]), blocks.toArray(new Block[0]), otherwise), at);
+    }
+    if (accept("while")) {
+      Expr condition = expr();
+      expect("do");
+      Block body = block();
+      expect("end");
+      return at(new LuaNodes.While(condition, body), at);
+    }
+    if (accept("do")) {
+      Block body = block();
+      expect("end");
+      return at(body, at);
+    }
+    if (accept("repeat")) {
+      function.blocks.push(new HashMap<>());
+      try {
+        Block body = blockBody();
+        expect("until");
+        return at(new LuaNodes.Repeat(body, expr()), at);
+      } finally {
+        function.blocks.pop();
+      }
+    }
+    if (accept("for")) {
+      return at(forStatement(), at);
+    }
+    if (accept("function")) {
+      // function a.b.c:m() ... end assigns into a table (a global name is read-only)
+      Expr target = variable(name());
+      String method = null;
+      while (check(".") || check(":")) {
+        boolean isMethod = check(":");
+        next();
+        String key = name();
+        if (isMethod) {
+          method = key;
+          break;
+        }
+        target = new LuaNodes.Index(target, new LuaNodes.Constant(key));
+      }
+      if (method != null) {
+        target = new LuaNodes.Index(target, new LuaNodes.Constant(method));
+      }
+      LuaNodes.FunctionExpr body = functionBody(method != null);
+      return at(new LuaNodes.Assign(new LuaNodes.Target[] {(LuaNodes.Target) target}, new Expr[] {body}), at);
+    }
+    if (accept("local")) {
+      if (accept("function")) {
+        String name = name();
+        int slot = declare(name);
+        return at(new LuaNodes.LocalFunction(slot, functionBody(false)), at);
+      }
+      List<String> names = new ArrayList<>();
+      do {
+        names.add(name());
+      } while (accept(","));
+      Expr[] values = accept("=") ? exprList() : new Expr[0];
+      int[] slots = new int[names.size()];
+      for (int i = 0; i < slots.length; i++) {
+        slots[i] = declare(names.get(i));
+      }
+      return at(new LuaNodes.Local(slots, values), at);
+    }
+    Expr first = suffixedExpr();
+    if (check("=") || check(",")) {
+      List<LuaNodes.Target> targets = new ArrayList<>();
+      targets.add(target(first));
+      while (accept(",")) {
+        targets.add(target(suffixedExpr()));
+      }
+      expect("=");
+      return at(new LuaNodes.Assign(targets.toArray(new LuaNodes.Target[0]), exprList()), at);
+    }
+    if (!(first instanceof LuaNodes.Call || first instanceof LuaNodes.MethodCall)) {
+      throw error("syntax error near '" + token.text + "'");
+    }
+    return at(new LuaNodes.CallStat(first), at);
+  }
+
+  private Stat forStatement() {
+    String first = name();
+    if (accept("=")) {
+      Expr start = expr();
+      expect(",");
+      Expr limit = expr();
+      Expr step = accept(",") ? expr() : null;
+      expect("do");
+      function.blocks.push(new HashMap<>());
+      try {
+        int slot = declare(first);
+        Block body = block();
+        expect("end");
+        return new LuaNodes.NumericFor(slot, start, limit, step, body);
+      } finally {
+        function.blocks.pop();
+      }
+    }
+    List<String> names = new ArrayList<>();
+    names.add(first);
+    while (accept(",")) {
+      names.add(name());
+    }
+    expect("in");
+    Expr[] iterators = exprList();
+    expect("do");
+    function.blocks.push(new HashMap<>());
+    try {
+      int[] slots = new int[names.size()];
+      for (int i = 0; i < slots.length; i++) {
+        slots[i] = declare(names.get(i));
+      }
+      Block body = block();
+      expect("end");
+      return new LuaNodes.GenericFor(slots, iterators, body);
+    } finally {
+      function.blocks.pop();
+    }
+  }
+
+  private LuaNodes.Target target(Expr expr) {
+    if (!(expr instanceof LuaNodes.Target)) {
+      throw error("syntax error near '" + token.text + "'");
+    }
+    return (LuaNodes.Target) expr;
+  }
+
+  private int declare(String name) {
+    int slot = function.slots++;
+    function.blocks.peek().put(name, slot);
+    return slot;
+  }
+
+  private static <T extends Stat> T at(T stat, int line) {
+    stat.line = line;
+    return stat;
+  }
+
+  // ---- Functions ----
+
+  private LuaNodes.FunctionExpr functionBody(boolean method) {
+    FunctionState enclosing = function;
+    function = new FunctionState(enclosing);
+    function.blocks.push(new HashMap<>());
+    try {
+      int parameters = 0;
+      if (method) {
+        declare("self");
+        parameters++;
+      }
+      expect("(");
+      if (!check(")")) {
+        do {
+          if (accept("...")) {
+            function.vararg = true;
+            break;
+          }
+          declare(name());
+          parameters++;
+        } while (accept(","));
+      }
+      expect(")");
+      Block body = block();
+      expect("end");
+      return new LuaNodes.FunctionExpr(close(parameters, body));
+    } finally {
+      function = enclosing;
+    }
+  }
+
+  private LuaNodes.Proto close(int parameters, Block body) {
+    boolean[] fromLocal = new boolean[function.upvalueIndex.size()];
+    int[] index = new int[fromLocal.length];
+    for (int i = 0; i < fromLocal.length; i++) {
+      fromLocal[i] = function.upvalueFromLocal.get(i);
+      index[i] = function.upvalueIndex.get(i);
+    }
+    return new LuaNodes.Proto(parameters, function.vararg, function.slots, body, fromLocal, index);
+  }
+
+  // ---- Expressions ----
+
+  private Expr[] exprList() {
+    List<Expr> exprs = new ArrayList<>();
+    do {
+      exprs.add(expr());
+    } while (accept(","));
+    return exprs.toArray(new Expr[0]);
+  }
+
+  private Expr expr() {
+    return subExpr(0);
+  }
+
+  private Expr subExpr(int limit) {
+    Expr left;
+    if (check("not") || check("-") || check("#")) {
+      String op = token.text;
+      next();
+      left = new LuaNodes.Unary(op, subExpr(UNARY_PRIORITY));
+    } else {
+      left = simpleExpr();
+    }
+    while (token.kind == Kind.SYMBOL && BINARY.containsKey(token.text)) {
+      String op = token.text;
+      int[] priority = BINARY.get(op);
+      if (priority[0] <= limit) {
+        break;
+      }
+      next();
+      Expr right = subExpr(priority[1]);
+      if (op.equals("and")) {
+        left = new LuaNodes.And(left, right);
+      } else if (op.equals("or")) {
+        left = new LuaNodes.Or(left, right);
+      } else {
+        left = new LuaNodes.Binary(op, left, right);
+      }
+    }
+    return left;
+  }
+
+  private Expr simpleExpr() {
+    switch (token.kind) {
+      case NUMBER:
+      case STRING: {
+        Object value = token.value;
+        next();
+        return new LuaNodes.Constant(value);
+      }
+      default:
+        break;
+    }
+    if (accept("nil")) {
+      return new LuaNodes.Constant(null);
+    }
+    if (accept("true")) {
+      return new LuaNodes.Constant(Boolean.TRUE);
+    }
+    if (accept("false")) {
+      return new LuaNodes.Constant(Boolean.FALSE);
+    }
+    if (accept("...")) {
+      if (!function.vararg) {
+        throw error("cannot use '...' outside a vararg function");
+      }
+      return new LuaNodes.Vararg();
+    }
+    if (accept("function")) {
+      return functionBody(false);
+    }
+    if (check("{")) {
+      return tableConstructor();
+    }
+    return suffixedExpr();
+  }
+
+  private Expr primaryExpr() {
+    if (token.kind == Kind.NAME) {
+      return variable(name());
+    }
+    if (accept("(")) {
+      Expr inner = expr();
+      expect(")");
+      return new LuaNodes.Paren(inner);
+    }
+    throw error("unexpected symbol near '" + token.text + "'");
+  }
+
+  private Expr variable(String name) {
+    Integer slot = function.local(name);
+    if (slot != null) {
+      return new LuaNodes.LocalVar(slot);
+    }
+    int upvalue = function.upvalue(name);
+    return upvalue >= 0 ? new LuaNodes.Upvalue(upvalue) : new LuaNodes.Global(name);
+  }
+
+  private Expr suffixedExpr() {
+    Expr expr = primaryExpr();
+    while (true) {
+      if (accept(".")) {
+        expr = new LuaNodes.Index(expr, new LuaNodes.Constant(name()));
+      } else if (accept("[")) {
+        Expr key = expr();
+        expect("]");
+        expr = new LuaNodes.Index(expr, key);
+      } else if (accept(":")) {
+        String method = name();
+        expr = new LuaNodes.MethodCall(expr, method, callArgs());
+      } else if (check("(") || check("{") || token.kind == Kind.STRING) {
+        expr = new LuaNodes.Call(expr, callArgs());
+      } else {
+        return expr;
+      }
+    }
+  }
+
+  private Expr[] callArgs() {
+    if (token.kind == Kind.STRING) {
+      Expr arg = new LuaNodes.Constant(token.value);
+      next();
+      return new Expr[] {arg};
+    }
+    if (check("{")) {
+      return new Expr[] {tableConstructor()};
+    }
+    expect("(");
+    if (accept(")")) {
+      return new Expr[0];
+    }
+    Expr[] args = exprList();
+    expect(")");
+    return args;
+  }
+
+  private Expr tableConstructor() {
+    expect("{");
+    List<Expr> keys = new ArrayList<>();
+    List<Expr> values = new ArrayList<>();
+    while (!check("}")) {
+      if (accept("[")) {
+        keys.add(expr());
+        expect("]");
+        expect("=");
+        values.add(expr());
+      } else if (token.kind == Kind.NAME && peek().kind == Kind.SYMBOL && peek().text.equals("=")) {
+        keys.add(new LuaNodes.Constant(name()));
+        expect("=");
+        values.add(expr());
+      } else {
+        keys.add(null);
+        values.add(expr());
+      }
+      if (!accept(",") && !accept(";")) {
+        break;
+      }
+    }
+    expect("}");
+    return new LuaNodes.TableConstructor(keys.toArray(new Expr[0]), values.toArray(new Expr[0]));
+  }
+
+  // ---- Token helpers ----
+
+  private boolean check(String symbol) {
+    return token.kind == Kind.SYMBOL && token.text.equals(symbol);
+  }
+
+  private boolean accept(String symbol) {
+    if (check(symbol)) {
+      next();
+      return true;
+    }
+    return false;
+  }
+
+  private void expect(String symbol) {
+    if (!accept(symbol)) {
+      throw error("'" + symbol + "' expected near '" + token.text + "'");
+    }
+  }
+
+  private String name() {
+    if (token.kind != Kind.NAME) {
+      throw error("<name> expected near '" + token.text + "'");
+    }
+    String name = token.text;
+    next();
+    return name;
+  }
+
+  private void next() {
+    if (lookahead != null) {
+      token = lookahead;
+      lookahead = null;
+    } else {
+      token = lex();
+    }
+  }
+
+  private Token peek() {
+    if (lookahead == null) {
+      lookahead = lex();
+    }
+    return lookahead;
+  }
+
+  private RespError error(String message) {
+    return new RespError("ERR Error compiling script (new function): user_script:" + token.line + ": " + message);
+  }
+
+  // ---- Lexer ----
+
+  private Token lex() {
+    skipWhitespaceAndComments();
+    if (pos >= source.length()) {
+      return new Token(Kind.EOF, "<eof>", null, line);
+    }
+    char c = source.charAt(pos);
+    int start = pos;
+    if (Character.isLetter(c) || c == '_') {
+      while (pos < source.length() && (Character.isLetterOrDigit(source.charAt(pos)) || source.charAt(pos) == '_')) {
+        pos++;
+      }
+      String word = source.substring(start, pos);
+      return new Token(KEYWORDS.contains(word) ? Kind.SYMBOL : Kind.NAME, word, null, line);
+    }
+    if (Character.isDigit(c) || c == '.' && pos + 1 < source.length() && Character.isDigit(source.charAt(pos + 1))) {
+      return number();
+    }
+    if (c == '"' || c == '\'') {
+      return new Token(Kind.STRING, "string", quotedString(c), line);
+    }
+    if (c == '[' && longBracketLevel() >= 0) {
+      int startLine = line;
+      return new Token(Kind.STRING, "string", longString(), startLine);
+    }
+    for (String symbol : new String[] {"...", "..", "==", "~=", "<=", ">="}) {
+      if (source.startsWith(symbol, pos)) {
+        pos += symbol.length();
+        return new Token(Kind.SYMBOL, symbol, null, line);
+      }
+    }
+    if ("+-*/%^#<>=(){}[];:,.".indexOf(c) >= 0) {
+      pos++;
+      return new Token(Kind.SYMBOL, String.valueOf(c), null, line);
+    }
+    throw new RespError("ERR Error compiling script (new function): user_script:" + line
+        + ": unexpected symbol near '" + c + "'");
+  }
+
+  private void skipWhitespaceAndComments() {
+    while (pos < source.length()) {
+      char c = source.charAt(pos);
+      if (c == '\n') {
+        line++;
+        pos++;
+      } else if (Character.isWhitespace(c)) {
+        pos++;
+      } else if (source.startsWith("--", pos)) {
+        pos += 2;
+        if (pos < source.length() && source.charAt(pos) == '[' && longBracketLevel() >= 0) {
+          longString();
+        } else {
+          while (pos < source.length() && source.charAt(pos) != '\n') {
+            pos++;
+          }
+        }
+      } else {
+        return;
+      }
+    }
+  }
+
+  private Token number() {
+    int start = pos;
+    if (source.startsWith("0x", pos) || source.startsWith("0X", pos)) {
+      pos += 2;
+      while (pos < source.length() && Character.digit(source.charAt(pos), 16) >= 0) {
+        pos++;
+      }
+    } else {
+      while (pos < source.length()) {
+        char c = source.charAt(pos);
+        if (Character.isDigit(c) || c == '.') {
+          pos++;
+        } else if ((c == 'e' || c == 'E') && pos + 1 < source.length()) {
+          pos++;
+          if (source.charAt(pos) == '+' || source.charAt(pos) == '-') {
+            pos++;
+          }
+        } else {
+          break;
+        }
+      }
+    }
+    String text = source.substring(start, pos);
+    Double value = LuaRuntime.toNumber(text);
+    if (value == null) {
+      throw new RespError("ERR Error compiling script (new function): user_script:" + line
+          + ": malformed number near '" + text + "'");
+    }
+    return new Token(Kind.NUMBER, text, value, line);
+  }
+
+  private String quotedString(char quote) {
+    StringBuilder text = new StringBuilder();
+    pos++;
+    while (true) {
+      if (pos >= source.length() || source.charAt(pos) == '\n') {
+        throw new RespError("ERR Error compiling script (new function): user_script:" + line
+            + ": unfinished string");
+      }
+      char c = source.charAt(pos++);
+      if (c == quote) {
+        return text.toString();
+      }
+      if (c != '\\') {
+        text.append(c);
+        continue;
+      }
+      char escape = source.charAt(pos++);
+      switch (escape) {
+        case 'n':
+          text.append('\n');
+          break;
+        case 't':
+          text.append('\t');
+          break;
+        case 'r':
+          text.append('\r');
+          break;
+        case 'a':
+          text.append('\u0007');
+          break;
+        case 'b':
+          text.append('\b');
+          break;
+        case 'f':
+          text.append('\f');
+          break;
+        case 'v':
+          text.append('\u000b');
+          break;
+        case '\n':
+          line++;
+          text.append('\n');
+          break;
+        case 'x':
+          text.append((char) Integer.parseInt(source.substring(pos, pos + 2), 16));
+          pos += 2;
+          break;
+        default:
+          if (Character.isDigit(escape)) {
+            int start = pos - 1;
+            while (pos < source.length() && pos - start < 3 && Character.isDigit(source.charAt(pos))) {
+              pos++;
+            }
+            text.append((char) Integer.parseInt(source.substring(start, pos)));
+          } else {
+            text.append(escape);
+          }
+      }
+    }
+  }
+
+  /**
+   * At "[": the level of a long bracket ("[[" is 0, "[==[" is 2), or -1 if this is not one.
+   */
+  private int longBracketLevel() {
+    int i = pos + 1;
+    int level = 0;
+    while (i < source.length() && source.charAt(i) == '=') {
+      level++;
+      i++;
+    }
+    return i < source.length() && source.charAt(i) == '[' ? level : -1;
+  }
+
+  private String longString() {
+    int level = longBracketLevel();
+    pos += level + 2;
+    if (pos < source.length() && source.charAt(pos) == '\n') {
+      line++;
+      pos++;
+    }
+    String close = "]" + "=".repeat(level) + "]";
+    int end = source.indexOf(close, pos);
+    if (end < 0) {
+      throw new RespError("ERR Error compiling script (new function): user_script:" + line
+          + ": unfinished long string");
+    }
+    String text = source.substring(pos, end);
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        line++;
+      }
+    }
+    pos = end + close.length();
+    return text;
+  }
+}
@@ -0,0 +1,368 @@
+package resp;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Values and operators of the Lua subset behind EVAL.
+ *
+ * Lua values map onto Java objects: nil is null, booleans are Boolean, every number is a
+ * Double (Lua 5.1 has no integer type), strings are String (one char per byte, like the
+ * command arguments), tables are {@link Table}, and functions are {@link Function}.
+ */
+final class LuaRuntime {
+  private static final Pattern DECIMAL = Pattern.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+  private static final Pattern HEX = Pattern.compile("[+-]?0[xX][0-9a-fA-F]+");
+
+  private LuaRuntime() {
+  }
+
+  @FunctionalInterface
+  interface Function {
+    Object[] call(Object[] args);
+  }
+
+  static final Object[] NONE = new Object[0];
+
+  /**
+   * A Lua error in flight; the value is what error() was given (usually a string, or a
+   * {err = ...} table from redis.call).
+   */
+  static final class LuaError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    final Object value;
+    boolean positioned;
+
+    LuaError(Object value) {
+      this(value, false);
+    }
+
+    LuaError(Object value, boolean positioned) {
+      super(value instanceof String ? (String) value : "error object", null, false, false);
+      this.value = value;
+      this.positioned = positioned;
+    }
+  }
+
+  /**
+   * A local variable; closures share the cell rather than copying the value.
+   */
+  static final class Cell {
+    Object value;
+
+    Cell(Object value) {
+      this.value = value;
+    }
+  }
+
+  /**
+   * Lua table with an array part for keys 1..n and a hash part for the rest.
+   */
+  static final class Table {
+    final ArrayList<Object> array = new ArrayList<>();
+    final Map<Object, Object> hash = new HashMap<>();
+
+    Object get(Object key) {
+      if (key instanceof Double) {
+        int index = arrayIndex((Double) key);
+        if (index > 0 && index <= array.size()) {
+          return array.get(index - 1);
+        }
+        key = normalize((Double) key);
+      }
+      return key == null ? null : hash.get(key);
+    }
+
+    Object get(String key) {
+      return hash.get(key);
+    }
+
+    void put(Object key, Object value) {
+      if (key == null) {
+        throw new LuaError("table index is nil");
+      }
+      if (key instanceof Double) {
+        double number = (Double) key;
+        if (Double.isNaN(number)) {
+          throw new LuaError("table index is NaN");
+        }
+        int index = arrayIndex(number);
+        if (index > 0 && index <= array.size()) {
+          array.set(index - 1, value);
+          trimArray();
+          return;
+        }
+        if (index == array.size() + 1 && value != null) {
+          array.add(value);
+          hash.remove(key);
+          migrate();
+          return;
+        }
+        key = normalize(number);
+      }
+      if (value == null) {
+        hash.remove(key);
+      } else {
+        hash.put(key, value);
+      }
+    }
+
+    void add(Object value) {
+      put((double) (array.size() + 1), value);
+    }
+
+    /**
+     * The border #t: the array part always ends at a non-nil value.
+     */
+    int length() {
+      return array.size();
+    }
+
+    private void trimArray() {
+      while (!array.isEmpty() && array.get(array.size() - 1) == null) {
+        array.remove(array.size() - 1);
+      }
+    }
+
+    private void migrate() {
+      if (hash.isEmpty()) {
+        return;
+      }
+      Object next;
+      while ((next = hash.remove((double) (array.size() + 1))) != null) {
+        array.add(next);
+      }
+    }
+
+    private static int arrayIndex(double key) {
+      return key == Math.rint(key) && key >= 1 && key <= Integer.MAX_VALUE ? (int) key : -1;
+    }
+
+    private static Object normalize(double key) {
+      return key == 0 ? 0.0 : key;
+    }
+  }
+
+  // ---- Conversions ----
+
+  static boolean isTruthy(Object value) {
+    return value != null && value != Boolean.FALSE;
+  }
+
+  static String typeName(Object value) {
+    if (value == null) {
+      return "nil";
+    }
+    if (value instanceof Boolean) {
+      return "boolean";
+    }
+    if (value instanceof Double) {
+      return "number";
+    }
+    if (value instanceof String) {
+      return "string";
+    }
+    if (value instanceof Table) {
+      return "table";
+    }
+    return "function";
+  }
+
+  /**
+   * tonumber semantics: numbers as is, numeric strings parsed, anything else null.
+   */
+  static Double toNumber(Object value) {
+    if (value instanceof Double) {
+      return (Double) value;
+    }
+    if (!(value instanceof String)) {
+      return null;
+    }
+    String text = ((String) value).trim();
+    if (DECIMAL.matcher(text).matches()) {
+      return Double.parseDouble(text);
+    }
+    if (HEX.matcher(text).matches()) {
+      boolean negative = text.startsWith("-");
+      double number = new BigInteger(text.replaceFirst("^[+-]?0[xX]", ""), 16).doubleValue();
+      return negative ? -number : number;
+    }
+    return null;
+  }
+
+  static String toStringValue(Object value) {
+    if (value == null) {
+      return "nil";
+    }
+    if (value instanceof Double) {
+      return numberToString((Double) value);
+    }
+    if (value instanceof String) {
+      return (String) value;
+    }
+    if (value instanceof Boolean) {
+      return value.toString();
+    }
+    return typeName(value) + ": 0x" + Integer.toHexString(System.identityHashCode(value));
+  }
+
+  /**
+   * Lua 5.1's "%.14g".
+   */
+  static String numberToString(double number) {
+    if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+      return Long.toString((long) number);
+    }
+    if (Double.isNaN(number)) {
+      return "nan";
+    }
+    if (Double.isInfinite(number)) {
+      return number > 0 ? "inf" : "-inf";
+    }
+    return trimG(String.format(Locale.ROOT, "%.14g", number));
+  }
+
+  /**
+   * C's %g drops trailing zeros; Java's does not.
+   */
+  static String trimG(String formatted) {
+    int exponent = formatted.indexOf('e');
+    String mantissa = exponent < 0 ? formatted : formatted.substring(0, exponent);
+    String suffix = exponent < 0 ? "" : formatted.substring(exponent);
+    if (mantissa.indexOf('.') >= 0) {
+      mantissa = mantissa.replaceAll("0+$", "");
+      if (mantissa.endsWith(".")) {
+        mantissa = mantissa.substring(0, mantissa.length() - 1);
+      }
+    }
+    return mantissa + suffix;
+  }
+
+  // ---- Operators ----
+
+  static double arith(Object value) {
+    Double number = toNumber(value);
+    if (number == null) {
+      throw new LuaError("attempt to perform arithmetic on a " + typeName(value) + " value");
+    }
+    return number;
+  }
+
+  static Object arith(String op, Object a, Object b) {
+    double x = arith(a);
+    double y = arith(b);
+    switch (op) {
+      case "+":
+        return x + y;
+      case "-":
+        return x - y;
+      case "*":
+        return x * y;
+      case "/":
+        return x / y;
+      case "%":
+        return x - Math.floor(x / y) * y;
+      case "^":
+        return Math.pow(x, y);
+      default:
+        throw new IllegalArgumentException(op);
+    }
+  }
+
+  static boolean rawEquals(Object a, Object b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null) {
+      return false;
+    }
+    if (a instanceof Double && b instanceof Double) {
+      return ((Double) a).doubleValue() == ((Double) b).doubleValue();
+    }
+    if (a instanceof String && b instanceof String || a instanceof Boolean && b instanceof Boolean) {
+      return a.equals(b);
+    }
+    return false;
+  }
+
+  static boolean lessThan(Object a, Object b) {
+    if (a instanceof Double && b instanceof Double) {
+      return (Double) a < (Double) b;
+    }
+    if (a instanceof String && b instanceof String) {
+      return ((String) a).compareTo((String) b) < 0;
+    }
+    throw compareError(a, b);
+  }
+
+  static boolean lessOrEqual(Object a, Object b) {
+    if (a instanceof Double && b instanceof Double) {
+      return (Double) a <= (Double) b;
+    }
+    if (a instanceof String && b instanceof String) {
+      return ((String) a).compareTo((String) b) <= 0;
+    }
+    throw compareError(a, b);
+  }
+
+  private static LuaError compareError(Object a, Object b) {
+    String left = typeName(a);
+    String right = typeName(b);
+    return new LuaError(left.equals(right) ? "attempt to compare two " + left + " values"
+        : "attempt to compare " + left + " with " + right);
+  }
+
+  static String concat(Object a, Object b) {
+    return concatOperand(a) + concatOperand(b);
+  }
+
+  private static String concatOperand(Object value) {
+    if (value instanceof String) {
+      return (String) value;
+    }
+    if (value instanceof Double) {
+      return numberToString((Double) value);
+    }
+    throw new LuaError("attempt to concatenate a " + typeName(value) + " value");
+  }
+
+  static Object length(Object value) {
+    if (value instanceof String) {
+      return (double) ((String) value).length();
+    }
+    if (value instanceof Table) {
+      return (double) ((Table) value).length();
+    }
+    throw new LuaError("attempt to get length of a " + typeName(value) + " value");
+  }
+
+  static Object index(Object target, Object key, Table stringLibrary) {
+    if (target instanceof Table) {
+      return ((Table) target).get(key);
+    }
+    if (target instanceof String) {
+      return stringLibrary.get(key);
+    }
+    throw new LuaError("attempt to index a " + typeName(target) + " value");
+  }
+
+  static Object[] call(Object function, Object[] args) {
+    if (!(function instanceof Function)) {
+      throw new LuaError("attempt to call a " + typeName(function) + " value");
+    }
+    return ((Function) function).call(args);
+  }
+
+  static Object first(Object[] values) {
+    return values.length == 0 ? null : values[0];
+  }
+
+  static Object arg(Object[] args, int index) {
+    return index < args.length ? args[index] : null;
+  }
+}
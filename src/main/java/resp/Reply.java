@@ -0,0 +1,92 @@
+package resp;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reply values produced by commands, independent of the protocol version they are sent in.
+ *
+ * Plain Java types cover the common cases: String is a bulk string, null a null bulk
+ * string, Long an integer, Double a double (a bulk string under RESP2), List an array.
+ * The nested types cover the rest; {@link RespWriter} renders all of them for RESP2 or
+ * RESP3.
+ */
+final class Reply {
+  static final Status OK = new Status("OK");
+  static final Status QUEUED = new Status("QUEUED");
+  static final Status PONG = new Status("PONG");
+
+  /** Null array: "*-1" under RESP2, "_" under RESP3. */
+  static final Object NULL_ARRAY = new Object();
+  /** The command has already sent its replies itself (pub/sub confirmations). */
+  static final Object NONE = new Object();
+  /** The command parked the client until data arrives or its timeout passes. */
+  static final Object BLOCKED = new Object();
+
+  private Reply() {
+  }
+
+  static Status status(String text) {
+    return new Status(text);
+  }
+
+  static Error error(String text) {
+    return new Error(text);
+  }
+
+  static MapReply map(Map<?, ?> entries) {
+    return new MapReply(entries);
+  }
+
+  static SetReply set(Collection<?> members) {
+    return new SetReply(members);
+  }
+
+  static Push push(List<?> items) {
+    return new Push(items);
+  }
+
+  static final class Status {
+    final String text;
+
+    Status(String text) {
+      this.text = text;
+    }
+  }
+
+  static final class Error {
+    final String text;
+
+    Error(String text) {
+      this.text = text;
+    }
+  }
+
+  /** A map under RESP3; a flat key, value, key, value array under RESP2. */
+  static final class MapReply {
+    final Map<?, ?> entries;
+
+    MapReply(Map<?, ?> entries) {
+      this.entries = entries;
+    }
+  }
+
+  /** A set under RESP3; an array under RESP2. */
+  static final class SetReply {
+    final Collection<?> members;
+
+    SetReply(Collection<?> members) {
+      this.members = members;
+    }
+  }
+
+  /** Out-of-band message: a push under RESP3; an array under RESP2. */
+  static final class Push {
+    final List<?> items;
+
+    Push(List<?> items) {
+      this.items = items;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package resp;
+
+/**
+ * A command failure that becomes a RESP error reply; the message starts with the error
+ * code, as Redis sends it ("ERR ...", "WRONGTYPE ...").
+ */
+class RespError extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  RespError(String message) {
+    super(message, null, false, false);
+  }
+
+  static RespError wrongType() {
+    return new RespError("WRONGTYPE Operation against a key holding the wrong kind of value");
+  }
+
+  static RespError syntax() {
+    return new RespError("ERR syntax error");
+  }
+
+  static RespError notInteger() {
+    return new RespError("ERR value is not an integer or out of range");
+  }
+
+  static RespError notFloat() {
+    return new RespError("ERR value is not a valid float");
+  }
+
+  static RespError wrongArgs(String command) {
+    return new RespError("ERR wrong number of arguments for '" + command + "' command");
+  }
+}
@@ -0,0 +1,135 @@
+package resp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental request parser for one connection.
+ *
+ * Bytes are appended as they arrive and complete commands are taken off the front, so a
+ * pipeline of many commands in one read is handled, as is a command split across reads.
+ * Accepts multibulk requests (what clients send) and inline commands (what telnet sends).
+ * Arguments are decoded as ISO-8859-1, which maps every byte to one char, so binary keys
+ * and values survive the round trip unchanged.
+ */
+final class RespReader {
+  private static final int MAX_BULK_LENGTH = 512 << 20;
+
+  private byte[] buffer = new byte[16 * 1024];
+  private int start;
+  private int end;
+
+  void feed(ByteBuffer source) {
+    int length = source.remaining();
+    if (end + length > buffer.length) {
+      int live = end - start;
+      byte[] target = live + length > buffer.length ? new byte[Math.max(buffer.length * 2, live + length)] : buffer;
+      System.arraycopy(buffer, start, target, 0, live);
+      buffer = target;
+      start = 0;
+      end = live;
+    }
+    source.get(buffer, end, length);
+    end += length;
+  }
+
+  boolean hasBufferedInput() {
+    return start < end;
+  }
+
+  /**
+   * Returns the next complete command, or null if more bytes are needed.
+   */
+  List<String> next() {
+    if (start == end) {
+      return null;
+    }
+    return buffer[start] == '*' ? nextMultiBulk() : nextInline();
+  }
+
+  private List<String> nextMultiBulk() {
+    int position = start;
+    int lineEnd = findCrlf(position);
+    if (lineEnd < 0) {
+      return null;
+    }
+    int count = parseInt(position + 1, lineEnd, "multibulk length");
+    position = lineEnd + 2;
+
+    List<String> args = new ArrayList<>(Math.max(count, 0));
+    for (int i = 0; i < count; i++) {
+      lineEnd = findCrlf(position);
+      if (lineEnd < 0) {
+        return null;
+      }
+      if (buffer[position] != '$') {
+        throw new RespError("ERR Protocol error: expected '$', got '" + (char) buffer[position] + "'");
+      }
+      int length = parseInt(position + 1, lineEnd, "bulk length");
+      if (length < 0 || length > MAX_BULK_LENGTH) {
+        throw new RespError("ERR Protocol error: invalid bulk length");
+      }
+      position = lineEnd + 2;
+      if (end - position < length + 2) {
+        return null;
+      }
+      args.add(new String(buffer, position, length, StandardCharsets.ISO_8859_1));
+      position += length + 2;
+    }
+    start = position;
+    return args.isEmpty() ? next() : args;
+  }
+
+  private List<String> nextInline() {
+    int lineEnd = findLf(start);
+    if (lineEnd < 0) {
+      return null;
+    }
+    int contentEnd = lineEnd > start && buffer[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+    String line = new String(buffer, start, contentEnd - start, StandardCharsets.ISO_8859_1);
+    start = lineEnd + 1;
+    List<String> args = new ArrayList<>();
+    for (String part : line.trim().split("\\s+")) {
+      if (!part.isEmpty()) {
+        args.add(part);
+      }
+    }
+    return args.isEmpty() ? next() : args;
+  }
+
+  private int findCrlf(int from) {
+    for (int i = from; i < end - 1; i++) {
+      if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int findLf(int from) {
+    for (int i = from; i < end; i++) {
+      if (buffer[i] == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int parseInt(int from, int to, String what) {
+    if (from == to) {
+      throw new RespError("ERR Protocol error: invalid " + what);
+    }
+    boolean negative = buffer[from] == '-';
+    long value = 0;
+    for (int i = negative ? from + 1 : from; i < to; i++) {
+      byte b = buffer[i];
+      if (b < '0' || b > '9' || value > Integer.MAX_VALUE) {
+        throw new RespError("ERR Protocol error: invalid " + what);
+      }
+      value = value * 10 + (b - '0');
+    }
+    return (int) (negative ? -value : value);
+  }
+}
@@ -0,0 +1,769 @@
+package resp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded Redis stand-in speaking RESP2 and RESP3, so the distributed demos, tests and
+ * benchmarks run on machines without a Redis server.
+ *
+ * Design:
+ * - One NIO selector thread executes every command, like Redis's own event loop: each
+ *   command, MULTI/EXEC block and script runs without interleaving, with no locks
+ * - Pipelined requests are parsed and executed back to back from one read, and all their
+ *   replies go out in one write
+ * - Covers strings, hashes, lists, sets, sorted sets, HyperLogLog, streams with consumer
+ *   groups, TTLs, SCAN, pub/sub, MULTI/EXEC/WATCH, CLIENT TRACKING (default and BCAST,
+ *   RESP3 pushes), and EVAL/EVALSHA over a Lua subset ({@link LuaInterpreter})
+ * - Keys with a TTL expire on access and in a sweep every 100ms
+ * - Binds to the loopback interface only; there is no AUTH and no persistence
+ */
+public final class RespServer implements AutoCloseable {
+  static final String VERSION = "7.2.4";
+  private static final int DATABASES = 16;
+  private static final long CRON_MILLIS = 100;
+
+  private final ServerSocketChannel serverChannel;
+  private final Selector selector;
+  private final Thread eventLoop;
+  private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+  private final CountDownLatch stopped = new CountDownLatch(1);
+  private volatile boolean closed;
+
+  private final Command.Table commands = new Command.Table();
+  private final Database[] databases = new Database[DATABASES];
+  private final Set<Client> clients = new LinkedHashSet<>();
+  private final Map<String, Set<Client>> channelSubscribers = new HashMap<>();
+  private final Map<String, Set<Client>> patternSubscribers = new HashMap<>();
+  private final Map<String, Set<Client>> trackingTable = new HashMap<>();
+  private final Set<Client> broadcastTrackers = new LinkedHashSet<>();
+  private final Map<String, Set<Client>> watchers = new HashMap<>();
+  private final List<Client> blockedClients = new ArrayList<>();
+  private final Set<String> readyKeys = new HashSet<>();
+  private final Map<String, LuaInterpreter.Script> scripts = new HashMap<>();
+  private final long startedAt = System.currentTimeMillis();
+  private long nextClientId = 1;
+  private long lastCron;
+  private Client current;
+  private boolean servingReadyKeys;
+
+  private final AtomicLong commandsProcessed = new AtomicLong();
+  private final AtomicLong connectionsAccepted = new AtomicLong();
+
+  private RespServer(int port) throws IOException {
+    selector = Selector.open();
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+    for (int i = 0; i < DATABASES; i++) {
+      int index = i;
+      databases[i] = new Database(key -> touch(null, index, key));
+    }
+    KeyCommands.register(commands, this);
+    CollectionCommands.register(commands, this);
+    StreamCommands.register(commands, this);
+    ServerCommands.register(commands, this);
+
+    eventLoop = new Thread(this::run, "resp-server-" + port());
+    eventLoop.setDaemon(true);
+    eventLoop.start();
+  }
+
+  /**
+   * Starts a server on a free port on the loopback interface.
+   */
+  public static RespServer start() {
+    return start(0);
+  }
+
+  public static RespServer start(int port) {
+    try {
+      return new RespServer(port);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not start RESP server on port " + port, e);
+    }
+  }
+
+  /**
+   * Starts a server on the given port unless something already listens there; returns
+   * null in that case, so callers use the real Redis when one is running.
+   */
+  public static RespServer startUnlessListening(int port) {
+    try (Socket probe = new Socket()) {
+      probe.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 200);
+      return null;
+    } catch (IOException e) {
+      return start(port);
+    }
+  }
+
+  public String host() {
+    return InetAddress.getLoopbackAddress().getHostAddress();
+  }
+
+  public int port() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  public long commandsProcessed() {
+    return commandsProcessed.get();
+  }
+
+  public long connectionsAccepted() {
+    return connectionsAccepted.get();
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    selector.wakeup();
+    try {
+      stopped.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // ---- Event loop ----
+
+  private void run() {
+    try {
+      while (!closed) {
+        selector.select(nextTimeoutMillis());
+        Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+        while (selected.hasNext()) {
+          SelectionKey key = selected.next();
+          selected.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+            continue;
+          }
+          Client client = (Client) key.attachment();
+          if (key.isReadable()) {
+            read(client);
+          }
+          if (key.isValid() && key.isWritable()) {
+            flushOutput(client);
+          }
+        }
+        cron();
+      }
+    } catch (IOException e) {
+      System.err.println("   [resp-server] event loop failed: " + e.getMessage());
+    } finally {
+      for (Client client : new ArrayList<>(clients)) {
+        closeClient(client);
+      }
+      try {
+        serverChannel.close();
+        selector.close();
+      } catch (IOException e) {
+        // Shutting down anyway
+      }
+      stopped.countDown();
+    }
+  }
+
+  private long nextTimeoutMillis() {
+    long timeout = CRON_MILLIS;
+    long now = System.currentTimeMillis();
+    for (Client client : blockedClients) {
+      if (client.blockedDeadline > 0) {
+        timeout = Math.min(timeout, client.blockedDeadline - now);
+      }
+    }
+    return Math.max(1, timeout);
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = serverChannel.accept()) != null) {
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+      Client client = new Client(nextClientId++, channel);
+      client.selectionKey = channel.register(selector, SelectionKey.OP_READ, client);
+      clients.add(client);
+      connectionsAccepted.incrementAndGet();
+    }
+  }
+
+  private void read(Client client) {
+    int read;
+    do {
+      readBuffer.clear();
+      try {
+        read = client.channel.read(readBuffer);
+      } catch (IOException e) {
+        closeClient(client);
+        return;
+      }
+      if (read < 0) {
+        closeClient(client);
+        return;
+      }
+      readBuffer.flip();
+      client.reader.feed(readBuffer);
+    } while (read == readBuffer.capacity());
+    processInput(client);
+  }
+
+  private void processInput(Client client) {
+    while (!client.closing && !client.isBlocked() && clients.contains(client)) {
+      List<String> args;
+      try {
+        args = client.reader.next();
+      } catch (RespError e) {
+        client.reply(Reply.error(e.getMessage()));
+        client.closing = true;
+        break;
+      }
+      if (args == null) {
+        break;
+      }
+      process(client, args);
+    }
+    flushOutput(client);
+  }
+
+  private void process(Client client, List<String> args) {
+    commandsProcessed.incrementAndGet();
+    Object reply;
+    current = client;
+    try {
+      reply = dispatch(client, args);
+    } catch (RespError e) {
+      reply = Reply.error(e.getMessage());
+    } catch (RuntimeException e) {
+      reply = Reply.error("ERR " + e);
+    } finally {
+      current = null;
+    }
+    if (reply == Reply.BLOCKED) {
+      block(client, args);
+    } else if (reply != Reply.NONE) {
+      client.reply(reply);
+    }
+    sendDeferredPushes(client);
+    serveReadyKeys();
+  }
+
+  private Object dispatch(Client client, List<String> args) {
+    String name = args.get(0).toLowerCase();
+    Command command = commands.get(name);
+    if (client.inMulti && !name.equals("exec") && !name.equals("discard") && !name.equals("multi")
+        && !name.equals("watch") && !name.equals("quit") && !name.equals("reset")) {
+      if (command == null || !command.arityMatches(args.size())) {
+        client.multiFailed = true;
+        throw command == null ? unknownCommand(args) : RespError.wrongArgs(name);
+      }
+      client.queued.add(args);
+      return Reply.QUEUED;
+    }
+    if (command == null) {
+      throw unknownCommand(args);
+    }
+    if (!command.arityMatches(args.size())) {
+      throw RespError.wrongArgs(name);
+    }
+    if (client.protocol == 2 && client.isSubscribed() && !command.has(Command.PUBSUB)) {
+      throw new RespError("ERR Can't execute '" + name
+          + "': only (P|S)SUBSCRIBE / (P|S)UNSUBSCRIBE / PING / QUIT / RESET are allowed in this context");
+    }
+    return execute(client, command, args);
+  }
+
+  /**
+   * Runs a validated command: the common path for clients, EXEC and scripts.
+   */
+  Object execute(Client client, Command command, List<String> args) {
+    Object reply = command.handler.execute(client, args);
+    if (command.has(Command.WRITE)) {
+      for (String key : command.keys(args)) {
+        touch(client, client.db, key);
+      }
+    } else if (client.tracking && !client.trackingBroadcast && command.has(Command.READONLY)) {
+      for (String key : command.keys(args)) {
+        trackingTable.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(client);
+      }
+    }
+    return reply;
+  }
+
+  /**
+   * redis.call / redis.pcall from a script; failures come back as an error reply.
+   */
+  Object scriptCallOrError(Client client, List<String> args) {
+    try {
+      return scriptCall(client, args);
+    } catch (RespError e) {
+      return Reply.error(e.getMessage());
+    }
+  }
+
+  private Object scriptCall(Client client, List<String> args) {
+    if (args.isEmpty()) {
+      throw new RespError("ERR Please specify at least one argument for this redis lib call");
+    }
+    Command command = commands.get(args.get(0));
+    if (command == null) {
+      throw new RespError("ERR Unknown Redis command called from script");
+    }
+    if (command.has(Command.NOSCRIPT)) {
+      throw new RespError("ERR This Redis command is not allowed from script");
+    }
+    if (!command.arityMatches(args.size())) {
+      throw new RespError("ERR Wrong number of args calling Redis command from script");
+    }
+    commandsProcessed.incrementAndGet();
+    return execute(client, command, args);
+  }
+
+  Command command(String name) {
+    return commands.get(name);
+  }
+
+  int commandCount() {
+    return commands.size();
+  }
+
+  private static RespError unknownCommand(List<String> args) {
+    StringBuilder message = new StringBuilder("ERR unknown command '").append(args.get(0))
+        .append("', with args beginning with: ");
+    for (String arg : args.subList(1, Math.min(args.size(), 4))) {
+      message.append('\'').append(arg).append("' ");
+    }
+    return new RespError(message.toString().trim());
+  }
+
+  // ---- Output ----
+
+  private void flushOutput(Client client) {
+    if (!clients.contains(client)) {
+      return;
+    }
+    if (!client.writer.isEmpty()) {
+      client.output.add(client.writer.drain());
+    }
+    try {
+      while (!client.output.isEmpty()) {
+        ByteBuffer buffer = client.output.peek();
+        client.channel.write(buffer);
+        if (buffer.hasRemaining()) {
+          break;
+        }
+        client.output.poll();
+      }
+    } catch (IOException e) {
+      closeClient(client);
+      return;
+    }
+    if (client.output.isEmpty() && client.closing) {
+      closeClient(client);
+    } else if (client.selectionKey.isValid()) {
+      client.selectionKey.interestOps(
+          client.output.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+  }
+
+  /**
+   * Sends an out-of-band message; one caused by the target's own command goes after that
+   * command's reply.
+   */
+  private void push(Client target, Object message, boolean afterCurrentReply) {
+    if (!clients.contains(target) || target.closing) {
+      return;
+    }
+    if (afterCurrentReply && target == current) {
+      target.deferredPushes.add(message);
+      return;
+    }
+    target.reply(message);
+    if (target != current) {
+      flushOutput(target);
+    }
+  }
+
+  private void sendDeferredPushes(Client client) {
+    for (Object message : client.deferredPushes) {
+      client.reply(message);
+    }
+    client.deferredPushes.clear();
+  }
+
+  private void closeClient(Client client) {
+    if (!clients.remove(client)) {
+      return;
+    }
+    for (String channel : client.channels) {
+      removeSubscriber(channelSubscribers, channel, client);
+    }
+    for (String pattern : client.patterns) {
+      removeSubscriber(patternSubscribers, pattern, client);
+    }
+    disableTracking(client);
+    unwatchAll(client);
+    blockedClients.remove(client);
+    client.selectionKey.cancel();
+    try {
+      client.channel.close();
+    } catch (IOException e) {
+      // Already gone
+    }
+  }
+
+  // ---- Keyspace ----
+
+  Database database(Client client) {
+    return databases[client.db];
+  }
+
+  Database database(int index) {
+    return databases[index];
+  }
+
+  int databaseCount() {
+    return DATABASES;
+  }
+
+  /**
+   * A key changed: aborts transactions watching it, wakes clients blocked on it and
+   * invalidates client-side caches holding it.
+   */
+  void touch(Client origin, int db, String key) {
+    String dbKey = db + ":" + key;
+    Set<Client> watching = watchers.get(dbKey);
+    if (watching != null) {
+      for (Client client : watching) {
+        client.watchedKeyChanged = true;
+      }
+    }
+    if (!blockedClients.isEmpty()) {
+      readyKeys.add(dbKey);
+    }
+    invalidate(origin, key);
+  }
+
+  /**
+   * A whole database was emptied.
+   */
+  void flushed(int db) {
+    String prefix = db + ":";
+    for (Map.Entry<String, Set<Client>> entry : watchers.entrySet()) {
+      if (entry.getKey().startsWith(prefix)) {
+        for (Client client : entry.getValue()) {
+          client.watchedKeyChanged = true;
+        }
+      }
+    }
+    Set<Client> tracking = new LinkedHashSet<>(broadcastTrackers);
+    for (Set<Client> trackers : trackingTable.values()) {
+      tracking.addAll(trackers);
+    }
+    trackingTable.clear();
+    for (Client client : tracking) {
+      push(client, invalidation(null), true);
+    }
+  }
+
+  private void cron() {
+    long now = System.currentTimeMillis();
+    if (now - lastCron >= CRON_MILLIS) {
+      lastCron = now;
+      for (Database database : databases) {
+        database.sweepExpired(now);
+      }
+    }
+    for (Client client : new ArrayList<>(blockedClients)) {
+      if (client.blockedDeadline > 0 && client.blockedDeadline <= now) {
+        unblock(client);
+        client.reply(Reply.NULL_ARRAY);
+        processInput(client);
+      }
+    }
+    serveReadyKeys();
+  }
+
+  // ---- Blocking ----
+
+  private void block(Client client, List<String> args) {
+    client.blockedCommand = args;
+    client.blockedDeadline = client.blockedDeadline > 0 ? System.currentTimeMillis() + client.blockedDeadline : 0;
+    blockedClients.add(client);
+  }
+
+  private void unblock(Client client) {
+    client.blockedCommand = null;
+    client.blockedDeadline = 0;
+    client.blockedKeys.clear();
+    blockedClients.remove(client);
+  }
+
+  /**
+   * Blocking handlers put the keys to wait on into blockedKeys and the timeout (relative,
+   * 0 = forever) into blockedDeadline, then return {@link Reply#BLOCKED}.
+   */
+  void waitFor(Client client, int db, List<String> keys, long timeoutMillis) {
+    if (client.isBlocked()) {
+      return; // Retrying: keep the original deadline
+    }
+    client.blockedKeys.clear();
+    for (String key : keys) {
+      client.blockedKeys.add(db + ":" + key);
+    }
+    client.blockedDeadline = timeoutMillis;
+  }
+
+  private void serveReadyKeys() {
+    if (servingReadyKeys) {
+      return;
+    }
+    servingReadyKeys = true;
+    try {
+      while (!readyKeys.isEmpty()) {
+        Set<String> ready = new HashSet<>(readyKeys);
+        readyKeys.clear();
+        for (Client client : new ArrayList<>(blockedClients)) {
+          if (client.isBlocked() && !disjoint(client.blockedKeys, ready)) {
+            retryBlocked(client);
+          }
+        }
+      }
+    } finally {
+      servingReadyKeys = false;
+    }
+  }
+
+  private void retryBlocked(Client client) {
+    List<String> args = client.blockedCommand;
+    Object reply;
+    current = client;
+    try {
+      reply = execute(client, commands.get(args.get(0)), args);
+    } catch (RespError e) {
+      reply = Reply.error(e.getMessage());
+    } finally {
+      current = null;
+    }
+    if (reply == Reply.BLOCKED) {
+      return;
+    }
+    unblock(client);
+    client.reply(reply);
+    sendDeferredPushes(client);
+    processInput(client);
+  }
+
+  private static boolean disjoint(Set<String> a, Set<String> b) {
+    for (String key : a) {
+      if (b.contains(key)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // ---- Transactions ----
+
+  void watch(Client client, String key) {
+    String dbKey = client.db + ":" + key;
+    if (client.watched.add(dbKey)) {
+      watchers.computeIfAbsent(dbKey, k -> new LinkedHashSet<>()).add(client);
+    }
+  }
+
+  void unwatchAll(Client client) {
+    for (String dbKey : client.watched) {
+      removeSubscriber(watchers, dbKey, client);
+    }
+    client.watched.clear();
+    client.watchedKeyChanged = false;
+  }
+
+  // ---- Pub/sub ----
+
+  /**
+   * Returns how many subscriptions received the message.
+   */
+  int publish(String channel, String message) {
+    int receivers = 0;
+    Set<Client> subscribers = channelSubscribers.get(channel);
+    if (subscribers != null) {
+      for (Client client : new ArrayList<>(subscribers)) {
+        push(client, Reply.push(Arrays.asList("message", channel, message)), false);
+        receivers++;
+      }
+    }
+    for (Map.Entry<String, Set<Client>> entry : new ArrayList<>(patternSubscribers.entrySet())) {
+      if (Glob.matches(entry.getKey(), channel)) {
+        for (Client client : new ArrayList<>(entry.getValue())) {
+          push(client, Reply.push(Arrays.asList("pmessage", entry.getKey(), channel, message)), false);
+          receivers++;
+        }
+      }
+    }
+    return receivers;
+  }
+
+  boolean subscribe(Client client, String channel, boolean pattern) {
+    Set<String> own = pattern ? client.patterns : client.channels;
+    if (!own.add(channel)) {
+      return false;
+    }
+    (pattern ? patternSubscribers : channelSubscribers).computeIfAbsent(channel, c -> new LinkedHashSet<>())
+        .add(client);
+    return true;
+  }
+
+  boolean unsubscribe(Client client, String channel, boolean pattern) {
+    Set<String> own = pattern ? client.patterns : client.channels;
+    if (!own.remove(channel)) {
+      return false;
+    }
+    removeSubscriber(pattern ? patternSubscribers : channelSubscribers, channel, client);
+    return true;
+  }
+
+  int channelCount() {
+    return channelSubscribers.size();
+  }
+
+  List<String> activeChannels(String pattern) {
+    List<String> result = new ArrayList<>();
+    for (String channel : channelSubscribers.keySet()) {
+      if (pattern == null || Glob.matches(pattern, channel)) {
+        result.add(channel);
+      }
+    }
+    return result;
+  }
+
+  int subscriberCount(String channel) {
+    Set<Client> subscribers = channelSubscribers.get(channel);
+    return subscribers == null ? 0 : subscribers.size();
+  }
+
+  private static void removeSubscriber(Map<String, Set<Client>> index, String name, Client client) {
+    Set<Client> members = index.get(name);
+    if (members != null) {
+      members.remove(client);
+      if (members.isEmpty()) {
+        index.remove(name);
+      }
+    }
+  }
+
+  // ---- Client-side caching ----
+
+  void enableTracking(Client client, boolean broadcast, boolean noLoop, List<String> prefixes) {
+    disableTracking(client);
+    client.tracking = true;
+    client.trackingBroadcast = broadcast;
+    client.trackingNoLoop = noLoop;
+    client.trackingPrefixes.addAll(prefixes);
+    if (broadcast) {
+      broadcastTrackers.add(client);
+    }
+  }
+
+  void disableTracking(Client client) {
+    if (!client.tracking) {
+      return;
+    }
+    client.tracking = false;
+    client.trackingPrefixes.clear();
+    broadcastTrackers.remove(client);
+    trackingTable.values().removeIf(trackers -> trackers.remove(client) && trackers.isEmpty());
+  }
+
+  private void invalidate(Client origin, String key) {
+    Set<Client> trackers = trackingTable.remove(key);
+    if (trackers != null) {
+      for (Client client : trackers) {
+        if (!(client.trackingNoLoop && client == origin)) {
+          push(client, invalidation(key), true);
+        }
+      }
+    }
+    for (Client client : broadcastTrackers) {
+      if (client.trackingNoLoop && client == origin) {
+        continue;
+      }
+      boolean matches = client.trackingPrefixes.isEmpty();
+      for (String prefix : client.trackingPrefixes) {
+        matches |= key.startsWith(prefix);
+      }
+      if (matches) {
+        push(client, invalidation(key), true);
+      }
+    }
+  }
+
+  private static Reply.Push invalidation(String key) {
+    return Reply.push(Arrays.asList("invalidate", key == null ? null : List.of(key)));
+  }
+
+  // ---- Scripting ----
+
+  LuaInterpreter.Script script(String sha) {
+    return scripts.get(sha);
+  }
+
+  LuaInterpreter.Script loadScript(String source) {
+    String sha = LuaInterpreter.sha1(source);
+    LuaInterpreter.Script script = scripts.get(sha);
+    if (script == null) {
+      script = LuaInterpreter.compile(source);
+      scripts.put(sha, script);
+    }
+    return script;
+  }
+
+  void flushScripts() {
+    scripts.clear();
+  }
+
+  // ---- Introspection ----
+
+  int clientCount() {
+    return clients.size();
+  }
+
+  List<Client> clients() {
+    return new ArrayList<>(clients);
+  }
+
+  int blockedClientCount() {
+    return blockedClients.size();
+  }
+
+  long uptimeMillis() {
+    return System.currentTimeMillis() - startedAt;
+  }
+}
@@ -0,0 +1,111 @@
+package resp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders {@link Reply} values as RESP2 or RESP3 bytes into a growable buffer.
+ *
+ * RESP3 types (map, set, double, null, push) degrade to their RESP2 equivalents on a
+ * RESP2 connection, the way Redis does, so command code never branches on the protocol
+ * except where the shape of the reply itself differs.
+ */
+final class RespWriter {
+  private byte[] buffer = new byte[4096];
+  private int size;
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Hands out the rendered bytes and starts a fresh buffer.
+   */
+  ByteBuffer drain() {
+    ByteBuffer out = ByteBuffer.wrap(buffer, 0, size);
+    buffer = new byte[4096];
+    size = 0;
+    return out;
+  }
+
+  void write(Object reply, boolean resp3) {
+    if (reply == null) {
+      writeRaw(resp3 ? "_\r\n" : "$-1\r\n");
+    } else if (reply == Reply.NULL_ARRAY) {
+      writeRaw(resp3 ? "_\r\n" : "*-1\r\n");
+    } else if (reply instanceof String) {
+      writeBulk((String) reply);
+    } else if (reply instanceof Long || reply instanceof Integer) {
+      writeRaw(":" + reply + "\r\n");
+    } else if (reply instanceof Double) {
+      String text = formatDouble((Double) reply);
+      if (resp3) {
+        writeRaw("," + text + "\r\n");
+      } else {
+        writeBulk(text);
+      }
+    } else if (reply instanceof Boolean) {
+      if (resp3) {
+        writeRaw((Boolean) reply ? "#t\r\n" : "#f\r\n");
+      } else {
+        writeRaw((Boolean) reply ? ":1\r\n" : ":0\r\n");
+      }
+    } else if (reply instanceof Reply.Status) {
+      writeRaw("+" + ((Reply.Status) reply).text + "\r\n");
+    } else if (reply instanceof Reply.Error) {
+      writeRaw("-" + ((Reply.Error) reply).text.replace('\r', ' ').replace('\n', ' ') + "\r\n");
+    } else if (reply instanceof List) {
+      writeAggregate('*', (List<?>) reply, resp3);
+    } else if (reply instanceof Reply.SetReply) {
+      writeAggregate(resp3 ? '~' : '*', ((Reply.SetReply) reply).members, resp3);
+    } else if (reply instanceof Reply.Push) {
+      writeAggregate(resp3 ? '>' : '*', ((Reply.Push) reply).items, resp3);
+    } else if (reply instanceof Reply.MapReply) {
+      Map<?, ?> entries = ((Reply.MapReply) reply).entries;
+      writeRaw((resp3 ? "%" + entries.size() : "*" + entries.size() * 2) + "\r\n");
+      for (Map.Entry<?, ?> entry : entries.entrySet()) {
+        write(entry.getKey(), resp3);
+        write(entry.getValue(), resp3);
+      }
+    } else {
+      throw new IllegalArgumentException("Not a reply value: " + reply.getClass());
+    }
+  }
+
+  static String formatDouble(double value) {
+    if (Double.isInfinite(value)) {
+      return value > 0 ? "inf" : "-inf";
+    }
+    if (value == Math.rint(value) && Math.abs(value) < 1e17) {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+
+  private void writeAggregate(char type, Collection<?> items, boolean resp3) {
+    writeRaw(type + Integer.toString(items.size()) + "\r\n");
+    for (Object item : items) {
+      write(item, resp3);
+    }
+  }
+
+  private void writeBulk(String value) {
+    writeRaw("$" + value.length() + "\r\n");
+    writeRaw(value);
+    writeRaw("\r\n");
+  }
+
+  private void writeRaw(String text) {
+    byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+    if (size + bytes.length > buffer.length) {
+      byte[] grown = new byte[Math.max(buffer.length * 2, size + bytes.length)];
+      System.arraycopy(buffer, 0, grown, 0, size);
+      buffer = grown;
+    }
+    System.arraycopy(bytes, 0, buffer, size, bytes.length);
+    size += bytes.length;
+  }
+}
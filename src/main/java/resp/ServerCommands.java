@@ -0,0 +1,497 @@
+package resp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static resp.Command.NOSCRIPT;
+import static resp.Command.PUBSUB;
+import static resp.Command.READONLY;
+import static resp.Command.WRITE;
+
+/**
+ * Connection and server commands, pub/sub, transactions and scripting.
+ */
+final class ServerCommands {
+  private ServerCommands() {
+  }
+
+  static void register(Command.Table table, RespServer server) {
+    registerConnection(table, server);
+    registerServer(table, server);
+    registerPubSub(table, server);
+    registerTransactions(table, server);
+    registerScripting(table, server);
+  }
+
+  // ---- Connection ----
+
+  private static void registerConnection(Command.Table table, RespServer server) {
+    table.add("ping", -1, PUBSUB, (client, args) -> {
+      if (args.size() > 2) {
+        throw RespError.wrongArgs("ping");
+      }
+      if (client.protocol == 2 && client.isSubscribed()) {
+        return Arrays.asList("pong", args.size() == 2 ? args.get(1) : "");
+      }
+      return args.size() == 2 ? args.get(1) : Reply.PONG;
+    });
+    table.add("echo", 2, 0, (client, args) -> args.get(1));
+    table.add("select", 2, 0, (client, args) -> {
+      long index = Args.parseLong(args.get(1));
+      if (index < 0 || index >= server.databaseCount()) {
+        throw new RespError("ERR DB index is out of range");
+      }
+      client.db = (int) index;
+      return Reply.OK;
+    });
+    // No ACLs in the stand-in: any credentials are accepted
+    table.add("auth", -2, NOSCRIPT, (client, args) -> Reply.OK);
+    table.add("hello", -1, NOSCRIPT, (client, args) -> {
+      if (args.size() > 1) {
+        long version = Args.parseLong(args.get(1));
+        if (version != 2 && version != 3) {
+          throw new RespError("NOPROTO unsupported protocol version");
+        }
+        for (int i = 2; i < args.size(); i++) {
+          if (Args.is(args.get(i), "auth") && i + 2 < args.size()) {
+            i += 2;
+          } else if (Args.is(args.get(i), "setname") && i + 1 < args.size()) {
+            client.name = args.get(++i);
+          } else {
+            throw RespError.syntax();
+          }
+        }
+        client.protocol = (int) version;
+      }
+      Map<String, Object> info = new LinkedHashMap<>();
+      info.put("server", "redis");
+      info.put("version", RespServer.VERSION);
+      info.put("proto", (long) client.protocol);
+      info.put("id", client.id);
+      info.put("mode", "standalone");
+      info.put("role", "master");
+      info.put("modules", List.of());
+      return Reply.map(info);
+    });
+    table.add("client", -2, NOSCRIPT, (client, args) -> clientCommand(server, client, args));
+    table.add("quit", -1, PUBSUB | NOSCRIPT, (client, args) -> {
+      client.closing = true;
+      return Reply.OK;
+    });
+    table.add("reset", 1, PUBSUB | NOSCRIPT, (client, args) -> {
+      client.inMulti = false;
+      client.queued.clear();
+      client.multiFailed = false;
+      server.unwatchAll(client);
+      for (String channel : new ArrayList<>(client.channels)) {
+        server.unsubscribe(client, channel, false);
+      }
+      for (String pattern : new ArrayList<>(client.patterns)) {
+        server.unsubscribe(client, pattern, true);
+      }
+      server.disableTracking(client);
+      client.db = 0;
+      client.protocol = 2;
+      client.name = null;
+      return Reply.status("RESET");
+    });
+  }
+
+  private static Object clientCommand(RespServer server, Client client, List<String> args) {
+    String subcommand = args.get(1).toLowerCase();
+    switch (subcommand) {
+      case "id":
+        return client.id;
+      case "setname":
+        if (args.size() != 3) {
+          throw RespError.wrongArgs("client|setname");
+        }
+        client.name = args.get(2).isEmpty() ? null : args.get(2);
+        return Reply.OK;
+      case "getname":
+        return client.name;
+      case "setinfo":
+      case "no-evict":
+      case "no-touch":
+      case "reply":
+        return Reply.OK;
+      case "list":
+      case "info": {
+        StringBuilder text = new StringBuilder();
+        for (Client other : subcommand.equals("info") ? List.of(client) : server.clients()) {
+          text.append("id=").append(other.id)
+              .append(" name=").append(other.name == null ? "" : other.name)
+              .append(" db=").append(other.db)
+              .append(" sub=").append(other.channels.size())
+              .append(" psub=").append(other.patterns.size())
+              .append(" multi=").append(other.inMulti ? other.queued.size() : -1)
+              .append(" resp=").append(other.protocol)
+              .append('\n');
+        }
+        return text.toString();
+      }
+      case "tracking":
+        return tracking(server, client, args);
+      case "caching":
+        return Reply.OK;
+      case "getredir":
+        return client.tracking ? 0L : -1L;
+      default:
+        throw new RespError("ERR unknown subcommand '" + args.get(1) + "'. Try CLIENT HELP.");
+    }
+  }
+
+  /**
+   * CLIENT TRACKING ON|OFF [BCAST] [PREFIX p ...] [NOLOOP]. Invalidations go out as RESP3
+   * pushes on the tracking connection itself; REDIRECT to a RESP2 pub/sub connection is
+   * not supported.
+   */
+  private static Object tracking(RespServer server, Client client, List<String> args) {
+    if (args.size() < 3) {
+      throw RespError.wrongArgs("client|tracking");
+    }
+    if (Args.is(args.get(2), "off")) {
+      server.disableTracking(client);
+      return Reply.OK;
+    }
+    if (!Args.is(args.get(2), "on")) {
+      throw RespError.syntax();
+    }
+    boolean broadcast = false;
+    boolean noLoop = false;
+    List<String> prefixes = new ArrayList<>();
+    for (int i = 3; i < args.size(); i++) {
+      String option = args.get(i).toLowerCase();
+      switch (option) {
+        case "bcast":
+          broadcast = true;
+          break;
+        case "noloop":
+          noLoop = true;
+          break;
+        case "prefix":
+          if (i + 1 >= args.size()) {
+            throw RespError.syntax();
+          }
+          prefixes.add(args.get(++i));
+          break;
+        case "redirect":
+          throw new RespError("ERR CLIENT TRACKING REDIRECT is not supported by this server; use RESP3 (HELLO 3)");
+        default:
+          throw new RespError("ERR Unsupported CLIENT TRACKING option " + args.get(i));
+      }
+    }
+    if (client.protocol != 3) {
+      throw new RespError("ERR CLIENT TRACKING needs RESP3 (HELLO 3) on this server");
+    }
+    if (!prefixes.isEmpty() && !broadcast) {
+      throw new RespError("ERR PREFIX option requires BCAST mode to be enabled");
+    }
+    server.enableTracking(client, broadcast, noLoop, prefixes);
+    return Reply.OK;
+  }
+
+  // ---- Server ----
+
+  private static void registerServer(Command.Table table, RespServer server) {
+    Map<String, String> config = new LinkedHashMap<>();
+    config.put("databases", Integer.toString(server.databaseCount()));
+    config.put("maxmemory", "0");
+    config.put("maxmemory-policy", "noeviction");
+    config.put("notify-keyspace-events", "");
+    config.put("save", "");
+    config.put("appendonly", "no");
+    config.put("timeout", "0");
+    config.put("lua-time-limit", "5000");
+    config.put("busy-reply-threshold", "5000");
+    config.put("port", Integer.toString(server.port()));
+
+    table.add("dbsize", 1, READONLY, (client, args) -> (long) server.database(client).size());
+    table.add("flushdb", -1, WRITE, (client, args) -> {
+      server.database(client).clear();
+      server.flushed(client.db);
+      return Reply.OK;
+    });
+    table.add("flushall", -1, WRITE, (client, args) -> {
+      for (int i = 0; i < server.databaseCount(); i++) {
+        server.database(i).clear();
+        server.flushed(i);
+      }
+      return Reply.OK;
+    });
+    table.add("time", 1, 0, (client, args) -> {
+      long micros = System.currentTimeMillis() * 1000 + (System.nanoTime() / 1000) % 1000;
+      return Arrays.asList(Long.toString(micros / 1_000_000), Long.toString(micros % 1_000_000));
+    });
+    table.add("lastsave", 1, 0, (client, args) -> (System.currentTimeMillis() - server.uptimeMillis()) / 1000);
+    table.add("save", 1, NOSCRIPT, (client, args) -> Reply.OK);
+    table.add("bgsave", -1, NOSCRIPT, (client, args) -> Reply.status("Background saving started"));
+    table.add("wait", 3, NOSCRIPT, (client, args) -> 0L);
+    table.add("command", -1, 0, (client, args) -> {
+      if (args.size() > 1 && Args.is(args.get(1), "count")) {
+        return (long) server.commandCount();
+      }
+      if (args.size() > 1 && Args.is(args.get(1), "docs")) {
+        return Reply.map(Collections.emptyMap());
+      }
+      return List.of();
+    });
+    table.add("config", -2, NOSCRIPT, (client, args) -> {
+      String subcommand = args.get(1).toLowerCase();
+      switch (subcommand) {
+        case "get": {
+          Map<String, String> matched = new LinkedHashMap<>();
+          for (String pattern : args.subList(2, args.size())) {
+            for (Map.Entry<String, String> entry : config.entrySet()) {
+              if (Glob.matches(pattern.toLowerCase(), entry.getKey())) {
+                matched.put(entry.getKey(), entry.getValue());
+              }
+            }
+          }
+          return Reply.map(matched);
+        }
+        case "set":
+          for (int i = 2; i + 1 < args.size(); i += 2) {
+            config.put(args.get(i).toLowerCase(), args.get(i + 1));
+          }
+          return Reply.OK;
+        case "resetstat":
+        case "rewrite":
+          return Reply.OK;
+        default:
+          throw new RespError("ERR unknown subcommand '" + args.get(1) + "'. Try CONFIG HELP.");
+      }
+    });
+    table.add("info", -1, 0, (client, args) -> info(server));
+  }
+
+  private static String info(RespServer server) {
+    Runtime runtime = Runtime.getRuntime();
+    StringBuilder text = new StringBuilder()
+        .append("# Server\r\n")
+        .append("redis_version:").append(RespServer.VERSION).append("\r\n")
+        .append("redis_mode:standalone\r\n")
+        .append("os:").append(System.getProperty("os.name")).append("\r\n")
+        .append("process_id:").append(ProcessHandle.current().pid()).append("\r\n")
+        .append("tcp_port:").append(server.port()).append("\r\n")
+        .append("uptime_in_seconds:").append(server.uptimeMillis() / 1000).append("\r\n")
+        .append("\r\n# Clients\r\n")
+        .append("connected_clients:").append(server.clientCount()).append("\r\n")
+        .append("blocked_clients:").append(server.blockedClientCount()).append("\r\n")
+        .append("\r\n# Memory\r\n")
+        .append("used_memory:").append(runtime.totalMemory() - runtime.freeMemory()).append("\r\n")
+        .append("maxmemory:0\r\n")
+        .append("maxmemory_policy:noeviction\r\n")
+        .append("\r\n# Stats\r\n")
+        .append("total_connections_received:").append(server.connectionsAccepted()).append("\r\n")
+        .append("total_commands_processed:").append(server.commandsProcessed()).append("\r\n")
+        .append("pubsub_channels:").append(server.channelCount()).append("\r\n")
+        .append("\r\n# Replication\r\n")
+        .append("role:master\r\n")
+        .append("connected_slaves:0\r\n")
+        .append("\r\n# Keyspace\r\n");
+    for (int i = 0; i < server.databaseCount(); i++) {
+      Database db = server.database(i);
+      if (db.size() > 0) {
+        text.append("db").append(i).append(":keys=").append(db.size())
+            .append(",expires=").append(db.expiringSize()).append(",avg_ttl=0\r\n");
+      }
+    }
+    return text.toString();
+  }
+
+  // ---- Pub/sub ----
+
+  private static void registerPubSub(Command.Table table, RespServer server) {
+    table.add("subscribe", -2, PUBSUB | NOSCRIPT, (client, args) -> subscribe(server, client, args, false));
+    table.add("psubscribe", -2, PUBSUB | NOSCRIPT, (client, args) -> subscribe(server, client, args, true));
+    table.add("unsubscribe", -1, PUBSUB | NOSCRIPT, (client, args) -> unsubscribe(server, client, args, false));
+    table.add("punsubscribe", -1, PUBSUB | NOSCRIPT, (client, args) -> unsubscribe(server, client, args, true));
+    table.add("publish", 3, 0, (client, args) -> (long) server.publish(args.get(1), args.get(2)));
+    table.add("pubsub", -2, 0, (client, args) -> {
+      switch (args.get(1).toLowerCase()) {
+        case "channels":
+          return server.activeChannels(args.size() > 2 ? args.get(2) : null);
+        case "numsub": {
+          List<Object> counts = new ArrayList<>();
+          for (String channel : args.subList(2, args.size())) {
+            counts.add(channel);
+            counts.add((long) server.subscriberCount(channel));
+          }
+          return counts;
+        }
+        case "numpat": {
+          long patterns = 0;
+          for (Client other : server.clients()) {
+            patterns += other.patterns.size();
+          }
+          return patterns;
+        }
+        default:
+          throw new RespError("ERR unknown subcommand '" + args.get(1) + "'. Try PUBSUB HELP.");
+      }
+    });
+  }
+
+  /**
+   * Confirmations are sent one per channel, so the handler writes them itself.
+   */
+  private static Object subscribe(RespServer server, Client client, List<String> args, boolean pattern) {
+    String kind = pattern ? "psubscribe" : "subscribe";
+    for (String channel : args.subList(1, args.size())) {
+      server.subscribe(client, channel, pattern);
+      client.reply(Reply.push(Arrays.asList(kind, channel, subscriptions(client))));
+    }
+    return Reply.NONE;
+  }
+
+  private static Object unsubscribe(RespServer server, Client client, List<String> args, boolean pattern) {
+    String kind = pattern ? "punsubscribe" : "unsubscribe";
+    List<String> channels = args.size() > 1 ? args.subList(1, args.size())
+        : new ArrayList<>(pattern ? client.patterns : client.channels);
+    if (channels.isEmpty()) {
+      client.reply(Reply.push(Arrays.asList(kind, null, subscriptions(client))));
+    }
+    for (String channel : channels) {
+      server.unsubscribe(client, channel, pattern);
+      client.reply(Reply.push(Arrays.asList(kind, channel, subscriptions(client))));
+    }
+    return Reply.NONE;
+  }
+
+  private static long subscriptions(Client client) {
+    return client.channels.size() + client.patterns.size();
+  }
+
+  // ---- Transactions ----
+
+  private static void registerTransactions(Command.Table table, RespServer server) {
+    table.add("multi", 1, NOSCRIPT, (client, args) -> {
+      if (client.inMulti) {
+        throw new RespError("ERR MULTI calls can not be nested");
+      }
+      client.inMulti = true;
+      client.multiFailed = false;
+      client.queued.clear();
+      return Reply.OK;
+    });
+    table.add("exec", 1, NOSCRIPT, (client, args) -> {
+      if (!client.inMulti) {
+        throw new RespError("ERR EXEC without MULTI");
+      }
+      List<List<String>> queued = new ArrayList<>(client.queued);
+      boolean aborted = client.multiFailed;
+      boolean watchedKeyChanged = client.watchedKeyChanged;
+      client.inMulti = false;
+      client.multiFailed = false;
+      client.queued.clear();
+      server.unwatchAll(client);
+      if (aborted) {
+        throw new RespError("EXECABORT Transaction discarded because of previous errors.");
+      }
+      if (watchedKeyChanged) {
+        return Reply.NULL_ARRAY;
+      }
+      List<Object> replies = new ArrayList<>();
+      client.inExec = true;
+      try {
+        for (List<String> command : queued) {
+          try {
+            Object reply = server.execute(client, server.command(command.get(0)), command);
+            replies.add(reply == Reply.NONE ? Reply.OK : reply);
+          } catch (RespError e) {
+            replies.add(Reply.error(e.getMessage()));
+          }
+        }
+      } finally {
+        client.inExec = false;
+      }
+      return replies;
+    });
+    table.add("discard", 1, NOSCRIPT, (client, args) -> {
+      if (!client.inMulti) {
+        throw new RespError("ERR DISCARD without MULTI");
+      }
+      client.inMulti = false;
+      client.multiFailed = false;
+      client.queued.clear();
+      server.unwatchAll(client);
+      return Reply.OK;
+    });
+    table.add("watch", -2, NOSCRIPT, (client, args) -> {
+      if (client.inMulti) {
+        throw new RespError("ERR WATCH inside MULTI is not allowed");
+      }
+      for (String key : args.subList(1, args.size())) {
+        server.watch(client, key);
+      }
+      return Reply.OK;
+    });
+    table.add("unwatch", 1, NOSCRIPT, (client, args) -> {
+      server.unwatchAll(client);
+      return Reply.OK;
+    });
+  }
+
+  // ---- Scripting ----
+
+  private static void registerScripting(Command.Table table, RespServer server) {
+    Command.Handler eval = (client, args) -> runScript(server, client, server.loadScript(args.get(1)), args);
+    Command.Handler evalSha = (client, args) -> {
+      LuaInterpreter.Script script = server.script(args.get(1).toLowerCase());
+      if (script == null) {
+        throw new RespError("NOSCRIPT No matching script. Please use EVAL.");
+      }
+      return runScript(server, client, script, args);
+    };
+    table.add("eval", -3, NOSCRIPT, eval);
+    table.add("eval_ro", -3, NOSCRIPT, eval);
+    table.add("evalsha", -3, NOSCRIPT, evalSha);
+    table.add("evalsha_ro", -3, NOSCRIPT, evalSha);
+    table.add("script", -2, NOSCRIPT, (client, args) -> {
+      switch (args.get(1).toLowerCase()) {
+        case "load":
+          if (args.size() != 3) {
+            throw RespError.wrongArgs("script|load");
+          }
+          server.loadScript(args.get(2));
+          return LuaInterpreter.sha1(args.get(2));
+        case "exists": {
+          List<Long> exists = new ArrayList<>();
+          for (String sha : args.subList(2, args.size())) {
+            exists.add(server.script(sha.toLowerCase()) != null ? 1L : 0L);
+          }
+          return exists;
+        }
+        case "flush":
+          server.flushScripts();
+          return Reply.OK;
+        case "kill":
+          throw new RespError("NOTBUSY No scripts in execution right now.");
+        default:
+          throw new RespError("ERR unknown subcommand '" + args.get(1) + "'. Try SCRIPT HELP.");
+      }
+    });
+  }
+
+  private static Object runScript(RespServer server, Client client, LuaInterpreter.Script script, List<String> args) {
+    long numKeys = Args.parseLong(args.get(2));
+    if (numKeys < 0) {
+      throw new RespError("ERR Number of keys can't be negative");
+    }
+    if (numKeys > args.size() - 3) {
+      throw new RespError("ERR Number of keys can't be greater than number of args");
+    }
+    int argvAt = 3 + (int) numKeys;
+    client.inScript = true;
+    try {
+      return script.run(server, client, args.subList(3, argvAt), args.subList(argvAt, args.size()));
+    } finally {
+      client.inScript = false;
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package resp;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Redis sorted set: members ordered by score, ties broken by member.
+ *
+ * A member-to-score map answers ZSCORE in O(1); a tree over (score, member) answers
+ * ranges. Rank is O(n) here, where Redis's skip list does it in O(log n), which is fine
+ * for a stand-in.
+ */
+final class SortedSet {
+  private static final Comparator<Member> ORDER =
+      Comparator.<Member>comparingDouble(m -> m.score).thenComparing(m -> m.name);
+
+  private final Map<String, Double> scores = new HashMap<>();
+  private final TreeSet<Member> ordered = new TreeSet<>(ORDER);
+
+  /**
+   * Adds or re-scores a member; returns true if it was new.
+   */
+  boolean put(String name, double score) {
+    Double previous = scores.put(name, score);
+    if (previous != null) {
+      ordered.remove(new Member(name, previous));
+    }
+    ordered.add(new Member(name, score));
+    return previous == null;
+  }
+
+  Double score(String name) {
+    return scores.get(name);
+  }
+
+  boolean remove(String name) {
+    Double previous = scores.remove(name);
+    if (previous == null) {
+      return false;
+    }
+    ordered.remove(new Member(name, previous));
+    return true;
+  }
+
+  int size() {
+    return scores.size();
+  }
+
+  /**
+   * 0-based rank from the lowest score (or the highest, reversed), or -1 if absent.
+   */
+  long rank(String name, boolean reverse) {
+    Double score = scores.get(name);
+    if (score == null) {
+      return -1;
+    }
+    int below = ordered.headSet(new Member(name, score), false).size();
+    return reverse ? scores.size() - 1 - below : below;
+  }
+
+  /**
+   * Members between two inclusive ranks; negative ranks count from the end.
+   */
+  List<Member> rangeByRank(long start, long stop, boolean reverse) {
+    int size = scores.size();
+    if (start < 0) {
+      start = Math.max(0, size + start);
+    }
+    if (stop < 0) {
+      stop = size + stop;
+    }
+    stop = Math.min(stop, size - 1);
+    List<Member> result = new ArrayList<>();
+    if (start > stop) {
+      return result;
+    }
+    Iterator<Member> it = reverse ? ordered.descendingIterator() : ordered.iterator();
+    for (long i = 0; it.hasNext() && i <= stop; i++) {
+      Member member = it.next();
+      if (i >= start) {
+        result.add(member);
+      }
+    }
+    return result;
+  }
+
+  List<Member> rangeByScore(ScoreBound min, ScoreBound max, boolean reverse, long offset, long count) {
+    List<Member> result = new ArrayList<>();
+    NavigableSet<Member> view = reverse ? ordered.descendingSet() : ordered;
+    long skipped = 0;
+    for (Member member : view) {
+      boolean aboveMin = min.admitsFromBelow(member.score);
+      boolean belowMax = max.admitsFromAbove(member.score);
+      if (!reverse && !belowMax || reverse && !aboveMin) {
+        break;
+      }
+      if (!aboveMin || !belowMax) {
+        continue;
+      }
+      if (skipped++ < offset) {
+        continue;
+      }
+      if (count >= 0 && result.size() >= count) {
+        break;
+      }
+      result.add(member);
+    }
+    return result;
+  }
+
+  Iterable<Member> members() {
+    return ordered;
+  }
+
+  static final class Member {
+    final String name;
+    final double score;
+
+    Member(String name, double score) {
+      this.name = name;
+      this.score = score;
+    }
+  }
+
+  /**
+   * One end of a score range: "1.5", "(1.5" (exclusive), "-inf", "+inf".
+   */
+  static final class ScoreBound {
+    final double value;
+    final boolean exclusive;
+
+    private ScoreBound(double value, boolean exclusive) {
+      this.value = value;
+      this.exclusive = exclusive;
+    }
+
+    static ScoreBound parse(String text) {
+      boolean exclusive = text.startsWith("(");
+      String number = exclusive ? text.substring(1) : text;
+      try {
+        return new ScoreBound(parseScore(number), exclusive);
+      } catch (NumberFormatException e) {
+        throw new RespError("ERR min or max is not a float");
+      }
+    }
+
+    boolean admitsFromBelow(double score) {
+      return exclusive ? score > value : score >= value;
+    }
+
+    boolean admitsFromAbove(double score) {
+      return exclusive ? score < value : score <= value;
+    }
+  }
+
+  static double parseScore(String text) {
+    switch (text.toLowerCase()) {
+      case "inf":
+      case "+inf":
+        return Double.POSITIVE_INFINITY;
+      case "-inf":
+        return Double.NEGATIVE_INFINITY;
+      default:
+        double value = Double.parseDouble(text);
+        if (Double.isNaN(value)) {
+          throw new NumberFormatException(text);
+        }
+        return value;
+    }
+  }
+}
@@ -0,0 +1,526 @@
+package resp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static resp.Command.READONLY;
+import static resp.Command.WRITE;
+
+/**
+ * Streams and consumer groups: XADD, XRANGE, XREAD, XREADGROUP (with BLOCK), XACK,
+ * XCLAIM, XAUTOCLAIM, XPENDING and the XGROUP subcommands.
+ */
+final class StreamCommands {
+  private StreamCommands() {
+  }
+
+  static void register(Command.Table table, RespServer server) {
+    table.add("xadd", -5, WRITE, 1, 1, 1, (client, args) -> xadd(server.database(client), args));
+    table.add("xlen", 2, READONLY, 1, 1, 1, (client, args) -> {
+      StreamLog stream = stream(server.database(client), args.get(1));
+      return stream == null ? 0L : (long) stream.entries.size();
+    });
+    table.add("xrange", -4, READONLY, 1, 1, 1, (client, args) -> xrange(server.database(client), args, false));
+    table.add("xrevrange", -4, READONLY, 1, 1, 1, (client, args) -> xrange(server.database(client), args, true));
+    table.add("xdel", -3, WRITE, 1, 1, 1, (client, args) -> {
+      StreamLog stream = stream(server.database(client), args.get(1));
+      long removed = 0;
+      for (String id : args.subList(2, args.size())) {
+        if (stream != null && stream.entries.remove(StreamLog.Id.parse(id, 0)) != null) {
+          removed++;
+        }
+      }
+      return removed;
+    });
+    table.add("xtrim", -4, WRITE, 1, 1, 1, (client, args) -> {
+      StreamLog stream = stream(server.database(client), args.get(1));
+      return stream == null ? 0L : trim(stream, args, 2);
+    });
+    table.add("xgroup", -2, WRITE, 2, 2, 1, (client, args) -> xgroup(server.database(client), args));
+    table.add("xread", -4, READONLY, (client, args) -> read(server, client, args, null, null));
+    table.add("xreadgroup", -7, WRITE, (client, args) -> {
+      if (!Args.is(args.get(1), "group")) {
+        throw RespError.syntax();
+      }
+      return read(server, client, args, args.get(2), args.get(3));
+    });
+    table.add("xack", -4, WRITE, 1, 1, 1, (client, args) -> {
+      StreamLog.Group group = groupOrNull(server.database(client), args.get(1), args.get(2));
+      long acked = 0;
+      for (String id : args.subList(3, args.size())) {
+        if (group != null && group.pending.remove(StreamLog.Id.parse(id, 0)) != null) {
+          acked++;
+        }
+      }
+      return acked;
+    });
+    table.add("xclaim", -6, WRITE, 1, 1, 1, (client, args) -> xclaim(server.database(client), args));
+    table.add("xautoclaim", -6, WRITE, 1, 1, 1, (client, args) -> xautoclaim(server.database(client), args));
+    table.add("xpending", -3, READONLY, 1, 1, 1, (client, args) -> xpending(server.database(client), args));
+  }
+
+  /**
+   * XADD key [NOMKSTREAM] [MAXLEN | MINID [= | ~] threshold [LIMIT count]] id field value ...
+   */
+  private static Object xadd(Database db, List<String> args) {
+    int i = 2;
+    boolean noMkStream = false;
+    int trimAt = -1;
+    while (i < args.size()) {
+      String option = args.get(i).toLowerCase();
+      if (option.equals("nomkstream")) {
+        noMkStream = true;
+        i++;
+      } else if (option.equals("maxlen") || option.equals("minid")) {
+        trimAt = i;
+        i += args.get(i + 1).equals("=") || args.get(i + 1).equals("~") ? 3 : 2;
+        if (i < args.size() && Args.is(args.get(i), "limit")) {
+          i += 2;
+        }
+      } else {
+        break;
+      }
+    }
+    int fields = args.size() - i - 1;
+    if (fields <= 0 || fields % 2 != 0) {
+      throw RespError.wrongArgs("xadd");
+    }
+    StreamLog stream = stream(db, args.get(1));
+    if (stream == null) {
+      if (noMkStream) {
+        return null;
+      }
+      stream = new StreamLog();
+      db.put(args.get(1), stream);
+    }
+    StreamLog.Id id = stream.nextId(args.get(i), System.currentTimeMillis());
+    stream.entries.put(id, new ArrayList<>(args.subList(i + 1, args.size())));
+    stream.lastId = id;
+    if (trimAt > 0) {
+      trim(stream, args, trimAt);
+    }
+    return id.toString();
+  }
+
+  /**
+   * Applies MAXLEN / MINID trimming; approximate trimming is done exactly.
+   */
+  private static long trim(StreamLog stream, List<String> args, int at) {
+    String strategy = args.get(at).toLowerCase();
+    int thresholdAt = args.get(at + 1).equals("=") || args.get(at + 1).equals("~") ? at + 2 : at + 1;
+    if (thresholdAt >= args.size()) {
+      throw RespError.syntax();
+    }
+    long removed = 0;
+    if (strategy.equals("maxlen")) {
+      long maxLen = Args.parseLong(args.get(thresholdAt));
+      while (stream.entries.size() > maxLen) {
+        stream.entries.pollFirstEntry();
+        removed++;
+      }
+    } else if (strategy.equals("minid")) {
+      StreamLog.Id minId = StreamLog.Id.parse(args.get(thresholdAt), 0);
+      while (!stream.entries.isEmpty() && stream.entries.firstKey().compareTo(minId) < 0) {
+        stream.entries.pollFirstEntry();
+        removed++;
+      }
+    } else {
+      throw RespError.syntax();
+    }
+    return removed;
+  }
+
+  private static Object xrange(Database db, List<String> args, boolean reverse) {
+    StreamLog stream = stream(db, args.get(1));
+    StreamLog.Id start = parseBound(args.get(reverse ? 3 : 2), 0);
+    StreamLog.Id end = parseBound(args.get(reverse ? 2 : 3), Long.MAX_VALUE);
+    long count = -1;
+    if (args.size() == 6 && Args.is(args.get(4), "count")) {
+      count = Args.parseLong(args.get(5));
+    } else if (args.size() != 4) {
+      throw RespError.syntax();
+    }
+    List<Object> result = new ArrayList<>();
+    if (stream == null || start.compareTo(end) > 0) {
+      return result;
+    }
+    NavigableMap<StreamLog.Id, List<String>> range = stream.entries.subMap(start, true, end, true);
+    for (Map.Entry<StreamLog.Id, List<String>> entry : (reverse ? range.descendingMap() : range).entrySet()) {
+      if (count >= 0 && result.size() >= count) {
+        break;
+      }
+      result.add(entry(entry.getKey(), entry.getValue()));
+    }
+    return result;
+  }
+
+  /**
+   * Range bound: "(" makes it exclusive, and a bare millisecond time covers its whole
+   * sequence range.
+   */
+  private static StreamLog.Id parseBound(String text, long defaultSeq) {
+    if (text.startsWith("(")) {
+      StreamLog.Id id = StreamLog.Id.parse(text.substring(1), defaultSeq);
+      return defaultSeq == 0 ? id.successor() : new StreamLog.Id(id.seq == 0 ? id.ms - 1 : id.ms,
+          id.seq == 0 ? Long.MAX_VALUE : id.seq - 1);
+    }
+    return StreamLog.Id.parse(text, defaultSeq);
+  }
+
+  private static Object xgroup(Database db, List<String> args) {
+    String subcommand = args.get(1).toLowerCase();
+    if (args.size() < 4) {
+      throw new RespError("ERR unknown subcommand or wrong number of arguments for '" + args.get(1) + "'");
+    }
+    String key = args.get(2);
+    String name = args.get(3);
+    StreamLog stream = stream(db, key);
+    switch (subcommand) {
+      case "create": {
+        if (args.size() < 5) {
+          throw RespError.wrongArgs("xgroup|create");
+        }
+        boolean mkStream = args.size() > 5 && Args.is(args.get(5), "mkstream");
+        if (stream == null) {
+          if (!mkStream) {
+            throw new RespError("ERR The XGROUP subcommand requires the key to exist. Note that for CREATE "
+                + "you may want to use the MKSTREAM option to create an empty stream automatically.");
+          }
+          stream = new StreamLog();
+          db.put(key, stream);
+        }
+        if (stream.groups.containsKey(name)) {
+          throw new RespError("BUSYGROUP Consumer Group name already exists");
+        }
+        String id = args.get(4);
+        stream.groups.put(name, new StreamLog.Group(id.equals("$") ? stream.lastId : StreamLog.Id.parse(id, 0)));
+        return Reply.OK;
+      }
+      case "setid": {
+        StreamLog.Group group = group(db, key, name, "XGROUP");
+        group.lastDelivered = args.get(4).equals("$") ? stream.lastId : StreamLog.Id.parse(args.get(4), 0);
+        return Reply.OK;
+      }
+      case "destroy":
+        return stream != null && stream.groups.remove(name) != null ? 1L : 0L;
+      case "createconsumer": {
+        StreamLog.Group group = group(db, key, name, "XGROUP");
+        return group.consumers.putIfAbsent(args.get(4), System.currentTimeMillis()) == null ? 1L : 0L;
+      }
+      case "delconsumer": {
+        StreamLog.Group group = group(db, key, name, "XGROUP");
+        String consumer = args.get(4);
+        long pending = 0;
+        Iterator<StreamLog.Pending> it = group.pending.values().iterator();
+        while (it.hasNext()) {
+          if (it.next().consumer.equals(consumer)) {
+            it.remove();
+            pending++;
+          }
+        }
+        group.consumers.remove(consumer);
+        return pending;
+      }
+      default:
+        throw new RespError("ERR unknown subcommand '" + args.get(1) + "'");
+    }
+  }
+
+  /**
+   * XREAD [COUNT n] [BLOCK ms] STREAMS key ... id ..., and XREADGROUP GROUP group consumer
+   * [COUNT n] [BLOCK ms] [NOACK] STREAMS key ... id ...
+   */
+  private static Object read(RespServer server, Client client, List<String> args, String groupName, String consumer) {
+    Database db = server.database(client);
+    long count = -1;
+    long block = -1;
+    boolean noAck = false;
+    int i = groupName == null ? 1 : 4;
+    for (; i < args.size(); i++) {
+      String option = args.get(i).toLowerCase();
+      if (option.equals("count") && i + 1 < args.size()) {
+        count = Args.parseLong(args.get(++i));
+      } else if (option.equals("block") && i + 1 < args.size()) {
+        block = Args.parseLong(args.get(++i));
+        if (block < 0) {
+          throw new RespError("ERR timeout is negative");
+        }
+      } else if (option.equals("noack") && groupName != null) {
+        noAck = true;
+      } else if (option.equals("streams")) {
+        break;
+      } else {
+        throw RespError.syntax();
+      }
+    }
+    int streamsAt = i + 1;
+    int remaining = args.size() - streamsAt;
+    if (i >= args.size() || remaining == 0 || remaining % 2 != 0) {
+      throw new RespError("ERR Unbalanced '" + (groupName == null ? "xread" : "xreadgroup")
+          + "' list of streams: for each stream key an ID or '$' must be specified.");
+    }
+    int streams = remaining / 2;
+    long now = System.currentTimeMillis();
+    Map<String, Object> result = new LinkedHashMap<>();
+    boolean waitingForNew = false;
+    for (int s = 0; s < streams; s++) {
+      String key = args.get(streamsAt + s);
+      String id = args.get(streamsAt + streams + s);
+      StreamLog stream = stream(db, key);
+      List<Object> entries = new ArrayList<>();
+      if (groupName == null) {
+        waitingForNew = true;
+        if (stream != null) {
+          StreamLog.Id after = id.equals("$") ? stream.lastId : StreamLog.Id.parse(id, 0);
+          // "$" means after the last entry when the command first ran, so pin it for retries
+          args.set(streamsAt + streams + s, after.toString());
+          for (Map.Entry<StreamLog.Id, List<String>> entry : stream.entries.tailMap(after, false).entrySet()) {
+            if (count > 0 && entries.size() >= count) {
+              break;
+            }
+            entries.add(entry(entry.getKey(), entry.getValue()));
+          }
+        } else if (id.equals("$")) {
+          args.set(streamsAt + streams + s, "0-0");
+        }
+      } else {
+        StreamLog.Group group = stream == null ? null : stream.groups.get(groupName);
+        if (group == null) {
+          throw new RespError("NOGROUP No such key '" + key + "' or consumer group '" + groupName
+              + "' in XREADGROUP with GROUP option");
+        }
+        group.consumers.put(consumer, now);
+        if (id.equals(">")) {
+          waitingForNew = true;
+          for (Map.Entry<StreamLog.Id, List<String>> entry
+              : stream.entries.tailMap(group.lastDelivered, false).entrySet()) {
+            if (count > 0 && entries.size() >= count) {
+              break;
+            }
+            group.lastDelivered = entry.getKey();
+            if (!noAck) {
+              group.pending.put(entry.getKey(), new StreamLog.Pending(consumer, now));
+            }
+            entries.add(entry(entry.getKey(), entry.getValue()));
+          }
+        } else {
+          // History: this consumer's own pending entries after the given ID
+          for (Map.Entry<StreamLog.Id, StreamLog.Pending> pending
+              : group.pending.tailMap(StreamLog.Id.parse(id, 0), false).entrySet()) {
+            if (count > 0 && entries.size() >= count) {
+              break;
+            }
+            if (pending.getValue().consumer.equals(consumer)) {
+              entries.add(entry(pending.getKey(), stream.entries.get(pending.getKey())));
+            }
+          }
+          result.put(key, entries);
+          continue;
+        }
+      }
+      if (!entries.isEmpty()) {
+        result.put(key, entries);
+      }
+    }
+    if (result.isEmpty()) {
+      if (waitingForNew && block >= 0 && client.canBlock()) {
+        server.waitFor(client, client.db, args.subList(streamsAt, streamsAt + streams), block);
+        return Reply.BLOCKED;
+      }
+      return Reply.NULL_ARRAY;
+    }
+    if (client.resp3()) {
+      return Reply.map(result);
+    }
+    List<Object> flat = new ArrayList<>();
+    for (Map.Entry<String, Object> entry : result.entrySet()) {
+      flat.add(Arrays.asList(entry.getKey(), entry.getValue()));
+    }
+    return flat;
+  }
+
+  /**
+   * XCLAIM key group consumer min-idle-time id ... [IDLE ms] [TIME ms] [RETRYCOUNT n] [FORCE] [JUSTID]
+   */
+  private static Object xclaim(Database db, List<String> args) {
+    StreamLog stream = stream(db, args.get(1));
+    StreamLog.Group group = group(db, args.get(1), args.get(2), "XCLAIM");
+    String consumer = args.get(3);
+    long minIdle = Args.parseLong(args.get(4));
+    long now = System.currentTimeMillis();
+    boolean justId = false;
+    List<StreamLog.Id> ids = new ArrayList<>();
+    int i = 5;
+    for (; i < args.size(); i++) {
+      String arg = args.get(i);
+      if (!Character.isDigit(arg.charAt(0))) {
+        break;
+      }
+      ids.add(StreamLog.Id.parse(arg, 0));
+    }
+    for (; i < args.size(); i++) {
+      String option = args.get(i).toLowerCase();
+      if (option.equals("justid")) {
+        justId = true;
+      } else if (option.equals("idle") || option.equals("time") || option.equals("retrycount")
+          || option.equals("lastid")) {
+        i++;
+      } else if (!option.equals("force")) {
+        throw RespError.syntax();
+      }
+    }
+    List<Object> claimed = new ArrayList<>();
+    for (StreamLog.Id id : ids) {
+      StreamLog.Pending pending = group.pending.get(id);
+      if (pending == null || now - pending.deliveredAt < minIdle) {
+        continue;
+      }
+      List<String> fields = stream.entries.get(id);
+      if (fields == null) {
+        group.pending.remove(id);
+        continue;
+      }
+      claim(group, pending, consumer, now, justId);
+      claimed.add(justId ? id.toString() : entry(id, fields));
+    }
+    return claimed;
+  }
+
+  /**
+   * XAUTOCLAIM key group consumer min-idle-time start [COUNT n] [JUSTID]; replies with the
+   * next cursor, the claimed entries and the IDs of pending entries that no longer exist.
+   */
+  private static Object xautoclaim(Database db, List<String> args) {
+    StreamLog stream = stream(db, args.get(1));
+    StreamLog.Group group = group(db, args.get(1), args.get(2), "XAUTOCLAIM");
+    String consumer = args.get(3);
+    long minIdle = Args.parseLong(args.get(4));
+    StreamLog.Id start = parseBound(args.get(5), 0);
+    long count = 100;
+    boolean justId = false;
+    for (int i = 6; i < args.size(); i++) {
+      if (Args.is(args.get(i), "count") && i + 1 < args.size()) {
+        count = Args.parsePositive(args.get(++i));
+      } else if (Args.is(args.get(i), "justid")) {
+        justId = true;
+      } else {
+        throw RespError.syntax();
+      }
+    }
+    long now = System.currentTimeMillis();
+    List<Object> claimed = new ArrayList<>();
+    List<Object> deleted = new ArrayList<>();
+    String next = "0-0";
+    long attempts = count * 10;
+    for (Map.Entry<StreamLog.Id, StreamLog.Pending> entry
+        : new ArrayList<>(group.pending.tailMap(start, true).entrySet())) {
+      if (claimed.size() >= count || attempts-- == 0) {
+        next = entry.getKey().toString();
+        break;
+      }
+      StreamLog.Pending pending = entry.getValue();
+      if (now - pending.deliveredAt < minIdle) {
+        continue;
+      }
+      List<String> fields = stream.entries.get(entry.getKey());
+      if (fields == null) {
+        group.pending.remove(entry.getKey());
+        deleted.add(entry.getKey().toString());
+        continue;
+      }
+      claim(group, pending, consumer, now, justId);
+      claimed.add(justId ? entry.getKey().toString() : entry(entry.getKey(), fields));
+    }
+    return Arrays.asList(next, claimed, deleted);
+  }
+
+  private static void claim(StreamLog.Group group, StreamLog.Pending pending, String consumer, long now,
+      boolean justId) {
+    pending.consumer = consumer;
+    pending.deliveredAt = now;
+    if (!justId) {
+      pending.deliveries++;
+    }
+    group.consumers.put(consumer, now);
+  }
+
+  /**
+   * XPENDING key group: summary; XPENDING key group [IDLE ms] start end count [consumer]:
+   * one line per pending entry.
+   */
+  private static Object xpending(Database db, List<String> args) {
+    StreamLog.Group group = group(db, args.get(1), args.get(2), "XPENDING");
+    if (args.size() == 3) {
+      if (group.pending.isEmpty()) {
+        return Arrays.asList(0L, null, null, Reply.NULL_ARRAY);
+      }
+      Map<String, Long> perConsumer = new TreeMap<>();
+      for (StreamLog.Pending pending : group.pending.values()) {
+        perConsumer.merge(pending.consumer, 1L, Long::sum);
+      }
+      List<Object> consumers = new ArrayList<>();
+      for (Map.Entry<String, Long> entry : perConsumer.entrySet()) {
+        consumers.add(Arrays.asList(entry.getKey(), entry.getValue().toString()));
+      }
+      return Arrays.asList((long) group.pending.size(), group.pending.firstKey().toString(),
+          group.pending.lastKey().toString(), consumers);
+    }
+    int i = 3;
+    long minIdle = 0;
+    if (Args.is(args.get(i), "idle")) {
+      minIdle = Args.parseLong(args.get(i + 1));
+      i += 2;
+    }
+    if (args.size() < i + 3) {
+      throw RespError.syntax();
+    }
+    StreamLog.Id start = parseBound(args.get(i), 0);
+    StreamLog.Id end = parseBound(args.get(i + 1), Long.MAX_VALUE);
+    long count = Args.parseLong(args.get(i + 2));
+    String consumer = args.size() > i + 3 ? args.get(i + 3) : null;
+    long now = System.currentTimeMillis();
+    List<Object> result = new ArrayList<>();
+    if (start.compareTo(end) > 0) {
+      return result;
+    }
+    for (Map.Entry<StreamLog.Id, StreamLog.Pending> entry : group.pending.subMap(start, true, end, true).entrySet()) {
+      if (result.size() >= count) {
+        break;
+      }
+      StreamLog.Pending pending = entry.getValue();
+      long idle = now - pending.deliveredAt;
+      if (idle < minIdle || consumer != null && !consumer.equals(pending.consumer)) {
+        continue;
+      }
+      result.add(Arrays.asList(entry.getKey().toString(), pending.consumer, idle, pending.deliveries));
+    }
+    return result;
+  }
+
+  private static List<Object> entry(StreamLog.Id id, List<String> fields) {
+    return Arrays.asList(id.toString(), fields == null ? Reply.NULL_ARRAY : fields);
+  }
+
+  private static StreamLog stream(Database db, String key) {
+    return db.get(key, StreamLog.class);
+  }
+
+  private static StreamLog.Group groupOrNull(Database db, String key, String name) {
+    StreamLog stream = stream(db, key);
+    return stream == null ? null : stream.groups.get(name);
+  }
+
+  private static StreamLog.Group group(Database db, String key, String name, String command) {
+    StreamLog.Group group = groupOrNull(db, key, name);
+    if (group == null) {
+      throw new RespError("NOGROUP No such key '" + key + "' or consumer group '" + name + "' in " + command);
+    }
+    return group;
+  }
+}
@@ -0,0 +1,129 @@
+package resp;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Redis stream: entries ordered by ID, plus consumer groups with their pending entry lists.
+ */
+final class StreamLog {
+  final NavigableMap<Id, List<String>> entries = new TreeMap<>();
+  final Map<String, Group> groups = new HashMap<>();
+  Id lastId = Id.MIN;
+
+  /**
+   * Resolves the ID for XADD: "*" is the next ID from the clock, "ms-*" the next sequence
+   * in that millisecond, anything else must be greater than the last ID.
+   */
+  Id nextId(String requested, long now) {
+    if (requested.equals("*")) {
+      return now > lastId.ms ? new Id(now, 0) : new Id(lastId.ms, lastId.seq + 1);
+    }
+    Id id;
+    if (requested.endsWith("-*")) {
+      long ms = Id.parseLong(requested.substring(0, requested.length() - 2));
+      id = ms == lastId.ms ? new Id(ms, lastId.seq + 1) : new Id(ms, 0);
+    } else {
+      id = Id.parse(requested, 0);
+    }
+    if (id.compareTo(lastId) <= 0) {
+      throw new RespError("ERR The ID specified in XADD is equal or smaller than the target stream top item");
+    }
+    return id;
+  }
+
+  static final class Group {
+    Id lastDelivered;
+    final NavigableMap<Id, Pending> pending = new TreeMap<>();
+    final Map<String, Long> consumers = new HashMap<>();
+
+    Group(Id lastDelivered) {
+      this.lastDelivered = lastDelivered;
+    }
+  }
+
+  static final class Pending {
+    String consumer;
+    long deliveredAt;
+    long deliveries;
+
+    Pending(String consumer, long deliveredAt) {
+      this.consumer = consumer;
+      this.deliveredAt = deliveredAt;
+      this.deliveries = 1;
+    }
+  }
+
+  static final class Id implements Comparable<Id> {
+    static final Id MIN = new Id(0, 0);
+    static final Id MAX = new Id(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    final long ms;
+    final long seq;
+
+    Id(long ms, long seq) {
+      this.ms = ms;
+      this.seq = seq;
+    }
+
+    /**
+     * Parses "ms-seq", or "ms" with the given default sequence; "-" and "+" are the ends.
+     */
+    static Id parse(String text, long defaultSeq) {
+      if (text.equals("-")) {
+        return MIN;
+      }
+      if (text.equals("+")) {
+        return MAX;
+      }
+      int dash = text.indexOf('-');
+      if (dash < 0) {
+        return new Id(parseLong(text), defaultSeq);
+      }
+      return new Id(parseLong(text.substring(0, dash)), parseLong(text.substring(dash + 1)));
+    }
+
+    static long parseLong(String text) {
+      try {
+        long value = Long.parseLong(text);
+        if (value < 0) {
+          throw new NumberFormatException(text);
+        }
+        return value;
+      } catch (NumberFormatException e) {
+        throw new RespError("ERR Invalid stream ID specified as stream command argument");
+      }
+    }
+
+    /**
+     * The next possible ID, for exclusive range starts.
+     */
+    Id successor() {
+      return seq == Long.MAX_VALUE ? new Id(ms + 1, 0) : new Id(ms, seq + 1);
+    }
+
+    @Override
+    public int compareTo(Id other) {
+      int byMs = Long.compareUnsigned(ms, other.ms);
+      return byMs != 0 ? byMs : Long.compareUnsigned(seq, other.seq);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Id && ((Id) other).ms == ms && ((Id) other).seq == seq;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(ms) * 31 + Long.hashCode(seq);
+    }
+
+    @Override
+    public String toString() {
+      return ms + "-" + seq;
+    }
+  }
+}
@@ -0,0 +1,202 @@
+package simulator;
+
+import algorithms.EvictionCache;
+import algorithms.EvictionPolicy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Trace-driven cache simulator: replays an access log through every replacement policy at
+ * several cache sizes in a single pass and reports a hit-ratio curve and throughput.
+ *
+ * The trace is read once; keys are collected into a fixed batch and the batch is replayed
+ * into each (policy, size) cache in turn, so memory stays constant for any trace length.
+ * A miss inserts the key, as a read-through cache would.
+ *
+ * Usage:
+ *   java simulator.CacheSimulator trace-file [format] [sizes] [policies]
+ *   e.g. trace.lirs lirs 1000,10000,100000 lru,s3-fifo,sieve
+ */
+public class CacheSimulator {
+  private static final int BATCH_SIZE = 1 << 16;
+
+  private final List<Run> runs = new ArrayList<>();
+  private final int[] sizes;
+  private final long[] batch = new long[BATCH_SIZE];
+  private final Long[] boxedBatch = new Long[BATCH_SIZE];
+  private int batchCount;
+  private long accesses;
+
+  public CacheSimulator(List<EvictionPolicy> policies, int[] sizes) {
+    this.sizes = sizes.clone();
+    for (EvictionPolicy policy : policies) {
+      for (int size : sizes) {
+        runs.add(new Run(policy, size));
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Usage: CacheSimulator trace-file [key-per-line|arc|lirs|twitter] "
+          + "[size,size,...] [policy,policy,...]");
+      return;
+    }
+    Path trace = Paths.get(args[0]);
+    TraceFormat format = args.length > 1 ? TraceFormat.fromName(args[1]) : TraceFormat.KEY_PER_LINE;
+    int[] sizes = args.length > 2
+        ? Arrays.stream(args[2].split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray()
+        : new int[]{1_000, 10_000, 100_000};
+    List<EvictionPolicy> policies = new ArrayList<>();
+    if (args.length > 3) {
+      for (String name : args[3].split(",")) {
+        policies.add(EvictionPolicy.fromName(name.trim()));
+      }
+    } else {
+      policies.addAll(Arrays.asList(EvictionPolicy.values()));
+    }
+
+    System.out.println("=== Cache Simulator ===");
+    System.out.println("Trace: " + trace + " (" + format + ")");
+    System.out.println("Sizes: " + Arrays.toString(sizes));
+    System.out.println();
+
+    CacheSimulator simulator = new CacheSimulator(policies, sizes);
+    long start = System.nanoTime();
+    long lines = simulator.replay(trace, format);
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+    System.out.println("Replayed " + lines + " lines (" + simulator.accesses + " accesses) in " + elapsedMillis + "ms");
+    System.out.println();
+    simulator.printReport();
+  }
+
+  /**
+   * Streams the trace through every configured cache and returns the number of lines read.
+   */
+  public long replay(Path trace, TraceFormat format) throws IOException {
+    long lines = TraceReader.replay(trace, format, this::record);
+    flush();
+    return lines;
+  }
+
+  /**
+   * Feeds one key; keys are buffered and replayed in batches.
+   */
+  public void record(long key) {
+    batch[batchCount++] = key;
+    if (batchCount == BATCH_SIZE) {
+      flush();
+    }
+  }
+
+  private void flush() {
+    if (batchCount == 0) {
+      return;
+    }
+    // Box once per access at the policy boundary, shared by every run
+    for (int i = 0; i < batchCount; i++) {
+      boxedBatch[i] = batch[i];
+    }
+    for (Run run : runs) {
+      run.replay(boxedBatch, batchCount);
+    }
+    accesses += batchCount;
+    batchCount = 0;
+  }
+
+  public void printReport() {
+    System.out.println("Hit ratio curve (%):");
+    StringBuilder header = new StringBuilder(String.format("%-10s", "Policy"));
+    for (int size : sizes) {
+      header.append(String.format("%12d", size));
+    }
+    System.out.println(header);
+    printTable(run -> String.format("%12.2f", run.hitRatio() * 100));
+
+    System.out.println("\nThroughput (million accesses/s):");
+    System.out.println(header);
+    printTable(run -> String.format("%12.2f", run.throughput() / 1_000_000));
+  }
+
+  private void printTable(Function<Run, String> cell) {
+    EvictionPolicy current = null;
+    StringBuilder row = null;
+    for (Run run : runs) {
+      if (run.policy != current) {
+        if (row != null) {
+          System.out.println(row);
+        }
+        current = run.policy;
+        row = new StringBuilder(String.format("%-10s", current.displayName()));
+      }
+      row.append(cell.apply(run));
+    }
+    if (row != null) {
+      System.out.println(row);
+    }
+  }
+
+  public List<Run> runs() {
+    return runs;
+  }
+
+  /**
+   * One cache under simulation and its counters.
+   */
+  public static final class Run {
+    final EvictionPolicy policy;
+    final int size;
+    final EvictionCache<Long, Long> cache;
+    long hits;
+    long misses;
+    long nanos;
+
+    Run(EvictionPolicy policy, int size) {
+      this.policy = policy;
+      this.size = size;
+      // Striped engines size their segments by core count; one segment keeps results host-independent
+      this.cache = policy.createUnsegmented(size);
+    }
+
+    void replay(Long[] keys, int count) {
+      long start = System.nanoTime();
+      long batchHits = 0;
+      for (int i = 0; i < count; i++) {
+        Long key = keys[i];
+        if (cache.get(key) != null) {
+          batchHits++;
+        } else {
+          cache.put(key, key);
+        }
+      }
+      nanos += System.nanoTime() - start;
+      hits += batchHits;
+      misses += count - batchHits;
+    }
+
+    public EvictionPolicy policy() {
+      return policy;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public double hitRatio() {
+      long total = hits + misses;
+      return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Accesses per second spent inside this cache.
+     */
+    public double throughput() {
+      return nanos == 0 ? 0 : (hits + misses) * 1e9 / nanos;
+    }
+  }
+}
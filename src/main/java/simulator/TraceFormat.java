@@ -0,0 +1,153 @@
+package simulator;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+/**
+ * Access trace formats understood by the simulator. Each format turns one line of bytes
+ * into zero or more primitive long keys without allocating a String per line.
+ *
+ * - KEY_PER_LINE: one key per line; numeric keys are used as-is, anything else is hashed
+ * - ARC: "startBlock blockCount ignored requestId" (Megiddo and Modha); expands to
+ *   blockCount consecutive block keys
+ * - LIRS: one block number per line; "*" separator lines are skipped
+ * - TWITTER: Twitter cache trace CSV "timestamp,key,keySize,valueSize,clientId,op,ttl";
+ *   the key field is hashed
+ */
+public enum TraceFormat {
+  KEY_PER_LINE {
+    @Override
+    void parseLine(ByteBuffer buffer, int start, int end, LongConsumer sink) {
+      start = skipSpaces(buffer, start, end);
+      end = trimEnd(buffer, start, end);
+      if (start == end || buffer.get(start) == '#') {
+        return;
+      }
+      sink.accept(isNumber(buffer, start, end) ? parseLong(buffer, start, end) : hash(buffer, start, end));
+    }
+  },
+  ARC {
+    @Override
+    void parseLine(ByteBuffer buffer, int start, int end, LongConsumer sink) {
+      start = skipSpaces(buffer, start, end);
+      end = trimEnd(buffer, start, end);
+      if (start == end) {
+        return;
+      }
+      int startEnd = nextSpace(buffer, start, end);
+      long startBlock = parseLong(buffer, start, startEnd);
+      int countStart = skipSpaces(buffer, startEnd, end);
+      long count = parseLong(buffer, countStart, nextSpace(buffer, countStart, end));
+      for (long i = 0; i < count; i++) {
+        sink.accept(startBlock + i);
+      }
+    }
+  },
+  LIRS {
+    @Override
+    void parseLine(ByteBuffer buffer, int start, int end, LongConsumer sink) {
+      start = skipSpaces(buffer, start, end);
+      end = trimEnd(buffer, start, end);
+      if (start == end || buffer.get(start) == '*') {
+        return;
+      }
+      sink.accept(parseLong(buffer, start, end));
+    }
+  },
+  TWITTER {
+    @Override
+    void parseLine(ByteBuffer buffer, int start, int end, LongConsumer sink) {
+      end = trimEnd(buffer, start, end);
+      int keyStart = nextComma(buffer, start, end) + 1;
+      if (keyStart >= end) {
+        return;
+      }
+      int keyEnd = nextComma(buffer, keyStart, end);
+      sink.accept(hash(buffer, keyStart, keyEnd));
+    }
+  };
+
+  /**
+   * Parses the bytes in [start, end) of one line, excluding the newline.
+   */
+  abstract void parseLine(ByteBuffer buffer, int start, int end, LongConsumer sink);
+
+  /**
+   * Looks up a format by name, ignoring case and accepting '-' for '_' (e.g. "key-per-line").
+   */
+  public static TraceFormat fromName(String name) {
+    return valueOf(name.trim().toUpperCase().replace('-', '_'));
+  }
+
+  private static boolean isNumber(ByteBuffer buffer, int start, int end) {
+    int i = buffer.get(start) == '-' && end - start > 1 ? start + 1 : start;
+    // Longer digit strings could overflow a long, so they are hashed instead
+    if (end - i > 18) {
+      return false;
+    }
+    for (; i < end; i++) {
+      byte b = buffer.get(i);
+      if (b < '0' || b > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long parseLong(ByteBuffer buffer, int start, int end) {
+    boolean negative = buffer.get(start) == '-';
+    long value = 0;
+    for (int i = negative ? start + 1 : start; i < end; i++) {
+      byte b = buffer.get(i);
+      if (b < '0' || b > '9') {
+        throw new NumberFormatException("Not a number at byte " + i);
+      }
+      value = value * 10 + (b - '0');
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * 64-bit FNV-1a over the raw bytes.
+   */
+  private static long hash(ByteBuffer buffer, int start, int end) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = start; i < end; i++) {
+      hash ^= buffer.get(i) & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  private static int skipSpaces(ByteBuffer buffer, int start, int end) {
+    while (start < end && isSpace(buffer.get(start))) {
+      start++;
+    }
+    return start;
+  }
+
+  private static int trimEnd(ByteBuffer buffer, int start, int end) {
+    while (end > start && isSpace(buffer.get(end - 1))) {
+      end--;
+    }
+    return end;
+  }
+
+  private static int nextSpace(ByteBuffer buffer, int start, int end) {
+    while (start < end && !isSpace(buffer.get(start))) {
+      start++;
+    }
+    return start;
+  }
+
+  private static int nextComma(ByteBuffer buffer, int start, int end) {
+    while (start < end && buffer.get(start) != ',') {
+      start++;
+    }
+    return start;
+  }
+
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r';
+  }
+}
@@ -0,0 +1,59 @@
+package simulator;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongConsumer;
+
+/**
+ * Streams an access trace through memory-mapped windows, handing each key to a sink as a
+ * primitive long. Memory use is bounded by the window size regardless of trace length, so
+ * traces with billions of lines replay in constant memory.
+ */
+public final class TraceReader {
+  private static final long WINDOW_SIZE = 256L << 20;
+
+  private TraceReader() {
+  }
+
+  /**
+   * Replays every key in the trace into the sink and returns the number of lines read.
+   */
+  public static long replay(Path path, TraceFormat format, LongConsumer sink) throws IOException {
+    long lines = 0;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long position = 0;
+      while (position < size) {
+        int length = (int) Math.min(WINDOW_SIZE, size - position);
+        boolean lastWindow = position + length == size;
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+          if (window.get(i) == '\n') {
+            format.parseLine(window, lineStart, i, sink);
+            lineStart = i + 1;
+            lines++;
+          }
+        }
+
+        if (lastWindow) {
+          if (lineStart < length) {
+            format.parseLine(window, lineStart, length, sink);
+            lines++;
+          }
+          position = size;
+        } else if (lineStart == 0) {
+          throw new IOException("Line longer than " + WINDOW_SIZE + " bytes at offset " + position);
+        } else {
+          // The partial last line is re-read at the start of the next window
+          position += lineStart;
+        }
+      }
+    }
+    return lines;
+  }
+}
@@ -3,9 +3,19 @@ package singlenode;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import invalidation.IndexedCache;
+import invalidation.LazyBanCache;
+import invalidation.StaleWhileRevalidateCache;
+import invalidation.XFetch;
+import invalidation.XFetchCache;
 import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * Comprehensive demonstration of cache invalidation strategies and methods
@@ -15,7 +25,8 @@ import java.util.concurrent.ScheduledExecutorService;
  * - Manual purge (single and bulk)
  * - Refresh patterns
  * - Stale-while-revalidate
- * - Ban patterns
+ * - Ban patterns (eager, indexed)
+ * - Lazy bans (generation-based ban list)
  */
 public class CacheInvalidationStrategyDemo {
   private ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
@@ -30,6 +41,7 @@ public class CacheInvalidationStrategyDemo {
     demo.demoRefresh();
     demo.demoStaleWhileRevalidate();
     demo.demoBanPattern();
+    demo.demoLazyBan();
 
     demo.executor.shutdown();
   }
@@ -103,12 +115,73 @@ public class CacheInvalidationStrategyDemo {
       Thread.currentThread().interrupt();
     }
 
+    // Probabilistic early expiration: refresh before the TTL boundary, weighted by load cost
+    System.out.println("\n   c) Probabilistic Early Expiration (XFetch, 1 second TTL, 200ms loads):");
+    System.out.println("      Hard TTL: every reader arriving after expiry blocks on the reload");
+    System.out.println("      XFetch: one reader triggers a background refresh shortly before expiry");
+
+    Function<String, String> slowLoader = key -> {
+      try {
+        Thread.sleep(200); // Simulate expensive recompute
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return key + "_" + System.currentTimeMillis();
+    };
+    LoadingCache<String, String> hardTtlCache = Caffeine.newBuilder()
+        .expireAfterWrite(Duration.ofSeconds(1))
+        .build(slowLoader::apply);
+    XFetchCache<String, String> xfetchCache = new XFetchCache<>(
+        100, Duration.ofSeconds(1), XFetch.DEFAULT_BETA, slowLoader, executor);
+
+    long hardTtlBlocked = countBlockedReads(() -> hardTtlCache.get("hot:key"));
+    long xfetchBlocked = countBlockedReads(() -> xfetchCache.get("hot:key"));
+    System.out.println("      Reads blocked >100ms over 3s of 8 readers - hard TTL: " + hardTtlBlocked
+        + ", XFetch: " + xfetchBlocked + " (" + xfetchCache.earlyRefreshes() + " early refresh draws, "
+        + xfetchCache.loads() + " loads)");
+
     System.out.println("\n   Key Difference:");
     System.out.println("   • expireAfterWrite: Timer starts from write time, never resets");
     System.out.println("   • expireAfterAccess: Timer resets on every read/write access");
+    System.out.println("   • XFetch: Refreshes early with rising probability, so hot keys never hit the boundary");
     System.out.println();
   }
 
+  /**
+   * Runs 8 readers against the cache for 3 seconds and counts reads that waited on a load.
+   */
+  private long countBlockedReads(Runnable read) {
+    AtomicLong blocked = new AtomicLong();
+    long deadline = System.nanoTime() + Duration.ofSeconds(3).toNanos();
+    Thread[] readers = new Thread[8];
+    for (int i = 0; i < readers.length; i++) {
+      readers[i] = new Thread(() -> {
+        while (System.nanoTime() < deadline) {
+          long start = System.nanoTime();
+          read.run();
+          if (System.nanoTime() - start > Duration.ofMillis(100).toNanos()) {
+            blocked.incrementAndGet();
+          }
+          try {
+            Thread.sleep(10);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+      });
+      readers[i].start();
+    }
+    try {
+      for (Thread reader : readers) {
+        reader.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return blocked.get();
+  }
+
   /**
    * Purge - Manual cache invalidation (single key or bulk)
    * Used when you need immediate invalidation for specific data
@@ -216,7 +289,7 @@ public class CacheInvalidationStrategyDemo {
    * Optimizes user experience by avoiding cache miss delays
    *
    * Note: Caffeine doesn't have built-in stale-while-revalidate, but we can implement it
-   * using refreshAfterWrite and custom logic.
+   * using refreshAfterWrite, or a single cache whose entries carry soft and hard expiry.
    */
   public void demoStaleWhileRevalidate() {
     System.out.println("4. Stale-While-Revalidate Pattern:");
@@ -259,64 +332,64 @@ public class CacheInvalidationStrategyDemo {
       Thread.currentThread().interrupt();
     }
 
-    // Approach 2: Custom stale-while-revalidate with dual cache
-    System.out.println("\n   b) Custom implementation with dual cache pattern:");
-
-    Cache<String, String> primaryCache = Caffeine.newBuilder()
-        .expireAfterWrite(Duration.ofSeconds(2))
-        .build();
-
-    Cache<String, String> staleCache = Caffeine.newBuilder()
-        .expireAfterWrite(Duration.ofSeconds(10)) // Keep stale data longer
-        .build();
-
-    String key = "user:profile";
-    String originalValue = "profile_v1_" + System.currentTimeMillis();
-
-    // Store in both caches
-    primaryCache.put(key, originalValue);
-    staleCache.put(key, originalValue);
-    System.out.println("   Stored initial value: " + originalValue);
-
-    try {
-      Thread.sleep(2500); // Let primary cache expire
-
-      // Custom stale-while-revalidate logic
-      String fresh = primaryCache.getIfPresent(key);
-      if (fresh == null) {
-        // Return stale data immediately
-        String stale = staleCache.getIfPresent(key);
-        System.out.println("   Primary cache miss - returning stale: " + stale);
+    // Approach 2: Single-store stale-while-revalidate with soft/hard expiry
+    System.out.println("\n   b) Single-store SWR cache (soft 2s, hard 10s, stale-if-error 5s):");
 
-        // Trigger async refresh
-        executor.submit(() -> {
+    AtomicInteger version = new AtomicInteger(1);
+    AtomicBoolean sourceDown = new AtomicBoolean();
+    StaleWhileRevalidateCache<String, String> swrCache = new StaleWhileRevalidateCache<>(
+        100, Duration.ofSeconds(2), Duration.ofSeconds(10), Duration.ofSeconds(5),
+        key -> {
           try {
             Thread.sleep(300); // Simulate API call
-            String newValue = "profile_v2_" + System.currentTimeMillis();
-            primaryCache.put(key, newValue);
-            staleCache.put(key, newValue);
-            System.out.println("   Background refresh completed: " + newValue);
           } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
           }
-        });
+          if (sourceDown.get()) {
+            throw new IllegalStateException("source unavailable");
+          }
+          return "profile_v" + version.getAndIncrement() + "_" + System.currentTimeMillis();
+        },
+        executor);
 
-        // Return stale data to user immediately (no waiting)
-        if (stale != null) {
-          System.out.println("   ↳ User gets immediate response with stale data");
-        }
+    String key = "user:profile";
+    System.out.println("   Initial load: " + swrCache.get(key));
+
+    try {
+      Thread.sleep(2500); // Past soft expiry, inside hard expiry
+
+      // Many concurrent readers see the stale entry; only one refresh runs
+      CountDownLatch readers = new CountDownLatch(50);
+      for (int i = 0; i < 50; i++) {
+        new Thread(() -> {
+          swrCache.get(key);
+          readers.countDown();
+        }).start();
       }
+      readers.await();
+      System.out.println("   50 concurrent stale reads -> " + swrCache.staleHits() + " served stale, "
+          + swrCache.refreshes() + " background refresh");
+      System.out.println("   ↳ Users get immediate responses with stale data");
 
       Thread.sleep(500);
-      System.out.println("   After refresh: " + primaryCache.getIfPresent(key));
-
+      System.out.println("   After refresh: " + swrCache.get(key));
+
+      // Stale-if-error: past hard expiry the source fails, the old value stands in
+      System.out.println("\n   c) Stale-if-error:");
+      swrCache.put("user:settings", "settings_v1");
+      sourceDown.set(true);
+      Thread.sleep(2500);
+      System.out.println("   Source down, stale read: " + swrCache.get("user:settings"));
+      Thread.sleep(500);
+      System.out.println("   Refresh failures so far: " + swrCache.refreshFailures()
+          + ", value still served: " + swrCache.get("user:settings"));
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
     }
 
     System.out.println("\n   Summary:");
     System.out.println("   • refreshAfterWrite: Caffeine's built-in solution");
-    System.out.println("   • Custom dual cache: Full stale-while-revalidate control");
+    System.out.println("   • Single-store SWR: soft/hard expiry, one refresh per key, stale-if-error");
     System.out.println("   • Both avoid user-facing latency during refresh");
     System.out.println();
   }
@@ -324,31 +397,31 @@ public class CacheInvalidationStrategyDemo {
   /**
    * Ban Pattern - Invalidate related entries based on tags or patterns
    * Useful for invalidating groups of related cache entries
+   *
+   * A prefix index and tag sets kept alongside the cache make a ban cost O(matches)
+   * instead of a scan over every key in the cache.
    */
   public void demoBanPattern() {
     System.out.println("5. Ban Pattern (Tag-based Invalidation):");
     System.out.println("   - Invalidate groups of related cache entries");
     System.out.println("   - Useful for complex data relationships");
+    System.out.println("   - Indexed by key prefix and tag: cost is proportional to the matches");
 
-    Cache<String, String> cache = Caffeine.newBuilder().maximumSize(100).build();
+    IndexedCache<String> cache = new IndexedCache<>(Caffeine.newBuilder().maximumSize(100));
 
     // Populate cache with tagged data
-    cache.put("user:1:profile", "John's Profile");
+    cache.put("user:1:profile", "John's Profile", "team:eng");
     cache.put("user:1:settings", "John's Settings");
-    cache.put("user:1:posts", "John's Posts");
-    cache.put("user:2:profile", "Jane's Profile");
+    cache.put("user:1:posts", "John's Posts", "feed");
+    cache.put("user:2:profile", "Jane's Profile", "team:eng");
     cache.put("user:2:settings", "Jane's Settings");
     cache.put("global:config", "Global Config");
 
     System.out.println("   Initial cache size: " + cache.estimatedSize() + " items");
 
     // Ban all entries for user:1
-    System.out.println("\n   a) Banning all entries for user:1:");
-    // Count entries before removal
-    long bannedCount = cache.asMap().keySet().stream()
-        .filter(key -> key.startsWith("user:1:"))
-        .count();
-    cache.asMap().keySet().removeIf(key -> key.startsWith("user:1:"));
+    System.out.println("\n   a) Banning all entries for user:1 (prefix ban):");
+    int bannedCount = cache.banPrefix("user:1:");
     System.out.println("   Banned " + bannedCount + " entries");
     System.out.println("   Remaining size: " + cache.estimatedSize());
 
@@ -357,10 +430,87 @@ public class CacheInvalidationStrategyDemo {
     cache.asMap().forEach((key, value) ->
         System.out.println("   - " + key + " = " + value));
 
+    // Ban by tag, across unrelated key prefixes
+    System.out.println("\n   b) Banning everything tagged team:eng (tag ban):");
+    System.out.println("   Banned " + cache.banTag("team:eng") + " entries");
+    System.out.println("   Remaining size: " + cache.estimatedSize());
+
     // Ban all user entries (simulating user data invalidation)
-    System.out.println("\n   b) Banning all user entries:");
-    cache.asMap().keySet().removeIf(key -> key.startsWith("user:"));
+    System.out.println("\n   c) Banning all user entries:");
+    cache.banPrefix("user:");
     System.out.println("   Remaining size: " + cache.estimatedSize());
+
+    // Compare against a full-keyspace scan on a large cache
+    System.out.println("\n   d) Ban cost on a 1,000,000-entry cache (100 matching keys):");
+    int entries = 1_000_000;
+    Cache<String, String> plain = Caffeine.newBuilder().maximumSize(entries).build();
+    IndexedCache<String> indexed = new IndexedCache<>(Caffeine.newBuilder().maximumSize(entries));
+    for (int i = 0; i < entries; i++) {
+      String key = "item:" + (i % 10_000) + ":" + i;
+      plain.put(key, "v");
+      indexed.put(key, "v");
+    }
+
+    long start = System.nanoTime();
+    plain.asMap().keySet().removeIf(key -> key.startsWith("item:42:"));
+    long scanMicros = (System.nanoTime() - start) / 1_000;
+
+    start = System.nanoTime();
+    int removed = indexed.banPrefix("item:42:");
+    long indexedMicros = (System.nanoTime() - start) / 1_000;
+
+    System.out.println("   Full scan (removeIf): " + scanMicros + "us");
+    System.out.println("   Prefix index:         " + indexedMicros + "us for " + removed + " entries");
+    System.out.println();
+  }
+
+  /**
+   * Lazy Ban - Record a ban now, drop matching entries later (Varnish-style ban list)
+   * A ban is an O(1) append; reads and a background sweeper apply it to entries
+   */
+  public void demoLazyBan() {
+    System.out.println("6. Lazy Ban (Generation-based Ban List):");
+    System.out.println("   - A ban is recorded as predicate + generation, nothing is scanned");
+    System.out.println("   - Reads drop banned entries lazily; a sweeper retires old bans");
+
+    int entries = 1_000_000;
+    try (LazyBanCache<String, String> cache = new LazyBanCache<>(
+        Caffeine.newBuilder().maximumSize(entries), Duration.ofMillis(500))) {
+      for (int i = 0; i < entries; i++) {
+        cache.put("item:" + (i % 10_000) + ":" + i, "v" + i);
+      }
+      System.out.println("   Cache size: " + cache.estimatedSize());
+
+      // Ban cost does not depend on cache size
+      long start = System.nanoTime();
+      cache.ban((key, value) -> key.startsWith("item:42:"));
+      System.out.println("\n   a) Ban on item:42:* recorded in " + (System.nanoTime() - start) / 1_000 + "us");
+      System.out.println("   Read item:42:42 = " + cache.getIfPresent("item:42:42") + " (dropped lazily)");
+      System.out.println("   Read item:43:43 = " + cache.getIfPresent("item:43:43") + " (not banned)");
+
+      // A flood of bans stays off the request thread
+      start = System.nanoTime();
+      for (int i = 0; i < 1_000; i++) {
+        String prefix = "item:" + (5_000 + i) + ":";
+        cache.ban((key, value) -> key.startsWith(prefix));
+      }
+      System.out.println("\n   b) 1,000 bans recorded in " + (System.nanoTime() - start) / 1_000 + "us");
+      System.out.println("   Outstanding bans: " + cache.outstandingBans());
+
+      // Loader refills a banned key with fresh data
+      String reloaded = cache.get("item:5001:5001", key -> "fresh_" + key);
+      System.out.println("   Read item:5001:5001 after ban = " + reloaded);
+
+      // Two sweeps: the first checks every entry, the second retires the bans
+      cache.sweepNow();
+      cache.sweepNow();
+      System.out.println("\n   c) After background sweeps:");
+      System.out.println("   Dropped on read: " + cache.lazyDrops() + ", dropped by sweeper: " + cache.sweeperDrops());
+      System.out.println("   Outstanding bans: " + cache.outstandingBans());
+      System.out.println("   Cache size: " + cache.estimatedSize());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
     System.out.println();
   }
 }
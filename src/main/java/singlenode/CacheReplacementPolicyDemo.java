@@ -1,9 +1,15 @@
 package singlenode;
 
+import algorithms.ClockCache;
+import algorithms.ConcurrentFifoCache;
+import algorithms.ConcurrentLruCache;
+import algorithms.EvictionCache;
+import algorithms.EvictionPolicy;
+import algorithms.LfuCache;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.Random;
 
 /**
  * Demonstrates different cache replacement policies
@@ -18,7 +24,10 @@ public class CacheReplacementPolicyDemo {
     demo.demonstrateLRU();
     demo.demonstrateLFU();
     demo.demonstrateFIFO();
+    demo.demonstrateClock();
+    demo.demonstrateS3FifoAndSieve();
     demo.caffeinePolicyComparison();
+    demo.compareAllPolicies();
   }
 
   /**
@@ -27,29 +36,25 @@ public class CacheReplacementPolicyDemo {
   public void demonstrateLRU() {
     System.out.println("1. LRU (Least Recently Used) Policy:");
     System.out.println("   - Evicts items that haven't been accessed recently");
+    System.out.println("   - Striped segments with buffered reads (no global lock on get)");
 
-    // Simple LRU implementation using LinkedHashMap
-    Map<String, String> lruCache = new LinkedHashMap<String, String>(3, 0.75f, true) {
-      @Override
-      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
-        return size() > 3; // Max capacity of 3
-      }
-    };
+    // Concurrent LRU engine; a single segment keeps the demo's order globally exact
+    ConcurrentLruCache<String, String> lruCache = new ConcurrentLruCache<>(3, 1);
 
     // Fill cache
     lruCache.put("A", "ValueA");
     lruCache.put("B", "ValueB");
     lruCache.put("C", "ValueC");
-    System.out.println("Initial cache: " + lruCache.keySet());
+    System.out.println("Initial cache (LRU -> MRU): " + lruCache.keys());
 
     // Access A and B to make them recently used
     lruCache.get("A");
     lruCache.get("B");
-    System.out.println("After accessing A and B: " + lruCache.keySet());
+    System.out.println("After accessing A and B: " + lruCache.keys());
 
     // Add new item - should evict C (least recently used)
     lruCache.put("D", "ValueD");
-    System.out.println("After adding D (C evicted): " + lruCache.keySet());
+    System.out.println("After adding D (C evicted): " + lruCache.keys());
     System.out.println();
   }
 
@@ -59,12 +64,10 @@ public class CacheReplacementPolicyDemo {
   public void demonstrateLFU() {
     System.out.println("2. LFU (Least Frequently Used) Policy:");
     System.out.println("   - Evicts items with lowest access frequency");
+    System.out.println("   - O(1) frequency buckets with periodic aging of old heavy hitters");
 
-    // Caffeine uses W-TinyLFU which is an advanced LFU variant
-    Cache<String, String> lfuCache = Caffeine.newBuilder()
-        .maximumSize(3)
-        .recordStats()
-        .build();
+    // Exact LFU engine; Caffeine's W-TinyLFU approximation is covered in section 6
+    LfuCache<String, String> lfuCache = new LfuCache<>(3);
 
     // Fill cache and establish frequency patterns
     lfuCache.put("X", "ValueX");
@@ -78,47 +81,39 @@ public class CacheReplacementPolicyDemo {
     // Access X multiple times (high frequency)
     System.out.println("  Accessing X 10 times (high frequency)");
     for (int i = 0; i < 10; i++) {
-      lfuCache.getIfPresent("X");
+      lfuCache.get("X");
     }
 
     // Access Y moderately (medium frequency)
     System.out.println("  Accessing Y 3 times (medium frequency)");
     for (int i = 0; i < 3; i++) {
-      lfuCache.getIfPresent("Y");
+      lfuCache.get("Y");
     }
 
     // Access Z only once (low frequency)
     System.out.println("  Accessing Z 1 time (low frequency)");
-    lfuCache.getIfPresent("Z");
+    lfuCache.get("Z");
 
-    // Force cache maintenance to ensure frequency data is processed
-    lfuCache.cleanUp();
+    System.out.println("Frequencies before eviction:");
+    System.out.println("  X: " + lfuCache.frequency("X"));
+    System.out.println("  Y: " + lfuCache.frequency("Y"));
+    System.out.println("  Z: " + lfuCache.frequency("Z"));
+    System.out.println("Eviction order (lowest frequency first): " + lfuCache.keys());
 
-    System.out.println("Cache state before eviction:");
-    System.out.println("  X: " + lfuCache.getIfPresent("X"));
-    System.out.println("  Y: " + lfuCache.getIfPresent("Y"));
-    System.out.println("  Z: " + lfuCache.getIfPresent("Z"));
-
-    // Add new items to trigger eviction - add multiple to force eviction
-    System.out.println("\nAdding new items W and V to trigger eviction...");
+    // Each insert into the full cache evicts the least frequently used entry
+    System.out.println("\nAdding W (evicts Z, frequency 2)...");
     lfuCache.put("W", "ValueW");
-    lfuCache.cleanUp(); // Force maintenance
-
+    System.out.println("Adding V (evicts W, frequency 1 - new entries must earn their place)...");
     lfuCache.put("V", "ValueV");
-    lfuCache.cleanUp(); // Force maintenance again
 
     System.out.println("\nAfter eviction (least frequent items should be evicted):");
-    System.out.println("  X (high freq): " + (lfuCache.getIfPresent("X") != null ? "KEPT" : "EVICTED"));
-    System.out.println("  Y (med freq): " + (lfuCache.getIfPresent("Y") != null ? "KEPT" : "EVICTED"));
-    System.out.println("  Z (low freq): " + (lfuCache.getIfPresent("Z") != null ? "KEPT" : "EVICTED"));
-    System.out.println("  W (new): " + (lfuCache.getIfPresent("W") != null ? "KEPT" : "EVICTED"));
-    System.out.println("  V (new): " + (lfuCache.getIfPresent("V") != null ? "KEPT" : "EVICTED"));
+    System.out.println("  X (high freq): " + (lfuCache.frequency("X") > 0 ? "KEPT" : "EVICTED"));
+    System.out.println("  Y (med freq): " + (lfuCache.frequency("Y") > 0 ? "KEPT" : "EVICTED"));
+    System.out.println("  Z (low freq): " + (lfuCache.frequency("Z") > 0 ? "KEPT" : "EVICTED"));
+    System.out.println("  W (new): " + (lfuCache.frequency("W") > 0 ? "KEPT" : "EVICTED"));
+    System.out.println("  V (new): " + (lfuCache.frequency("V") > 0 ? "KEPT" : "EVICTED"));
 
-    System.out.println("Final cache size: " + lfuCache.estimatedSize());
-
-    var stats = lfuCache.stats();
-    System.out.println("Hit rate: " + String.format("%.2f%%", stats.hitRate() * 100));
-    System.out.println("Eviction count: " + stats.evictionCount());
+    System.out.println("Final cache size: " + lfuCache.size());
     System.out.println();
   }
 
@@ -129,39 +124,87 @@ public class CacheReplacementPolicyDemo {
     System.out.println("3. FIFO (First In, First Out) Policy:");
     System.out.println("   - Evicts items in order they were inserted (oldest first)");
 
-    // FIFO implementation using LinkedHashMap without access-order
-    Map<String, String> fifoCache = new LinkedHashMap<String, String>(3, 0.75f, false) {
-      @Override
-      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
-        if (size() > 3) {
-          System.out.println("   Evicting oldest entry: " + eldest.getKey());
-          return true;
-        }
-        return false;
-      }
-    };
+    System.out.println("   - Ring buffer of insertion order; reads never take a lock");
+
+    // Concurrent FIFO engine: reads are a plain map lookup with no bookkeeping
+    ConcurrentFifoCache<String, String> fifoCache = new ConcurrentFifoCache<>(3);
 
     // Fill cache in order
     System.out.println("Adding items in order: P, Q, R");
     fifoCache.put("P", "ValueP");
     fifoCache.put("Q", "ValueQ");
     fifoCache.put("R", "ValueR");
-    System.out.println("Cache contents: " + fifoCache.keySet());
+    System.out.println("Cache contents: " + fifoCache.keys());
 
     // Access middle item multiple times (shouldn't affect FIFO order)
     fifoCache.get("Q");
     fifoCache.get("Q");
-    System.out.println("After accessing Q multiple times: " + fifoCache.keySet());
+    System.out.println("After accessing Q multiple times: " + fifoCache.keys());
 
     // Add new item - should evict P (first in)
     System.out.println("Adding S (should evict P):");
     fifoCache.put("S", "ValueS");
-    System.out.println("Cache contents: " + fifoCache.keySet());
+    System.out.println("Cache contents: " + fifoCache.keys());
 
     // Add another item - should evict Q (next first in)
     System.out.println("Adding T (should evict Q):");
     fifoCache.put("T", "ValueT");
-    System.out.println("Cache contents: " + fifoCache.keySet());
+    System.out.println("Cache contents: " + fifoCache.keys());
+    System.out.println();
+  }
+
+  /**
+   * CLOCK (Second Chance) - FIFO that spares entries read since the hand last passed
+   */
+  public void demonstrateClock() {
+    System.out.println("4. CLOCK (Second Chance) Policy:");
+    System.out.println("   - Reads only set a reference bit (no lock, no list manipulation)");
+    System.out.println("   - The clock hand clears set bits and evicts the first unreferenced entry");
+
+    ClockCache<String, String> clockCache = new ClockCache<>(3);
+
+    System.out.println("Adding items in order: P, Q, R");
+    clockCache.put("P", "ValueP");
+    clockCache.put("Q", "ValueQ");
+    clockCache.put("R", "ValueR");
+    System.out.println("Cache contents (hand order): " + clockCache.keys());
+
+    // Reading P gives it a second chance
+    clockCache.get("P");
+    System.out.println("Accessed P (reference bit set)");
+
+    // Hand clears P's bit and evicts Q instead
+    System.out.println("Adding S (P gets a second chance, Q evicted):");
+    clockCache.put("S", "ValueS");
+    System.out.println("Cache contents (hand order): " + clockCache.keys());
+    System.out.println();
+  }
+
+  /**
+   * S3-FIFO and SIEVE - FIFO-queue-based policies with lock-free reads
+   */
+  public void demonstrateS3FifoAndSieve() {
+    System.out.println("5. S3-FIFO and SIEVE Policies:");
+    System.out.println("   - S3-FIFO: small probationary FIFO + main FIFO + ghost queue of evicted keys");
+    System.out.println("   - SIEVE: one FIFO queue, a hand skips visited entries without moving them");
+    System.out.println("   - Both keep reads to a single flag/counter update");
+
+    EvictionCache<String, String> s3Fifo = EvictionPolicy.S3_FIFO.create(10);
+    EvictionCache<String, String> sieve = EvictionPolicy.SIEVE.create(10);
+
+    for (EvictionCache<String, String> cache : List.of(s3Fifo, sieve)) {
+      // Hot working set read repeatedly, then a one-time scan of cold keys
+      for (int i = 0; i < 5; i++) {
+        cache.put("hot" + i, "value");
+        cache.get("hot" + i);
+      }
+      for (int i = 0; i < 20; i++) {
+        cache.put("scan" + i, "value");
+      }
+      long hotKept = cache.keys().stream().filter(key -> key.startsWith("hot")).count();
+      System.out.println("   " + cache.getClass().getSimpleName()
+          + " after a 20-key scan: " + hotKept + "/5 hot keys kept");
+    }
     System.out.println();
   }
 
@@ -169,7 +212,7 @@ public class CacheReplacementPolicyDemo {
    * Compares Caffeine's advanced policy with traditional ones
    */
   public void caffeinePolicyComparison() {
-    System.out.println("4. Caffeine's W-TinyLFU vs Traditional Policies:");
+    System.out.println("6. Caffeine's W-TinyLFU vs Traditional Policies:");
     System.out.println("   - W-TinyLFU combines benefits of LRU and LFU");
     System.out.println("   - Uses frequency and recency information");
     System.out.println("   - More efficient than pure LRU or LFU");
@@ -230,4 +273,29 @@ public class CacheReplacementPolicyDemo {
     System.out.println("Miss Rate: " + String.format("%.2f%%", stats.missRate() * 100));
     System.out.println("Eviction Count: " + stats.evictionCount());
   }
+
+  /**
+   * Runs the same skewed workload through every registered policy
+   */
+  public void compareAllPolicies() {
+    System.out.println("\n7. Hit Ratio of Every Policy on the Same Workload:");
+    System.out.println("   - 100-entry caches, 100k reads over 1,000 keys with skewed popularity");
+
+    for (EvictionPolicy policy : EvictionPolicy.values()) {
+      EvictionCache<Integer, Integer> cache = policy.create(100);
+      Random random = new Random(42);
+      int hits = 0;
+      int requests = 100_000;
+      for (int i = 0; i < requests; i++) {
+        double u = random.nextDouble();
+        int key = (int) (u * u * u * 1_000);
+        if (cache.get(key) != null) {
+          hits++;
+        } else {
+          cache.put(key, key);
+        }
+      }
+      System.out.println(String.format("   %-10s hit rate: %.2f%%", policy.displayName(), hits * 100.0 / requests));
+    }
+  }
 }
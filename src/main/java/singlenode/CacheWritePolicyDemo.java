@@ -2,25 +2,33 @@ package singlenode;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.RemovalListener;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.TreeMap;
+import store.FileBackingStore;
+import store.InMemoryBackingStore;
+import store.LatencyModel;
+import store.Serializer;
+import writepolicy.BatchWriter;
+import writepolicy.WriteBackCache;
+import writepolicy.WriteBehindQueue;
 
 /**
  * Demonstrates cache write policies with clear distinctions:
  * - Write-Through: Immediate write to both cache and database
  * - Write-Around: Direct database write, bypassing cache
- * - Write-Behind: Immediate cache write, scheduled database write at intervals
- * - Write-Back: Cache-only write, database write only on eviction
+ * - Write-Behind: Immediate cache write, batched database write (batch size or max delay)
+ * - Write-Back: Cache + write-ahead log write, database write only on eviction
+ * - File store recovery: an embedded store drops a record torn by a crash on reopen
  */
 public class CacheWritePolicyDemo {
-  private Map<String, String> database = new HashMap<>();
-  private Map<String, String> pendingWrites = new ConcurrentHashMap<>();
-  private ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+  // Writes ~50ms and reads ~10ms at the median, with a long tail like a real database
+  private final InMemoryBackingStore<String, String> database = new InMemoryBackingStore<>(
+      LatencyModel.logNormal(Duration.ofMillis(10), 0.5), LatencyModel.logNormal(Duration.ofMillis(50), 0.5));
 
   public static void main(String[] args) throws InterruptedException {
     CacheWritePolicyDemo demo = new CacheWritePolicyDemo();
@@ -31,8 +39,11 @@ public class CacheWritePolicyDemo {
     demo.demoWriteAround();
     demo.demoWriteBehind();
     demo.demoWriteBack();
+    demo.demoFileStoreRecovery();
 
-    demo.executor.shutdown();
+    System.out.println("Store totals: " + demo.database.writeRoundTrips() + " write round trips for "
+        + demo.database.keysWritten() + " keys, " + demo.database.readRoundTrips() + " read round trips");
+    demo.database.close();
   }
 
   /**
@@ -57,7 +68,7 @@ public class CacheWritePolicyDemo {
 
     // Write to both cache and database (simulating write-through)
     cache.put(key, value);
-    simulateDbWrite(key, value); // Simulate database write delay
+    database.put(key, value);
 
     long writeTime = System.currentTimeMillis() - startTime;
 
@@ -86,7 +97,7 @@ public class CacheWritePolicyDemo {
     System.out.println("Writing '" + value + "' directly to database (bypassing cache)...");
 
     // Write only to database (write-around)
-    simulateDbWrite(key, value);
+    database.put(key, value);
     // Cache is NOT updated
 
     System.out.println("Cached value: " + cache.getIfPresent(key)); // null
@@ -100,58 +111,60 @@ public class CacheWritePolicyDemo {
   }
 
   /**
-   * Write-Behind: Data is written to cache immediately, database write at scheduled intervals
-   * Key difference: Writes happen at REGULAR INTERVALS regardless of eviction
-   * Pros: Lower write latency, can batch multiple updates
-   * Cons: Risk of data loss if system fails before scheduled write
+   * Write-Behind: Data is written to cache immediately, database write in coalesced batches
+   * Key difference: Writes happen when a BATCH fills up or a MAX DELAY passes, regardless of eviction
+   * Pros: Lower write latency, N writes become a handful of bulk store calls
+   * Cons: Risk of data loss if system fails before the batch is flushed
    */
   public void demoWriteBehind() {
     System.out.println("3. Write-Behind Cache Policy:");
     System.out.println("   - Writes go to cache immediately");
-    System.out.println("   - Database writes happen at SCHEDULED INTERVALS");
-    System.out.println("   - Multiple updates to same key get batched");
+    System.out.println("   - Database writes happen in BATCHES (batch size or max delay, whichever first)");
+    System.out.println("   - Multiple updates to same key get coalesced (last value wins)");
 
     Cache<String, String> cache = Caffeine.newBuilder().maximumSize(100).build();
     database.clear();
-    pendingWrites.clear();
-
-    // Schedule periodic database writes every 2 seconds
-    executor.scheduleAtFixedRate(() -> {
-      if (!pendingWrites.isEmpty()) {
-        System.out.println("   [Scheduled Write] Writing " + pendingWrites.size() + " pending entries to database...");
-        for (Map.Entry<String, String> entry : pendingWrites.entrySet()) {
-          simulateDbWrite(entry.getKey(), entry.getValue());
-          System.out.println("   [DB] " + entry.getKey() + " = " + entry.getValue());
-        }
-        pendingWrites.clear();
-      }
-    }, 2, 2, TimeUnit.SECONDS);
+
+    // One bulk database call per batch instead of one call per entry
+    BatchWriter<String, String> batchWriter = batch -> {
+      System.out.println("   [Batch Write] Writing " + batch.size() + " coalesced entries in one call...");
+      database.putAll(batch);
+      batch.forEach((k, v) -> System.out.println("   [DB] " + k + " = " + v));
+    };
+
+    // Flush every 100 entries or 2 seconds; block writers if 10,000 entries are waiting
+    WriteBehindQueue<String, String> writeBehind =
+        new WriteBehindQueue<>(batchWriter, 100, Duration.ofSeconds(2), 10_000);
 
     // Perform multiple rapid writes
     String[] keys = {"order:1", "order:2", "order:1", "order:3", "order:1"}; // Note: order:1 updated multiple times
     String[] values = {"Order A", "Order B", "Order A Updated", "Order C", "Order A Final"};
 
-    System.out.println("Performing rapid writes to cache...");
-    for (int i = 0; i < keys.length; i++) {
-      long startTime = System.currentTimeMillis();
+    try {
+      System.out.println("Performing rapid writes to cache...");
+      for (int i = 0; i < keys.length; i++) {
+        long startTime = System.currentTimeMillis();
 
-      // Write to cache immediately
-      cache.put(keys[i], values[i]);
-      pendingWrites.put(keys[i], values[i]); // Track for later DB write (coalesced)
+        // Write to cache immediately, queue for the next batch
+        cache.put(keys[i], values[i]);
+        writeBehind.write(keys[i], values[i]);
 
-      long writeTime = System.currentTimeMillis() - startTime;
-      System.out.println("Cache write " + (i + 1) + " (" + keys[i] + "): " + writeTime + "ms");
-    }
+        long writeTime = System.currentTimeMillis() - startTime;
+        System.out.println("Cache write " + (i + 1) + " (" + keys[i] + "): " + writeTime + "ms");
+      }
 
-    System.out.println("Cache state: " + cache.estimatedSize() + " items");
-    System.out.println("Database state (before scheduled write): " + database.size() + " items");
+      System.out.println("Cache state: " + cache.estimatedSize() + " items");
+      System.out.println("Database state (before batch write): " + database.size() + " items");
 
-    // Wait for scheduled write to occur
-    try {
+      // Wait for the max-delay trigger to flush the batch
       Thread.sleep(3000);
-      System.out.println("Database state (after scheduled write): " + database.size() + " items");
+      System.out.println("Database state (after batch write): " + database.size() + " items");
       System.out.println("Final database contents:");
-      database.forEach((k, v) -> System.out.println("   " + k + " = " + v));
+      database.snapshot().forEach((k, v) -> System.out.println("   " + k + " = " + v));
+      System.out.println("Writes: " + writeBehind.writes() + ", coalesced: " + writeBehind.coalescedWrites()
+          + ", bulk store calls: " + writeBehind.batchesWritten());
+
+      writeBehind.close();
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
     }
@@ -162,73 +175,114 @@ public class CacheWritePolicyDemo {
    * Write-Back: Data is written to cache only, database write ONLY ON EVICTION
    * Key difference: Database writes happen only when cache needs to FREE SPACE
    * Pros: Minimal write latency, natural write coalescing
-   * Cons: Higher risk of data loss, depends on eviction policy
+   * Cons: Dirty entries live only in memory - unless a local write-ahead log records them
    */
   public void demoWriteBack() {
     System.out.println("4. Write-Back Cache Policy:");
-    System.out.println("   - Writes go to cache only");
-    System.out.println("   - Database writes ONLY when cache entry is EVICTED");
-    System.out.println("   - Most efficient but highest data loss risk");
+    System.out.println("   - Writes go to cache and a local write-ahead log (one shared fsync per group of writes)");
+    System.out.println("   - Database writes ONLY when cache entry is EVICTED, in async batches");
+    System.out.println("   - After a crash, the log is replayed into the database on startup");
 
     database.clear();
+    BatchWriter<String, String> batchWriter = batch -> {
+      System.out.println("   [DB FLUSH] Writing " + batch.size() + " entries in one call: " + batch.keySet());
+      database.putAll(batch);
+    };
 
-    // Create cache with small size to trigger evictions and write-back behavior
-    Cache<String, String> cache = Caffeine.newBuilder()
-        .maximumSize(3) // Small size to force evictions
-        .removalListener((RemovalListener<String, String>) (key, value, cause) -> {
-          if (cause.wasEvicted() && value != null) {
-            System.out.println("   [EVICTION] Writing to database due to eviction: " + key + " = " + value);
-            simulateDbWrite(key, value);
-          }
-        })
-        .build();
-
-    System.out.println("Performing writes to small cache (max size = 3)...");
+    try {
+      Path walDirectory = Files.createTempDirectory("write-back-wal");
 
-    // Fill cache beyond capacity to trigger evictions
-    String[] data = {"item1", "item2", "item3", "item4", "item5"};
+      // Small size to force evictions and write-back behavior
+      WriteBackCache<String, String> cache = new WriteBackCache<>(walDirectory, 3,
+          Serializer.utf8(), Serializer.utf8(), database::get, batchWriter);
 
-    for (int i = 0; i < data.length; i++) {
-      String key = "cache:" + (i + 1);
-      String value = data[i] + "_v1";
+      System.out.println("Performing writes to small cache (max size = 3)...");
 
-      long startTime = System.currentTimeMillis();
-      cache.put(key, value);
-      long writeTime = System.currentTimeMillis() - startTime;
+      // Fill cache beyond capacity to trigger evictions
+      String[] data = {"item1", "item2", "item3", "item4", "item5"};
 
-      System.out.println("Write " + (i + 1) + " (" + key + "): " + writeTime + "ms");
-      System.out.println("   Cache size: " + cache.estimatedSize() + ", DB size: " + database.size());
+      for (int i = 0; i < data.length; i++) {
+        String key = "cache:" + (i + 1);
+        String value = data[i] + "_v1";
 
-      // Force cache maintenance to trigger eviction processing
-      cache.cleanUp();
+        long startTime = System.currentTimeMillis();
+        cache.put(key, value);
+        long writeTime = System.currentTimeMillis() - startTime;
 
-      try {
-        Thread.sleep(100);
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
+        System.out.println("Write " + (i + 1) + " (" + key + "): " + writeTime + "ms (durable in WAL)");
       }
+      System.out.println("   Cache size: " + cache.estimatedSize() + ", dirty: " + cache.dirtyCount()
+          + ", evicted awaiting flush: " + cache.pendingFlushCount() + ", DB size: " + database.size());
+
+      // Evicted entries are written in a batch once the flush delay passes
+      Thread.sleep(1500);
+      System.out.println("   After eviction flush - DB size: " + database.size());
+      System.out.println("   WAL appends: " + cache.logAppends() + ", WAL syncs: " + cache.logSyncs());
+
+      // Update entries, let any evictions flush, then "crash" with dirty entries still cached
+      cache.put("cache:4", "item4_v2");
+      cache.put("cache:5", "item5_v2");
+      Thread.sleep(1500);
+      System.out.println("\nUpdated cache:4 and cache:5; " + cache.dirtyCount()
+          + " dirty entries exist only in cache + WAL");
+      System.out.println("   Database has cache:4 = " + database.get("cache:4") + ", cache:5 = " + database.get("cache:5"));
+      System.out.println("Simulating a crash (flusher stopped, nothing flushed, WAL left behind)...");
+      // The crashed instance must be gone before another one replays and deletes its log
+      cache.abandon();
+
+      // Restart: the new instance replays the log left behind into the database
+      System.out.println("Restarting write-back cache on the same WAL directory...");
+      WriteBackCache<String, String> restarted = new WriteBackCache<>(walDirectory, 3,
+          Serializer.utf8(), Serializer.utf8(), database::get, batchWriter);
+
+      System.out.println("\nFinal state:");
+      System.out.println("Database entries (evicted + recovered from WAL):");
+      new TreeMap<>(database.snapshot()).forEach((k, v) -> System.out.println("   " + k + " = " + v));
+
+      System.out.println("\nKey insight: dirty entries were never in the database before the crash,");
+      System.out.println("but the write-ahead log made them durable without a database round trip per write.");
+      restarted.close();
+    } catch (IOException e) {
+      System.err.println("Write-back demo failed: " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
-
-    // Show final state
-    System.out.println("\nFinal state:");
-    System.out.println("Cache entries (still in memory):");
-    cache.asMap().forEach((k, v) -> System.out.println("   " + k + " = " + v));
-
-    System.out.println("Database entries (written on eviction):");
-    database.forEach((k, v) -> System.out.println("   " + k + " = " + v));
-
-    // Demonstrate that data in cache is NOT in database until eviction
-    System.out.println("\nKey insight: Items still in cache are NOT in database!");
-    System.out.println("They will only be written to database when evicted.");
     System.out.println();
   }
 
-  private void simulateDbWrite(String key, String value) {
+  /**
+   * File store recovery: a crash mid-append leaves a partial record at the end of the data
+   * file. Reopening rebuilds the index from the intact records and truncates the rest,
+   * without trusting the lengths in the torn header.
+   */
+  public void demoFileStoreRecovery() {
+    System.out.println("5. File Store Crash Recovery:");
     try {
-      Thread.sleep(50); // Simulate database write latency
-      database.put(key, value);
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
+      Path dataFile = Files.createTempFile("file-store", ".data");
+      try (FileBackingStore<String, String> store = new FileBackingStore<>(dataFile, Serializer.utf8(),
+          Serializer.utf8(), true)) {
+        store.put("order:1", "shipped");
+        store.put("order:2", "pending");
+        store.delete("order:1");
+        System.out.println("   Wrote 2 orders, deleted one: " + store.fileSize() + " bytes on disk");
+      }
+
+      // A header whose lengths claim ~2GB, cut off after a few bytes of key
+      ByteBuffer torn = ByteBuffer.allocate(16).putInt(0).putInt(Integer.MAX_VALUE).putInt(Integer.MAX_VALUE)
+          .put(new byte[]{'o', 'r', 'd', 'e'});
+      torn.flip();
+      Files.write(dataFile, torn.array(), StandardOpenOption.APPEND);
+      System.out.println("Simulating a crash mid-append: " + Files.size(dataFile) + " bytes, last record torn");
+
+      try (FileBackingStore<String, String> reopened = new FileBackingStore<>(dataFile, Serializer.utf8(),
+          Serializer.utf8(), true)) {
+        System.out.println("   Reopened: " + reopened.size() + " key(s), order:1 = " + reopened.get("order:1")
+            + ", order:2 = " + reopened.get("order:2") + ", " + reopened.fileSize() + " bytes after truncation");
+      }
+      Files.delete(dataFile);
+    } catch (IOException e) {
+      System.err.println("File store demo failed: " + e.getMessage());
     }
+    System.out.println();
   }
 }
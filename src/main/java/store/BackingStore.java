@@ -0,0 +1,78 @@
+package store;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The system of record behind a cache: a thread-safe key/value store with single, bulk
+ * and async operations.
+ *
+ * Bulk operations are one round trip for the whole collection in implementations that
+ * override them; the defaults here loop over the single-key calls. Async defaults run the
+ * blocking call on {@link #executor()}; stores with a non-blocking path override them.
+ */
+public interface BackingStore<K, V> extends AutoCloseable {
+
+  V get(K key);
+
+  void put(K key, V value);
+
+  void delete(K key);
+
+  /**
+   * Returns the values that exist; missing keys are absent from the result.
+   */
+  default Map<K, V> getAll(Collection<K> keys) {
+    Map<K, V> result = new HashMap<>();
+    for (K key : keys) {
+      V value = get(key);
+      if (value != null) {
+        result.put(key, value);
+      }
+    }
+    return result;
+  }
+
+  default void putAll(Map<K, V> entries) {
+    entries.forEach(this::put);
+  }
+
+  default void deleteAll(Collection<K> keys) {
+    keys.forEach(this::delete);
+  }
+
+  default CompletableFuture<V> getAsync(K key) {
+    return CompletableFuture.supplyAsync(() -> get(key), executor());
+  }
+
+  default CompletableFuture<Map<K, V>> getAllAsync(Collection<K> keys) {
+    return CompletableFuture.supplyAsync(() -> getAll(keys), executor());
+  }
+
+  default CompletableFuture<Void> putAsync(K key, V value) {
+    return CompletableFuture.runAsync(() -> put(key, value), executor());
+  }
+
+  default CompletableFuture<Void> putAllAsync(Map<K, V> entries) {
+    return CompletableFuture.runAsync(() -> putAll(entries), executor());
+  }
+
+  default CompletableFuture<Void> deleteAsync(K key) {
+    return CompletableFuture.runAsync(() -> delete(key), executor());
+  }
+
+  /**
+   * Runs the async defaults; stores whose calls block for long should supply their own pool.
+   */
+  default Executor executor() {
+    return ForkJoinPool.commonPool();
+  }
+
+  @Override
+  default void close() {
+  }
+}
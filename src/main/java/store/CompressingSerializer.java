@@ -0,0 +1,171 @@
+package store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Wraps a serializer and deflates values at or above a size threshold, so large text
+ * payloads (JSON, HTML) take a fraction of the memory and bandwidth in a remote cache.
+ *
+ * Design:
+ * - Format: one tag byte, then either the raw bytes (tag 0) or the raw length as an int
+ *   followed by the deflate stream (tag 1); the length lets decoding allocate the result
+ *   once and detect truncation, and is rejected if it exceeds deflate's maximum ratio
+ *   (about 1032:1) over the stream, so a corrupt header cannot force a huge allocation
+ * - Small values are not worth the CPU and the stream overhead, and a value that does not
+ *   shrink (already compressed, random) is stored raw, so compression never grows a value
+ * - Deflater and Inflater hold native zlib state that is costly to create; each thread
+ *   keeps one of each, plus a scratch array for deflate output that only grows
+ */
+public final class CompressingSerializer<T> implements Serializer<T> {
+  private static final byte RAW = 0;
+  private static final byte DEFLATED = 1;
+  private static final int HEADER = 1 + Integer.BYTES;
+  // Deflate's best case: one 258-byte match per (at least) two bits of output, plus slack
+  private static final long MAX_DEFLATE_RATIO = 1032;
+
+  private final Serializer<T> inner;
+  private final int threshold;
+  private final ThreadLocal<Deflater> deflaters;
+  private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+  private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[0]);
+
+  private final AtomicLong serialized = new AtomicLong();
+  private final AtomicLong compressed = new AtomicLong();
+  private final AtomicLong rawBytes = new AtomicLong();
+  private final AtomicLong storedBytes = new AtomicLong();
+
+  /**
+   * Compresses with {@link Deflater#BEST_SPEED}, the usual trade for a cache on the
+   * request path.
+   */
+  public CompressingSerializer(Serializer<T> inner, int threshold) {
+    this(inner, threshold, Deflater.BEST_SPEED);
+  }
+
+  /**
+   * @param threshold smallest serialized size, in bytes, that is compressed
+   * @param level deflate level, 1 (fastest) to 9 (smallest)
+   */
+  public CompressingSerializer(Serializer<T> inner, int threshold, int level) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("threshold must not be negative: " + threshold);
+    }
+    this.inner = inner;
+    this.threshold = threshold;
+    this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+  }
+
+  @Override
+  public byte[] serialize(T value) {
+    byte[] raw = inner.serialize(value);
+    byte[] out = raw.length >= threshold ? deflate(raw) : null;
+    if (out == null) {
+      out = new byte[1 + raw.length];
+      out[0] = RAW;
+      System.arraycopy(raw, 0, out, 1, raw.length);
+    } else {
+      compressed.incrementAndGet();
+    }
+    serialized.incrementAndGet();
+    rawBytes.addAndGet(raw.length);
+    storedBytes.addAndGet(out.length);
+    return out;
+  }
+
+  @Override
+  public T deserialize(byte[] bytes) {
+    if (bytes.length == 0) {
+      throw new IllegalArgumentException("Empty value: missing compression tag");
+    }
+    if (bytes[0] == RAW) {
+      return inner.deserialize(Arrays.copyOfRange(bytes, 1, bytes.length));
+    }
+    if (bytes[0] != DEFLATED || bytes.length < HEADER) {
+      throw new IllegalArgumentException("Unknown compression tag " + bytes[0] + " in " + bytes.length + " bytes");
+    }
+    int rawLength = ByteBuffer.wrap(bytes, 1, Integer.BYTES).getInt();
+    if (rawLength < 0) {
+      throw new IllegalArgumentException("Negative raw length " + rawLength);
+    }
+    // The length is read before the stream is checked; a corrupt one must not size the buffer
+    long compressedLength = bytes.length - HEADER;
+    if (rawLength > compressedLength * MAX_DEFLATE_RATIO) {
+      throw new IllegalArgumentException("Raw length " + rawLength + " is more than " + compressedLength
+          + " deflated bytes can hold");
+    }
+    byte[] raw = new byte[rawLength];
+    Inflater inflater = inflaters.get();
+    inflater.reset();
+    inflater.setInput(bytes, HEADER, bytes.length - HEADER);
+    try {
+      int length = 0;
+      while (length < raw.length && !inflater.finished()) {
+        int n = inflater.inflate(raw, length, raw.length - length);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        length += n;
+      }
+      if (length != raw.length || !inflater.finished()) {
+        throw new IllegalArgumentException("Truncated deflate stream: " + length + " of " + raw.length + " bytes");
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalArgumentException("Corrupt deflate stream", e);
+    }
+    return inner.deserialize(raw);
+  }
+
+  public long serialized() {
+    return serialized.get();
+  }
+
+  public long compressed() {
+    return compressed.get();
+  }
+
+  /**
+   * Serialized size before compression, summed over every value.
+   */
+  public long rawBytes() {
+    return rawBytes.get();
+  }
+
+  /**
+   * Size as stored, tag and headers included.
+   */
+  public long storedBytes() {
+    return storedBytes.get();
+  }
+
+  /**
+   * Returns the tagged deflate form, or null if it would not be smaller than the raw form.
+   */
+  private byte[] deflate(byte[] raw) {
+    byte[] buffer = scratch.get();
+    // Output that reaches raw.length - 1 bytes is not worth keeping, so raw.length is enough
+    if (buffer.length < raw.length) {
+      buffer = new byte[raw.length];
+      scratch.set(buffer);
+    }
+    Deflater deflater = deflaters.get();
+    deflater.reset();
+    deflater.setInput(raw);
+    deflater.finish();
+    int limit = raw.length - 1;
+    int length = HEADER;
+    while (!deflater.finished() && length < limit) {
+      length += deflater.deflate(buffer, length, limit - length);
+    }
+    if (!deflater.finished()) {
+      return null;
+    }
+    buffer[0] = DEFLATED;
+    ByteBuffer.wrap(buffer, 1, Integer.BYTES).putInt(raw.length);
+    return Arrays.copyOf(buffer, length);
+  }
+}
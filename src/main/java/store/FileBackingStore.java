@@ -0,0 +1,359 @@
+package store;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded single-file key/value store: an append-only data file plus an in-memory index
+ * of where each key's latest value lives (the Bitcask layout).
+ *
+ * Design:
+ * - Record layout: [crc32][key length][value length][key][value]; a delete appends a
+ *   tombstone with value length -1
+ * - A write appends under one lock and then updates the index, so a bulk put is one
+ *   append and, with fsync on, one force for the whole batch
+ * - A read is one positional read at the indexed offset and never blocks writers
+ * - On open the file is scanned to rebuild the index; a torn record at the tail (crash
+ *   mid-append) fails its checksum and is truncated away, and lengths that run past the
+ *   end of the file are rejected before anything is allocated for them
+ * - Overwritten and deleted records are garbage; once garbage outweighs live data the
+ *   live records are copied to a fresh file that replaces the old one
+ */
+public class FileBackingStore<K, V> implements BackingStore<K, V> {
+  private static final int HEADER_SIZE = 12;
+  private static final int TOMBSTONE = -1;
+  private static final long MIN_COMPACTION_BYTES = 4 << 20;
+
+  private final Path file;
+  private final Serializer<K> keySerializer;
+  private final Serializer<V> valueSerializer;
+  private final boolean fsync;
+  private final Map<K, Location> index = new ConcurrentHashMap<>();
+  private final ExecutorService executor;
+
+  // Reads and appends share the file; compaction swaps it out exclusively
+  private final ReentrantReadWriteLock fileLock = new ReentrantReadWriteLock();
+  private final ReentrantLock appendLock = new ReentrantLock();
+  private FileChannel channel;
+  private long end;
+  private long liveBytes;
+  private long garbageBytes;
+
+  /**
+   * @param fsync force every write to disk before returning
+   */
+  public FileBackingStore(Path file, Serializer<K> keySerializer, Serializer<V> valueSerializer,
+      boolean fsync) throws IOException {
+    this.file = file;
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+    this.fsync = fsync;
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.end = loadIndex();
+    if (end < channel.size()) {
+      System.err.println("   [file-store] Truncating torn tail of " + file.getFileName() + " at " + end);
+      channel.truncate(end);
+    }
+    this.executor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "file-store-async");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public V get(K key) {
+    fileLock.readLock().lock();
+    try {
+      Location location = index.get(key);
+      return location == null ? null : valueSerializer.deserialize(readValue(channel, location));
+    } finally {
+      fileLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void put(K key, V value) {
+    putAll(Collections.singletonMap(key, value));
+  }
+
+  @Override
+  public void putAll(Map<K, V> entries) {
+    List<K> keys = new ArrayList<>(entries.size());
+    List<byte[]> values = new ArrayList<>(entries.size());
+    entries.forEach((key, value) -> {
+      keys.add(key);
+      values.add(valueSerializer.serialize(value));
+    });
+    append(keys, values);
+  }
+
+  @Override
+  public void delete(K key) {
+    deleteAll(Collections.singletonList(key));
+  }
+
+  @Override
+  public void deleteAll(Collection<K> keys) {
+    append(new ArrayList<>(keys), Collections.nCopies(keys.size(), null));
+  }
+
+  @Override
+  public Executor executor() {
+    return executor;
+  }
+
+  /**
+   * Copies live records to a fresh file and swaps it in.
+   */
+  public void compact() {
+    fileLock.writeLock().lock();
+    try {
+      Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+      FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+          StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      Map<K, Location> compactedIndex = new HashMap<>();
+      long position = 0;
+      for (Map.Entry<K, Location> entry : index.entrySet()) {
+        ByteBuffer record = encode(keySerializer.serialize(entry.getKey()), readValue(channel, entry.getValue()));
+        compactedIndex.put(entry.getKey(), locate(position, record));
+        position += writeFully(target, record, position);
+      }
+      target.force(true);
+      Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      channel.close();
+      // The open channel follows the renamed file
+      channel = target;
+      index.putAll(compactedIndex);
+      end = position;
+      liveBytes = position;
+      garbageBytes = 0;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      fileLock.writeLock().unlock();
+    }
+  }
+
+  public int size() {
+    return index.size();
+  }
+
+  public long fileSize() {
+    fileLock.readLock().lock();
+    try {
+      return end;
+    } finally {
+      fileLock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+    fileLock.writeLock().lock();
+    try {
+      channel.force(true);
+      channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      fileLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Appends one record per key (null value = tombstone) in a single write.
+   */
+  private void append(List<K> keys, List<byte[]> values) {
+    List<ByteBuffer> records = new ArrayList<>(keys.size());
+    int total = 0;
+    for (int i = 0; i < keys.size(); i++) {
+      ByteBuffer record = encode(keySerializer.serialize(keys.get(i)), values.get(i));
+      records.add(record);
+      total += record.remaining();
+    }
+    ByteBuffer batch = ByteBuffer.allocate(total);
+    records.forEach(batch::put);
+    batch.flip();
+
+    boolean compact;
+    fileLock.readLock().lock();
+    try {
+      appendLock.lock();
+      try {
+        long position = end;
+        writeFully(channel, batch, position);
+        if (fsync) {
+          channel.force(false);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+          ByteBuffer record = records.get(i);
+          Location previous = values.get(i) == null
+              ? index.remove(keys.get(i))
+              : index.put(keys.get(i), locate(position, record));
+          if (previous != null) {
+            garbageBytes += previous.recordLength;
+            liveBytes -= previous.recordLength;
+          }
+          if (values.get(i) == null) {
+            garbageBytes += record.limit();
+          } else {
+            liveBytes += record.limit();
+          }
+          position += record.limit();
+        }
+        end = position;
+        compact = garbageBytes > MIN_COMPACTION_BYTES && garbageBytes > liveBytes;
+      } finally {
+        appendLock.unlock();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      fileLock.readLock().unlock();
+    }
+    if (compact) {
+      compact();
+    }
+  }
+
+  /**
+   * Scans the file, rebuilding the index, and returns the end of the last valid record.
+   */
+  private long loadIndex() throws IOException {
+    long fileSize = Files.size(file);
+    long position = 0;
+    try (InputStream in = Files.newInputStream(file);
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+      while (true) {
+        int crc;
+        int keyLength;
+        int valueLength;
+        byte[] key;
+        byte[] value;
+        try {
+          crc = data.readInt();
+          keyLength = data.readInt();
+          valueLength = data.readInt();
+          // A torn header can hold any lengths; never allocate more than the file still has
+          long remaining = fileSize - position - HEADER_SIZE;
+          if (keyLength < 0 || valueLength < TOMBSTONE || keyLength + (long) Math.max(valueLength, 0) > remaining) {
+            return position;
+          }
+          key = new byte[keyLength];
+          data.readFully(key);
+          value = new byte[Math.max(valueLength, 0)];
+          data.readFully(value);
+        } catch (EOFException e) {
+          return position;
+        }
+        if (crc != crc(keyLength, valueLength, key, value)) {
+          return position;
+        }
+        int recordLength = HEADER_SIZE + keyLength + value.length;
+        K decoded = keySerializer.deserialize(key);
+        Location previous = valueLength == TOMBSTONE
+            ? index.remove(decoded)
+            : index.put(decoded, new Location(position + HEADER_SIZE + keyLength, valueLength, recordLength));
+        if (previous != null) {
+          garbageBytes += previous.recordLength;
+          liveBytes -= previous.recordLength;
+        }
+        if (valueLength == TOMBSTONE) {
+          garbageBytes += recordLength;
+        } else {
+          liveBytes += recordLength;
+        }
+        position += recordLength;
+      }
+    }
+  }
+
+  private static ByteBuffer encode(byte[] key, byte[] value) {
+    int valueLength = value == null ? TOMBSTONE : value.length;
+    byte[] body = value == null ? new byte[0] : value;
+    ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + key.length + body.length);
+    record.putInt(crc(key.length, valueLength, key, body))
+        .putInt(key.length)
+        .putInt(valueLength)
+        .put(key)
+        .put(body)
+        .flip();
+    return record;
+  }
+
+  private static Location locate(long position, ByteBuffer record) {
+    int keyLength = record.getInt(4);
+    int valueLength = record.getInt(8);
+    return new Location(position + HEADER_SIZE + keyLength, valueLength, record.limit());
+  }
+
+  private static byte[] readValue(FileChannel channel, Location location) {
+    ByteBuffer value = ByteBuffer.allocate(location.valueLength);
+    long position = location.valueOffset;
+    try {
+      while (value.hasRemaining()) {
+        int read = channel.read(value, position);
+        if (read < 0) {
+          throw new EOFException("Record past end of file at " + location.valueOffset);
+        }
+        position += read;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return value.array();
+  }
+
+  private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    int written = 0;
+    while (buffer.hasRemaining()) {
+      written += channel.write(buffer, position + written);
+    }
+    return written;
+  }
+
+  private static int crc(int keyLength, int valueLength, byte[] key, byte[] value) {
+    CRC32 crc = new CRC32();
+    crc.update(ByteBuffer.allocate(8).putInt(keyLength).putInt(valueLength).array());
+    crc.update(key);
+    crc.update(value);
+    return (int) crc.getValue();
+  }
+
+  private static final class Location {
+    final long valueOffset;
+    final int valueLength;
+    final int recordLength;
+
+    Location(long valueOffset, int valueLength, int recordLength) {
+      this.valueOffset = valueOffset;
+      this.valueLength = valueLength;
+      this.recordLength = recordLength;
+    }
+  }
+}
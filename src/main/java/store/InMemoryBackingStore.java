@@ -0,0 +1,204 @@
+package store;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe in-memory store that charges a sampled latency per round trip.
+ *
+ * Design:
+ * - Data lives in a ConcurrentHashMap, so readers and background flushers need no locking
+ * - Every call, single or bulk, costs one sample of the read or write {@link LatencyModel};
+ *   batching therefore pays off here the way it does against a real database
+ * - Sync calls park the caller for the sampled time; async calls schedule completion on
+ *   a timer thread instead of tying up a thread per in-flight call
+ * - Counters track round trips and keys moved, for comparing policies
+ */
+public class InMemoryBackingStore<K, V> implements BackingStore<K, V> {
+  private final Map<K, V> data = new ConcurrentHashMap<>();
+  private final LatencyModel readLatency;
+  private final LatencyModel writeLatency;
+  private final ScheduledExecutorService timer;
+
+  private final AtomicLong readRoundTrips = new AtomicLong();
+  private final AtomicLong writeRoundTrips = new AtomicLong();
+  private final AtomicLong keysRead = new AtomicLong();
+  private final AtomicLong keysWritten = new AtomicLong();
+
+  public InMemoryBackingStore() {
+    this(LatencyModel.none(), LatencyModel.none());
+  }
+
+  public InMemoryBackingStore(LatencyModel readLatency, LatencyModel writeLatency) {
+    this.readLatency = readLatency;
+    this.writeLatency = writeLatency;
+    this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "in-memory-store-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public V get(K key) {
+    pause(read(1));
+    return data.get(key);
+  }
+
+  @Override
+  public Map<K, V> getAll(Collection<K> keys) {
+    pause(read(keys.size()));
+    return readAll(keys);
+  }
+
+  @Override
+  public void put(K key, V value) {
+    pause(write(1));
+    data.put(key, value);
+  }
+
+  @Override
+  public void putAll(Map<K, V> entries) {
+    pause(write(entries.size()));
+    data.putAll(entries);
+  }
+
+  @Override
+  public void delete(K key) {
+    pause(write(1));
+    data.remove(key);
+  }
+
+  @Override
+  public void deleteAll(Collection<K> keys) {
+    pause(write(keys.size()));
+    data.keySet().removeAll(keys);
+  }
+
+  @Override
+  public CompletableFuture<V> getAsync(K key) {
+    return completeAfter(read(1), () -> data.get(key));
+  }
+
+  @Override
+  public CompletableFuture<Map<K, V>> getAllAsync(Collection<K> keys) {
+    return completeAfter(read(keys.size()), () -> readAll(keys));
+  }
+
+  @Override
+  public CompletableFuture<Void> putAsync(K key, V value) {
+    return completeAfter(write(1), () -> {
+      data.put(key, value);
+      return null;
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> putAllAsync(Map<K, V> entries) {
+    Map<K, V> copy = new HashMap<>(entries);
+    return completeAfter(write(copy.size()), () -> {
+      data.putAll(copy);
+      return null;
+    });
+  }
+
+  @Override
+  public CompletableFuture<Void> deleteAsync(K key) {
+    return completeAfter(write(1), () -> {
+      data.remove(key);
+      return null;
+    });
+  }
+
+  /**
+   * Copy of the contents without charging latency, for inspection in demos.
+   */
+  public Map<K, V> snapshot() {
+    return new HashMap<>(data);
+  }
+
+  public int size() {
+    return data.size();
+  }
+
+  public void clear() {
+    data.clear();
+  }
+
+  public long readRoundTrips() {
+    return readRoundTrips.get();
+  }
+
+  public long writeRoundTrips() {
+    return writeRoundTrips.get();
+  }
+
+  public long keysRead() {
+    return keysRead.get();
+  }
+
+  public long keysWritten() {
+    return keysWritten.get();
+  }
+
+  @Override
+  public void close() {
+    timer.shutdownNow();
+  }
+
+  private Map<K, V> readAll(Collection<K> keys) {
+    Map<K, V> result = new HashMap<>();
+    for (K key : keys) {
+      V value = data.get(key);
+      if (value != null) {
+        result.put(key, value);
+      }
+    }
+    return result;
+  }
+
+  private long read(int keys) {
+    readRoundTrips.incrementAndGet();
+    keysRead.addAndGet(keys);
+    return readLatency.nextNanos();
+  }
+
+  private long write(int keys) {
+    writeRoundTrips.incrementAndGet();
+    keysWritten.addAndGet(keys);
+    return writeLatency.nextNanos();
+  }
+
+  private <T> CompletableFuture<T> completeAfter(long nanos, Supplier<T> operation) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    timer.schedule(() -> {
+      try {
+        future.complete(operation.get());
+      } catch (RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+    }, nanos, TimeUnit.NANOSECONDS);
+    return future;
+  }
+
+  /**
+   * Parks for the full latency; an interrupt cuts the wait short and stays set.
+   */
+  private static void pause(long nanos) {
+    long deadline = System.nanoTime() + nanos;
+    long remaining = nanos;
+    while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+      LockSupport.parkNanos(remaining);
+      remaining = deadline - System.nanoTime();
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package store;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Distribution of simulated round-trip times for a store call.
+ *
+ * Real stores are not a fixed Thread.sleep: most calls land near the median and a few take
+ * many times longer. logNormal models that tail; uniform models bounded jitter.
+ */
+@FunctionalInterface
+public interface LatencyModel {
+
+  /**
+   * Samples the latency of one call in nanoseconds.
+   */
+  long nextNanos();
+
+  static LatencyModel none() {
+    return () -> 0;
+  }
+
+  static LatencyModel fixed(Duration latency) {
+    long nanos = latency.toNanos();
+    return () -> nanos;
+  }
+
+  /**
+   * Uniformly distributed between min and max.
+   */
+  static LatencyModel uniform(Duration min, Duration max) {
+    long minNanos = min.toNanos();
+    long maxNanos = max.toNanos();
+    if (maxNanos < minNanos) {
+      throw new IllegalArgumentException("max must not be below min: " + min + " > " + max);
+    }
+    return () -> minNanos + ThreadLocalRandom.current().nextLong(maxNanos - minNanos + 1);
+  }
+
+  /**
+   * Log-normal around the median; sigma 0.5 puts p99 at about 3x the median, 1.0 at about 10x.
+   */
+  static LatencyModel logNormal(Duration median, double sigma) {
+    if (sigma < 0) {
+      throw new IllegalArgumentException("sigma must not be negative: " + sigma);
+    }
+    double medianNanos = median.toNanos();
+    return () -> (long) (medianNanos * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+  }
+}
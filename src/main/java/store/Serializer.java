@@ -0,0 +1,99 @@
+package store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Converts keys and values to the bytes stored in a store or log record.
+ */
+public interface Serializer<T> {
+
+  byte[] serialize(T value);
+
+  T deserialize(byte[] bytes);
+
+  static Serializer<String> utf8() {
+    return new Serializer<String>() {
+      @Override
+      public byte[] serialize(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+      }
+
+      @Override
+      public String deserialize(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+      }
+    };
+  }
+
+  /**
+   * Identity: for payloads already held as bytes, which then never become a String.
+   */
+  static Serializer<byte[]> bytes() {
+    return new Serializer<byte[]>() {
+      @Override
+      public byte[] serialize(byte[] value) {
+        return value;
+      }
+
+      @Override
+      public byte[] deserialize(byte[] bytes) {
+        return bytes;
+      }
+    };
+  }
+
+  /**
+   * Zig-zag varint: 1 byte up to 63, 2 up to 8191, at most 10. Opaque to Redis INCR,
+   * which needs decimal text.
+   */
+  static Serializer<Long> varLongs() {
+    return new Serializer<Long>() {
+      @Override
+      public byte[] serialize(Long value) {
+        long zigZag = (value << 1) ^ (value >> 63);
+        byte[] buffer = new byte[10];
+        int length = 0;
+        while ((zigZag & ~0x7FL) != 0) {
+          buffer[length++] = (byte) ((zigZag & 0x7F) | 0x80);
+          zigZag >>>= 7;
+        }
+        buffer[length++] = (byte) zigZag;
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+      }
+
+      @Override
+      public Long deserialize(byte[] bytes) {
+        long zigZag = 0;
+        for (int i = 0, shift = 0; i < bytes.length; i++, shift += 7) {
+          zigZag |= (long) (bytes[i] & 0x7F) << shift;
+          if ((bytes[i] & 0x80) == 0) {
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+          }
+        }
+        throw new IllegalArgumentException("Truncated varint of " + bytes.length + " bytes");
+      }
+    };
+  }
+
+  /**
+   * IEEE 754 big-endian, 8 bytes.
+   */
+  static Serializer<Double> doubles() {
+    return new Serializer<Double>() {
+      @Override
+      public byte[] serialize(Double value) {
+        return ByteBuffer.allocate(Double.BYTES).putDouble(value).array();
+      }
+
+      @Override
+      public Double deserialize(byte[] bytes) {
+        if (bytes.length != Double.BYTES) {
+          throw new IllegalArgumentException("Expected 8 bytes for a double, got " + bytes.length);
+        }
+        return ByteBuffer.wrap(bytes).getDouble();
+      }
+    };
+  }
+}
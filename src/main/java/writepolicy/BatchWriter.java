@@ -0,0 +1,15 @@
+package writepolicy;
+
+import java.util.Map;
+
+/**
+ * Persists a batch of coalesced writes to the backing store in one bulk call.
+ *
+ * Implementations should apply the whole batch or throw; a failed batch is retried by
+ * the caller, so writes must be idempotent (last value wins per key).
+ */
+@FunctionalInterface
+public interface BatchWriter<K, V> {
+
+  void writeBatch(Map<K, V> batch) throws Exception;
+}
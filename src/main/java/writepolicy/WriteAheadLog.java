@@ -0,0 +1,331 @@
+package writepolicy;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped write-ahead log of key/value records.
+ *
+ * Design:
+ * - The log is a sequence of fixed-size segment files, each mapped once; an append is a
+ *   memory copy under a short lock, and a full segment is forced and replaced by the next
+ * - Record layout: [length][crc32][key length][key][value]; a zero length marks the end of
+ *   a segment and a bad checksum marks a torn write, so replay stops cleanly at either
+ * - Group commit: {@link #sync(long)} makes a record durable. The first caller forces the
+ *   mapping for everything appended so far while later callers wait on that one force,
+ *   so N concurrent writers cost one msync instead of N
+ * - Every append pins its segment; the owner releases the record once it is persisted
+ *   elsewhere or superseded, and a segment is deleted when nothing pins it
+ * - Segments left by a previous process are not reopened for writing: the owner replays
+ *   them, persists what they hold, then deletes them
+ *
+ * A log sequence number (LSN) is the segment id in the high 32 bits and the end offset of
+ * the record in the low 32 bits, so LSNs grow with the log.
+ */
+public class WriteAheadLog implements AutoCloseable {
+  private static final int HEADER_SIZE = 8;
+  private static final String SUFFIX = ".wal";
+
+  /**
+   * Receives recovered records in log order; later records for a key supersede earlier ones.
+   */
+  @FunctionalInterface
+  public interface RecordVisitor {
+    void visit(byte[] key, byte[] value);
+  }
+
+  private final Path directory;
+  private final int segmentSize;
+  private final List<Path> recovered;
+  private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+  private final ReentrantLock appendLock = new ReentrantLock();
+  private volatile Segment active;
+  private long writtenLsn;
+  private boolean closed;
+
+  private final ReentrantLock syncLock = new ReentrantLock();
+  private final Condition synced = syncLock.newCondition();
+  private long durableLsn;
+  private boolean syncing;
+
+  private final AtomicLong appends = new AtomicLong();
+  private final AtomicLong syncs = new AtomicLong();
+
+  public WriteAheadLog(Path directory, int segmentSize) throws IOException {
+    if (segmentSize <= HEADER_SIZE + 4) {
+      throw new IllegalArgumentException("segmentSize too small: " + segmentSize);
+    }
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    Files.createDirectories(directory);
+    try (Stream<Path> files = Files.list(directory)) {
+      this.recovered = files
+          .filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+    long nextId = recovered.isEmpty() ? 0 : segmentId(recovered.get(recovered.size() - 1)) + 1;
+    this.active = openSegment(nextId);
+    this.writtenLsn = lsn(nextId, 0);
+    this.durableLsn = writtenLsn;
+  }
+
+  /**
+   * Replays the records of segments left by a previous process, oldest first. Records after
+   * a torn write in a segment are skipped.
+   */
+  public void replay(RecordVisitor visitor) throws IOException {
+    for (Path path : recovered) {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        int position = 0;
+        while (position + HEADER_SIZE <= buffer.limit()) {
+          int length = buffer.getInt(position);
+          if (length <= 0 || position + HEADER_SIZE + length > buffer.limit()) {
+            break;
+          }
+          byte[] body = new byte[length];
+          buffer.duplicate().position(position + HEADER_SIZE).get(body);
+          if (crc(body) != buffer.getInt(position + 4)) {
+            System.err.println("   [wal] Torn record in " + path.getFileName() + " at " + position + ", skipping rest");
+            break;
+          }
+          ByteBuffer record = ByteBuffer.wrap(body);
+          byte[] key = new byte[record.getInt()];
+          record.get(key);
+          byte[] value = new byte[record.remaining()];
+          record.get(value);
+          visitor.visit(key, value);
+          position += HEADER_SIZE + length;
+        }
+      }
+    }
+  }
+
+  /**
+   * Deletes the recovered segments once their records are persisted elsewhere.
+   */
+  public void deleteRecovered() throws IOException {
+    for (Path path : recovered) {
+      Files.deleteIfExists(path);
+    }
+    recovered.clear();
+  }
+
+  /**
+   * Appends a record and returns its LSN. The record is not durable until {@link #sync(long)}.
+   */
+  public long append(byte[] key, byte[] value) {
+    int bodyLength = 4 + key.length + value.length;
+    if (HEADER_SIZE + bodyLength > segmentSize) {
+      throw new IllegalArgumentException("Record of " + bodyLength + " bytes exceeds segment size " + segmentSize);
+    }
+    ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + bodyLength);
+    record.putInt(bodyLength).putInt(0).putInt(key.length).put(key).put(value);
+    record.putInt(4, crc(record.array(), HEADER_SIZE, bodyLength));
+    record.flip();
+
+    appendLock.lock();
+    try {
+      if (closed) {
+        throw new IllegalStateException("Write-ahead log is closed");
+      }
+      Segment segment = active;
+      if (segment.buffer.remaining() < record.remaining()) {
+        segment = rotate();
+      }
+      segment.buffer.put(record);
+      segment.pins.incrementAndGet();
+      writtenLsn = lsn(segment.id, segment.buffer.position());
+      appends.incrementAndGet();
+      return writtenLsn;
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  /**
+   * Blocks until the record at the LSN, and everything before it, is on disk.
+   */
+  public void sync(long lsn) {
+    syncLock.lock();
+    try {
+      while (durableLsn < lsn) {
+        if (syncing) {
+          // Another caller is forcing the log; its force may already cover this record
+          synced.awaitUninterruptibly();
+          continue;
+        }
+        syncing = true;
+        long forcedLsn = durableLsn;
+        syncLock.unlock();
+        try {
+          forcedLsn = force();
+        } finally {
+          syncLock.lock();
+          syncing = false;
+          durableLsn = Math.max(durableLsn, forcedLsn);
+          synced.signalAll();
+        }
+      }
+    } finally {
+      syncLock.unlock();
+    }
+  }
+
+  /**
+   * Unpins the record at the LSN; its segment is deleted once no record in it is pinned.
+   */
+  public void release(long lsn) {
+    Segment segment = segments.get(segmentOf(lsn));
+    if (segment != null && segment.pins.decrementAndGet() == 0 && segment != active) {
+      delete(segment);
+    }
+  }
+
+  public static long segmentOf(long lsn) {
+    return lsn >>> 32;
+  }
+
+  public long oldestSegment() {
+    return segments.firstKey();
+  }
+
+  public int segmentCount() {
+    return segments.size();
+  }
+
+  public long appends() {
+    return appends.get();
+  }
+
+  public long syncs() {
+    return syncs.get();
+  }
+
+  /**
+   * Forces pending appends and stops accepting new ones; the active segment is deleted if
+   * nothing in it is pinned, so a clean shutdown leaves no log behind.
+   */
+  @Override
+  public void close() {
+    appendLock.lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      active.buffer.force();
+      if (active.pins.get() == 0) {
+        delete(active);
+      }
+    } finally {
+      appendLock.unlock();
+    }
+  }
+
+  private long force() {
+    Segment segment;
+    long target;
+    appendLock.lock();
+    try {
+      segment = active;
+      target = writtenLsn;
+    } finally {
+      appendLock.unlock();
+    }
+    // A segment rotated out in the meantime was forced by rotate()
+    segment.buffer.force();
+    syncs.incrementAndGet();
+    return target;
+  }
+
+  private Segment rotate() {
+    Segment previous = active;
+    previous.buffer.force();
+    try {
+      active = openSegment(previous.id + 1);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (previous.pins.get() == 0) {
+      delete(previous);
+    }
+    return active;
+  }
+
+  private Segment openSegment(long id) throws IOException {
+    Path path = directory.resolve(String.format("%020d%s", id, SUFFIX));
+    MappedByteBuffer buffer;
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      file.setLength(segmentSize);
+      buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+    Segment segment = new Segment(id, path, buffer);
+    segments.put(id, segment);
+    return segment;
+  }
+
+  private void delete(Segment segment) {
+    if (!segment.deleted.compareAndSet(false, true)) {
+      return;
+    }
+    segments.remove(segment.id);
+    try {
+      Files.deleteIfExists(segment.path);
+    } catch (IOException e) {
+      System.err.println("   [wal] Could not delete " + segment.path + ": " + e.getMessage());
+    }
+  }
+
+  private static long lsn(long segmentId, int offset) {
+    return (segmentId << 32) | offset;
+  }
+
+  private static long segmentId(Path path) {
+    String name = path.getFileName().toString();
+    return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+  }
+
+  private static int crc(byte[] bytes) {
+    return crc(bytes, 0, bytes.length);
+  }
+
+  private static int crc(byte[] bytes, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, offset, length);
+    return (int) crc.getValue();
+  }
+
+  private static final class Segment {
+    final long id;
+    final Path path;
+    final MappedByteBuffer buffer;
+    final AtomicInteger pins = new AtomicInteger();
+    final AtomicBoolean deleted = new AtomicBoolean();
+
+    Segment(long id, Path path, MappedByteBuffer buffer) {
+      this.id = id;
+      this.path = path;
+      this.buffer = buffer;
+    }
+  }
+}
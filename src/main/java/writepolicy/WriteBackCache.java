@@ -0,0 +1,419 @@
+package writepolicy;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import store.Serializer;
+
+/**
+ * Write-back cache made durable by a local {@link WriteAheadLog}.
+ *
+ * Design:
+ * - put appends the entry to the log and waits for its group commit, then holds it in
+ *   the cache as dirty; the store is not touched, so write latency is one shared msync
+ * - An evicted dirty entry is only recorded in an unbounded handoff map (reads still see
+ *   it); the eviction listener never blocks, since it runs inside Caffeine's maintenance
+ *   and map locks. A flusher thread drains the map to the store in batches
+ * - Backpressure is applied to put instead: while MAX_PENDING evicted entries wait for the
+ *   store, writers wait for the flusher before adding more
+ * - A log record is released once its entry is written to the store or overwritten, and
+ *   the log deletes segments with no live records
+ * - Dirty entries that never get evicted would pin old segments forever, so when the log
+ *   holds more than maxSegments segments the entries in the oldest one are written back
+ *   early (a checkpoint) and stay cached as clean
+ * - On startup the log left by a crashed process is replayed (last write wins per key)
+ *   and written to the store before any new writes are accepted
+ */
+public class WriteBackCache<K, V> implements AutoCloseable {
+  private static final int SEGMENT_SIZE = 4 << 20;
+  private static final int MAX_SEGMENTS = 8;
+  private static final int BATCH_SIZE = 100;
+  private static final long MAX_DELAY_NANOS = Duration.ofSeconds(1).toNanos();
+  private static final long RETRY_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final int MAX_PENDING = 10_000;
+  private static final long CLEAN = -1;
+
+  private final Serializer<K> keySerializer;
+  private final Serializer<V> valueSerializer;
+  private final Function<K, V> loader;
+  private final BatchWriter<K, V> writer;
+  private final WriteAheadLog log;
+  private final ConcurrentHashMap<K, Entry<V>> pendingFlush = new ConcurrentHashMap<>();
+  private final ReentrantLock flushLock = new ReentrantLock();
+  private final Condition batchWritten = flushLock.newCondition();
+  private final AtomicInteger flushWaiters = new AtomicInteger();
+  private final AtomicLong checkpointedSegment = new AtomicLong(-1);
+  private final Cache<K, Entry<V>> cache;
+  private final Thread flusher;
+  private volatile boolean closed;
+  private volatile boolean abandoned;
+
+  private final AtomicLong batchesWritten = new AtomicLong();
+  private final AtomicLong failedBatches = new AtomicLong();
+
+  /**
+   * @param walDirectory directory holding the write-ahead log; replayed if not empty
+   * @param loader reads a key from the store on a miss
+   * @param writer writes a batch of entries to the store
+   */
+  public WriteBackCache(Path walDirectory, int maximumSize, Serializer<K> keySerializer,
+      Serializer<V> valueSerializer, Function<K, V> loader, BatchWriter<K, V> writer) throws IOException {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+    }
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+    this.loader = loader;
+    this.writer = writer;
+    this.log = new WriteAheadLog(walDirectory, SEGMENT_SIZE);
+    recover();
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .evictionListener((K key, Entry<V> entry, RemovalCause cause) -> {
+          if (key != null && entry != null && entry.isDirty()) {
+            handOff(key, entry);
+          }
+        })
+        .build();
+    this.flusher = new Thread(this::runFlusher, "write-back-flusher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * Returns the cached value, an evicted value still waiting to be written, or the store's.
+   */
+  public V get(K key) {
+    Entry<V> entry = cache.getIfPresent(key);
+    if (entry == null) {
+      entry = pendingFlush.get(key);
+    }
+    if (entry != null) {
+      return entry.value;
+    }
+    V value = loader.apply(key);
+    if (value != null) {
+      cache.asMap().putIfAbsent(key, new Entry<>(value, CLEAN));
+    }
+    return value;
+  }
+
+  /**
+   * Logs the write, waits for it to be durable and caches it as dirty.
+   */
+  public void put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    awaitFlushSpace();
+    byte[] keyBytes = keySerializer.serialize(key);
+    byte[] valueBytes = valueSerializer.serialize(value);
+    // Append inside the entry's compute so log order matches cache order for the key
+    Entry<V> entry = cache.asMap().compute(key, (k, previous) -> {
+      if (previous != null && previous.isDirty()) {
+        log.release(previous.lsn);
+      }
+      return new Entry<>(value, log.append(keyBytes, valueBytes));
+    });
+    log.sync(entry.lsn);
+
+    if (log.segmentCount() > MAX_SEGMENTS) {
+      checkpointOldestSegment();
+    }
+  }
+
+  /**
+   * Writes every dirty entry to the store and waits until the store has it.
+   */
+  public void flush() throws InterruptedException {
+    markAllClean();
+    Map<K, Entry<V>> handedOff = new HashMap<>(pendingFlush);
+    flushWaiters.incrementAndGet();
+    LockSupport.unpark(flusher);
+    flushLock.lock();
+    try {
+      while (!isWritten(handedOff) && flusher.isAlive()) {
+        batchWritten.await();
+      }
+    } finally {
+      flushLock.unlock();
+      flushWaiters.decrementAndGet();
+    }
+  }
+
+  /**
+   * Writes every dirty entry and removes the log, so nothing is replayed on the next start.
+   * If the store fails during shutdown, the unwritten entries stay in the log instead.
+   */
+  @Override
+  public void close() {
+    markAllClean();
+    closed = true;
+    stopFlusher();
+    log.close();
+  }
+
+  /**
+   * Stops without writing anything to the store, as a crashed process would; dirty
+   * entries survive only in the log. The instance must not be used afterwards.
+   */
+  public void abandon() {
+    abandoned = true;
+    closed = true;
+    stopFlusher();
+    log.close();
+  }
+
+  public long estimatedSize() {
+    return cache.estimatedSize();
+  }
+
+  public long dirtyCount() {
+    return cache.asMap().values().stream().filter(Entry::isDirty).count();
+  }
+
+  public int pendingFlushCount() {
+    return pendingFlush.size();
+  }
+
+  public long logAppends() {
+    return log.appends();
+  }
+
+  public long logSyncs() {
+    return log.syncs();
+  }
+
+  public long batchesWritten() {
+    return batchesWritten.get();
+  }
+
+  public long failedBatches() {
+    return failedBatches.get();
+  }
+
+  private void recover() throws IOException {
+    Map<K, V> recovered = new LinkedHashMap<>();
+    log.replay((key, value) -> recovered.put(
+        keySerializer.deserialize(key), valueSerializer.deserialize(value)));
+    if (recovered.isEmpty()) {
+      log.deleteRecovered();
+      return;
+    }
+    System.out.println("   [wal] Replaying " + recovered.size() + " logged entries to the store");
+    Map<K, V> batch = new HashMap<>();
+    try {
+      for (Map.Entry<K, V> entry : recovered.entrySet()) {
+        batch.put(entry.getKey(), entry.getValue());
+        if (batch.size() == BATCH_SIZE) {
+          writer.writeBatch(batch);
+          batch = new HashMap<>();
+        }
+      }
+      if (!batch.isEmpty()) {
+        writer.writeBatch(batch);
+      }
+    } catch (Exception e) {
+      // Keep the log so the next start retries the replay
+      throw new IOException("Write-ahead log replay failed", e);
+    }
+    log.deleteRecovered();
+  }
+
+  /**
+   * Hands off the dirty entries of the oldest segment, once per segment: the segment is
+   * deleted asynchronously when their batches are written.
+   */
+  private void checkpointOldestSegment() {
+    long oldest = log.oldestSegment();
+    long previous = checkpointedSegment.get();
+    if (oldest <= previous || !checkpointedSegment.compareAndSet(previous, oldest)) {
+      return;
+    }
+    for (Map.Entry<K, Entry<V>> cached : cache.asMap().entrySet()) {
+      Entry<V> entry = cached.getValue();
+      if (entry.isDirty() && WriteAheadLog.segmentOf(entry.lsn) == oldest) {
+        cache.asMap().computeIfPresent(cached.getKey(), (k, current) -> markClean(k, current));
+      }
+    }
+  }
+
+  private void markAllClean() {
+    for (K key : cache.asMap().keySet()) {
+      cache.asMap().computeIfPresent(key, (k, entry) -> markClean(k, entry));
+    }
+  }
+
+  private Entry<V> markClean(K key, Entry<V> entry) {
+    if (!entry.isDirty()) {
+      return entry;
+    }
+    handOff(key, entry);
+    return new Entry<>(entry.value, CLEAN);
+  }
+
+  /**
+   * Records a dirty entry for the flusher; its log record stays pinned until it is written.
+   * Called from the eviction listener and inside computes, so it must never block.
+   */
+  private void handOff(K key, Entry<V> entry) {
+    Entry<V> superseded = pendingFlush.put(key, entry);
+    if (superseded != null) {
+      log.release(superseded.lsn);
+    }
+    // Wake the flusher for the first pending entry (starts the delay clock) and a full batch
+    int size = pendingFlush.size();
+    if (size == 1 || size >= BATCH_SIZE) {
+      LockSupport.unpark(flusher);
+    }
+  }
+
+  /**
+   * Backpressure for put, outside any map lock: waits while the store is MAX_PENDING
+   * entries behind.
+   */
+  private void awaitFlushSpace() {
+    if (pendingFlush.size() < MAX_PENDING) {
+      return;
+    }
+    LockSupport.unpark(flusher);
+    flushLock.lock();
+    try {
+      while (pendingFlush.size() >= MAX_PENDING && flusher.isAlive()) {
+        batchWritten.await();
+      }
+    } catch (InterruptedException e) {
+      // The write is still logged before it is acknowledged; only the limit is exceeded
+      Thread.currentThread().interrupt();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private boolean isWritten(Map<K, Entry<V>> handedOff) {
+    for (Map.Entry<K, Entry<V>> entry : handedOff.entrySet()) {
+      // Gone, or replaced by a newer entry handed off after the flush started
+      if (pendingFlush.get(entry.getKey()) == entry.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void runFlusher() {
+    long pendingSince = 0;
+    while (!abandoned) {
+      if (pendingFlush.isEmpty()) {
+        pendingSince = 0;
+        if (closed) {
+          return;
+        }
+        LockSupport.parkNanos(this, MAX_DELAY_NANOS);
+        continue;
+      }
+      long now = System.nanoTime();
+      if (pendingSince == 0) {
+        pendingSince = now;
+      }
+      long waited = now - pendingSince;
+      if (pendingFlush.size() < BATCH_SIZE && waited < MAX_DELAY_NANOS && flushWaiters.get() == 0 && !closed) {
+        LockSupport.parkNanos(this, MAX_DELAY_NANOS - waited);
+        continue;
+      }
+      if (!writeBatch()) {
+        if (closed) {
+          // Shutting down during a store outage: the log keeps what was not written
+          return;
+        }
+        LockSupport.parkNanos(this, RETRY_BACKOFF_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Writes up to BATCH_SIZE handed-off entries; returns false if the store failed.
+   */
+  private boolean writeBatch() {
+    Map<K, Entry<V>> batch = new HashMap<>();
+    for (Map.Entry<K, Entry<V>> pending : pendingFlush.entrySet()) {
+      batch.put(pending.getKey(), pending.getValue());
+      if (batch.size() == BATCH_SIZE) {
+        break;
+      }
+    }
+    Map<K, V> values = new HashMap<>();
+    batch.forEach((key, entry) -> values.put(key, entry.value));
+    try {
+      writer.writeBatch(values);
+    } catch (Exception e) {
+      failedBatches.incrementAndGet();
+      System.err.println("   [write-back] Batch of " + batch.size() + " failed, retrying: " + e.getMessage());
+      return false;
+    }
+    batchesWritten.incrementAndGet();
+    batch.forEach((key, entry) -> {
+      if (pendingFlush.remove(key, entry)) {
+        log.release(entry.lsn);
+      }
+    });
+    signalBatchWritten();
+    return true;
+  }
+
+  private void signalBatchWritten() {
+    flushLock.lock();
+    try {
+      batchWritten.signalAll();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private void stopFlusher() {
+    LockSupport.unpark(flusher);
+    boolean interrupted = false;
+    while (flusher.isAlive()) {
+      try {
+        flusher.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    // Wake anyone in flush or put; they re-check and see the flusher gone
+    signalBatchWritten();
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * A cached value and the LSN of its log record, or CLEAN if the store already has it.
+   */
+  private static final class Entry<V> {
+    final V value;
+    final long lsn;
+
+    Entry(V value, long lsn) {
+      this.value = value;
+      this.lsn = lsn;
+    }
+
+    boolean isDirty() {
+      return lsn != CLEAN;
+    }
+  }
+}
@@ -0,0 +1,399 @@
+package writepolicy;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Batched, coalescing write-behind queue.
+ *
+ * Design:
+ * - Writers put into the active buffer (last value wins per key) under a shared lock
+ * - A single flusher thread swaps in an empty buffer under the exclusive lock, so no
+ *   writer can still be adding to the buffer being drained (lossless handoff)
+ * - A flush starts when the buffer reaches batchSize entries or the oldest pending
+ *   write is maxDelay old; the drained buffer goes to the BatchWriter in bulk calls of
+ *   at most batchSize entries
+ * - Backpressure: a write of a key not already queued reserves one of maxPending slots
+ *   before it is added, and slots free up only once the BatchWriter has taken a drained
+ *   buffer, so queued plus in-flight entries never exceed maxPending; writers block
+ *   while none is free, and rewriting a queued key never needs one
+ * - A failed batch is retried after a short backoff, minus keys rewritten since the swap
+ *   (their newer value is already queued), so a store outage never drops a write while
+ *   the queue is open; after close, retries stop once CLOSE_RETRY has passed and what is
+ *   left is dropped and counted, so close() cannot hang on a dead store
+ */
+public class WriteBehindQueue<K, V> implements AutoCloseable {
+  private static final long RETRY_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long CLOSE_RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  private final BatchWriter<K, V> writer;
+  private final int batchSize;
+  private final long maxDelayNanos;
+  private final int maxPending;
+
+  private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+  private final ReentrantLock spaceLock = new ReentrantLock();
+  private final Condition spaceAvailable = spaceLock.newCondition();
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+  // Entries queued or being written; each holds one of maxPending slots
+  private final AtomicInteger reserved = new AtomicInteger();
+  private final Thread flusher;
+  private volatile Buffer<K, V> active = new Buffer<>();
+  private volatile boolean closed;
+  private volatile long closedAtNanos;
+
+  private final AtomicLong writes = new AtomicLong();
+  private final AtomicLong coalescedWrites = new AtomicLong();
+  private final AtomicLong batchesWritten = new AtomicLong();
+  private final AtomicLong entriesWritten = new AtomicLong();
+  private final AtomicLong failedBatches = new AtomicLong();
+  private final AtomicLong droppedEntries = new AtomicLong();
+
+  /**
+   * @param batchSize entries per bulk call, and the pending count that triggers a flush
+   * @param maxDelay longest a write may wait before it is flushed
+   * @param maxPending queued plus in-flight entries at which writers block; at least batchSize
+   */
+  public WriteBehindQueue(BatchWriter<K, V> writer, int batchSize, Duration maxDelay, int maxPending) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+    }
+    if (maxPending < batchSize) {
+      throw new IllegalArgumentException("maxPending must be at least batchSize: " + maxPending);
+    }
+    this.writer = writer;
+    this.batchSize = batchSize;
+    this.maxDelayNanos = maxDelay.toNanos();
+    this.maxPending = maxPending;
+    this.flusher = new Thread(this::runFlusher, "write-behind-flusher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * Queues a write, blocking while the queue is full.
+   */
+  public void write(K key, V value) throws InterruptedException {
+    if (!offer(key, value, Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+      throw new IllegalStateException("Write-behind queue is closed");
+    }
+  }
+
+  /**
+   * Queues a write, waiting up to the timeout for space. Returns false if the queue stayed
+   * full for the whole timeout or is closed.
+   */
+  public boolean offer(K key, V value, long timeout, TimeUnit unit) throws InterruptedException {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    long remaining = unit.toNanos(timeout);
+    int size;
+    while (true) {
+      swapLock.readLock().lock();
+      try {
+        if (closed) {
+          return false;
+        }
+        size = add(active, key, value);
+      } finally {
+        swapLock.readLock().unlock();
+      }
+      if (size >= 0) {
+        break;
+      }
+      remaining = awaitSpace(remaining);
+      if (remaining < 0) {
+        return false;
+      }
+    }
+    writes.incrementAndGet();
+    if (size == 0) {
+      coalescedWrites.incrementAndGet();
+      return true;
+    }
+
+    // Wake the flusher for the first pending write (starts the delay clock) and when a
+    // batch is ready; other writes stay off its path
+    if ((size == 1 || size >= batchSize) && !flushRequested.getAndSet(true)) {
+      LockSupport.unpark(flusher);
+    }
+    return true;
+  }
+
+  /**
+   * Flushes everything written so far and waits until it has reached the BatchWriter.
+   */
+  public void flush() throws InterruptedException {
+    Buffer<K, V> target = active;
+    target.forced = true;
+    LockSupport.unpark(flusher);
+    target.awaitFlushed();
+  }
+
+  /**
+   * Stops accepting writes, flushes what is pending and stops the flusher. While the store
+   * is failing, batches are retried for up to CLOSE_RETRY and then dropped (see
+   * {@link #droppedEntries}). If interrupted, returns with the flag set and leaves the
+   * flusher to finish on its own.
+   */
+  @Override
+  public void close() {
+    closedAtNanos = System.nanoTime();
+    closed = true;
+    signalSpace();
+    LockSupport.unpark(flusher);
+    try {
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public int pending() {
+    return active.entries.size();
+  }
+
+  public long writes() {
+    return writes.get();
+  }
+
+  public long coalescedWrites() {
+    return coalescedWrites.get();
+  }
+
+  public long batchesWritten() {
+    return batchesWritten.get();
+  }
+
+  public long entriesWritten() {
+    return entriesWritten.get();
+  }
+
+  public long failedBatches() {
+    return failedBatches.get();
+  }
+
+  /**
+   * Entries given up on because the store was still failing after close.
+   */
+  public long droppedEntries() {
+    return droppedEntries.get();
+  }
+
+  /**
+   * Puts into the buffer and returns its new size, 0 if the key was already queued there
+   * (coalesced), or -1 if the key needed a slot and none was free. Runs under the shared lock.
+   */
+  private int add(Buffer<K, V> buffer, K key, V value) {
+    if (buffer.entries.replace(key, value) != null) {
+      return 0;
+    }
+    int slots;
+    do {
+      slots = reserved.get();
+      if (slots >= maxPending) {
+        return -1;
+      }
+    } while (!reserved.compareAndSet(slots, slots + 1));
+    if (buffer.entries.put(key, value) != null) {
+      // Another writer queued the same key meanwhile; its slot covers this value
+      reserved.decrementAndGet();
+      return 0;
+    }
+    buffer.markFirstWrite();
+    return buffer.entries.size();
+  }
+
+  /**
+   * Waits until a slot is free or the queue closes; returns the time left, or -1 if the
+   * timeout ran out first.
+   */
+  private long awaitSpace(long remainingNanos) throws InterruptedException {
+    LockSupport.unpark(flusher);
+    spaceLock.lock();
+    try {
+      long remaining = remainingNanos;
+      while (reserved.get() >= maxPending && !closed) {
+        if (remaining <= 0) {
+          return -1;
+        }
+        remaining = spaceAvailable.awaitNanos(remaining);
+      }
+      return Math.max(remaining, 0);
+    } finally {
+      spaceLock.unlock();
+    }
+  }
+
+  private void signalSpace() {
+    spaceLock.lock();
+    try {
+      spaceAvailable.signalAll();
+    } finally {
+      spaceLock.unlock();
+    }
+  }
+
+  private void runFlusher() {
+    while (true) {
+      flushRequested.set(false);
+      Buffer<K, V> current = active;
+      int size = current.entries.size();
+      if (size == 0) {
+        if (closed && isDrained()) {
+          current.markFlushed();
+          return;
+        }
+        if (current.forced) {
+          // A writer may have added since the size check; only the swap decides what was drained
+          drain(swap());
+          current.markFlushed();
+          continue;
+        }
+        LockSupport.parkNanos(this, maxDelayNanos);
+        continue;
+      }
+
+      long waited = System.nanoTime() - current.firstWriteNanos;
+      if (size < batchSize && waited < maxDelayNanos && !current.forced && !closed) {
+        LockSupport.parkNanos(this, maxDelayNanos - waited);
+        continue;
+      }
+
+      drain(swap());
+      current.markFlushed();
+    }
+  }
+
+  /**
+   * Writes a swapped-out buffer, if it holds anything, and frees its slots.
+   */
+  private void drain(Buffer<K, V> drained) {
+    int size = drained.entries.size();
+    if (size == 0) {
+      return;
+    }
+    writeAll(drained.entries);
+    // Every entry of a drained buffer holds exactly one slot
+    reserved.addAndGet(-size);
+    signalSpace();
+  }
+
+  /**
+   * Checked under the exclusive lock so a writer that saw the queue open has finished its put.
+   */
+  private boolean isDrained() {
+    swapLock.writeLock().lock();
+    try {
+      return active.entries.isEmpty();
+    } finally {
+      swapLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Installs an empty buffer and returns the one it replaced, which no writer can still be
+   * adding to once the exclusive lock is released.
+   */
+  private Buffer<K, V> swap() {
+    swapLock.writeLock().lock();
+    try {
+      Buffer<K, V> replaced = active;
+      active = new Buffer<>();
+      return replaced;
+    } finally {
+      swapLock.writeLock().unlock();
+    }
+  }
+
+  private void writeAll(Map<K, V> drained) {
+    Map<K, V> batch = new HashMap<>();
+    for (Map.Entry<K, V> entry : drained.entrySet()) {
+      batch.put(entry.getKey(), entry.getValue());
+      if (batch.size() == batchSize) {
+        writeWithRetry(batch);
+        batch = new HashMap<>();
+      }
+    }
+    if (!batch.isEmpty()) {
+      writeWithRetry(batch);
+    }
+  }
+
+  private void writeWithRetry(Map<K, V> batch) {
+    while (true) {
+      try {
+        writer.writeBatch(batch);
+        batchesWritten.incrementAndGet();
+        entriesWritten.addAndGet(batch.size());
+        return;
+      } catch (Exception e) {
+        failedBatches.incrementAndGet();
+        if (closed && System.nanoTime() - closedAtNanos >= CLOSE_RETRY_NANOS) {
+          droppedEntries.addAndGet(batch.size());
+          System.err.println("   [write-behind] Batch of " + batch.size() + " failed after close, dropping it: "
+              + e.getMessage());
+          return;
+        }
+        System.err.println("   [write-behind] Batch of " + batch.size() + " failed, retrying: " + e.getMessage());
+        // Drop entries that were rewritten since the swap: the newer value is already queued
+        Map<K, V> newer = active.entries;
+        batch.keySet().removeIf(newer::containsKey);
+        if (batch.isEmpty()) {
+          return;
+        }
+        LockSupport.parkNanos(this, RETRY_BACKOFF_NANOS);
+      }
+    }
+  }
+
+  /**
+   * One generation of pending writes; replaced wholesale at each flush.
+   */
+  private static final class Buffer<K, V> {
+    final ConcurrentHashMap<K, V> entries = new ConcurrentHashMap<>();
+    final ReentrantLock flushedLock = new ReentrantLock();
+    final Condition flushedCondition = flushedLock.newCondition();
+    volatile long firstWriteNanos;
+    volatile boolean forced;
+    boolean flushed;
+
+    void markFirstWrite() {
+      if (firstWriteNanos == 0) {
+        firstWriteNanos = System.nanoTime();
+      }
+    }
+
+    void markFlushed() {
+      flushedLock.lock();
+      try {
+        flushed = true;
+        flushedCondition.signalAll();
+      } finally {
+        flushedLock.unlock();
+      }
+    }
+
+    void awaitFlushed() throws InterruptedException {
+      flushedLock.lock();
+      try {
+        while (!flushed) {
+          flushedCondition.await();
+        }
+      } finally {
+        flushedLock.unlock();
+      }
+    }
+  }
+}
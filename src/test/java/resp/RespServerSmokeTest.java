@@ -0,0 +1,340 @@
+package resp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import distributed.FencedLockService;
+import distributed.RedisWriteBackCache;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanIterator;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucket;
+import org.redisson.api.RLock;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.config.Config;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.resps.ScanResult;
+import store.InMemoryBackingStore;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drives {@link RespServer} with the three clients the repo uses, so a protocol or
+ * interpreter regression shows up as a failing client call rather than a hung demo.
+ * Each client gets its own key prefix; all share one server.
+ */
+class RespServerSmokeTest {
+  private static final Duration WAIT = Duration.ofSeconds(5);
+
+  private static RespServer server;
+  private static JedisPool pool;
+
+  @BeforeAll
+  static void startServer() {
+    server = RespServer.start();
+    pool = new JedisPool(server.host(), server.port());
+  }
+
+  @AfterAll
+  static void stopServer() {
+    pool.close();
+    server.close();
+  }
+
+  @Test
+  void jedisPipelineRepliesInOrder() {
+    try (Jedis jedis = pool.getResource()) {
+      Pipeline pipeline = jedis.pipelined();
+      List<Response<Long>> counters = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        pipeline.set("jedis:pipe:" + i, "v" + i);
+        counters.add(pipeline.incr("jedis:pipe:counter"));
+      }
+      Response<List<String>> values = pipeline.mget("jedis:pipe:0", "jedis:pipe:99", "jedis:pipe:missing");
+      pipeline.sync();
+
+      for (int i = 0; i < counters.size(); i++) {
+        assertEquals(i + 1, counters.get(i).get());
+      }
+      assertEquals(Arrays.asList("v0", "v99", null), values.get());
+    }
+  }
+
+  @Test
+  void jedisLockScriptGrantsIncreasingTokens() {
+    try (FencedLockService first = new FencedLockService(pool, Duration.ofSeconds(10), 4);
+        FencedLockService second = new FencedLockService(pool, Duration.ofSeconds(10), 4)) {
+      FencedLockService.Lease lease = first.tryLock("smoke", WAIT);
+      assertNotNull(lease);
+      // The holder's PTTL bounds the contender's polling, so this times out on schedule
+      assertNull(second.tryLock("smoke", Duration.ofMillis(100)));
+      long token = lease.fencingToken();
+      lease.close();
+
+      // EVALSHA answers NOSCRIPT after a flush; the registry reloads and retries
+      try (Jedis jedis = pool.getResource()) {
+        jedis.scriptFlush();
+      }
+      try (FencedLockService.Lease next = second.tryLock("smoke", WAIT)) {
+        assertNotNull(next);
+        assertTrue(next.fencingToken() > token);
+      }
+      // Acquire and release each found their script gone once
+      assertEquals(2, second.scriptReloads());
+    }
+  }
+
+  @Test
+  void jedisClaimScriptMovesDirtyKeysToStore() {
+    InMemoryBackingStore<String, String> store = new InMemoryBackingStore<>();
+    try (RedisWriteBackCache cache = new RedisWriteBackCache(pool, store, "jedis:wb", 16, Duration.ofSeconds(1),
+        Duration.ofMinutes(1))) {
+      for (int i = 0; i < 40; i++) {
+        cache.put("jedis:wb:" + i, "v" + i);
+      }
+      assertEquals(40, cache.dirtyCount());
+      cache.flush();
+      assertEquals(0, cache.dirtyCount());
+      assertEquals(40, store.size());
+      assertEquals("v39", store.get("jedis:wb:39"));
+    }
+  }
+
+  @Test
+  void jedisScanVisitsEveryKeyOnce() {
+    try (Jedis jedis = pool.getResource()) {
+      Pipeline pipeline = jedis.pipelined();
+      for (int i = 0; i < 250; i++) {
+        pipeline.set("jedis:scan:" + i, "v");
+      }
+      pipeline.set("jedis:other", "v");
+      pipeline.sync();
+
+      Set<String> seen = new HashSet<>();
+      ScanParams params = new ScanParams().match("jedis:scan:*").count(32);
+      String cursor = ScanParams.SCAN_POINTER_START;
+      do {
+        ScanResult<String> page = jedis.scan(cursor, params);
+        for (String key : page.getResult()) {
+          assertTrue(seen.add(key), "returned twice: " + key);
+        }
+        cursor = page.getCursor();
+      } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+      assertEquals(250, seen.size());
+    }
+  }
+
+  @Test
+  void jedisKeysExpire() throws InterruptedException {
+    try (Jedis jedis = pool.getResource()) {
+      jedis.set("jedis:ttl", "v", SetParams.setParams().px(100));
+      jedis.set("jedis:ttl:none", "v");
+      long pttl = jedis.pttl("jedis:ttl");
+      assertTrue(pttl > 0 && pttl <= 100, "pttl " + pttl);
+      assertEquals(-1, jedis.pttl("jedis:ttl:none"));
+
+      Thread.sleep(200);
+      assertNull(jedis.get("jedis:ttl"));
+      assertEquals(-2, jedis.pttl("jedis:ttl"));
+      assertEquals("v", jedis.get("jedis:ttl:none"));
+    }
+  }
+
+  @Test
+  void jedisPubSubDeliversToPatternAndChannel() throws InterruptedException {
+    CountDownLatch subscribed = new CountDownLatch(2);
+    CountDownLatch received = new CountDownLatch(2);
+    List<String> messages = Collections.synchronizedList(new ArrayList<>());
+    JedisPubSub listener = new JedisPubSub() {
+      @Override
+      public void onSubscribe(String channel, int subscribedChannels) {
+        // The subscribed connection only takes (P)SUBSCRIBE, so the pattern is added here
+        psubscribe("jedis:*");
+        subscribed.countDown();
+      }
+
+      @Override
+      public void onPSubscribe(String pattern, int subscribedChannels) {
+        subscribed.countDown();
+      }
+
+      @Override
+      public void onMessage(String channel, String message) {
+        messages.add(channel + "=" + message);
+        received.countDown();
+      }
+
+      @Override
+      public void onPMessage(String pattern, String channel, String message) {
+        messages.add(pattern + ":" + channel + "=" + message);
+        received.countDown();
+      }
+    };
+    Thread subscriber = new Thread(() -> {
+      try (Jedis jedis = pool.getResource()) {
+        jedis.subscribe(listener, "jedis:chan");
+      }
+    }, "smoke-subscriber");
+    subscriber.setDaemon(true);
+    subscriber.start();
+    try {
+      assertTrue(subscribed.await(WAIT.toMillis(), TimeUnit.MILLISECONDS));
+      try (Jedis jedis = pool.getResource()) {
+        assertEquals(2, jedis.publish("jedis:chan", "hello"));
+      }
+      assertTrue(received.await(WAIT.toMillis(), TimeUnit.MILLISECONDS));
+      assertTrue(messages.contains("jedis:chan=hello"), messages.toString());
+      assertTrue(messages.contains("jedis:*:jedis:chan=hello"), messages.toString());
+    } finally {
+      listener.punsubscribe();
+      listener.unsubscribe();
+      subscriber.join(WAIT.toMillis());
+    }
+  }
+
+  @Test
+  void lettuceCoversPipeliningScriptsScanTtlAndPubSub() throws Exception {
+    RedisClient client = RedisClient.create(RedisURI.create(server.host(), server.port()));
+    try (StatefulRedisConnection<String, String> connection = client.connect();
+        StatefulRedisPubSubConnection<String, String> subscriber = client.connectPubSub()) {
+      RedisCommands<String, String> sync = connection.sync();
+
+      // Pipelining: hold the writes back and send them in one flush
+      RedisAsyncCommands<String, String> async = connection.async();
+      connection.setAutoFlushCommands(false);
+      List<RedisFuture<String>> futures = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        futures.add(async.set("lettuce:pipe:" + i, "v" + i));
+      }
+      connection.flushCommands();
+      connection.setAutoFlushCommands(true);
+      assertTrue(LettuceFutures.awaitAll(WAIT, futures.toArray(new RedisFuture[0])));
+      assertEquals("v49", sync.get("lettuce:pipe:49"));
+
+      // EVAL and EVALSHA of a compare-and-delete, the lock release shape
+      String release = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end return 0";
+      sync.set("lettuce:lock", "owner-a");
+      Long stale = sync.eval(release, ScriptOutputType.INTEGER, new String[] {"lettuce:lock"}, "owner-b");
+      assertEquals(0L, stale);
+      String sha = sync.scriptLoad(release);
+      Long released = sync.evalsha(sha, ScriptOutputType.INTEGER, new String[] {"lettuce:lock"}, "owner-a");
+      assertEquals(1L, released);
+      assertEquals(0L, sync.exists("lettuce:lock"));
+
+      Set<String> scanned = new HashSet<>();
+      ScanIterator.scan(sync, ScanArgs.Builder.matches("lettuce:pipe:*").limit(8)).forEachRemaining(scanned::add);
+      assertEquals(50, scanned.size());
+
+      sync.psetex("lettuce:ttl", 100, "v");
+      assertTrue(sync.pttl("lettuce:ttl") > 0);
+      Thread.sleep(200);
+      assertEquals(0L, sync.exists("lettuce:ttl"));
+
+      AtomicReference<String> message = new AtomicReference<>();
+      CountDownLatch received = new CountDownLatch(1);
+      subscriber.addListener(new RedisPubSubAdapter<String, String>() {
+        @Override
+        public void message(String channel, String body) {
+          message.set(channel + "=" + body);
+          received.countDown();
+        }
+      });
+      subscriber.sync().subscribe("lettuce:chan");
+      assertEquals(1L, sync.publish("lettuce:chan", "hello"));
+      assertTrue(received.await(WAIT.toMillis(), TimeUnit.MILLISECONDS));
+      assertEquals("lettuce:chan=hello", message.get());
+    } finally {
+      client.shutdown();
+    }
+  }
+
+  @Test
+  void redissonCoversBatchLockScanTtlAndTopic() throws Exception {
+    Config config = new Config();
+    config.useSingleServer()
+        .setAddress("redis://" + server.host() + ":" + server.port())
+        .setConnectionMinimumIdleSize(1)
+        .setConnectionPoolSize(4)
+        .setSubscriptionConnectionMinimumIdleSize(1)
+        .setSubscriptionConnectionPoolSize(1);
+    RedissonClient redisson = Redisson.create(config);
+    try {
+      // A batch is Redisson's pipeline
+      RBatch batch = redisson.createBatch();
+      for (int i = 0; i < 20; i++) {
+        batch.getBucket("redisson:batch:" + i, StringCodec.INSTANCE).setAsync("v" + i);
+      }
+      batch.getAtomicLong("redisson:batch:counter").incrementAndGetAsync();
+      List<?> responses = batch.execute().getResponses();
+      assertEquals(21, responses.size());
+      assertEquals(1L, responses.get(20));
+
+      // RLock acquire, reentry and release are all EVAL of Redisson's own scripts
+      RLock lock = redisson.getLock("redisson:lock");
+      assertTrue(lock.tryLock(1, 10, TimeUnit.SECONDS));
+      assertTrue(lock.tryLock(1, 10, TimeUnit.SECONDS));
+      assertEquals(2, lock.getHoldCount());
+      lock.unlock();
+      lock.unlock();
+      assertFalse(lock.isLocked());
+
+      int scanned = 0;
+      for (String ignored : redisson.getKeys().getKeysByPattern("redisson:batch:*", 5)) {
+        scanned++;
+      }
+      assertEquals(21, scanned);
+
+      RBucket<String> expiring = redisson.getBucket("redisson:ttl", StringCodec.INSTANCE);
+      expiring.set("v", 100, TimeUnit.MILLISECONDS);
+      assertTrue(expiring.isExists());
+      Thread.sleep(200);
+      assertFalse(expiring.isExists());
+
+      RTopic topic = redisson.getTopic("redisson:chan", StringCodec.INSTANCE);
+      AtomicReference<String> message = new AtomicReference<>();
+      CountDownLatch received = new CountDownLatch(1);
+      topic.addListener(String.class, (channel, body) -> {
+        message.set(body);
+        received.countDown();
+      });
+      assertEquals(1, topic.publish("hello"));
+      assertTrue(received.await(WAIT.toMillis(), TimeUnit.MILLISECONDS));
+      assertEquals("hello", message.get());
+    } finally {
+      redisson.shutdown();
+    }
+  }
+}